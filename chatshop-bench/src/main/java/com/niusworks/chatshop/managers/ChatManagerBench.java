@@ -0,0 +1,74 @@
+package com.niusworks.chatshop.managers;
+
+import java.text.NumberFormat;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import net.md_5.bungee.api.chat.TextComponent;
+
+/**
+ * {@link ChatManager}'s hot paths: paginating results, formatting prices (and, as
+ * a baseline, formatting them with the {@link NumberFormat} it once used),
+ * writing enchantment levels in roman numerals, and building the tooltip of an
+ * enchanted item.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class ChatManagerBench extends HeadlessBench
+{
+    /** Lines to paginate. **/
+    protected String[] lines;
+    /** The number of pages the lines fill. **/
+    protected int pages;
+    /** The way prices were formatted before {@link com.niusworks.chatshop.core.NumberFormatter}. **/
+    protected NumberFormat currency;
+    /** An enchanted sword. **/
+    protected ItemStack sword;
+
+    @Override
+    protected void build()
+    {
+        lines = new String[200];
+        for(int i = 0; i < lines.length; i ++)
+            lines[i] = "Line " + i;
+        pages = plugin.CM.getPaginationSize(lines);
+        currency = NumberFormat.getCurrencyInstance();
+        sword = new ItemStack(Material.DIAMOND_SWORD);
+        sword.addUnsafeEnchantment(Enchantment.DAMAGE_ALL,3);
+        sword.addUnsafeEnchantment(Enchantment.DURABILITY,2);
+    }
+
+    @Benchmark
+    public String[] paginate()
+    {
+        return plugin.CM.paginate(lines,next ++ % pages + 1);
+    }
+
+    @Benchmark
+    public String format()
+    {
+        return ChatManager.format(next ++ * 1.37);
+    }
+
+    @Benchmark
+    public String formatWithNumberFormat()
+    {
+        return currency.format(next ++ * 1.37).replaceAll("\\.00","");
+    }
+
+    @Benchmark
+    public String romanNumeralize()
+    {
+        return ChatManager.romanNumeralize(next ++ % 10 + 1);
+    }
+
+    @Benchmark
+    public TextComponent MOTforEnchanted()
+    {
+        //A negative lot is never cached, so the tooltip is built every time.
+        return plugin.CM.MOTforEnchanted("Sword",-1,sword);
+    }
+}
@@ -0,0 +1,42 @@
+package com.niusworks.chatshop.managers;
+
+import java.util.ArrayList;
+
+import org.bukkit.enchantments.Enchantment;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import com.niusworks.chatshop.constructs.EnchLvl;
+
+/**
+ * {@link DatabaseManager}'s enchantment codec, which every enchanted listing
+ * passes through on its way into and out of the database.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class DatabaseManagerBench extends HeadlessBench
+{
+    /** Enchantments to encode. **/
+    protected EnchLvl[] enchants;
+    /** The same enchantments, encoded. **/
+    protected String coded;
+
+    @Override
+    protected void build()
+    {
+        ArrayList<Enchantment> known = new ArrayList<Enchantment>(plugin.DB.ENCHANTS.keySet());
+        enchants = new EnchLvl[]{new EnchLvl(known.get(0),3),new EnchLvl(known.get(1),1)};
+        coded = plugin.DB.stringifyEnchants(enchants);
+    }
+
+    @Benchmark
+    public String stringifyEnchants()
+    {
+        return plugin.DB.stringifyEnchants(enchants);
+    }
+
+    @Benchmark
+    public EnchLvl[] deStringifyEnchants()
+    {
+        return plugin.DB.deStringifyEnchants(coded);
+    }
+}
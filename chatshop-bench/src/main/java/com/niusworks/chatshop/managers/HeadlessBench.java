@@ -0,0 +1,79 @@
+package com.niusworks.chatshop.managers;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.Headless;
+
+/**
+ * The state shared by ChatShop's benchmarks: the plugin, enabled in the headless
+ * harness against stand-ins for the server and an embedded database, with its
+ * default configuration and items dictionary, and a player online to act for.
+ * <br>
+ * Benchmarks run on one thread, as the code they measure runs on the main server
+ * thread, and report the average time per call in nanoseconds.
+ *
+ * @author ObsidianCraft Staff
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class HeadlessBench
+{
+    /** The harness. **/
+    protected Headless shop;
+    /** The plugin, enabled. **/
+    protected ChatShop plugin;
+    /** The player on whose behalf items are parsed and bought. **/
+    protected Player usr;
+    /** The number of the next call, for varying its input. **/
+    protected int next = 0;
+
+    /**
+     * Enable the plugin in a new harness, quietly, have a player join,
+     * and then {@link #build} what the benchmarks need.
+     *
+     * @throws IOException  If the harness's data folder cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void start() throws IOException
+    {
+        Headless.log().setLevel(java.util.logging.Level.WARNING);
+        shop = new Headless();
+        plugin = shop.start();
+        plugin.getLogger().setLevel(java.util.logging.Level.WARNING);
+        usr = shop.join("bench").PLAYER;
+        build();
+    }
+
+    /**
+     * Build what the benchmarks need, once the plugin is enabled.
+     * JMH does not order the setup methods of a class and its superclass,
+     * so subclasses do their setup here rather than in setup methods of their own.
+     */
+    protected abstract void build();
+
+    /** Disable the plugin, and delete the harness's data folder. **/
+    @TearDown(Level.Trial)
+    public void stop()
+    {
+        shop.close();
+    }
+}
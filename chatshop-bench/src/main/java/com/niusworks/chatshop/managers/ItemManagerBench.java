@@ -0,0 +1,48 @@
+package com.niusworks.chatshop.managers;
+
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import com.niusworks.chatshop.constructs.Item;
+
+/**
+ * {@link ItemManager}'s hot paths, with the default items dictionary: looking up
+ * and parsing what players type for items, by name, ID and ID:DMG, and making
+ * items compliant for the market.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class ItemManagerBench extends HeadlessBench
+{
+    /** What a player typed for an item. **/
+    @Param({"stone","1","1:1","cobblestone","wood"})
+    public String query;
+
+    /** The item, as parsed from what the player typed. **/
+    protected ItemStack parsed;
+
+    @Override
+    protected void build()
+    {
+        parsed = (ItemStack)plugin.IM.parse(usr,query);
+    }
+
+    @Benchmark
+    public Item lookup()
+    {
+        return plugin.IM.lookup(query);
+    }
+
+    @Benchmark
+    public Object parse()
+    {
+        return plugin.IM.parse(usr,query);
+    }
+
+    @Benchmark
+    public Object makeCompliant()
+    {
+        return plugin.IM.makeCompliant(parsed,false);
+    }
+}
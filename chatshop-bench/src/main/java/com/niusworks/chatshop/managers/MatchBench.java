@@ -0,0 +1,48 @@
+package com.niusworks.chatshop.managers;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import com.niusworks.chatshop.constructs.Listing;
+import com.niusworks.chatshop.constructs.Tender;
+
+/**
+ * The buy matching loop, priced as /buy prices an order, through
+ * {@link DatabaseManager#buy(org.bukkit.entity.Player, ItemStack, double, ArrayList, boolean, String)},
+ * over a book of listings held in memory.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class MatchBench extends HeadlessBench
+{
+    /** The number of listings in the book. **/
+    @Param({"10","100","1000"})
+    public int listings;
+
+    /** The book, cheapest first, 16 to a listing. **/
+    protected ArrayList<Listing> book;
+    /** An order for all but half of the last listing in the book. **/
+    protected ItemStack order;
+
+    @Override
+    protected void build()
+    {
+        ItemStack stone = (ItemStack)plugin.IM.parse(usr,"stone");
+        book = new ArrayList<Listing>();
+        for(int i = 0; i < listings; i ++)
+            book.add(new Listing(i + 1,stone.getType().toString(),stone.getDurability(),
+                    UUID.randomUUID().toString(),"bench",1 + i * 0.01,16,0));
+        order = stone.clone();
+        order.setAmount(listings * 16 - 8);
+    }
+
+    @Benchmark
+    public Tender match()
+    {
+        return plugin.DB.buy(usr,order,-1,book,true,null);
+    }
+}
@@ -0,0 +1,261 @@
+package com.niusworks.chatshop;
+
+import java.io.File;
+import java.util.Timer;
+
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import com.niusworks.chatshop.commands.*;
+import com.niusworks.chatshop.managers.BenchmarkManager;
+import com.niusworks.chatshop.managers.BroadcastManager;
+import com.niusworks.chatshop.managers.ChangeManager;
+import com.niusworks.chatshop.managers.ChatManager;
+import com.niusworks.chatshop.managers.DatabaseManager;
+import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.JournalManager;
+import com.niusworks.chatshop.managers.LedgerManager;
+import com.niusworks.chatshop.managers.LoadTestManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.managers.WatchdogManager;
+import com.niusworks.chatshop.utilities.KeepAlive;
+import com.niusworks.chatshop.utilities.PendingOrders;
+import com.niusworks.chatshop.utilities.SessionListener;
+import com.niusworks.chatshop.utilities.TimedExecutor;
+
+import net.milkbowl.vault.economy.Economy;
+
+/**
+ * Chat-based shop plugin designed for ObsidianCraft Network.
+ * This plugin and all of its future versions are freely licensed
+ * for use on ObsidianCraft Network systems, and for modification and
+ * continued development by ObsidianCraft staff.
+ * Commissioned 2017-02-26
+ * 
+ * @author ObsidianCraft Staff
+ */
+public class ChatShop extends JavaPlugin
+{
+    /** The Economy functionality provider for this plugin. **/
+    public Economy ECON;
+    /** The output manager for this entire plugin. **/
+    public final ChatManager CM = new ChatManager(this);
+    /** The item manager for this plugin. **/
+    public final ItemManager IM = new ItemManager(this,getDataFolder());
+    /** The database manager for this plugin. **/
+    public final DatabaseManager DB = new DatabaseManager(this);
+    /** The market announcement manager for this plugin. **/
+    public final BroadcastManager BM = new BroadcastManager(this);
+    /** The seller payout manager for this plugin. **/
+    public final LedgerManager LM = new LedgerManager(this);
+    /** The trade journal for this plugin. **/
+    public final JournalManager JM = new JournalManager(this,getDataFolder());
+    /** The manager which follows changes made by other servers, for this plugin. **/
+    public final ChangeManager CHM = new ChangeManager(this);
+    /** The performance metrics for this plugin. **/
+    public final MetricsManager MM = new MetricsManager(this,getDataFolder());
+    /** The watchdog which keeps this plugin within its share of each server tick. **/
+    public final WatchdogManager WD = new WatchdogManager(this);
+    /** The hot path benchmarks for this plugin. **/
+    public final BenchmarkManager BENCH = new BenchmarkManager(this);
+    /** The synthetic market load generator for this plugin. **/
+    public final LoadTestManager LOAD = new LoadTestManager(this);
+    
+    /** The tracker of joining and leaving players for this plugin. **/
+    public final SessionListener SESSIONS = new SessionListener(this);
+    
+    /** The pending orders, used by /buy, /confirm, and /sell. **/
+    public final PendingOrders PENDING = new PendingOrders(this);
+    
+    /** The timer which manages the keep-alive feature. **/
+    protected final Timer KEEP_ALIVE = new Timer(true);
+    
+    /** Create the plugin, as the server does when loading it from its jar. **/
+    public ChatShop()
+    {
+        super();
+    }
+    
+    /**
+     * Create the plugin outside of the server's plugin loader, for running ChatShop
+     * headless: in-process, against stand-ins for the server, the economy provider,
+     * and the database, so that whole command flows can be driven by a test harness.
+     * <br>
+     * Such a harness must install its stand-in server with Bukkit.setServer before
+     * creating the plugin. It may set {@link #ECON} before enabling the plugin, in which
+     * case Vault is not consulted, and may point "MySQL.url" at an embedded database.
+     * 
+     * @param loader        The plugin loader; may be a stand-in.
+     * @param description   The plugin's description, as read from plugin.yml.
+     * @param dataFolder    The folder for the plugin's configuration and files.
+     * @param file          The plugin's jar, or any file standing in for it.
+     */
+    protected ChatShop(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file)
+    {
+        super(loader,description,dataFolder,file);
+    }
+    
+    @Override
+    public void onEnable()
+    {        
+        // Load config
+        if(!(new File(getDataFolder(),"config.yml")).exists())
+        {
+            CM.log("Configuration file is missing. Spawning a new one now.");
+            saveDefaultConfig();
+        }
+        getConfig().options().copyDefaults(true);
+        reloadConfig();
+        
+        // Load the databse.
+        int dbstatus = DB.initialize();
+        if(dbstatus != 1)
+        {
+            fail("Cannot proceed without database.");
+            return;
+        }
+        
+        // Execute item library setup and validation.
+        int imstatus = IM.loadItems();
+        switch(imstatus)
+        {
+            case -1:
+                //Success, don't do anything.
+                break;
+            case -2:
+                fail("Could not read file " + this.getDataFolder() + "/items.csv");
+                return;
+            case -3:
+                fail("Could not create file " + this.getDataFolder() + "/items.csv");
+                return;
+            default:
+                fail("Error in items.csv on line " + (imstatus + 1) + ".");
+                return;
+        }
+        
+        // Link to the economy provider, unless one was supplied directly.
+        if(ECON == null)
+        {
+            RegisteredServiceProvider<Economy> rsp = getServer().getServicesManager().getRegistration(Economy.class);
+            if(rsp == null)
+            {
+                fail("Cannot proceed without an economy provider.");
+                return;
+            }
+            ECON = rsp.getProvider();
+        }
+        
+        // Finish any trades interrupted before the last shutdown, and begin journaling.
+        if(JM.start() != 1)
+        {
+            fail("Cannot proceed without trade journal.");
+            return;
+        }
+        
+        // Begin watching the time spent in each tick, before any repeating work starts.
+        WD.start();
+        
+        // Pay out anything owed from before the last shutdown, and begin settling.
+        LM.start();
+        
+        // Register all commands.
+        register("buy",new Buy(this));
+        register("cancel",new Cancel(this));
+        register("chatshop",new Help(this));
+        register("confirm",new Confirm(this));
+        register("csadmin",new CSAdmin(this));
+        register("dump",new Dump(this));
+        register("ebuy",new EBuy(this));
+        register("ecancel",new ECancel(this));
+        register("efind",new EFind(this));
+        register("ereprice",new EReprice(this));
+        register("esell",new ESell(this));
+        register("find",new Find(this));
+        register("history",new History(this));
+        register("quote",new Quote(this));
+        register("reprice",new Reprice(this));
+        register("sell",new Sell(this));
+        register("stock",new Stock(this));
+        
+        // Begin expiring pending orders.
+        PENDING.start();
+        
+        // Follow changes made by other servers sharing the database.
+        CHM.start();
+        
+        // Begin writing performance metrics.
+        MM.start();
+        
+        // Track joining and leaving players, including any already online after a reload.
+        getServer().getPluginManager().registerEvents(SESSIONS,this);
+        for(Player usr : getServer().getOnlinePlayers())
+            BM.join(usr);
+        SESSIONS.start();
+        
+        // Schedule keep-alive queries (if enabled).
+        int ivl = getConfig().getInt("MySQL.keep-alive",-1);
+        if(ivl >= 60000) // A value less than 60,000 signifies the feature is disabled.
+        {
+            KEEP_ALIVE.schedule(new KeepAlive(this),0,ivl);
+        }
+    }
+    
+    @Override
+    public void onDisable()
+    {
+        KEEP_ALIVE.cancel();
+        BENCH.stop();
+        LOAD.stop();
+        CHM.stop();
+        MM.stop();
+        WD.stop();
+        PENDING.stop();
+        BM.flush();
+        JM.stop();
+        LM.stop();
+        SESSIONS.stop();
+        for(Player usr : getServer().getOnlinePlayers())
+            DB.touchPlayer(usr);
+        DB.close();
+    }
+        
+    /**
+     * Register the executor for a command, timing every use of it.
+     * 
+     * @param name      The name of the command.
+     * @param executor  The command's executor.
+     */
+    protected void register(String name, CommandExecutor executor)
+    {
+        this.getCommand(name).setExecutor(new TimedExecutor(this,name,executor));
+    }
+    
+    /**
+     * Get the executor registered for a command, such as to call its methods directly.
+     * 
+     * @param name      The name of the command.
+     * @return          The command's own executor.
+     */
+    public CommandExecutor getExecutor(String name)
+    {
+        CommandExecutor executor = this.getCommand(name).getExecutor();
+        if(executor instanceof TimedExecutor)
+            return ((TimedExecutor)executor).EXECUTOR;
+        return executor;
+    }
+    
+    /**
+     * Send a severe message to the console and terminate this plugin.
+     * 
+     * @param message   Suicide note.
+     */
+    public void fail(String message)
+    {
+        this.getLogger().severe(message);
+        this.getServer().getPluginManager().disablePlugin(this);
+    }
+}
@@ -8,10 +8,16 @@ import org.bukkit.inventory.ItemStack;
 
 import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.constructs.BuyOrder;
+import com.niusworks.chatshop.constructs.BuyPlan;
 import com.niusworks.chatshop.constructs.Item;
+import com.niusworks.chatshop.constructs.Sale;
 import com.niusworks.chatshop.constructs.Tender;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Flight;
+
+import net.milkbowl.vault.economy.EconomyResponse;
 
 /**
  * Executor for the "buy" command for OC Network's ChatShop.
@@ -103,6 +109,7 @@ public class Buy implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         //If the user enters only an integer value preceded by a hash,
@@ -177,12 +184,12 @@ public class Buy implements CommandExecutor
         //
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
-        //  The database manager is responsible for notifying players
-        //    who seed this purchase, so that (1) a list of listings
-        //    does not need to be passed to this Buy instance and
-        //    (2) such a list does not need to be traversed more than
-        //    once.
+        //  The trade returns what was sold by each seller, and the
+        //    sellers who are online are notified from that in
+        //    processResults, once per purchase, after the trade is
+        //    complete and outside of the database's locks.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         String textCol = PLUGIN.CM.color("text");
         String itemCol = PLUGIN.CM.color("item");
@@ -196,23 +203,24 @@ public class Buy implements CommandExecutor
            //The player is using /confirm for buys, so instead of executing a buy
            //create a buy order and store it. The buy order is then under the jurisdiction
            //of /confirm.
-           double tprice = PLUGIN.DB.price(usr,merchandise,maxp);
-           if(tprice < 0)
+           BuyPlan plan = PLUGIN.DB.plan(merchandise,maxp);
+           if(plan == null)
+               return PLUGIN.CM.err500(usr);
+           if(plan.QUANTITY < merchandise.getAmount())
            {
                msg =
                    textCol + "There are only " +
-                   qtyCol + ((int)(-1 * tprice)) + " " +
+                   qtyCol + plan.QUANTITY + " " +
                    itemCol + displayName + " " +
                    textCol + "currently available" +
                    (maxp > 0 ?
                        " for the specified price." :
                        ".");
                PLUGIN.CM.reply(usr,msg);
-               merchandise.setAmount((int)(-1 * tprice));
-               tprice = PLUGIN.DB.price(usr,merchandise,maxp);
+               merchandise.setAmount(plan.QUANTITY);
            }
-           BuyOrder order = new BuyOrder(usr,merchandise,cfg,maxp,tprice,System.currentTimeMillis());
-           PLUGIN.PENDING.put(usr,order);
+           BuyOrder order = new BuyOrder(usr,merchandise,cfg,plan,System.currentTimeMillis());
+           PLUGIN.PENDING.put(usr,"buy",order);
            
            msg =
                textCol + "Preparing to buy " +
@@ -231,6 +239,7 @@ public class Buy implements CommandExecutor
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         return processResults(usr,merchandise,displayName,maxp);
     }
@@ -253,11 +262,50 @@ public class Buy implements CommandExecutor
         //No price check is needed before executing the buy operation, as DatabaseManager
         //  ensures that available balance is not exceeded.
         
-        Tender res = PLUGIN.DB.buy(usr,merchandise,maxp);
+        //Journal the trade before the market is changed, so that it can be finished if interrupted.
+        String trade = PLUGIN.JM.begin(usr,merchandise);
+        if(trade == null)
+            return PLUGIN.CM.err500(usr);
+        return processResults(usr,merchandise,displayName,trade,PLUGIN.DB.buy(usr,merchandise,maxp,trade));
+    }
+    
+    /**
+     * Process the results of a confirmed buy order, buying from the listings
+     * it was quoted from unless they have since changed.
+     * 
+     * @param usr           The user who is executing the buy operation.
+     * @param order         The confirmed order.
+     * @return              Always returns true, so that calling methods can finalize
+     *                      the buy order and terminate in one line.
+     */
+    public boolean processResults(Player usr,BuyOrder order)
+    {
+        String trade = PLUGIN.JM.begin(usr,order.MERCH);
+        if(trade == null)
+            return PLUGIN.CM.err500(usr);
+        return processResults(usr,order.MERCH,order.CONFIG.DISPLAY,trade,PLUGIN.DB.buy(usr,order.MERCH,order.PLAN,trade));
+    }
+    
+    /**
+     * Report and complete a buy action, once the database has processed it.
+     * 
+     * @param usr           The user who is executing the buy operation.
+     * @param merchandise   The merchandise (including amount) the user tried to buy.
+     * @param displayName   The already-looked-up display name of the items.
+     * @param trade         The trade's number in the journal.
+     * @param res           The result of {@link com.niusworks.chatshop.managers.DatabaseManager#buy}.
+     * @return              Always returns true, so that calling methods can finalize
+     *                      the buy order and terminate in one line.
+     */
+    protected boolean processResults(Player usr,ItemStack merchandise,String displayName,String trade,Tender res)
+    {
         
         //On fail...
         if(res == null)
+        {
+            PLUGIN.JM.abandoned(trade);
             return PLUGIN.CM.err500(usr);
+        }
         
         //Notify the buyer that a purchase was made.
         String msg =
@@ -279,12 +327,44 @@ public class Buy implements CommandExecutor
         else if(res.QUANTITY < merchandise.getAmount())
             PLUGIN.CM.error(usr,"Exhausted shop stock.");
         
-        //Charge the player for the purchase.
-        PLUGIN.ECON.withdrawPlayer(usr,res.COST);
-        
-        //Credit the appropriate items to the user's inventory.
+        //Journal the rest of the trade, so that it can be finished if interrupted.
         merchandise.setAmount(res.QUANTITY);
-        PLUGIN.IM.giveItem(usr,merchandise);
+        PLUGIN.JM.taken(trade,res.COST,res.QUANTITY);
+        
+        //Charge the player for the purchase, and only then give them the goods.
+        //  If the charge fails, the goods are held in the journal, and the charge
+        //  is retried when the player next joins and at the next startup.
+        EconomyResponse paid = Flight.withdraw(PLUGIN.ECON,usr,res.COST);
+        if(paid != null && paid.transactionSuccess())
+        {
+            PLUGIN.JM.charged(trade);
+            PLUGIN.IM.giveItem(usr,merchandise);
+            PLUGIN.JM.delivered(trade);
+        }
+        else
+        {
+            PLUGIN.CM.severe("Could not charge " + usr.getName() + " " + res.COST + " for trade " + trade
+                    + (paid == null ? "" : ": " + paid.errorMessage) + ". The goods are held until the charge succeeds.");
+            PLUGIN.CM.error(usr,"Could not charge you for the purchase. The goods will be given once you have been charged.");
+        }
+        
+        //Notify each online seller, once, of everything bought from them.
+        //  Offline sellers will be told when they next join.
+        for(Sale sale : res.SALES)
+        {
+            Player slr = PLUGIN.getServer().getPlayer(sale.SELLER);
+            if(slr == null)
+                continue;
+            msg =
+                PLUGIN.CM.color("player") + usr.getName() + " " +
+                PLUGIN.CM.color("text") + "just bought " +
+                PLUGIN.CM.color("quantity") + ChatManager.format(sale.QUANTITY) + " " +
+                PLUGIN.CM.color("item") + displayName + " " +
+                PLUGIN.CM.color("text") + "from you for " +
+                PLUGIN.CM.color("price") + ChatManager.format(sale.EARNINGS) +
+                PLUGIN.CM.color("text") + ".";
+            PLUGIN.CM.reply(slr,msg);
+        }
         
         return true;
     }
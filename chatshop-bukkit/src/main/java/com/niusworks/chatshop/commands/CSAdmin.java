@@ -0,0 +1,481 @@
+package com.niusworks.chatshop.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.managers.WatchdogManager;
+import com.niusworks.chatshop.utilities.Histogram;
+
+import net.md_5.bungee.api.ChatColor;
+
+/**
+ * Executor for the "csadmin" command for OC Network's ChatShop.
+ * <br>
+ * Players can issue general administrative commands for ChatShop operations,
+ * given the appropriate permissions. This command takes a single argument,
+ * which determines its function.
+ * <br><br>
+ * If the single argument provided is an integer, a list of valid administrative
+ * commands is provided.
+ * <br><br>
+ * This command has the following limits (aside from basic perms):
+ * <ul>
+ * <li>Console access denied.
+ * <li>Requires various permissions under <code>chatshop.admin.x</code> for its
+ *     various functions.
+ * </ul>
+ * 
+ * @author ObsidianCraft Staff
+ */
+public class CSAdmin implements CommandExecutor
+{
+    /** Command usage. **/
+    public static final String USAGE = "/csadmin <command>";
+    
+    /** The specific instance of the parent ChatShop plugin. **/
+    private final ChatShop PLUGIN;
+    
+    /**
+     * Instantiate the command executor for "csadmin" commands.
+     * 
+     * @param master    The specific instance of the parent ChatShop plugin.
+     */
+    public CSAdmin(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command cmd, String lbl, String[] args)
+    {
+        //
+        // Denial of service conditions
+        //
+        
+        //No console
+        if(!(sender instanceof Player))
+            return PLUGIN.CM.reply(sender,"ChatShop.csadmin cannot be executed as console.");
+        Player usr = (Player)sender;
+        //Permissions
+        if(!sender.hasPermission("chatshop.admin"))
+            return PLUGIN.CM.denyPermission(sender);
+        //Gamemode
+        
+        /* There are no limitations on when or where admins can execute administrative commands,
+           But there could be.
+           
+        Object[] modes = PLUGIN.getConfig().getList("allowed-modes").toArray();
+        boolean allowed = false;
+        for(int i = 0; i < modes.length; i ++)
+            if(modes[i] instanceof String)
+                if(((String)modes[i]).equalsIgnoreCase(usr.getGameMode().toString()))
+                    allowed = true;
+        if(!allowed)
+            return PLUGIN.CM.denyGameMode(sender);
+        
+        allowed = false;
+        Object[] worlds = PLUGIN.getConfig().getList("allowed-worlds").toArray();
+        for(int i = 0; i < worlds.length; i ++)
+            if(worlds[i] instanceof String)
+                if(((String)worlds[i]).equalsIgnoreCase(usr.getWorld().getName()))
+                    allowed = true;
+        if(!allowed)
+            return PLUGIN.CM.denyWorld(sender);
+        
+        */
+        
+        //
+        //  VALIDATION
+        //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
+        
+        //Number of args
+        if(args.length < 1)
+            return PLUGIN.CM.error(sender,USAGE);
+        
+        //
+        //  EXECUTION
+        //  Some actions deferred to DatabaseManager for synchronization and flag control purposes,
+        //  because some actions involve flags attached to a pseudo-player representing the ChatShop
+        //  itself, in the database.
+        //
+        PLUGIN.MM.stage(MetricsManager.DB);
+        
+        String textCol = PLUGIN.CM.color("text");
+        String cmdCol = PLUGIN.CM.color("helpUsage");
+        
+        try
+        {
+            //If the argument was an integer, show a list of
+            //available administrative commands.
+            
+            int page = Integer.parseInt(args[0]);
+            
+            String[] out = {
+                    cmdCol + "bench",
+                    textCol + "Benchmark ChatShop's hot paths.",
+                    cmdCol + "freeze",
+                    textCol + "Freeze ALL chatshop assets.",
+                    cmdCol + "loadtest",
+                    textCol + "Simulate many players trading, on a staging server.",
+                    cmdCol + "reload",
+                    textCol + "Reload item definitions and configurations.",
+                    cmdCol + "reprice",
+                    textCol + "Forcibly reprice another player's items.",
+                    cmdCol + "stats",
+                    textCol + "Show performance statistics.",
+                    cmdCol + "vaporize",
+                    textCol + "Immediately vaporize another player's stock.",
+                    cmdCol + "version",
+                    textCol + "Get the current ChatShop version."};
+                
+            //Head the commands list.
+            //Checking the page number is already taken care of by
+            //ChatManager, but for purposes of displaying an accurate
+            //number it needs to happen here.
+            int pagesAvail = PLUGIN.CM.getPaginationSize(out);
+            page = Math.max(page,1);
+            page = Math.min(page,pagesAvail);
+            
+            String msg =
+                    PLUGIN.CM.color("prefix") + "ChatShop Administrative Commands" +
+                        PLUGIN.CM.color("text") + ", page " + page +
+                        " of " + pagesAvail + ":";
+            PLUGIN.CM.reply(usr,msg,false);
+            
+            //List all commands on this page.
+            out = PLUGIN.CM.paginate(out,page);
+            for(int i = 0; i < out.length; i ++)
+            {
+                PLUGIN.CM.reply(usr,out[i],false);
+            }
+               
+            return true;
+        }
+        catch(NumberFormatException e){}
+        
+        //Hot path benchmarks
+        if(args[0].equalsIgnoreCase("bench"))
+        {
+            if(!sender.hasPermission("chatshop.admin.bench"))
+                return PLUGIN.CM.denyPermission(sender);
+            if(args.length > 2)
+                return PLUGIN.CM.error(usr,"/csadmin bench [case]");
+            
+            int cases = PLUGIN.BENCH.start(usr,args.length == 2 ? args[1] : null);
+            if(cases == -1)
+                return PLUGIN.CM.error(usr,"Benchmarks are already running.");
+            if(cases == 0)
+                return PLUGIN.CM.error(usr,"Unknown case. Cases are: " + String.join(", ",PLUGIN.BENCH.getCases()) + ".");
+            
+            String msg =
+                textCol + "Running " + cmdCol + cases + textCol +
+                " benchmark" + (cases == 1 ? "" : "s") + "; results will follow as each finishes.";
+            return PLUGIN.CM.reply(usr,msg);
+        }
+        
+        //General freeze command
+        else if(args[0].equalsIgnoreCase("freeze"))
+        {
+            if(!sender.hasPermission("chatshop.admin.generalFreeze"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            boolean isNowFrozen = PLUGIN.DB.toggleGeneralFreeze();
+            
+            String msg = (isNowFrozen ?
+                textCol + "All chatshop assets are now " +
+                ChatColor.RED + "frozen" + PLUGIN.CM.color("text") + "."
+                :
+                textCol + "The general freeze has been " +
+                ChatColor.GREEN + "lifted" + PLUGIN.CM.color("text") + ".");
+            
+            return PLUGIN.CM.reply(usr,msg);
+        }
+        
+        //Item dictionary reload
+        else if(args[0].equalsIgnoreCase("reload"))
+        {
+            if(!sender.hasPermission("chatshop.admin.reload"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            String msg;
+            int status = PLUGIN.IM.loadItems();
+            PLUGIN.CM.clearTooltips();
+            switch(status)
+            {
+                case -1: msg = textCol + "Items information reloaded " + ChatColor.GREEN + "successfully" + textCol + "."; break;
+                case -2: msg = PLUGIN.CM.color("error") + "Failed to read items file."; break;
+                case -3: msg = PLUGIN.CM.color("error") + "Failed to spawn a new items file."; break;
+                default: msg = PLUGIN.CM.color("error") + "Error in items file on line " + status + "."; break;
+            }
+            return PLUGIN.CM.reply(usr,msg);
+        }
+        
+        //Reprice
+        else if(args[0].equalsIgnoreCase("reprice"))
+        {
+            if(!sender.hasPermission("chatshop.admin.reprice"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            //Defer to the Reprice command for execution; there is no need to re-code it here.
+            //Note that due to Reprice's flexibility this can also be used to EReprice via #LOT notation.
+            
+            if(args.length != 4)
+                return PLUGIN.CM.error(usr,"/csadmin reprice <player> <item> <price>");
+            
+            @SuppressWarnings("deprecation")
+            //Unfortunately it is unreasonable to expect users (admins) to enter whole UUID's into the chat.
+            //This method is deprecated because names are not guaranteed unique - though they almost always are anyway.
+            OfflinePlayer target = PLUGIN.getServer().getOfflinePlayer(args[1]);
+            
+            //Repackage the trailing args to send to the Reprice executor.
+            String[] sendArgs = new String[]{args[2],args[3]};
+            
+            return ((Reprice)(PLUGIN.getExecutor("reprice"))).execute(usr,target,cmd,lbl,sendArgs);
+        }
+        
+        //Performance statistics
+        else if(args[0].equalsIgnoreCase("stats"))
+        {
+            if(!sender.hasPermission("chatshop.admin.stats"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            int page = 1;
+            if(args.length > 1)
+            {
+                try
+                {
+                    page = Integer.parseInt(args[1]);
+                }
+                catch(NumberFormatException e)
+                {
+                    return PLUGIN.CM.error(usr,"/csadmin stats [page]");
+                }
+            }
+            
+            String[] out = stats(textCol,cmdCol);
+            int pagesAvail = PLUGIN.CM.getPaginationSize(out);
+            page = Math.max(page,1);
+            page = Math.min(page,pagesAvail);
+            
+            String msg =
+                    PLUGIN.CM.color("prefix") + "ChatShop Statistics" +
+                        PLUGIN.CM.color("text") + ", page " + page +
+                        " of " + pagesAvail + ":";
+            PLUGIN.CM.reply(usr,msg,false);
+            
+            out = PLUGIN.CM.paginate(out,page);
+            for(int i = 0; i < out.length; i ++)
+                PLUGIN.CM.reply(usr,out[i],false);
+            return true;
+        }
+        
+        //Synthetic market load
+        else if(args[0].equalsIgnoreCase("loadtest"))
+        {
+            if(!sender.hasPermission("chatshop.admin.loadtest"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            if(args.length == 2 && args[1].equalsIgnoreCase("stop"))
+            {
+                if(!PLUGIN.LOAD.finish())
+                    return PLUGIN.CM.error(usr,"No load test is running.");
+                return true;
+            }
+            
+            if(args.length > 1 && args[1].equalsIgnoreCase("replay"))
+            {
+                if(args.length != 3 && args.length != 4)
+                    return PLUGIN.CM.error(usr,"/csadmin loadtest replay <file> [speed]");
+                double speed = 0;
+                try
+                {
+                    if(args.length == 4)
+                        speed = Double.parseDouble(args[3]);
+                }
+                catch(NumberFormatException e)
+                {
+                    return PLUGIN.CM.error(usr,"/csadmin loadtest replay <file> [speed]");
+                }
+                
+                switch(PLUGIN.LOAD.replay(usr,args[2],speed))
+                {
+                    case -1: return PLUGIN.CM.error(usr,"Load tests are not enabled. Enable them only on a staging server.");
+                    case -2: return PLUGIN.CM.error(usr,"A load test is already running.");
+                    case -3: return PLUGIN.CM.error(usr,"There is no file " + args[2] + " in the ChatShop folder.");
+                    case -4: return PLUGIN.CM.error(usr,"Replays need a database of their own, set in loadtest.replay-database.");
+                    default: break;
+                }
+                return PLUGIN.CM.reply(usr,textCol + "Reading " + cmdCol + args[2] + textCol + "...");
+            }
+            
+            int players = -1;
+            int seconds = -1;
+            try
+            {
+                if(args.length > 1)
+                    players = Integer.parseInt(args[1]);
+                if(args.length > 2)
+                    seconds = Integer.parseInt(args[2]);
+            }
+            catch(NumberFormatException e)
+            {
+                return PLUGIN.CM.error(usr,"/csadmin loadtest [players [seconds]|replay <file> [speed]|stop]");
+            }
+            if(args.length > 3)
+                return PLUGIN.CM.error(usr,"/csadmin loadtest [players [seconds]|replay <file> [speed]|stop]");
+            
+            int simulated = PLUGIN.LOAD.start(usr,players,seconds);
+            switch(simulated)
+            {
+                case -1: return PLUGIN.CM.error(usr,"Load tests are not enabled. Enable them only on a staging server.");
+                case -2: return PLUGIN.CM.error(usr,"A load test is already running.");
+                case -3: return PLUGIN.CM.error(usr,"None of the load test's items can be traded.");
+                case -4: return PLUGIN.CM.error(usr,"None of the allowed worlds is loaded.");
+                default: break;
+            }
+            
+            String msg =
+                textCol + "Simulating " + cmdCol + simulated + textCol +
+                " player" + (simulated == 1 ? "" : "s") + "; results will follow when the test ends.";
+            return PLUGIN.CM.reply(usr,msg);
+        }
+        
+        //Vaporize
+        else if(args[0].equalsIgnoreCase("vaporize"))
+        {
+            if(!sender.hasPermission("chatshop.admin.vaporize"))
+                return PLUGIN.CM.denyPermission(sender);
+            
+            //This command was originally going to be "purge", but "vaporize" is a little more cumbersome to type
+            //  and it should be, considering this will instantly do just that. Also "vaporize" is a little more
+            //  obvious as to the results of this command.
+            
+            return true;
+        }
+        
+        //Version check
+        else if(args[0].equalsIgnoreCase("version"))
+        {
+            String msg =
+                textCol + "ChatShop, by Obsidian Network staff. Version " +
+                cmdCol + PLUGIN.getDescription().getVersion() +
+                textCol + ".";
+            return PLUGIN.CM.reply(usr,msg);
+        }
+        else
+            return PLUGIN.CM.error(usr,"Unknown administrative command.");
+    }
+    
+    /**
+     * Describe the statistics kept by the {@link MetricsManager} and {@link WatchdogManager},
+     * one line per entry: the time taken by each command, in total and by stage; the
+     * statements and round trips made by each use of each command; the database statements which have taken the most time, with the rows they returned or
+     * changed; the hit rate of each cache; the number of orders awaiting confirmation;
+     * and the ticks and commands which went over budget. Times are in milliseconds.
+     * 
+     * @param textCol   The color of plain text.
+     * @param cmdCol    The color of names.
+     * @return          The lines.
+     */
+    protected String[] stats(String textCol, String cmdCol)
+    {
+        ArrayList<String> out = new ArrayList<String>();
+        
+        out.add(textCol + "Commands (count, p50/p99, p99 by stage):");
+        for(Map.Entry<String,Map<String,Histogram>> cmd : PLUGIN.MM.getCommands().entrySet())
+        {
+            Map<String,Histogram> stages = cmd.getValue();
+            Histogram total = stages.get(MetricsManager.TOTAL);
+            if(total == null)
+                continue;
+            String line = cmdCol + cmd.getKey() + textCol + ": " + total.count() + ", "
+                    + ms(total.percentile(50)) + "/" + ms(total.percentile(99)) + " (";
+            String[] order = {MetricsManager.GATE,MetricsManager.PARSE,MetricsManager.DB,MetricsManager.RENDER};
+            boolean first = true;
+            for(String stage : order)
+            {
+                Histogram h = stages.get(stage);
+                if(h == null)
+                    continue;
+                line += (first ? "" : ", ") + stage + " " + ms(h.percentile(99));
+                first = false;
+            }
+            out.add(line + ")");
+        }
+        
+        out.add(textCol + "Statements per use (p50/max, round trips p50/max, over budget):");
+        Map<String,Histogram> trips = PLUGIN.MM.getTrips();
+        for(Map.Entry<String,Histogram> cmd : PLUGIN.MM.getStatements().entrySet())
+        {
+            Histogram s = cmd.getValue();
+            Histogram t = trips.get(cmd.getKey());
+            int budget = PLUGIN.MM.getBudget(cmd.getKey());
+            out.add(cmdCol + cmd.getKey() + textCol + ": "
+                    + s.percentile(50) + "/" + s.max() + ", "
+                    + (t == null ? 0 : t.percentile(50)) + "/" + (t == null ? 0 : t.max())
+                    + (budget < 0 ? "" : ", " + PLUGIN.MM.getOverBudget(cmd.getKey()) + " over " + budget));
+        }
+        
+        //Statements which have taken the most time altogether are the most worth improving.
+        ArrayList<Map.Entry<String,Histogram>> queries =
+                new ArrayList<Map.Entry<String,Histogram>>(PLUGIN.MM.getQueries().entrySet());
+        Collections.sort(queries,new Comparator<Map.Entry<String,Histogram>>()
+        {
+            @Override
+            public int compare(Map.Entry<String,Histogram> a, Map.Entry<String,Histogram> b)
+            {
+                return Long.compare(b.getValue().sum(),a.getValue().sum());
+            }
+        });
+        Map<String,Histogram> rows = PLUGIN.MM.getRows();
+        out.add(textCol + "Top statements (count, total, p50/p99, rows):");
+        for(int i = 0; i < Math.min(5,queries.size()); i ++)
+        {
+            Histogram h = queries.get(i).getValue();
+            String shape = queries.get(i).getKey();
+            Histogram r = rows.get(shape);
+            if(shape.length() > 60)
+                shape = shape.substring(0,57) + "...";
+            out.add(textCol + h.count() + ", " + ms(h.sum()) + ", " + ms(h.percentile(50)) + "/" + ms(h.percentile(99))
+                    + ", " + (r == null ? 0 : r.sum()) + ": " + cmdCol + shape);
+        }
+        
+        out.add(textCol + "Caches (hit rate of reads):");
+        for(Map.Entry<String,long[]> cache : PLUGIN.MM.getCaches().entrySet())
+        {
+            long hits = cache.getValue()[0];
+            long reads = hits + cache.getValue()[1];
+            out.add(cmdCol + cache.getKey() + textCol + ": "
+                    + String.format("%.1f",reads == 0 ? 0 : 100.0 * hits / reads) + "% of " + reads);
+        }
+        
+        out.add(textCol + "Orders awaiting confirmation: " + cmdCol + PLUGIN.PENDING.size());
+        
+        out.add(textCol + "Ticks over budget: " + cmdCol + PLUGIN.WD.getOverruns()
+                + textCol + ", commands turned away: " + cmdCol + PLUGIN.WD.getRejected());
+        for(String offender : PLUGIN.WD.getOffenders())
+            out.add(textCol + offender);
+        
+        return out.toArray(new String[out.size()]);
+    }
+    
+    /**
+     * @param nanos A duration in nanoseconds.
+     * @return      The duration in milliseconds, to one decimal place.
+     */
+    protected static String ms(long nanos)
+    {
+        return String.format("%.1fms",nanos / 1e6);
+    }
+}
\ No newline at end of file
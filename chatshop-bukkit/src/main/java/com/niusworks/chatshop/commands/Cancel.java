@@ -9,6 +9,7 @@ import org.bukkit.inventory.ItemStack;
 import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "cancel" command for OC Network's ChatShop.
@@ -92,6 +93,7 @@ public class Cancel implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         //If the user enters only an integer value preceded by a hash then they
@@ -155,12 +157,14 @@ public class Cancel implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         int res = PLUGIN.DB.cancel(usr,merchandise);
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //On SQL fail...
         if(res == -2)
@@ -13,6 +13,7 @@ import com.niusworks.chatshop.constructs.Order;
 import com.niusworks.chatshop.constructs.SellOrder;
 import com.niusworks.chatshop.constructs.Tender;
 import com.niusworks.chatshop.managers.DatabaseManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 import net.md_5.bungee.api.ChatColor;
 
@@ -45,7 +46,7 @@ import net.md_5.bungee.api.ChatColor;
 public class Confirm implements CommandExecutor
 {
     /** Command usage. **/
-    public static final String USAGE = "/confirm [toggle <buy|sell>]";
+    public static final String USAGE = "/confirm [buy|sell|ebuy|esell|toggle <buy|sell>]";
     
     /** The specific instance of the parent ChatShop plugin. **/
     private final ChatShop PLUGIN;
@@ -99,10 +100,11 @@ public class Confirm implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         boolean toggleMode;
-        if(args.length == 0)
+        if(args.length <= 1)
             toggleMode = false;
         else if(args.length == 2)
             toggleMode = true;
@@ -134,6 +136,7 @@ public class Confirm implements CommandExecutor
         //
         //  EXECUTION: TOGGLE
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         if(toggleMode)
         {
@@ -170,28 +173,32 @@ public class Confirm implements CommandExecutor
         //
         //  EXECUTION: CONFIRM
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        //Stop if no orders are pending.
-        if(!PLUGIN.PENDING.containsKey(usr))
-            return PLUGIN.CM.error(usr,"You have no pending buy or sell orders.");
-        
-        //Stop if the pending order is older than 5 seconds.
-        Order pending = PLUGIN.PENDING.get(usr);
-        if(System.currentTimeMillis() - pending.TIME > PLUGIN.getConfig().getInt("confirm-timeout",10000))
-            return PLUGIN.CM.error(usr,"Your pending order has expired.");
+        //Take the named order, or the most recent if none is named.
+        //  Taking the order removes it, so that it can't be repeated.
+        //  Orders older than the confirm timeout have already expired.
+        String name = args.length == 1 ? args[0].toLowerCase() : null;
+        Order pending = PLUGIN.PENDING.take(usr,name);
+        if(pending == null)
+        {
+            if(PLUGIN.PENDING.expired(usr,name))
+                return PLUGIN.CM.error(usr,"Your pending order has expired.");
+            return PLUGIN.CM.error(usr,(name != null ?
+                    "You have no pending " + name + " order." :
+                    "You have no pending buy or sell orders."));
+        }
         
         //Defer to the normal CommandExecutor of that order to finalize the action.
-        //Firstly, remove the order from the list of orders, so that it can't be repeated.
-        PLUGIN.PENDING.remove(usr,pending);
         
         if(pending instanceof BuyOrder)
-            return ((Buy)PLUGIN.getCommand("buy").getExecutor()).processResults(usr,pending.MERCH,pending.CONFIG.DISPLAY,((BuyOrder)pending).MAXP);
+            return ((Buy)PLUGIN.getExecutor("buy")).processResults(usr,(BuyOrder)pending);
         if(pending instanceof SellOrder)
-            return ((Sell)PLUGIN.getCommand("sell").getExecutor()).processResults(usr,pending.MERCH,pending.CONFIG,((SellOrder)pending).PRICE);
+            return ((Sell)PLUGIN.getExecutor("sell")).processResults(usr,pending.MERCH,pending.CONFIG,((SellOrder)pending).PRICE);
         if(pending instanceof EBuyOrder)
-            return ((EBuy)PLUGIN.getCommand("ebuy").getExecutor()).processResults(usr,((EBuyOrder)pending).LOT,((EBuyOrder)pending).PRICE);
+            return ((EBuy)PLUGIN.getExecutor("ebuy")).processResults(usr,(EBuyOrder)pending);
         if(pending instanceof ESellOrder)
-            return ((ESell)PLUGIN.getCommand("esell").getExecutor()).processResults(usr,pending.MERCH,pending.CONFIG,((ESellOrder)pending).PRICE);
+            return ((ESell)PLUGIN.getExecutor("esell")).processResults(usr,pending.MERCH,pending.CONFIG,((ESellOrder)pending).PRICE);
         
         return true;
     }
@@ -1,5 +1,8 @@
 package com.niusworks.chatshop.commands;
 
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -10,6 +13,7 @@ import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.constructs.Listing;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.DatabaseManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "dump" command for OC Network's ChatShop.
@@ -93,63 +97,85 @@ public class Dump implements CommandExecutor
         //  VALIDATION
         //  ...nothing to do.
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        int totalSold = 0;
-        double valuePosted = 0;
+        //Lock every item about to be posted at once, in a fixed order,
+        // so that the whole dump cannot deadlock with another.
+        ArrayList<ItemStack> goods = new ArrayList<ItemStack>();
         for(ItemStack merchandise : usr.getInventory().getContents())
         {
             if(merchandise == null)
                 continue;
-            
-            // Wash each item through the ItemManager verifier.
-            // This takes care of special cases such as potions, tipped arrows,
-            //  and enchantments.
             Object res = PLUGIN.IM.makeCompliant(merchandise,false);
-            if(!(res instanceof ItemStack))
-                continue;
-            merchandise = (ItemStack)res;
+            if(res instanceof ItemStack)
+                goods.add((ItemStack)res);
+        }
+        
+        int totalSold = 0;
+        double valuePosted = 0;
+        ReentrantLock[] held = PLUGIN.DB.lockBooks(goods);
+        try
+        {
+            for(ItemStack merchandise : usr.getInventory().getContents())
+            {
+                if(merchandise == null)
+                    continue;
+            
+                // Wash each item through the ItemManager verifier.
+                // This takes care of special cases such as potions, tipped arrows,
+                //  and enchantments.
+                Object res = PLUGIN.IM.makeCompliant(merchandise,false);
+                if(!(res instanceof ItemStack))
+                    continue;
+                merchandise = (ItemStack)res;
             
-            res = PLUGIN.DB.sell(usr,merchandise,-1);
+                res = PLUGIN.DB.sell(usr,merchandise,-1);
         
-            // On fail...
-            if(res instanceof Integer && ((Integer)res).intValue() == -2)
-                return PLUGIN.CM.err500(sender);
+                // On fail...
+                if(res instanceof Integer && ((Integer)res).intValue() == -2)
+                    return PLUGIN.CM.err500(sender);
             
-            // On "-" price but no listing found...
-            if(res instanceof Integer && ((Integer)res).intValue() == -1)
-                continue;
+                // On "-" price but no listing found...
+                if(res instanceof Integer && ((Integer)res).intValue() == -1)
+                    continue;
             
-            // On updated listing exceeds quantity limit...
-            if(res instanceof Integer && ((Integer)res).intValue() == -3)
-                continue;
+                // On updated listing exceeds quantity limit...
+                if(res instanceof Integer && ((Integer)res).intValue() == -3)
+                    continue;
             
-            //Remove the specified items from the player's inventory.
-            int removed = 0;
-            ItemStack[] inv = usr.getInventory().getContents();
-            for(int i = 0; i < inv.length; i ++)
-                if(PLUGIN.IM.areSameType(inv[i],merchandise))
-                {
-                    //If this slot has more than needs to be removed, trim it
-                    // and quit.
-                    if(merchandise.getAmount() - removed < inv[i].getAmount())
+                //Remove the specified items from the player's inventory.
+                int removed = 0;
+                ItemStack[] inv = usr.getInventory().getContents();
+                for(int i = 0; i < inv.length; i ++)
+                    if(PLUGIN.IM.areSameType(inv[i],merchandise))
                     {
-                        inv[i].setAmount(inv[i].getAmount() - (merchandise.getAmount() - removed));
-                        usr.getInventory().setItem(i,inv[i]);
-                        break;
-                    }
+                        //If this slot has more than needs to be removed, trim it
+                        // and quit.
+                        if(merchandise.getAmount() - removed < inv[i].getAmount())
+                        {
+                            inv[i].setAmount(inv[i].getAmount() - (merchandise.getAmount() - removed));
+                            usr.getInventory().setItem(i,inv[i]);
+                            break;
+                        }
                     
-                    //(Otherwise,) enough still needs to be removed that this
-                    // whole slot can be emptied, so empty it.
-                    removed += inv[i].getAmount();
-                    usr.getInventory().clear(i);
-                }
+                        //(Otherwise,) enough still needs to be removed that this
+                        // whole slot can be emptied, so empty it.
+                        removed += inv[i].getAmount();
+                        usr.getInventory().clear(i);
+                    }
             
-            totalSold += merchandise.getAmount();
-            valuePosted += ((Listing)res).PRICE * merchandise.getAmount();
+                totalSold += merchandise.getAmount();
+                valuePosted += ((Listing)res).PRICE * merchandise.getAmount();
+            }
+        }
+        finally
+        {
+            PLUGIN.DB.unlockBooks(held);
         }
         
         String msg =
@@ -18,8 +18,11 @@ import com.niusworks.chatshop.constructs.EnchLvl;
 import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Flight;
 
 import net.md_5.bungee.api.chat.TextComponent;
+import net.milkbowl.vault.economy.EconomyResponse;
 
 /**
  * Executor for the "ebuy" command for OC Network's ChatShop.
@@ -98,6 +101,7 @@ public class EBuy implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 1)
@@ -120,19 +124,17 @@ public class EBuy implements CommandExecutor
             return PLUGIN.CM.error(usr,"Invalid lot number " + itemCol + lot);
         
         //Price check
-        double avbal = PLUGIN.ECON.getBalance(usr);
+        double avbal = Flight.balance(PLUGIN.ECON,usr);
         if(avbal < listing.PRICE)
             return PLUGIN.CM.error(usr,"Insufficient funds for that item.");
         
         //
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
-        //  The database manager is responsible for notifying players
-        //    who seed this purchase, so that (1) a list of listings
-        //    does not need to be passed to this Buy instance and
-        //    (2) such a list does not need to be traversed more than
-        //    once.
+        //  The seller, if online, is notified in processResults,
+        //    after the trade is complete.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         String textCol = PLUGIN.CM.color("text");
         String cmdCol = PLUGIN.CM.color("helpUsage");
@@ -144,8 +146,8 @@ public class EBuy implements CommandExecutor
             //The player is using /confirm for ebuys, so instead of executing an ebuy
             //create an ebuy order and store it. The ebuy order is then under the jurisdiction
             //of /confirm.
-            EBuyOrder order = new EBuyOrder(usr,lot,listing.PRICE,System.currentTimeMillis());
-            PLUGIN.PENDING.put(usr,order);
+            EBuyOrder order = new EBuyOrder(usr,listing,System.currentTimeMillis());
+            PLUGIN.PENDING.put(usr,"ebuy",order);
             
             Item cfg = PLUGIN.IM.lookup(listing.MATERIAL);
             
@@ -173,34 +175,59 @@ public class EBuy implements CommandExecutor
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
-        return processResults(usr,lot,listing.PRICE);
+        return processResults(usr,listing);
     }
     
     /**
-     * Process the results of a buy action.
-     * This was originally contiguous from onCommand, but was
-     * separated so that {@link Confirm} can also finalize
-     * buy operations.
+     * Process the results of a confirmed ebuy order, buying the lot as quoted
+     * unless it has since changed. This is how {@link Confirm} finalizes ebuy orders.
      * 
-     * @param usr           The user who is executing the buy operaion.
-     * @param lot           The lot number to buy.
-     * @param price         The expected price for this purchase. This is used to ensure
-     *                      that the price has not changed between placing an EBuyOrder
-     *                      and using /confirm.
+     * @param usr           The user who is executing the buy operation.
+     * @param order         The confirmed order.
      * @return              Always returns true, so that calling methods can finalize
      *                      the buy order and terminate in one line.
      */
-    public boolean processResults(Player usr,int lot,double price)
+    public boolean processResults(Player usr,EBuyOrder order)
+    {
+        return processResults(usr,order.LISTING);
+    }
+    
+    /**
+     * Buy a listing as it was quoted, unless it has since changed,
+     * and report and complete the buy action.
+     * 
+     * @param usr           The user who is executing the buy operation.
+     * @param listing       The listing as it was quoted.
+     * @return              Always returns true, so that calling methods can finalize
+     *                      the buy order and terminate in one line.
+     */
+    protected boolean processResults(Player usr,EListing listing)
+    {
+        //Journal the trade before the market is changed, so that it can be finished if interrupted.
+        String trade = PLUGIN.JM.begin(usr,listing.toItemStack());
+        if(trade == null)
+            return PLUGIN.CM.err500(usr);
+        return processResults(usr,trade,PLUGIN.DB.ebuy(usr,listing,trade));
+    }
+    
+    /**
+     * Report and complete a buy action, once the database has processed it.
+     * 
+     * @param usr           The user who is executing the buy operation.
+     * @param trade         The trade's number in the journal.
+     * @param res           The result of {@link com.niusworks.chatshop.managers.DatabaseManager#ebuy}.
+     * @return              Always returns true, so that calling methods can finalize
+     *                      the buy order and terminate in one line.
+     */
+    protected boolean processResults(Player usr,String trade,Object res)
     {
-        //Final price check (to ensure that it hasn't changed before
-        //  using /confirm) and player balance check is performed by
-        //  DBManager.
-        
-        Object res = PLUGIN.DB.ebuy(usr,lot,price);
         
         //Detect failures
         if(res instanceof Integer)
+        {
+            PLUGIN.JM.abandoned(trade);
             switch(((Integer)res).intValue())
             {
                 case -1:    return PLUGIN.CM.error(usr,"Insufficient funds for that item.");
@@ -208,6 +235,7 @@ public class EBuy implements CommandExecutor
                 case -3:    return PLUGIN.CM.error(usr,"This listing no longer exists.");
                 case -4:    return PLUGIN.CM.err500(usr);
             }
+        }
         
         EListing listing = (EListing)res;
         
@@ -216,13 +244,26 @@ public class EBuy implements CommandExecutor
         
         ItemStack merchandise = listing.toItemStack();
         
-        //Charge the buyer for the purchase.
-        PLUGIN.ECON.withdrawPlayer(usr,listing.PRICE);
-        //Credit the seller for the sale.
-        PLUGIN.ECON.depositPlayer(slr,listing.PRICE);
+        //Journal the rest of the trade, so that it can be finished if interrupted.
+        PLUGIN.JM.taken(trade,listing.PRICE,1);
         
-        //Credit the item to the user's inventory.
-        PLUGIN.IM.giveItem(usr,merchandise);
+        //Charge the buyer for the purchase, and only then give them the item.
+        //  The seller is credited through the payout ledger.
+        //  If the charge fails, the item is held in the journal, and the charge
+        //  is retried when the buyer next joins and at the next startup.
+        EconomyResponse paid = Flight.withdraw(PLUGIN.ECON,usr,listing.PRICE);
+        if(paid != null && paid.transactionSuccess())
+        {
+            PLUGIN.JM.charged(trade);
+            PLUGIN.IM.giveItem(usr,merchandise);
+            PLUGIN.JM.delivered(trade);
+        }
+        else
+        {
+            PLUGIN.CM.severe("Could not charge " + usr.getName() + " " + listing.PRICE + " for trade " + trade
+                    + (paid == null ? "" : ": " + paid.errorMessage) + ". The item is held until the charge succeeds.");
+            PLUGIN.CM.error(usr,"Could not charge you for the purchase. The item will be given once you have been charged.");
+        }
         
         //
         // CHAT MESSAGES
@@ -239,13 +280,13 @@ public class EBuy implements CommandExecutor
         TextComponent tc0 = new TextComponent();
         tc0.setText(PLUGIN.CM.PREFIX +
                     textCol + "Bought ");
-        TextComponent tc1 = PLUGIN.CM.MOTforEnchanted(
+        TextComponent tc1 = PLUGIN.CM.MOTforDelisted(
                 itemCol +
                 (Material.getMaterial(listing.MATERIAL).equals(Material.ENCHANTED_BOOK) ? "" : "enchanted ") +
                 itemCol + cfg.DISPLAY,listing.ID,merchandise);
         TextComponent tc2 = new TextComponent();
         tc2.setText(textCol + " for " +
-                    priceCol + ChatManager.format(price) +
+                    priceCol + ChatManager.format(listing.PRICE) +
                     textCol + ".");
         usr.spigot().sendMessage(tc0,tc1,tc2);
         
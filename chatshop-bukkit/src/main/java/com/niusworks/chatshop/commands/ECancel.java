@@ -11,6 +11,7 @@ import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.constructs.EListing;
 import com.niusworks.chatshop.constructs.EnchLvl;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 import net.md_5.bungee.api.chat.TextComponent;
 
@@ -87,6 +88,7 @@ public class ECancel implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 1)
@@ -133,7 +135,7 @@ public class ECancel implements CommandExecutor
         TextComponent tc0 = new TextComponent();
         tc0.setText(PLUGIN.CM.PREFIX +
                     textCol + "Cancelled ");
-        TextComponent tc1 = PLUGIN.CM.MOTforEnchanted(itemCol + "lot #" + listing.ID,listing.ID,merchandise);
+        TextComponent tc1 = PLUGIN.CM.MOTforDelisted(itemCol + "lot #" + listing.ID,listing.ID,merchandise);
         TextComponent tc2 = new TextComponent();
         tc2.setText(textCol + ".");
         usr.spigot().sendMessage(tc0,tc1,tc2);
@@ -18,6 +18,8 @@ import com.niusworks.chatshop.constructs.EListing;
 import com.niusworks.chatshop.constructs.EnchLvl;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Page;
 
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.chat.BaseComponent;
@@ -125,6 +127,7 @@ public class EFind implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length < 1)
@@ -139,7 +142,7 @@ public class EFind implements CommandExecutor
             {
                 int lot = Integer.parseInt(
                     (args[0].startsWith("#") ? args[0].substring(1) : args[0]));
-                lotlisting = PLUGIN.DB.getEListing(lot);
+                lotlisting = PLUGIN.DB.getEListing(lot,PLUGIN.DB.replicaAllowed(usr,"efind"));
             }
             catch(NumberFormatException e){/* do nothing */}
         }
@@ -209,15 +212,17 @@ public class EFind implements CommandExecutor
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         EListing[] listings =
             (lotlisting == null ?
-                PLUGIN.DB.getListings(merchandise,enchs) :
+                PLUGIN.DB.getListings(merchandise,enchs,PLUGIN.DB.replicaAllowed(usr,"efind")) :
                 new EListing[]{lotlisting});
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //Getting colors is fairly expensive, so do it once on
         //execution rather than once per line of output.
@@ -238,11 +243,13 @@ public class EFind implements CommandExecutor
         //ChatManager, but for purposes of displaying an accurate
         //number it needs to happen here.
         //If the user has queried a single lot, no such header
-        //is necessary.
+        //is necessary, and the lone result is sent on its own.
+        Page out = null;
+        int pages = PLUGIN.CM.getPaginationSize(listings);
         if(lotlisting == null)
         {
             page = Math.max(page,1);
-            int pages = PLUGIN.CM.getPaginationSize(listings);
+            page = Math.min(page,pages);
             
             ChatColor attrCol = ChatColor.valueOf(PLUGIN.getConfig().getString("chat.colors.attribute"));
             
@@ -257,7 +264,7 @@ public class EFind implements CommandExecutor
                     );
             
             TextComponent htc2 = new TextComponent();
-            htc2.setText(textCol + ", page " + Math.min(page,pages) +
+            htc2.setText(textCol + ", page " + page +
                     " of " + pages + ":");
             
             TextComponent hmotext = new TextComponent();
@@ -283,7 +290,7 @@ public class EFind implements CommandExecutor
                 new HoverEvent(net.md_5.bungee.api.chat.HoverEvent.Action.SHOW_TEXT,
                         new BaseComponent[]{hmotext}));
             
-            usr.spigot().sendMessage(htc0,htc1,htc2);
+            out = new Page(htc0,htc1,htc2);
         }
         
         //List all listings on this page.
@@ -319,7 +326,21 @@ public class EFind implements CommandExecutor
             tc2.setText(textCol + " from " +
                         playerCol + playerName +
                         textCol + ".");
-            usr.spigot().sendMessage(tc0,tc1,tc2);
+            if(out == null)
+                usr.spigot().sendMessage(tc0,tc1,tc2);
+            else
+                out.addRow(tc0,tc1,tc2);
+        }
+        
+        //Send the whole page as one message, with navigation that
+        //  repeats the original search terms.
+        if(out != null)
+        {
+            String command = "/efind";
+            for(int i = 0; i < args.length - (didSpecifyPage ? 1 : 0); i ++)
+                command += " " + args[i];
+            out.addNavigation(command,page,pages,textCol);
+            out.send(usr);
         }
         return true;
     }
@@ -1,6 +1,5 @@
 package com.niusworks.chatshop.commands;
 
-import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
@@ -15,8 +14,7 @@ import com.niusworks.chatshop.constructs.EnchLvl;
 import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
-
-import net.md_5.bungee.api.chat.TextComponent;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "ereprice" command for OC Network's ChatShop.
@@ -123,6 +121,7 @@ public class EReprice implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 2)
@@ -183,12 +182,14 @@ public class EReprice implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         Object res = PLUGIN.DB.ereprice(lot,price);
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //Detect failures
         if(res instanceof Integer)
@@ -200,36 +201,12 @@ public class EReprice implements CommandExecutor
         
         ItemStack merchandise = listing.toItemStack();
         
-        // Construct a broadcast message.
-        
-        if(!PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
-            return true;
-        
-        String textCol = PLUGIN.CM.color("text");
-        String playerCol = PLUGIN.CM.color("player");
-        String priceCol = PLUGIN.CM.color("price");
-        
-        //Build the chat message.
-        TextComponent tc0 = new TextComponent();
-        tc0.setText(PLUGIN.CM.PREFIX +
-                    playerCol + (target == null ? usr : target).getName() +
-                    textCol + " is selling ");
-        TextComponent tc1 = PLUGIN.CM.MOTforEnchanted(
-            itemCol +
-            (merchandise.getType().equals(Material.ENCHANTED_BOOK) ? "" : "enchanted ") +
-            cfg.DISPLAY,lot,merchandise);
-        TextComponent tc2 = new TextComponent();
-        tc2.setText(textCol + " for " +
-                    priceCol + ChatManager.format(price) +
-                    
-                    (price == listing.PRICE ? "" : " " +
-                    (price > listing.PRICE ?
-                            ChatColor.RED + "(\u25B2" + ChatManager.format(price - listing.PRICE) + ")" :
-                            ChatColor.GREEN + "(\u25BC" + ChatManager.format(listing.PRICE - price) + ")")) +
-                                
-                    textCol + ".");
-        
-        PLUGIN.getServer().spigot().broadcast(tc0,tc1,tc2);
+        // Announce the new price.
+        if(PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
+            PLUGIN.BM.announce((target == null ? usr : target),lot,PLUGIN.CM.MOTforEnchanted(
+                itemCol +
+                (merchandise.getType().equals(Material.ENCHANTED_BOOK) ? "" : "enchanted ") +
+                cfg.DISPLAY,lot,merchandise),price,listing.PRICE);
 
         return true;
     }
@@ -12,6 +12,7 @@ import com.niusworks.chatshop.constructs.ESellOrder;
 import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 import net.md_5.bungee.api.chat.TextComponent;
 
@@ -99,6 +100,7 @@ public class ESell implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 1)
@@ -172,12 +174,13 @@ public class ESell implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         if(PLUGIN.DB.getPlayerFlag(usr,2) != 'X')
         {
             //The player is using /confirm for esells.
             ESellOrder order = new ESellOrder(usr,handItem,cfg,price,System.currentTimeMillis());
-            PLUGIN.PENDING.put(usr,order);
+            PLUGIN.PENDING.put(usr,"esell",order);
             
             String textCol = PLUGIN.CM.color("text");
             String itemCol = PLUGIN.CM.color("item");
@@ -208,6 +211,7 @@ public class ESell implements CommandExecutor
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         return processResults(usr,handItem,cfg,price);
     }
@@ -250,8 +254,6 @@ public class ESell implements CommandExecutor
         
         String textCol = PLUGIN.CM.color("text");
         String itemCol = PLUGIN.CM.color("item");
-        String playerCol = PLUGIN.CM.color("player");
-        String priceCol = PLUGIN.CM.color("price");
         
         // Inform the user that their item has posted successfully.
         // It's necessary to provide more than just the broadcast so that
@@ -261,26 +263,12 @@ public class ESell implements CommandExecutor
             itemCol + "lot #" + res +
             textCol + ".");
         
-        // Construct a broadcast message.
-        
-        if(!PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
-            return true;
-        
-        //Build the chat message.
-        TextComponent tc0 = new TextComponent();
-        tc0.setText(PLUGIN.CM.PREFIX +
-                    playerCol + usr.getName() +
-                    textCol + " is selling ");
-        TextComponent tc1 = PLUGIN.CM.MOTforEnchanted(
-            itemCol +
-            (merchandise.getType().equals(Material.ENCHANTED_BOOK) ? "" : "enchanted ") +
-            cfg.DISPLAY,res,merchandise);
-        TextComponent tc2 = new TextComponent();
-        tc2.setText(textCol + " for " +
-                    priceCol + ChatManager.format(price) +
-                    textCol + ".");
-        
-        PLUGIN.getServer().spigot().broadcast(tc0,tc1,tc2);
+        // Announce the new lot.
+        if(PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
+            PLUGIN.BM.announce(usr,res,PLUGIN.CM.MOTforEnchanted(
+                itemCol +
+                (merchandise.getType().equals(Material.ENCHANTED_BOOK) ? "" : "enchanted ") +
+                cfg.DISPLAY,res,merchandise),price,-1);
         
         return true;
     }
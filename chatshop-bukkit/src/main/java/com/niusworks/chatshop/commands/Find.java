@@ -13,6 +13,8 @@ import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.constructs.Listing;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Page;
 
 /**
  * Executor for the "find" and "f" commands for OC Network's ChatShop.
@@ -98,6 +100,7 @@ public class Find implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         //If the user enters only an integer value preceded by a hash then they
@@ -159,12 +162,14 @@ public class Find implements CommandExecutor
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        Listing[] listings = PLUGIN.DB.getListings(merchandise);
+        Listing[] listings = PLUGIN.DB.getListings(merchandise,PLUGIN.DB.replicaAllowed(usr,"find"));
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //Getting colors is fairly expensive, so do it once on
         //execution rather than once per line of output.
@@ -190,12 +195,13 @@ public class Find implements CommandExecutor
         //number it needs to happen here.
         page = Math.max(page,1);
         int pages = PLUGIN.CM.getPaginationSize(listings);
-        String msg =
+        page = Math.min(page,pages);
+        Page out = new Page(
+                PLUGIN.CM.PREFIX +
                 textCol + "Listings for " +
                 itemCol + displayName +
                 textCol + ", page " + page +
-                " of " + Math.min(page,pages) + ":";
-        PLUGIN.CM.reply(usr,msg);
+                " of " + pages + ":");
         
         //List all listings on this page.
         listings = PLUGIN.CM.paginate(listings,page);
@@ -211,16 +217,18 @@ public class Find implements CommandExecutor
             if(playerName == null)
                 playerName = listings[i].PLAYER_ALIAS;
             
-            msg =
+            out.addRow(
                 priceCol + ChatManager.format(listings[i].PRICE) +
                 textCol + ", " +
                 qtyCol + ChatManager.format(listings[i].QUANTITY) +
                 textCol + " from " +
-                playerCol + playerName;
-                    
-            PLUGIN.CM.reply(usr,msg,false);
+                playerCol + playerName);
         }
         
+        //Send the whole page as one message.
+        out.addNavigation("/find " + args[0],page,pages,textCol);
+        out.send(usr);
+        
         return true;
     }
 }
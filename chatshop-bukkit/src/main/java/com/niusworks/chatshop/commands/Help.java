@@ -2,13 +2,17 @@ package com.niusworks.chatshop.commands;
 
 import java.util.ArrayList;
 
+import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.MarketCategory;
+import com.niusworks.chatshop.managers.BroadcastManager;
 import com.niusworks.chatshop.managers.ChatManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * OC Network's ChatShop's executor for the following commands:
@@ -29,6 +33,10 @@ import com.niusworks.chatshop.managers.ChatManager;
  * If this command is called by its alias "potion" or "potions" then only the information pertinent
  * to potions will be displayed.
  * <br><br>
+ * Given "broadcasts" as its first argument, this command instead shows or changes which market
+ * announcements the player receives: "on" or "off" for all of them, or the name of a
+ * {@link MarketCategory} to toggle that category alone. See {@link BroadcastManager}.
+ * <br><br>
  * This command has the following limits (aside from basic perms):
  * <ul>
  * <li>Console access denied.
@@ -46,6 +54,9 @@ public class Help implements CommandExecutor
     /** Command usage. **/
     public static final String USAGE = "/<chatshop|cs|os|oshop|potion|potions|shop|vm|vs> [page]";
     
+    /** Broadcast subscription usage. **/
+    public static final String BROADCASTS_USAGE = "/chatshop broadcasts [on|off|<category>]";
+    
     /** The specific instance of the parent ChatShop plugin. **/
     private final ChatShop PLUGIN;
     
@@ -98,6 +109,11 @@ public class Help implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
+        
+        //Broadcast subscriptions are managed here rather than by their own command.
+        if(args.length > 0 && args[0].equalsIgnoreCase("broadcasts"))
+            return broadcasts(usr,args);
         
         //Number of args
         if(args.length > 1)
@@ -118,6 +134,7 @@ public class Help implements CommandExecutor
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         String textCol = PLUGIN.CM.color("text");
         String itemCol = PLUGIN.CM.color("item");
@@ -196,4 +213,45 @@ public class Help implements CommandExecutor
            
         return true;
     }
+    
+    /**
+     * Show or change which categories of market announcements the player receives.
+     * 
+     * @param usr   The player who executed the command.
+     * @param args  The command arguments, the first being "broadcasts".
+     * @return      Always true.
+     */
+    private boolean broadcasts(Player usr, String[] args)
+    {
+        if(args.length > 2)
+            return PLUGIN.CM.error(usr,BROADCASTS_USAGE);
+        
+        String textCol = PLUGIN.CM.color("text");
+        String cmdCol = PLUGIN.CM.color("helpUsage");
+        int mask = PLUGIN.BM.getSubscriptions(usr);
+        
+        if(args.length == 2)
+        {
+            if(args[1].equalsIgnoreCase("on"))
+                mask = MarketCategory.ALL;
+            else if(args[1].equalsIgnoreCase("off"))
+                mask = 0;
+            else
+            {
+                MarketCategory cat = MarketCategory.match(args[1]);
+                if(cat == null)
+                    return PLUGIN.CM.error(usr,BROADCASTS_USAGE);
+                mask ^= cat.bit();
+            }
+            PLUGIN.BM.setSubscriptions(usr,mask);
+        }
+        
+        //Show the (new) state of every category.
+        String msg = textCol + "Market announcements:";
+        for(MarketCategory cat : MarketCategory.values())
+            msg += " " + ((mask & cat.bit()) != 0 ? ChatColor.GREEN : ChatColor.RED) +
+                cat.name().toLowerCase();
+        PLUGIN.CM.reply(usr,msg);
+        return PLUGIN.CM.reply(usr,textCol + "Toggle with " + cmdCol + BROADCASTS_USAGE + textCol + ".",false);
+    }
 }
\ No newline at end of file
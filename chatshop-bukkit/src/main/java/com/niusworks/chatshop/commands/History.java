@@ -21,6 +21,8 @@ import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.constructs.Listing;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Page;
 
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.chat.ComponentBuilder;
@@ -124,6 +126,7 @@ public class History implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length > 2)
@@ -175,12 +178,14 @@ public class History implements CommandExecutor
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        Listing[] tenders = PLUGIN.DB.getHistory(qPlayer,false);
+        Listing[] tenders = PLUGIN.DB.getHistory(qPlayer,false,PLUGIN.DB.replicaAllowed(usr,"history"));
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //Getting colors is fairly expensive, so do it once on
         //execution rather than once per line of output.
@@ -213,13 +218,14 @@ public class History implements CommandExecutor
         //ChatManager, but for purposes of displaying an accurate
         //number it needs to happen here.
         page = Math.max(page,1);
-        page = Math.min(page,PLUGIN.CM.getPaginationSize(tenders));
-        String msg =
+        int pages = PLUGIN.CM.getPaginationSize(tenders);
+        page = Math.min(page,pages);
+        Page out = new Page(
+                PLUGIN.CM.PREFIX +
                 textCol + "History for " +
                 playerCol + qPlayer.getName() +
                 textCol + ", page " + page +
-                " of " + PLUGIN.CM.getPaginationSize(tenders) + ":";
-        PLUGIN.CM.reply(usr,msg);
+                " of " + pages + ":");
         
         Timestamp today = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.DAYS));
         
@@ -291,7 +297,7 @@ public class History implements CommandExecutor
 
                 if(!tenders[i].DATE.before(today))
                     datePrefix.setText(dateColCode + time); 
-                usr.spigot().sendMessage(datePrefix,tc0,tc1,tc2);
+                out.addRow(datePrefix,tc0,tc1,tc2);
             }
             else
             {
@@ -300,7 +306,7 @@ public class History implements CommandExecutor
                 String priceEach = priceCol + ChatManager.format(tenders[i].PRICE);
                 String priceTotal = priceCol + ChatManager.format(tenders[i].PRICE * tenders[i].QUANTITY);
                 
-                msg = textCol +
+                String msg = textCol +
                     (tenders[i].QUANTITY < 1 ? "Sold " : "Bought ") + // Queried player was ? buyer : seller
                     quantity + " " + item + textCol +
                     (tenders[i].QUANTITY < 1 ? " to " : " from ") + // Queried player was ? buyer : seller
@@ -308,12 +314,18 @@ public class History implements CommandExecutor
                     priceTotal.replaceAll("[()]","") + textCol + ".";
                 
                 if(tenders[i].DATE.before(today))
-                    usr.spigot().sendMessage(datePrefix, new TextComponent(" " + msg));
+                    out.addRow(datePrefix, new TextComponent(" " + msg));
                 else
-                    PLUGIN.CM.reply(usr,dateColCode + time + msg,false);
+                    out.addRow(dateColCode + time + msg);
             }
         }
         
+        //Send the whole page as one message.
+        out.addNavigation("/history" +
+                (qPlayer.getUniqueId().equals(usr.getUniqueId()) ? "" : " " + qPlayer.getName()),
+                page,pages,textCol);
+        out.send(usr);
+        
         return true;
     }
 }
@@ -9,6 +9,7 @@ import org.bukkit.inventory.ItemStack;
 import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "quote" command for OC Network's ChatShop.
@@ -92,6 +93,7 @@ public class Quote implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 2 && args.length != 3)
@@ -143,12 +145,15 @@ public class Quote implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        double total = PLUGIN.DB.price(usr,merchandise,-1);
+        boolean useReplica = PLUGIN.DB.replicaAllowed(usr,"quote");
+        double total = PLUGIN.DB.price(usr,merchandise,-1,useReplica);
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         String textCol = PLUGIN.CM.color("text");
         
@@ -165,7 +170,7 @@ public class Quote implements CommandExecutor
         else if(total < 0)
         {
             merchandise.setAmount((int)(total * -1));
-            double realtotal = PLUGIN.DB.price(usr,merchandise,-1);
+            double realtotal = PLUGIN.DB.price(usr,merchandise,-1,useReplica);
             return PLUGIN.CM.reply(usr,
                 textCol + "Currently only " +
                 PLUGIN.CM.color("quantity") + ChatManager.format((int)(total * -1)) + " " +
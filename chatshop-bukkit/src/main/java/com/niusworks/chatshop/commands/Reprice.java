@@ -12,8 +12,7 @@ import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.constructs.Listing;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
-
-import net.md_5.bungee.api.ChatColor;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "reprice" command for OC Network's ChatShop.
@@ -123,6 +122,7 @@ public class Reprice implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length != 2)
@@ -196,6 +196,7 @@ public class Reprice implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         //Ternary operation is to determine whether this command is being executed on oneself
         //  or by proxy (admin).
@@ -206,6 +207,7 @@ public class Reprice implements CommandExecutor
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         // On fail...
         if(res instanceof Integer && ((Integer)res).intValue() == -1)
@@ -217,37 +219,10 @@ public class Reprice implements CommandExecutor
                 (target == null ? "You do " : "This player does ") +
                     "not have any " + displayName + " for sale.");
         
-        String textColor = PLUGIN.CM.color("text");
-        String qColor = PLUGIN.CM.color("quantity");
-        
-        // Construct a broadcast message.
-        
-        if(!PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
-            return true;
-        
-        String broadcast = PLUGIN.CM.color("player") +
-                (target == null ? usr : target).getName() +
-                " " +
-                textColor + "is selling " + qColor;
-        
-        // Indicate the appropriate quantity.
-        broadcast += ChatManager.format(((Listing)res).QUANTITY) + " ";
-        
-        // Indicate the appropriate item.
-        broadcast += PLUGIN.CM.color("item") + displayName;
-        
-        broadcast += textColor + " for ";
-        
-        // Indicate the appropriate price.
-        broadcast += PLUGIN.CM.color("price") + ChatManager.format(price) + " ";
-        if(price > ((Listing)res).PRICE)
-            broadcast += ChatColor.RED + "(\u25B2" + ChatManager.format(price - ((Listing)res).PRICE) + ") ";
-        else if(price < ((Listing)res).PRICE)
-            broadcast += ChatColor.GREEN + "(\u25BC" + ChatManager.format(((Listing)res).PRICE - price) + ") ";
-        
-        broadcast += textColor + "each.";
-        
-        PLUGIN.CM.broadcast(broadcast);
+        // Announce the new price.
+        PLUGIN.BM.announce((target == null ? usr : target),
+            merchandise,displayName,
+            ((Listing)res).QUANTITY,0,price,((Listing)res).PRICE);
         return true;
     }
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package com.niusworks.chatshop.commands;
 
-import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -15,6 +14,7 @@ import com.niusworks.chatshop.constructs.SellOrder;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.DatabaseManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
 
 /**
  * Executor for the "sell" command for OC Network's ChatShop.
@@ -106,6 +106,7 @@ public class Sell implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         //If the user enters only a double value and is holding an
@@ -231,12 +232,13 @@ public class Sell implements CommandExecutor
         //  EXECUTION
         //  Deferred to DatabaseManager for synchronization purposes.
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
         if(PLUGIN.DB.getPlayerFlag(usr,1) != 'X')
         {
            //The player is using /confirm for sells.
            SellOrder order = new SellOrder(usr,merchandise,cfg,price,System.currentTimeMillis());
-           PLUGIN.PENDING.put(usr,order);
+           PLUGIN.PENDING.put(usr,"sell",order);
            String textCol = PLUGIN.CM.color("text");
            String msg =
                textCol + "Preparing to sell " +
@@ -257,6 +259,7 @@ public class Sell implements CommandExecutor
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         return processResults(usr,merchandise,cfg,price);
     }
@@ -329,46 +332,15 @@ public class Sell implements CommandExecutor
                 usr.getInventory().clear(i);
             }
         
-        String textColor = PLUGIN.CM.color("text");
-        String qColor = PLUGIN.CM.color("quantity");
-        
-        // Construct a broadcast message.
-        
-        if(!PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
-            return true;
-        
-        String broadcast = PLUGIN.CM.color("player") + usr.getName() + " " +
-                textColor + "is selling " + qColor;
-        
-        // Indicate the appropriate quantity.
-        if(res instanceof Listing)  // A previous listing existed and was ammended.
-        {
-            broadcast += ChatManager.format(((Listing)res).QUANTITY + merchandise.getAmount()) + " "
-                + ChatColor.GREEN + "(\u25B2" + merchandise.getAmount() + ") ";
-            if(price == -1)
-                price = ((Listing)res).PRICE;
-        }
-        else                        // No listing previously existed.
-            broadcast += ChatManager.format(merchandise.getAmount()) + " ";
-        
-        // Indicate the appropriate item.
-        broadcast += PLUGIN.CM.color("item") + cfg.DISPLAY;
-        
-        broadcast += textColor + " for ";
-        
-        // Indicate the appropriate price.
-        broadcast += PLUGIN.CM.color("price") + ChatManager.format(price) + " ";
-        if(res instanceof Listing)  // A previous listing existed and was repriced.
-        {
-            if(price > ((Listing)res).PRICE)
-                broadcast += ChatColor.RED + "(\u25B2" + ChatManager.format(price - ((Listing)res).PRICE) + ") ";
-            else if(price < ((Listing)res).PRICE)
-                broadcast += ChatColor.GREEN + "(\u25BC" + ChatManager.format(((Listing)res).PRICE - price) + ") ";
-        }
-        
-        broadcast += textColor + "each.";
-        
-        PLUGIN.CM.broadcast(broadcast);
+        // Announce the listing. If a previous listing existed then it was
+        //  amended; otherwise a new listing was created.
+        if(res instanceof Listing)
+            PLUGIN.BM.announce(usr,merchandise,cfg.DISPLAY,
+                ((Listing)res).QUANTITY + merchandise.getAmount(),merchandise.getAmount(),
+                (price == -1 ? ((Listing)res).PRICE : price),((Listing)res).PRICE);
+        else
+            PLUGIN.BM.announce(usr,merchandise,cfg.DISPLAY,
+                merchandise.getAmount(),0,price,-1);
         return true;
     }
 }
@@ -15,6 +15,8 @@ import com.niusworks.chatshop.constructs.Item;
 import com.niusworks.chatshop.constructs.Listing;
 import com.niusworks.chatshop.managers.ChatManager;
 import com.niusworks.chatshop.managers.ItemManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.utilities.Page;
 
 import net.md_5.bungee.api.chat.TextComponent;
 
@@ -110,6 +112,7 @@ public class Stock implements CommandExecutor
         //
         //  VALIDATION
         //
+        PLUGIN.MM.stage(MetricsManager.PARSE);
         
         //Number of args
         if(args.length > 2)
@@ -158,12 +161,14 @@ public class Stock implements CommandExecutor
         //
         //  EXECUTION
         //
+        PLUGIN.MM.stage(MetricsManager.DB);
         
-        Listing[] listings = PLUGIN.DB.getListings(qPlayer, false);
+        Listing[] listings = PLUGIN.DB.getListings(qPlayer,false,PLUGIN.DB.replicaAllowed(usr,"stock"));
         
         //
         //  RESULT
         //
+        PLUGIN.MM.stage(MetricsManager.RENDER);
         
         //Getting colors is fairly expensive, so do it once on
         //execution rather than once per line of output.
@@ -188,13 +193,14 @@ public class Stock implements CommandExecutor
         //ChatManager, but for purposes of displaying an accurate
         //number it needs to happen here.
         page = Math.max(page,1);
-        page = Math.min(page,PLUGIN.CM.getPaginationSize(listings));
-        String msg =
+        int pages = PLUGIN.CM.getPaginationSize(listings);
+        page = Math.min(page,pages);
+        Page out = new Page(
+                PLUGIN.CM.PREFIX +
                 textCol + "Listings for " +
                 playerCol + qPlayer.getName() +
                 textCol + ", page " + page +
-                " of " + PLUGIN.CM.getPaginationSize(listings) + ":";
-        PLUGIN.CM.reply(usr,msg);
+                " of " + pages + ":");
         
         //List all listings on this page.
         listings = PLUGIN.CM.paginate(listings,page);
@@ -224,7 +230,7 @@ public class Stock implements CommandExecutor
                             priceCol + ChatManager.format(listings[i].PRICE) +
                             textCol + ".");
                 
-                usr.spigot().sendMessage(tc0,tc1,tc2);
+                out.addRow(tc0,tc1,tc2);
             }
             else
             {
@@ -236,16 +242,21 @@ public class Stock implements CommandExecutor
                 if(thing != null)
                     itemDisplay = thing.DISPLAY;
                 
-                msg =
+                out.addRow(
                     qtyCol + ChatManager.format(listings[i].QUANTITY) + " " +
                     itemCol + itemDisplay +
                     textCol + " at " +
                     priceCol + ChatManager.format(listings[i].PRICE) +
-                    textCol + " each.";
-                PLUGIN.CM.reply(usr,msg,false);
+                    textCol + " each.");
             }
         }
         
+        //Send the whole page as one message.
+        out.addNavigation("/stock" +
+                (qPlayer.getUniqueId().equals(usr.getUniqueId()) ? "" : " " + qPlayer.getName()),
+                page,pages,textCol);
+        out.send(usr);
+        
         return true;
     }
 }
@@ -17,18 +17,19 @@ public class BuyOrder extends Order
     public final double MAXP;
     /** The calculated total price for the order at the time of its creation. **/
     public final double TOTAL;
+    /** The listings the order was quoted from, to be bought from at /confirm if unchanged. **/
+    public final BuyPlan PLAN;
     
     /**
      * @param usr     The player who created this order.
      * @param merch   The merchandise (including quantity) to purchase.
      * @param cfg     The already-looked-up configuration for this item.
-     * @param maxp    The maximum price for the buy order.
-     * @param total   The calculated total price for the buy order at the time of its creation.
+     * @param plan    The listings the order was quoted from.
      * @param time    The time at which this order was created.
      */
-    public BuyOrder(Player usr,ItemStack merch,Item cfg,double maxp,double total,long time)
+    public BuyOrder(Player usr,ItemStack merch,Item cfg,BuyPlan plan,long time)
     {
         super(usr,merch,cfg,time);
-        MAXP = maxp; TOTAL = total;
+        MAXP = plan.MAXP; TOTAL = plan.TOTAL; PLAN = plan;
     }
 }
\ No newline at end of file
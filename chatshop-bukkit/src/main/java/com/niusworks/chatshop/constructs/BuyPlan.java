@@ -0,0 +1,44 @@
+package com.niusworks.chatshop.constructs;
+
+import com.niusworks.chatshop.commands.Buy;
+import com.niusworks.chatshop.commands.Confirm;
+import com.niusworks.chatshop.managers.DatabaseManager;
+
+/**
+ * The listings a quoted buy order would be filled from, as found by
+ * {@link DatabaseManager#plan} when {@link Buy} quotes the order.
+ * <br>
+ * The plan is stored with the {@link BuyOrder}, and {@link Confirm} executes it
+ * directly rather than searching the market again, so long as no listing for the
+ * item has changed since; this is known by comparing {@link #VERSION} with the
+ * item's current version in DatabaseManager.
+ * @author ObsidianCraft Staff
+ */
+public class BuyPlan
+{
+    /** The material and damage value of the item, as "MATERIAL:damage". **/
+    public final String KEY;
+    /** The version of the item's listings when this plan was made. **/
+    public final long VERSION;
+    /** The maximum price for the buy order. -1 signifies omission of maxprice. **/
+    public final double MAXP;
+    /** The listings to buy from, cheapest first, as they were when this plan was made. **/
+    public final Listing[] LISTINGS;
+    /** The quantity available from those listings, up to the quantity requested. **/
+    public final int QUANTITY;
+    /** The total price of that quantity. **/
+    public final double TOTAL;
+
+    /**
+     * @param key       The material and damage value of the item, as "MATERIAL:damage".
+     * @param version   The version of the item's listings when this plan was made.
+     * @param maxp      The maximum price for the buy order.
+     * @param listings  The listings to buy from, cheapest first.
+     * @param quantity  The quantity available from those listings, up to the quantity requested.
+     * @param total     The total price of that quantity.
+     */
+    public BuyPlan(String key, long version, double maxp, Listing[] listings, int quantity, double total)
+    {
+        KEY = key; VERSION = version; MAXP = maxp; LISTINGS = listings; QUANTITY = quantity; TOTAL = total;
+    }
+}
@@ -20,15 +20,17 @@ public class EBuyOrder extends Order
      *  doesn't change before /confirm. **/
     public final double PRICE;
     
+    /** The listing as it was when the order was quoted. **/
+    public final EListing LISTING;
+    
     /**
      * @param usr     The player who created this order.
-     * @param lot     The lot number to purchase.
-     * @param price   The price of the lot.
+     * @param listing The listing to purchase, as it is now.
      * @param time    The time at which this order was created.
      */
-    public EBuyOrder(Player usr,int lot,double price,long time)
+    public EBuyOrder(Player usr,EListing listing,long time)
     {
         super(usr,null,null,time);
-        LOT = lot; PRICE = price;
+        LOT = listing.ID; PRICE = listing.PRICE; LISTING = listing;
     }
 }
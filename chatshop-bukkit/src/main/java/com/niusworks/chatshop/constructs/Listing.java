@@ -6,6 +6,7 @@ import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 
 import com.niusworks.chatshop.commands.History;
+import com.niusworks.chatshop.core.Offer;
 import com.niusworks.chatshop.managers.DatabaseManager;
 
 /**
@@ -22,10 +23,12 @@ import com.niusworks.chatshop.managers.DatabaseManager;
  * For example, if I query /history JimmerMcSpock then a series of Listings is returned but the
  * attached player for each listing is the other player involved in JimmerMcSpock's
  * transaction. In this way both parties related to the transaction are known. 
+ * <br>
+ * As an {@link Offer}, a Listing can be swept by the market core's {@link com.niusworks.chatshop.core.Matcher}.
  * 
  * @author ObsidianCraft Staff
  */
-public class Listing
+public class Listing implements Offer
 {
     /** Unique ID of this listing in the database. **/
     public final int ID;
@@ -43,6 +46,8 @@ public class Listing
     public final int QUANTITY;
     /** An optional MySQL Timestamp. **/
     public final Timestamp DATE;
+    /** The version of this listing in the database, which increases whenever it changes. **/
+    public final int VERSION;
     
     /**
      * Create a new Listing object with no date.
@@ -57,7 +62,24 @@ public class Listing
      */
     public Listing(int id, String mat, int dmg, String uuid, String alias, double price, int qty)
     {
-        ID = id; MATERIAL = mat; DAMAGE = dmg; PLAYER_UUID = uuid; PLAYER_ALIAS = alias; PRICE = price; QUANTITY = qty; DATE = null;
+        this(id,mat,dmg,uuid,alias,price,qty,0);
+    }
+    
+    /**
+     * Create a new Listing object with no date, as read at a specific version.
+     * 
+     * @param id        Unique ID of this listing in the database.
+     * @param mat       The official Minecraft name for this material.
+     * @param dmg       The damage value of the specified item.
+     * @param uuid      The UUID of the involved player.
+     * @param alias     The alias of the involved player.
+     * @param price     The price per item.
+     * @param qty       The quantity for sale.
+     * @param version   The version of the listing in the database.
+     */
+    public Listing(int id, String mat, int dmg, String uuid, String alias, double price, int qty, int version)
+    {
+        ID = id; MATERIAL = mat; DAMAGE = dmg; PLAYER_UUID = uuid; PLAYER_ALIAS = alias; PRICE = price; QUANTITY = qty; DATE = null; VERSION = version;
     }
     
     /**
@@ -74,7 +96,7 @@ public class Listing
      */
     public Listing(int id, String mat, int dmg, String uuid, String alias, double price, int qty, Timestamp date)
     {
-        ID = id; MATERIAL = mat; DAMAGE = dmg; PLAYER_UUID = uuid; PLAYER_ALIAS = alias; PRICE = price; QUANTITY = qty; DATE = date;
+        ID = id; MATERIAL = mat; DAMAGE = dmg; PLAYER_UUID = uuid; PLAYER_ALIAS = alias; PRICE = price; QUANTITY = qty; DATE = date; VERSION = 0;
     }
     
     /**
@@ -88,4 +110,22 @@ public class Listing
         ret.setDurability((short) DAMAGE);
         return ret;
     }
+    
+    @Override
+    public double price()
+    {
+        return PRICE;
+    }
+    
+    @Override
+    public int quantity()
+    {
+        return QUANTITY;
+    }
+    
+    @Override
+    public String seller()
+    {
+        return PLAYER_UUID;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.niusworks.chatshop.constructs;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Broad categories of merchandise, used by players to choose which
+ * market announcements they receive.
+ * <br>
+ * Each category occupies one bit of a subscription mask, by ordinal.
+ * New categories must therefore only ever be appended.
+ *
+ * @author ObsidianCraft Staff
+ */
+public enum MarketCategory
+{
+    /** Placeable blocks. **/
+    BLOCKS,
+    /** Anything edible. **/
+    FOOD,
+    /** Tools, weapons and armor; anything with durability. **/
+    GEAR,
+    /** Potions and tipped arrows. **/
+    POTIONS,
+    /** Enchanted items and enchanted books. **/
+    ENCHANTED,
+    /** Everything else. **/
+    OTHER;
+
+    /** A subscription mask containing every category. **/
+    public static final int ALL = (1 << values().length) - 1;
+
+    /**
+     * @return  This category's bit in a subscription mask.
+     */
+    public int bit()
+    {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Determine the category of the specified (non-enchanted) item.
+     *
+     * @param merch The item to categorize.
+     * @return      The item's category.
+     */
+    public static MarketCategory of(ItemStack merch)
+    {
+        Material type = merch.getType();
+        switch(type)
+        {
+            case POTION:
+            case SPLASH_POTION:
+            case LINGERING_POTION:
+            case TIPPED_ARROW:
+                return POTIONS;
+            case ENCHANTED_BOOK:
+                return ENCHANTED;
+            default:
+                break;
+        }
+        if(type.isEdible())
+            return FOOD;
+        if(type.getMaxDurability() > 0)
+            return GEAR;
+        if(type.isBlock())
+            return BLOCKS;
+        return OTHER;
+    }
+
+    /**
+     * Resolve a category from its name, ignoring case.
+     *
+     * @param name  The name of the category.
+     * @return      The category, or null if there is none by that name.
+     */
+    public static MarketCategory match(String name)
+    {
+        for(MarketCategory cat : values())
+            if(cat.name().equalsIgnoreCase(name))
+                return cat;
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package com.niusworks.chatshop.constructs;
 
+import java.util.UUID;
+
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
@@ -14,8 +16,8 @@ import com.niusworks.chatshop.commands.Sell;
  */
 public abstract class Order
 {
-    /** The player who created this order. **/
-    public final Player PLAYER;
+    /** The UUID of the player who created this order. **/
+    public final UUID PLAYER;
     /** The merchandise (including quantity) to purchse. **/
     public final ItemStack MERCH;
     /** The already-looked-up configuration for this item. **/
@@ -31,6 +33,6 @@ public abstract class Order
      */
     public Order(Player usr,ItemStack merch,Item cfg,long time)
     {
-        PLAYER = usr; MERCH = merch; CONFIG = cfg; TIME = time;
+        PLAYER = usr.getUniqueId(); MERCH = merch; CONFIG = cfg; TIME = time;
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.niusworks.chatshop.constructs;
+
+import java.util.UUID;
+
+/**
+ * Money owed to one seller from the payout ledger, awaiting settlement
+ * with the economy provider.
+ * @author ObsidianCraft Staff
+ */
+public class Payout
+{
+    /** The UUID of the seller to be paid. **/
+    public final UUID SELLER;
+    /** The total amount owed. **/
+    public final double AMOUNT;
+    /** The highest ledger entry included in this amount. **/
+    public final int THROUGH;
+    /** The number of ledger entries included in this amount. **/
+    public final int ENTRIES;
+
+    /**
+     * @param seller    The UUID of the seller to be paid.
+     * @param amount    The total amount owed.
+     * @param through   The highest ledger entry included in this amount.
+     * @param entries   The number of ledger entries included in this amount.
+     */
+    public Payout(UUID seller, double amount, int through, int entries)
+    {
+        SELLER = seller;
+        AMOUNT = amount;
+        THROUGH = through;
+        ENTRIES = entries;
+    }
+}
@@ -0,0 +1,43 @@
+package com.niusworks.chatshop.constructs;
+
+import java.util.UUID;
+
+/**
+ * A summary of goods sold by one seller: either everything a single buy order
+ * took from that seller, or everything of one item sold while the seller was away.
+ * Used to notify sellers of their sales once, rather than once per listing.
+ * @author ObsidianCraft Staff
+ */
+public class Sale
+{
+    /** The UUID of the seller. **/
+    public final UUID SELLER;
+    /** The material of the goods sold. **/
+    public final String MATERIAL;
+    /** The damage value of the goods sold. **/
+    public final int DAMAGE;
+    /** Whether the goods sold were enchanted. **/
+    public final boolean ENCHANTED;
+    /** The quantity sold. **/
+    public final int QUANTITY;
+    /** The total earned by the seller. **/
+    public final double EARNINGS;
+    
+    /**
+     * @param seller    The UUID of the seller.
+     * @param material  The material of the goods sold.
+     * @param damage    The damage value of the goods sold.
+     * @param enchanted Whether the goods sold were enchanted.
+     * @param quantity  The quantity sold.
+     * @param earnings  The total earned by the seller.
+     */
+    public Sale(UUID seller, String material, int damage, boolean enchanted, int quantity, double earnings)
+    {
+        SELLER = seller;
+        MATERIAL = material;
+        DAMAGE = damage;
+        ENCHANTED = enchanted;
+        QUANTITY = quantity;
+        EARNINGS = earnings;
+    }
+}
@@ -20,6 +20,8 @@ public class Tender
     public final boolean BROKE;
     /** How much the player bought from himself. **/
     public final int SELF;
+    /** What was bought from each other seller, for notifying them. **/
+    public final Sale[] SALES;
     
     /**
      * @param q The quantity of items tendered. 
@@ -29,6 +31,18 @@ public class Tender
      */
     public Tender(int q, double c, boolean b, int self)
     {
-        QUANTITY = q; COST = c; BROKE = b; SELF = self;
+        this(q,c,b,self,new Sale[0]);
+    }
+    
+    /**
+     * @param q The quantity of items tendered. 
+     * @param c The TOTAL cost of ALL tendered items.
+     * @param b Whether the user went broke on this transaction.
+     * @param self The amount this player bought from himself.
+     * @param sales What was bought from each other seller.
+     */
+    public Tender(int q, double c, boolean b, int self, Sale[] sales)
+    {
+        QUANTITY = q; COST = c; BROKE = b; SELF = self; SALES = sales;
     }
 }
\ No newline at end of file
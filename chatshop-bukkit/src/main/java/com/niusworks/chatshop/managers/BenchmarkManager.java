@@ -0,0 +1,385 @@
+package com.niusworks.chatshop.managers;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.EnchLvl;
+import com.niusworks.chatshop.constructs.Listing;
+import com.niusworks.chatshop.utilities.Histogram;
+
+/**
+ * Measures ChatShop's hot paths on a running server, for OC Network's ChatShop.
+ * <br>
+ * Changes are measured before they ship by the JMH benchmarks in chatshop-bench,
+ * which run the same paths headless. These cases are for checking a live server,
+ * with its own Bukkit implementation and items dictionary, against those figures.
+ * <br>
+ * "/csadmin bench" times each of the following, with the real plugin, items
+ * dictionary and Bukkit implementation:
+ * <ul>
+ * <li>{@link ItemManager#lookup(String)}, {@link ItemManager#parse(Player, String)}
+ *     and {@link ItemManager#makeCompliant};
+ * <li>the enchantment codec, {@link DatabaseManager#stringifyEnchants} and
+ *     {@link DatabaseManager#deStringifyEnchants};
+ * <li>the buy matching loop, {@link com.niusworks.chatshop.core.Matcher#match}, priced through
+ *     {@link DatabaseManager#buy(Player, ItemStack, double, ArrayList, boolean)} over
+ *     {@value #BOOK_SIZE} listings held in memory;
+ * <li>{@link ChatManager#paginate(String[], int)}, {@link ChatManager#format(double)}
+ *     (and, as a baseline, the {@link NumberFormat} it replaced),
+ *     {@link ChatManager#romanNumeralize} and {@link ChatManager#MOTforEnchanted}.
+ * </ul>
+ * Like a JMH benchmark, each case is first run for a warmup period, so that it is
+ * compiled, and then measured in batches of calls; the mean and the p50 and p99
+ * of the batches are reported, in nanoseconds per call.
+ * <br><br>
+ * Benchmarks run on the main thread, as the code they measure does, but only for
+ * {@value #SLICE_MS} milliseconds in each tick, so that the server keeps running
+ * while they do.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class BenchmarkManager
+{
+    /** The time spent benchmarking in each tick, in milliseconds. **/
+    protected static final long SLICE_MS = 5;
+    /** The time each case is run before it is measured, in milliseconds. **/
+    protected static final long WARMUP_MS = 250;
+    /** The time each case is measured, in milliseconds. **/
+    protected static final long MEASURE_MS = 500;
+    /** The target length of one batch of calls, in nanoseconds. **/
+    protected static final long BATCH_NANOS = 50000;
+    /** The number of listings in the book swept by the matching benchmark. **/
+    protected static final int BOOK_SIZE = 100;
+
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The cases still to be run, in order. **/
+    protected final ArrayList<Case> QUEUE = new ArrayList<Case>();
+
+    /** The player who asked for the benchmarks. **/
+    protected Player requester;
+    /** The repeating benchmark task, or null if none is running. **/
+    protected BukkitTask task;
+    /** The number of calls which returned null, so that no call's result is unused. **/
+    protected long nulls;
+
+    /**
+     * Create a BenchmarkManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public BenchmarkManager(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+
+    /**
+     * Begin running benchmarks, reporting the results to the specified player
+     * and to the console as each finishes.
+     *
+     * @param usr       The player who asked for the benchmarks.
+     * @param only      The name of the only case to run, or null to run all.
+     * @return          The number of cases to be run, 0 if there is no such case,
+     *                  or -1 if benchmarks are already running.
+     */
+    public int start(Player usr, String only)
+    {
+        if(task != null)
+            return -1;
+
+        QUEUE.clear();
+        for(Case c : cases(usr))
+            if(only == null || c.NAME.equalsIgnoreCase(only))
+                QUEUE.add(c);
+        if(QUEUE.isEmpty())
+            return 0;
+
+        requester = usr;
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                slice();
+            }
+        },1,1);
+        return QUEUE.size();
+    }
+
+    /** Stop running benchmarks, discarding any unfinished. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        QUEUE.clear();
+        requester = null;
+    }
+
+    /**
+     * @return  The names of all cases, in the order they are run.
+     */
+    public String[] getCases()
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        for(Case c : cases(null))
+            names.add(c.NAME);
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Run the current case for one slice, and report it if it has finished.
+     */
+    protected void slice()
+    {
+        if(QUEUE.isEmpty())
+        {
+            stop();
+            return;
+        }
+        Case c = QUEUE.get(0);
+        long sliceEnd = System.nanoTime() + SLICE_MS * 1000000;
+        while(System.nanoTime() < sliceEnd && !c.done())
+            c.batch();
+
+        if(c.done())
+        {
+            QUEUE.remove(0);
+            report(c);
+        }
+    }
+
+    /**
+     * Report the results of a finished case.
+     *
+     * @param c The case.
+     */
+    protected void report(Case c)
+    {
+        String line = "bench " + c.NAME + ": " + String.format("%.1f",(double)c.measured / c.calls) + " ns/op"
+                + " (p50 " + c.BATCHES.percentile(50) + ", p99 " + c.BATCHES.percentile(99)
+                + ", " + c.calls + " ops)";
+        PLUGIN.CM.log(line);
+        if(requester != null && requester.isOnline())
+            PLUGIN.CM.reply(requester,PLUGIN.CM.color("text") + line,false);
+    }
+
+    /**
+     * Build the benchmark cases. Cases which need a player, or an item the
+     * dictionary does not define, are left out when they cannot be built.
+     *
+     * @param usr   The player on whose behalf items are parsed and bought, or null.
+     * @return      The cases.
+     */
+    protected ArrayList<Case> cases(final Player usr)
+    {
+        ArrayList<Case> cases = new ArrayList<Case>();
+        final String[] queries = {"stone","1","1:1","cobblestone","planks"};
+
+        cases.add(new Case("lookup")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                return PLUGIN.IM.lookup(queries[i % queries.length]);
+            }
+        });
+        cases.add(new Case("parse")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                return PLUGIN.IM.parse(usr,queries[i % queries.length]);
+            }
+        });
+
+        Object parsed = PLUGIN.IM.parse(usr,"stone");
+        final ItemStack stone = parsed instanceof ItemStack ? (ItemStack)parsed : null;
+        if(stone != null)
+            cases.add(new Case("makeCompliant")
+            {
+                @Override
+                protected Object call(int i)
+                {
+                    return PLUGIN.IM.makeCompliant(stone,false);
+                }
+            });
+
+        ArrayList<Enchantment> known = new ArrayList<Enchantment>(PLUGIN.DB.ENCHANTS.keySet());
+        final EnchLvl[] enchants = known.size() < 2 ? null
+                : new EnchLvl[]{new EnchLvl(known.get(0),3),new EnchLvl(known.get(1),1)};
+        if(enchants != null)
+        {
+            final String coded = PLUGIN.DB.stringifyEnchants(enchants);
+            cases.add(new Case("stringifyEnchants")
+            {
+                @Override
+                protected Object call(int i)
+                {
+                    return PLUGIN.DB.stringifyEnchants(enchants);
+                }
+            });
+            cases.add(new Case("deStringifyEnchants")
+            {
+                @Override
+                protected Object call(int i)
+                {
+                    return PLUGIN.DB.deStringifyEnchants(coded);
+                }
+            });
+        }
+
+        if(usr != null && stone != null)
+        {
+            final ArrayList<Listing> book = new ArrayList<Listing>();
+            for(int i = 0; i < BOOK_SIZE; i ++)
+                book.add(new Listing(i + 1,stone.getType().toString(),stone.getDurability(),
+                        UUID.randomUUID().toString(),"bench",1 + i * 0.01,16,0));
+            final ItemStack order = stone.clone();
+            order.setAmount(BOOK_SIZE * 16 - 8);
+            cases.add(new Case("match")
+            {
+                @Override
+                protected Object call(int i)
+                {
+                    return PLUGIN.DB.buy(usr,order,-1,book,true,null);
+                }
+            });
+        }
+
+        final String[] lines = new String[200];
+        for(int i = 0; i < lines.length; i ++)
+            lines[i] = "Line " + i;
+        final int pages = PLUGIN.CM.getPaginationSize(lines);
+        cases.add(new Case("paginate")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                return PLUGIN.CM.paginate(lines,i % pages + 1);
+            }
+        });
+        cases.add(new Case("format")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                return ChatManager.format(i * 1.37);
+            }
+        });
+        final NumberFormat currency = NumberFormat.getCurrencyInstance();
+        cases.add(new Case("format (NumberFormat)")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                //The way ChatManager.format(double) worked before NumberFormatter, as a baseline.
+                return currency.format(i * 1.37).replaceAll("\\.00","");
+            }
+        });
+        cases.add(new Case("romanNumeralize")
+        {
+            @Override
+            protected Object call(int i)
+            {
+                return ChatManager.romanNumeralize(i % 10 + 1);
+            }
+        });
+
+        if(enchants != null)
+        {
+            final ItemStack sword = new ItemStack(Material.DIAMOND_SWORD);
+            sword.addUnsafeEnchantment(enchants[0].ENCHANT,enchants[0].LVL);
+            cases.add(new Case("MOTforEnchanted")
+            {
+                @Override
+                protected Object call(int i)
+                {
+                    //A negative lot is never cached, so the tooltip is built every time.
+                    return PLUGIN.CM.MOTforEnchanted("Sword",-1,sword);
+                }
+            });
+        }
+        return cases;
+    }
+
+    /**
+     * One benchmark: a call to measure, and the measurements so far.
+     */
+    protected abstract class Case
+    {
+        /** The name of the case. **/
+        protected final String NAME;
+        /** The time per call of each measured batch, in nanoseconds. **/
+        protected final Histogram BATCHES = new Histogram();
+
+        /** The number of calls in each batch; grows until a batch takes {@link #BATCH_NANOS}. **/
+        protected int batch = 1;
+        /** The time spent warming up so far, in nanoseconds. **/
+        protected long warmed = 0;
+        /** The time spent measuring so far, in nanoseconds. **/
+        protected long measured = 0;
+        /** The number of calls measured so far. **/
+        protected long calls = 0;
+        /** The argument to the next call. **/
+        protected int next = 0;
+
+        /**
+         * @param name  The name of the case.
+         */
+        protected Case(String name)
+        {
+            NAME = name;
+        }
+
+        /**
+         * The call being measured.
+         *
+         * @param i The number of the call, for varying its input.
+         * @return  The result of the call.
+         */
+        protected abstract Object call(int i);
+
+        /**
+         * @return  Whether the case has been measured for long enough.
+         */
+        protected boolean done()
+        {
+            return measured >= MEASURE_MS * 1000000;
+        }
+
+        /**
+         * Run one batch of calls, counting it toward the warmup or the measurement.
+         */
+        protected void batch()
+        {
+            long start = System.nanoTime();
+            for(int i = 0; i < batch; i ++)
+                if(call(next ++) == null)
+                    nulls ++;
+            long took = System.nanoTime() - start;
+
+            if(warmed < WARMUP_MS * 1000000)
+            {
+                warmed += took;
+                if(took < BATCH_NANOS && batch < Integer.MAX_VALUE / 2)
+                    batch *= 2;
+                return;
+            }
+            measured += took;
+            calls += batch;
+            BATCHES.record(took / batch);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.niusworks.chatshop.managers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.MarketCategory;
+
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+
+/**
+ * Manages market announcements for OC Network's ChatShop.
+ * <br>
+ * When "chat.broadcast-offers" is enabled, every new or changed listing is
+ * announced to the whole server. Rather than sending each announcement as it
+ * happens, announcements are gathered for "chat.broadcast-window" milliseconds
+ * and then sent together as a single message:
+ * <ul>
+ * <li>All of one seller's offers are merged into a single line.
+ * <li>A later offer for the same item (or lot) replaces an earlier one, so a
+ *     player who reprices the same thing several times only announces the
+ *     final price, compared against the price before the first change.
+ * </ul>
+ * A window of 0 disables gathering, and every offer is announced immediately.
+ * <br><br>
+ * Players may choose which {@link MarketCategory categories} of offers they
+ * hear about, via /chatshop broadcasts. Each online player holds a numbered
+ * slot, and each category keeps a bitset of the slots subscribed to it, so
+ * that announcements are sent only to interested players.
+ * <br><br>
+ * This class is only used from the main server thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class BroadcastManager
+{
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** Pending offers, stored as seller UUID => (item key => offer), in order of arrival. **/
+    protected final LinkedHashMap<UUID,LinkedHashMap<String,Offer>> PENDING =
+            new LinkedHashMap<UUID,LinkedHashMap<String,Offer>>();
+
+    /** The last known name of each seller with pending offers. **/
+    protected final Map<UUID,String> NAMES = new LinkedHashMap<UUID,String>();
+
+    /** Whether a flush has been scheduled for the current window. **/
+    protected boolean scheduled = false;
+
+    /**
+     * Characters used to store a subscription mask as a single player flag,
+     * indexed by mask. None of these need escaping in a query.
+     */
+    protected static final String MASK_CHARS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz+-";
+
+    /** Online players by slot. A slot is held from join to quit; empty slots are null. **/
+    protected final ArrayList<Player> SLOTS = new ArrayList<Player>();
+
+    /** The slot of each online player, by UUID. **/
+    protected final HashMap<UUID,Integer> SLOT_OF = new HashMap<UUID,Integer>();
+
+    /** Empty slots, to be reused before the slot list grows. **/
+    protected final BitSet FREE = new BitSet();
+
+    /** For each {@link MarketCategory}, by ordinal, the slots of subscribed players. **/
+    protected final BitSet[] SUBSCRIBERS = new BitSet[MarketCategory.values().length];
+
+    /**
+     * Create a BroadcastManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public BroadcastManager(ChatShop master)
+    {
+        PLUGIN = master;
+        for(int i = 0; i < SUBSCRIBERS.length; i ++)
+            SUBSCRIBERS[i] = new BitSet();
+    }
+
+    /**
+     * Announce an offer for a non-enchanted item.
+     *
+     * @param seller    The owner of the listing.
+     * @param merch     The item offered.
+     * @param item      The display name of the item.
+     * @param quantity  The total quantity now offered.
+     * @param added     The quantity just added to an existing listing, or 0.
+     * @param price     The new price each.
+     * @param oldPrice  The previous price each, or -1 if this is a new listing.
+     */
+    public void announce(OfflinePlayer seller, ItemStack merch, String item,
+            int quantity, int added, double price, double oldPrice)
+    {
+        submit(seller,merch.getType() + ":" + merch.getDurability(),new Offer(
+                MarketCategory.of(merch),new TextComponent(PLUGIN.CM.color("item") + item),
+                quantity,added,price,oldPrice));
+    }
+
+    /**
+     * Announce an offer for an enchanted lot.
+     *
+     * @param seller    The owner of the lot.
+     * @param lot       The lot number.
+     * @param item      The item name, with its tooltip attached.
+     * @param price     The new price.
+     * @param oldPrice  The previous price, or -1 if this is a new lot.
+     */
+    public void announce(OfflinePlayer seller, int lot, BaseComponent item, double price, double oldPrice)
+    {
+        submit(seller,"#" + lot,new Offer(MarketCategory.ENCHANTED,item,-1,0,price,oldPrice));
+    }
+
+    /**
+     * Send all pending announcements immediately.
+     * Called when the window closes, and on shutdown.
+     */
+    public void flush()
+    {
+        scheduled = false;
+        if(PENDING.isEmpty())
+            return;
+        deliver(PENDING,NAMES);
+        PENDING.clear();
+        NAMES.clear();
+    }
+
+    /**
+     * Register an online player for announcements, restoring their
+     * saved subscriptions. Called when a player joins.
+     *
+     * @param usr   The player.
+     */
+    public void join(Player usr)
+    {
+        int mask = MASK_CHARS.indexOf(PLUGIN.DB.getPlayerFlag(usr,4));
+        if(mask < 0)
+            mask = MarketCategory.ALL;
+
+        Integer slot = SLOT_OF.get(usr.getUniqueId());
+        if(slot == null)
+        {
+            slot = FREE.nextSetBit(0);
+            if(slot < 0)
+            {
+                slot = SLOTS.size();
+                SLOTS.add(usr);
+            }
+            else
+            {
+                FREE.clear(slot);
+                SLOTS.set(slot,usr);
+            }
+            SLOT_OF.put(usr.getUniqueId(),slot);
+        }
+        setBits(slot,mask);
+    }
+
+    /**
+     * Release an online player's slot. Called when a player quits.
+     *
+     * @param usr   The player.
+     */
+    public void quit(Player usr)
+    {
+        Integer slot = SLOT_OF.remove(usr.getUniqueId());
+        if(slot == null)
+            return;
+        setBits(slot,0);
+        SLOTS.set(slot,null);
+        FREE.set(slot);
+    }
+
+    /**
+     * Get the categories of announcements which the specified player receives.
+     *
+     * @param usr   An online player.
+     * @return      A mask of {@link MarketCategory#bit()}s.
+     */
+    public int getSubscriptions(Player usr)
+    {
+        Integer slot = SLOT_OF.get(usr.getUniqueId());
+        if(slot == null)
+            return 0;
+        int mask = 0;
+        for(MarketCategory cat : MarketCategory.values())
+            if(SUBSCRIBERS[cat.ordinal()].get(slot))
+                mask |= cat.bit();
+        return mask;
+    }
+
+    /**
+     * Change and save the categories of announcements which the specified player receives.
+     * The mask is stored in player flag 4; see Player Flags Reference.txt.
+     *
+     * @param usr   An online player.
+     * @param mask  A mask of {@link MarketCategory#bit()}s.
+     */
+    public void setSubscriptions(Player usr, int mask)
+    {
+        mask &= MarketCategory.ALL;
+        PLUGIN.DB.writePlayerFlag(usr,4,(mask == MarketCategory.ALL ? ' ' : MASK_CHARS.charAt(mask)));
+        Integer slot = SLOT_OF.get(usr.getUniqueId());
+        if(slot != null)
+            setBits(slot,mask);
+    }
+
+    /**
+     * Set the subscription bits of a single slot.
+     *
+     * @param slot  The slot.
+     * @param mask  A mask of {@link MarketCategory#bit()}s.
+     */
+    protected void setBits(int slot, int mask)
+    {
+        for(MarketCategory cat : MarketCategory.values())
+            SUBSCRIBERS[cat.ordinal()].set(slot,(mask & cat.bit()) != 0);
+    }
+
+    /**
+     * Queue an offer, merging it with any pending offer for the same seller and key.
+     *
+     * @param seller    The owner of the listing.
+     * @param key       A key identifying the listing.
+     * @param offer     The offer.
+     */
+    protected void submit(OfflinePlayer seller, String key, Offer offer)
+    {
+        if(!PLUGIN.getConfig().getBoolean("chat.broadcast-offers"))
+            return;
+
+        long window = PLUGIN.getConfig().getLong("chat.broadcast-window",0);
+        if(window <= 0)
+        {
+            LinkedHashMap<String,Offer> single = new LinkedHashMap<String,Offer>();
+            single.put(key,offer);
+            deliver(Collections.singletonMap(seller.getUniqueId(),single),
+                    Collections.singletonMap(seller.getUniqueId(),seller.getName()));
+            return;
+        }
+
+        LinkedHashMap<String,Offer> offers = PENDING.get(seller.getUniqueId());
+        if(offers == null)
+        {
+            offers = new LinkedHashMap<String,Offer>();
+            PENDING.put(seller.getUniqueId(),offers);
+        }
+        NAMES.put(seller.getUniqueId(),seller.getName());
+
+        Offer previous = offers.get(key);
+        offers.put(key,previous == null ? offer : offer.supersede(previous));
+
+        if(!scheduled)
+        {
+            scheduled = true;
+            PLUGIN.getServer().getScheduler().runTaskLater(PLUGIN,new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    flush();
+                }
+            },Math.max(window / 50,1));
+        }
+    }
+
+    /**
+     * Send the specified offers to every player subscribed to any of their categories,
+     * and to the console.
+     * <br>
+     * The recipients are the union of the subscriber sets of the categories present.
+     * Each recipient is sent one message containing only the offers they want;
+     * recipients who want the same categories share the same rendered message.
+     *
+     * @param pending   Offers, stored as seller UUID => (item key => offer).
+     * @param names     Seller names, by UUID.
+     */
+    protected void deliver(Map<UUID,LinkedHashMap<String,Offer>> pending, Map<UUID,String> names)
+    {
+        int present = 0;
+        for(LinkedHashMap<String,Offer> offers : pending.values())
+            for(Offer offer : offers.values())
+                present |= offer.CATEGORY.bit();
+
+        BitSet recipients = new BitSet();
+        for(MarketCategory cat : MarketCategory.values())
+            if((present & cat.bit()) != 0)
+                recipients.or(SUBSCRIBERS[cat.ordinal()]);
+
+        HashMap<Integer,TextComponent> rendered = new HashMap<Integer,TextComponent>();
+        for(int slot = recipients.nextSetBit(0); slot >= 0; slot = recipients.nextSetBit(slot + 1))
+        {
+            int mask = 0;
+            for(MarketCategory cat : MarketCategory.values())
+                if(SUBSCRIBERS[cat.ordinal()].get(slot))
+                    mask |= cat.bit();
+            mask &= present;
+
+            TextComponent msg = rendered.get(mask);
+            if(msg == null)
+            {
+                msg = render(pending,names,mask);
+                rendered.put(mask,msg);
+            }
+            SLOTS.get(slot).spigot().sendMessage(msg);
+        }
+
+        PLUGIN.getServer().getConsoleSender().sendMessage(
+                render(pending,names,present).toLegacyText());
+    }
+
+    /**
+     * Render the offers in the specified categories as one message, one line per seller.
+     *
+     * @param pending   Offers, stored as seller UUID => (item key => offer).
+     * @param names     Seller names, by UUID.
+     * @param mask      The categories to include.
+     * @return          The message.
+     */
+    protected TextComponent render(Map<UUID,LinkedHashMap<String,Offer>> pending, Map<UUID,String> names, int mask)
+    {
+        TextComponent msg = new TextComponent("");
+        boolean first = true;
+        for(Map.Entry<UUID,LinkedHashMap<String,Offer>> seller : pending.entrySet())
+        {
+            ArrayList<Offer> wanted = new ArrayList<Offer>();
+            for(Offer offer : seller.getValue().values())
+                if((mask & offer.CATEGORY.bit()) != 0)
+                    wanted.add(offer);
+            if(wanted.isEmpty())
+                continue;
+
+            if(!first)
+                msg.addExtra(new TextComponent("\n"));
+            first = false;
+            for(BaseComponent part : line(names.get(seller.getKey()),wanted))
+                msg.addExtra(part);
+        }
+        return msg;
+    }
+
+    /**
+     * Render one seller's line, e.g. "Notch is selling 64 Stone for $1 each, 5 Dirt for $2 each."
+     *
+     * @param seller    The seller's name.
+     * @param offers    The seller's offers, at least one.
+     * @return          The components of the line.
+     */
+    protected BaseComponent[] line(String seller, ArrayList<Offer> offers)
+    {
+        String textCol = PLUGIN.CM.color("text");
+        String qtyCol = PLUGIN.CM.color("quantity");
+        String priceCol = PLUGIN.CM.color("price");
+
+        ArrayList<BaseComponent> parts = new ArrayList<BaseComponent>();
+        parts.add(new TextComponent(PLUGIN.CM.PREFIX +
+                PLUGIN.CM.color("player") + seller +
+                textCol + " is selling "));
+        for(int i = 0; i < offers.size(); i ++)
+        {
+            Offer offer = offers.get(i);
+            if(i > 0)
+                parts.add(new TextComponent(textCol + ", "));
+
+            if(offer.QUANTITY >= 0)
+                parts.add(new TextComponent(qtyCol + ChatManager.format(offer.QUANTITY) + " " +
+                    (offer.isRestock() ? ChatColor.GREEN + "(\u25B2" + offer.ADDED + ") " : "")));
+            parts.add(offer.ITEM);
+
+            String tail = textCol + " for " + priceCol + ChatManager.format(offer.PRICE);
+            if(offer.OLD_PRICE >= 0 && offer.PRICE > offer.OLD_PRICE)
+                tail += " " + ChatColor.RED + "(\u25B2" + ChatManager.format(offer.PRICE - offer.OLD_PRICE) + ")";
+            else if(offer.OLD_PRICE >= 0 && offer.PRICE < offer.OLD_PRICE)
+                tail += " " + ChatColor.GREEN + "(\u25BC" + ChatManager.format(offer.OLD_PRICE - offer.PRICE) + ")";
+            if(offer.QUANTITY >= 0)
+                tail += textCol + " each";
+            parts.add(new TextComponent(tail));
+        }
+        parts.add(new TextComponent(textCol + "."));
+        return parts.toArray(new BaseComponent[parts.size()]);
+    }
+
+    /**
+     * A single pending announcement.
+     */
+    protected static class Offer
+    {
+        /** The category of the item. **/
+        public final MarketCategory CATEGORY;
+        /** The item name component. **/
+        public final BaseComponent ITEM;
+        /** The quantity now listed, or -1 for enchanted lots. **/
+        public final int QUANTITY;
+        /** The quantity added to an existing listing, or 0. **/
+        public final int ADDED;
+        /** The new price. **/
+        public final double PRICE;
+        /** The price before this offer, or -1 for a new listing. **/
+        public final double OLD_PRICE;
+
+        /**
+         * Create an offer.
+         *
+         * @param category  The category of the item.
+         * @param item      The item name component.
+         * @param quantity  The quantity now listed, or -1 for enchanted lots.
+         * @param added     The quantity added to an existing listing, or 0.
+         * @param price     The new price.
+         * @param oldPrice  The price before this offer, or -1 for a new listing.
+         */
+        public Offer(MarketCategory category, BaseComponent item, int quantity, int added, double price, double oldPrice)
+        {
+            CATEGORY = category;
+            ITEM = item;
+            QUANTITY = quantity;
+            ADDED = added;
+            PRICE = price;
+            OLD_PRICE = oldPrice;
+        }
+
+        /**
+         * @return  Whether this offer added stock to an existing listing.
+         */
+        public boolean isRestock()
+        {
+            return OLD_PRICE >= 0 && ADDED > 0;
+        }
+
+        /**
+         * Combine this offer with an earlier, still pending offer for the same listing.
+         * The result shows this offer's quantity and price, compared against
+         * the state before the earlier offer.
+         *
+         * @param earlier   The offer being replaced.
+         * @return          The combined offer.
+         */
+        public Offer supersede(Offer earlier)
+        {
+            return new Offer(CATEGORY,ITEM,QUANTITY,ADDED + earlier.ADDED,PRICE,earlier.OLD_PRICE);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.niusworks.chatshop.managers;
+
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+
+/**
+ * Follows changes made to the market by other servers for OC Network's ChatShop.
+ * <br>
+ * Several servers may share one ChatShop database. Each server keeps some of the
+ * database in memory: {@link DatabaseManager} keeps snapshots of the market, and
+ * {@link BroadcastManager} keeps the subscriptions of online players. Every change
+ * to a listing or player flag is therefore also appended to the ChatShop_changes
+ * table, in the same transaction as the change itself, and this manager reads that
+ * table every "change-poll-interval" milliseconds so that the copies in memory can
+ * be refreshed.
+ * <br><br>
+ * Old entries are pruned from the table hourly.
+ * <br><br>
+ * This class is only used from the main server thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class ChangeManager
+{
+    /** The number of ticks between prunings of the change log. **/
+    protected static final long PRUNE_TICKS = 20 * 60 * 60;
+
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The repeating poll task, or null if not running. **/
+    protected BukkitTask poll;
+
+    /** The repeating prune task, or null if not running. **/
+    protected BukkitTask prune;
+
+    /**
+     * Create a ChangeManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public ChangeManager(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+
+    /** Begin polling for changes, and pruning the change log. **/
+    public void start()
+    {
+        long ticks = Math.max(1,PLUGIN.getConfig().getLong("change-poll-interval",1000) / 50);
+        poll = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("changes",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                poll();
+            }
+        }),ticks,ticks);
+        prune = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("prune",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                PLUGIN.DB.pruneChanges();
+            }
+        }),0,PRUNE_TICKS);
+    }
+
+    /** Stop polling and pruning. **/
+    public void stop()
+    {
+        if(poll != null)
+        {
+            poll.cancel();
+            poll = null;
+        }
+        if(prune != null)
+        {
+            prune.cancel();
+            prune = null;
+        }
+    }
+
+    /**
+     * Read the changes made by other servers since the last poll.
+     * {@link DatabaseManager} has already dropped its own stale snapshots by the time
+     * they are returned here; what remains is to refresh the subscriptions of any
+     * online player whose flags were changed.
+     *
+     * @return  The number of books and players changed, or -1 on SQL fail.
+     */
+    public int poll()
+    {
+        String[] changed = PLUGIN.DB.pollChanges();
+        if(changed == null)
+            return -1;
+
+        for(String key : changed)
+        {
+            //Player -1 holds the general freeze, which is never kept in memory.
+            if(!key.startsWith("player:") || key.equals("player:-1"))
+                continue;
+            Player usr = PLUGIN.getServer().getPlayer(UUID.fromString(key.substring(7)));
+            if(usr != null)
+                PLUGIN.BM.join(usr);
+        }
+        return changed.length;
+    }
+}
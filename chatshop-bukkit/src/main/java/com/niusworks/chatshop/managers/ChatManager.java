@@ -1,7 +1,7 @@
 package com.niusworks.chatshop.managers;
 
-import java.text.NumberFormat;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -15,6 +15,9 @@ import org.bukkit.inventory.meta.EnchantmentStorageMeta;
 import com.niusworks.chatshop.ChatShop;
 import com.niusworks.chatshop.constructs.EListing;
 import com.niusworks.chatshop.constructs.Listing;
+import com.niusworks.chatshop.core.NumberFormatter;
+import com.niusworks.chatshop.core.Numerals;
+import com.niusworks.chatshop.core.Pages;
 
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.chat.BaseComponent;
@@ -43,11 +46,15 @@ public class ChatManager
     /** A list of colors used in chat messages, stored as name => formatString. **/
     protected final HashMap<String,String> COLORS = new HashMap<String,String>();
     
-    /** A decimal formatter, used for {@link #format(double)}. **/
-    protected static final NumberFormat DFORMAT = NumberFormat.getCurrencyInstance();
+    /** Maximum number of enchanted lot tooltips to keep; 0 disables caching. **/
+    protected final int TOOLTIP_CACHE_SIZE;
     
-    /** An integer formatter, used for {@link #format(int)}. **/
-    protected static final NumberFormat IFORMAT = NumberFormat.getIntegerInstance();
+    /**
+     * Prebuilt enchanted lot tooltips, stored as lot => hover contents and
+     * kept in least-recently-used order. See {@link #MOTforEnchanted}.
+     * All access must be synchronized on this map.
+     */
+    protected final LinkedHashMap<Integer,BaseComponent[]> TOOLTIPS;
     
     /**
      * Create an ItemManager with a reference to the master
@@ -74,6 +81,20 @@ public class ChatManager
                 }
                 catch(IllegalArgumentException e){/* do nothing */}
         COLORS.put("prefix",ChatColor.valueOf(cfg.getString("chat.prefix.color")).toString());
+        
+        // Enchanted lots never change apart from their price, which is not
+        // part of the tooltip, so tooltips may be kept until the lot is gone.
+        TOOLTIP_CACHE_SIZE = Math.max(cfg.getInt("chat.tooltip-cache-size",256),0);
+        TOOLTIPS = new LinkedHashMap<Integer,BaseComponent[]>(16,0.75f,true)
+        {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,BaseComponent[]> eldest)
+            {
+                return size() > TOOLTIP_CACHE_SIZE;
+            }
+        };
     }
     
     /**
@@ -113,10 +134,7 @@ public class ChatManager
      */
     public static String format(double price,boolean includeDollar)
     {
-        String ret = DFORMAT.format(price).replaceAll("\\.00","");
-        if(!includeDollar)
-            return ret.replaceAll("\\$","");
-        return ret;
+        return NumberFormatter.money(price,includeDollar);
     }
     
     /**
@@ -128,22 +146,7 @@ public class ChatManager
      */
     public static String romanNumeralize(int x)
     {
-        String out = "";
-        while(x >= 1000){out += "M"; x -= 1000;}    //M = 1000
-        if(x >= 900){out += "CM"; x -= 900;}        //CM = 900
-        while(x >= 500){out += "D"; x -= 500;}      //D = 500
-        if(x >= 400){out += "CD"; x -= 400;}        //CD = 400
-        while(x >= 100){out += "C"; x -= 100;}      //C = 100
-        if(x >= 90){out += "XC"; x -= 90;}          //XC = 90
-        while(x >= 50){out += "L"; x -= 50;}        //L = 50
-        if(x >= 40){out += "XL"; x -= 40;}          //XL = 40
-        while(x >= 10){out += "X"; x -= 10;}        //X = 10
-        if(x >= 9){out += "IX"; x -= 9;}            //IX = 9
-        while(x >= 5){out +="V"; x -= 5;}           //V = 5
-        if(x >= 4){out += "IV"; x -= 4;}            //IV = 4
-        while(x >= 1){out += "I"; x -= 1;}          //I = 1
-        
-        return out;
+        return Numerals.roman(x);
     }
     
     /**
@@ -154,41 +157,7 @@ public class ChatManager
      */
     public static int deRomanNumeralize(String x)
     {
-        int out = 0;
-        for(int i = 0; i < x.length(); i ++)
-        {
-            boolean isEnd = (i == x.length() - 1);
-            char next = '~';
-            if(!isEnd)
-                next = x.charAt(i + 1);
-            switch(x.charAt(i))
-            {
-                case 'M':   out += 1000;    break;
-                case 'D':   out += 500;     break;
-                case 'C':   switch(next)
-                            {
-                                case 'M':   out += 900; i++; continue;
-                                case 'D':   out += 400; i++; continue;
-                            }
-                            out += 100;     break;
-                case 'L':   out += 50;      break;
-                case 'X':   switch(next)
-                            {
-                                case 'C':   out += 90; i++; continue;
-                                case 'L':   out += 40; i++; continue;
-                            }
-                            out += 10;      break;
-                case 'V':   out += 5;       break;
-                case 'I':   switch(next)
-                            {
-                                case 'X':   out += 9; i++; continue;
-                                case 'V':   out += 4; i++; continue;
-                            }
-                            out += 1;       break;
-                default:    return -1;
-            }
-        }
-        return out;
+        return Numerals.deRoman(x);
     }
     
     /**
@@ -199,7 +168,7 @@ public class ChatManager
      */
     public static String format(int qty)
     {
-        return IFORMAT.format(qty);
+        return NumberFormatter.quantity(qty);
     }
     
     
@@ -225,35 +194,8 @@ public class ChatManager
      *                  the config file.
      */
     public Listing[] paginate(Listing[] available, int pageNum)
-    {        
-        //Convert from natural page number to index
-        pageNum --;
-        
-        //Get configured number of lines per page
-        int listingsPerPage = PLUGIN.getConfig().getInt("chat.page-length");
-        
-        //Determine total number of possible pages
-        int pagesAvailable = getPaginationSize(available);
-        
-        //Prevent asking for a nonexistent page
-        if(pageNum >= pagesAvailable)
-            pageNum = pagesAvailable - 1;
-        if(pageNum < 0)
-            pageNum = 0;
-        
-        int startIndex = pageNum * listingsPerPage;
-        
-        //Determine how many listings are on this page
-        //(in case of last page)
-        int qty = Math.min(
-            available.length - startIndex,
-            listingsPerPage);
-        
-        Listing[] res = new Listing[qty];
-        for(int i = startIndex; i < startIndex + listingsPerPage && i < available.length; i++)
-            res[i - startIndex] = available[i];
-        
-        return res;
+    {
+        return Pages.page(available,PLUGIN.getConfig().getInt("chat.page-length"),pageNum);
     }
     
     /**
@@ -268,35 +210,8 @@ public class ChatManager
      *                  the config file.
      */
     public EListing[] paginate(EListing[] available, int pageNum)
-    {        
-        //Convert from natural page number to index
-        pageNum --;
-        
-        //Get configured number of lines per page
-        int listingsPerPage = PLUGIN.getConfig().getInt("chat.page-length");
-        
-        //Determine total number of possible pages
-        int pagesAvailable = getPaginationSize(available);
-        
-        //Prevent asking for a nonexistent page
-        if(pageNum >= pagesAvailable)
-            pageNum = pagesAvailable - 1;
-        if(pageNum < 0)
-            pageNum = 0;
-        
-        int startIndex = pageNum * listingsPerPage;
-        
-        //Determine how many listings are on this page
-        //(in case of last page)
-        int qty = Math.min(
-            available.length - startIndex,
-            listingsPerPage);
-        
-        EListing[] res = new EListing[qty];
-        for(int i = startIndex; i < startIndex + listingsPerPage && i < available.length; i++)
-            res[i - startIndex] = available[i];
-        
-        return res;
+    {
+        return Pages.page(available,PLUGIN.getConfig().getInt("chat.page-length"),pageNum);
     }
     
     /**
@@ -334,32 +249,8 @@ public class ChatManager
      *                     the config file.
      */
     public String[] paginate(String[] available, int linesPerPage, int pageNum)
-    {        
-        //Convert from natural page number to index
-        pageNum --;
-        
-        //Determine total number of possible pages
-        int pagesAvailable = getPaginationSize(available,linesPerPage);
-        
-        //Prevent asking for a nonexistent page
-        if(pageNum >= pagesAvailable)
-            pageNum = pagesAvailable - 1;
-        if(pageNum < 0)
-            pageNum = 0;
-        
-        int startIndex = pageNum * linesPerPage;
-        
-        //Determine how many listings are on this page
-        //(in case of last page)
-        int qty = Math.min(
-            available.length - startIndex,
-            linesPerPage);
-        
-        String[] res = new String[qty];
-        for(int i = startIndex; i < startIndex + linesPerPage && i < available.length; i++)
-            res[i - startIndex] = available[i];
-        
-        return res;
+    {
+        return Pages.page(available,linesPerPage,pageNum);
     }
     
     /**
@@ -395,10 +286,7 @@ public class ChatManager
      */
     public int getPaginationSize(Object[] available, int linesPerPage)
     {
-        double fpa = ((double)available.length) / linesPerPage;
-        int pagesAvailable = ((int)fpa) +
-            (fpa % 1.00 == 0 ? 0 : 1);
-        return pagesAvailable;
+        return Pages.count(available.length,linesPerPage);
     }
     
     /**
@@ -424,6 +312,94 @@ public class ChatManager
      * @return              A working chunk of text with a mouseover attached.
      */
     public TextComponent MOTforEnchanted(String mot,int lot,ItemStack merchandise,boolean omitLotNumber)
+    {
+        //Only real, numbered lots are cached; previews use a negative lot
+        //  and history entries use transaction IDs with the lot omitted.
+        boolean cacheable = !omitLotNumber && lot > 0 && TOOLTIP_CACHE_SIZE > 0;
+        BaseComponent[] hover = null;
+        if(cacheable)
+            synchronized(TOOLTIPS)
+            {
+                hover = TOOLTIPS.get(lot);
+            }
+        if(hover == null)
+        {
+            hover = buildTooltip(lot,merchandise,omitLotNumber);
+            if(cacheable)
+                synchronized(TOOLTIPS)
+                {
+                    TOOLTIPS.put(lot,hover);
+                }
+        }
+        
+        return withTooltip(mot,hover);
+    }
+    
+    /**
+     * Construct mouse-over text for an enchanted item whose lot has just left the market,
+     * as when it is bought or cancelled. The tooltip is built without the cache, since
+     * the lot's entry has been forgotten (see {@link #forgetTooltip}) and must not
+     * be put back.
+     * 
+     * @param mot           The display text that will be moused over.
+     * @param lot           The lot number, for the first line of the tooltip.
+     * @param merchandise   The item for which to generate a tooltip.
+     * @return              A working chunk of text with a mouseover attached.
+     */
+    public TextComponent MOTforDelisted(String mot,int lot,ItemStack merchandise)
+    {
+        return withTooltip(mot,buildTooltip(lot,merchandise,false));
+    }
+    
+    /**
+     * @param mot           The display text that will be moused over.
+     * @param hover         The contents of the tooltip.
+     * @return              A working chunk of text with a mouseover attached.
+     */
+    protected static TextComponent withTooltip(String mot,BaseComponent[] hover)
+    {
+        TextComponent tc1 = new TextComponent();
+        tc1.setText(mot);
+        tc1.setHoverEvent(
+            new HoverEvent(net.md_5.bungee.api.chat.HoverEvent.Action.SHOW_TEXT,hover));
+        
+        return tc1;
+    }
+    
+    /**
+     * Discard the cached tooltip for the specified lot, if any.
+     * This must be called whenever a lot leaves the market.
+     * 
+     * @param lot   The lot number whose tooltip is no longer valid.
+     */
+    public void forgetTooltip(int lot)
+    {
+        synchronized(TOOLTIPS)
+        {
+            TOOLTIPS.remove(lot);
+        }
+    }
+    
+    /**
+     * Discard all cached tooltips, e.g. after a reload.
+     */
+    public void clearTooltips()
+    {
+        synchronized(TOOLTIPS)
+        {
+            TOOLTIPS.clear();
+        }
+    }
+    
+    /**
+     * Construct the hover contents of a tooltip for the provided enchanted item.
+     * 
+     * @param lot           The lot number, for the first line of the tooltip.
+     * @param merchandise   The item for which to generate a tooltip.
+     * @param omitLotNumber Whether to omit the lot number for this tooltip.
+     * @return              The hover contents.
+     */
+    protected BaseComponent[] buildTooltip(int lot,ItemStack merchandise,boolean omitLotNumber)
     {
         String attrColName = PLUGIN.getConfig().getString("chat.colors.attribute");
         String attCol = PLUGIN.CM.color("attribute");
@@ -479,13 +455,7 @@ public class ChatManager
                 dampercent = 1; // so that future newlines are not skipped.
         }
         
-        TextComponent tc1 = new TextComponent();
-        tc1.setText(mot);
-        tc1.setHoverEvent(
-            new HoverEvent(net.md_5.bungee.api.chat.HoverEvent.Action.SHOW_TEXT,
-                new BaseComponent[]{motext}));
-        
-        return tc1;
+        return new BaseComponent[]{motext};
     }
     
     /**
@@ -498,6 +468,16 @@ public class ChatManager
         PLUGIN.getLogger().info(message);
     }
     
+    /**
+     * Log a WARNING message.
+     * 
+     * @param message   The message to log.
+     */
+    public void warn(String message)
+    {
+        PLUGIN.getLogger().warning(message);
+    }
+    
     /**
      * Log a SEVERE message.
      * 
@@ -0,0 +1,2843 @@
+package com.niusworks.chatshop.managers;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.commands.Buy;
+import com.niusworks.chatshop.commands.Cancel;
+import com.niusworks.chatshop.commands.ECancel;
+import com.niusworks.chatshop.commands.EReprice;
+import com.niusworks.chatshop.commands.ESell;
+import com.niusworks.chatshop.commands.Reprice;
+import com.niusworks.chatshop.commands.Sell;
+import com.niusworks.chatshop.constructs.BuyPlan;
+import com.niusworks.chatshop.constructs.EListing;
+import com.niusworks.chatshop.constructs.EnchLvl;
+import com.niusworks.chatshop.constructs.Listing;
+import com.niusworks.chatshop.constructs.Payout;
+import com.niusworks.chatshop.constructs.Sale;
+import com.niusworks.chatshop.constructs.Tender;
+import com.niusworks.chatshop.core.Book;
+import com.niusworks.chatshop.core.Books;
+import com.niusworks.chatshop.core.EnchantCodec;
+import com.niusworks.chatshop.core.Fill;
+import com.niusworks.chatshop.core.Market;
+import com.niusworks.chatshop.core.MarketStore;
+import com.niusworks.chatshop.core.Matcher;
+import com.niusworks.chatshop.core.Trade;
+import com.niusworks.chatshop.core.WriteCounter;
+import com.niusworks.chatshop.utilities.CountingConnection;
+import com.niusworks.chatshop.utilities.Flight;
+import com.niusworks.chatshop.utilities.StripedLocks;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+
+/**
+ * Manages all database functionality for OC Network's ChatShop.
+ * <br>
+ * <b>No other class or plugin should interact with ChatShop's tables.</b>
+ * <br>
+ * This class manages the ChatShop's database connection, ensures the proper
+ * database schema, and generally protects the integrity of information in
+ * the database tables.
+ * <br>
+ * This class holds synchronization control over the database. This is massively
+ * important because it prevents corruption of database information and ensures that
+ * items and monies are not duplicated or destroyed.
+ * <br>
+ * Every operation which reads and then writes takes the lock for what it changes:
+ * the item (material and damage) for non-enchanted listings, the lot for enchanted
+ * listings, or the player for player flags. Operations which are a single statement
+ * need no lock, since each statement is atomic on its own. Operations spanning several
+ * items, such as /dump, take all of their locks at once through {@link #lockBooks}.
+ * The locks keep such operations from interleaving; they do not let operations run
+ * in parallel, since every statement goes through the one connection.
+ * <br>
+ * That connection is shared by every caller, whichever thread it runs on.
+ * A transaction on it is held, from its beginning until it commits or rolls back,
+ * under {@link #CONNECTION}, as is every statement outside a transaction. Callers
+ * working under different locks therefore never share a transaction, and one
+ * caller's commit or rollback never ends another's.
+ * <br>
+ * These locks only hold within one server. Where several servers share the database,
+ * every listing also carries a version, and every read-modify-write of a listing is
+ * conditional on the version it read; a write that loses to another server changes
+ * nothing and is retried (see {@link #CONFLICT_ATTEMPTS}). Purchases, which change
+ * several listings, are made in a single transaction, which contains only the
+ * purchase's own statements (see {@link #CONNECTION}).
+ * @author ObsidianCraft Staff
+ */
+public class DatabaseManager implements MarketStore<Listing>
+{
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+    
+    /** The database connection. **/
+    protected Connection connect;
+    
+    /**
+     * Held by the thread using {@link #connect}: for the whole of a transaction, from
+     * {@link #beginTransaction} to {@link #autoCommit}, and for each statement outside one.
+     * Always taken after any lock in {@link #LOCKS}, never before.
+     */
+    protected final ReentrantLock CONNECTION = new ReentrantLock();
+    
+    /**
+     * The connection to a read replica of the database, or null if none is configured.
+     * Read-only queries from commands which only look at the market may be served from
+     * here (see {@link #replicaAllowed}); trades, and the reads they rely on, always
+     * use {@link #connect}.
+     */
+    protected Connection replica;
+    
+    /**
+     * When each player last changed anything in the database, in milliseconds.
+     * A player who has just traded reads from the primary for a while, so that they
+     * see their own trade even if the replica has not caught up.
+     */
+    protected final ConcurrentHashMap<UUID,Long> LAST_WRITE = new ConcurrentHashMap<UUID,Long>();
+    
+    /**
+     * How long, in milliseconds, after their last trade a player's commands read from
+     * the primary, unless configured per command under "MySQL.replica.fresh-after-write".
+     */
+    protected static final long FRESH_AFTER_WRITE = 5000;
+    
+    /**
+     * A map of enchantment types (as defined by {@link org.bukkit.enchantments.Enchantment}) to
+     * (arbitrary) integer values, for the purpose of being able to refer to enchantments in an
+     * orderly fashion.
+     */
+    protected final HashMap<Enchantment,Integer> ENCHANTS = new HashMap<Enchantment,Integer>();
+    
+    /**
+     * The books of the market, read from this class's tables: the non-enchanted listings
+     * of an item (see {@link #bookKey}), the enchanted listings of a material (see
+     * {@link #enchKey}), and the listings of a seller (see {@link #sellerKey}). Every
+     * change to a listing is counted against each book it appears in (see
+     * {@link #beginWrite}), and the number of writes begun on a book serves as its version.
+     * <br>
+     * This lets a {@link BuyPlan} made when an order was quoted be trusted at /confirm,
+     * without searching the market again, and lets query commands such as /find, /efind,
+     * /stock, and /quote share snapshots without ever waiting on the locks held by trades.
+     * It relies on this class being the only writer of ChatShop's tables.
+     */
+    protected final Books<Listing> BOOKS = new Books<Listing>(this)
+    {
+        @Override
+        protected void hit()
+        {
+            PLUGIN.MM.hit("books");
+        }
+        
+        @Override
+        protected void miss()
+        {
+            PLUGIN.MM.miss("books");
+        }
+    };
+    
+    /** Buys non-enchanted items from {@link #BOOKS}, with this class carrying out each trade. **/
+    protected final Market<Listing> MARKET = new Market<Listing>(this,BOOKS)
+    {
+        @Override
+        protected void conflicted(String key)
+        {
+            DatabaseManager.this.conflicted("buy",key);
+        }
+    };
+    
+    /**
+     * The number of times to try a read-modify-write of listings before giving up,
+     * when another server sharing the database keeps changing them first.
+     * Each listing carries a version, which every change increases; writes are made
+     * conditional on the version that was read, so a conflicting change makes the
+     * write change nothing rather than overwrite it.
+     */
+    protected static final int CONFLICT_ATTEMPTS = Market.ATTEMPTS;
+    
+    /**
+     * Identifies this server in the change log, so that it can skip its own changes.
+     * Changes are logged in the same transaction as the change itself, and read back
+     * by every other server sharing the database (see {@link #pollChanges}).
+     */
+    protected final String NODE = UUID.randomUUID().toString();
+    
+    /** The sequence number of the latest change read from the change log. **/
+    protected long lastChange = 0;
+    
+    /**
+     * Sequence numbers skipped in the change log, mapped to when they were first skipped.
+     * A change whose transaction commits after a later one has already been read
+     * appears as a gap until it commits, so gaps are looked for again for a time.
+     */
+    protected final TreeMap<Long,Long> GAPS = new TreeMap<Long,Long>();
+    
+    /** How long, in milliseconds, to look for a skipped change before deciding it was rolled back. **/
+    protected static final long GAP_TIMEOUT = 10000;
+    
+    /** The largest jump in the change log for which each skipped sequence number is looked for. **/
+    protected static final int MAX_GAPS = 1000;
+    
+    /** The number of locks in {@link #LOCKS}. **/
+    protected static final int LOCK_STRIPES = 64;
+    
+    /**
+     * Locks guarding read-modify-write operations on the database.
+     * Non-enchanted listings are locked per item (see {@link #bookKey}), enchanted
+     * listings per lot ("lot:&lt;id&gt;"), and player flags per player ("player:&lt;uuid&gt;").
+     */
+    protected final StripedLocks LOCKS = new StripedLocks(LOCK_STRIPES);
+    
+    /**
+     * The configuration section of the database this manager connects to: "MySQL" for
+     * the market's own, or another, such as that of load test replays (see {@link LoadTestManager}).
+     */
+    protected final String SECTION;
+    
+    /**
+     * Create an ItemManager with a reference to the master
+     * plugin.
+     * 
+     * @param master    The master ChatShop plugin reference.
+     */
+    public DatabaseManager(ChatShop master)
+    {
+        this(master,"MySQL");
+    }
+    
+    /**
+     * Create a DatabaseManager for a database other than the market's, configured under
+     * the specified section. Any connection setting not given there is the same as under
+     * "MySQL", except for the database itself, which is never the market's by default.
+     * 
+     * @param master    The master ChatShop plugin reference.
+     * @param section   The configuration section of the database.
+     */
+    public DatabaseManager(ChatShop master, String section)
+    {
+        PLUGIN = master;
+        SECTION = section;
+    }
+    
+    /**
+     * Connect to the database and perform any necessary setup.
+     * 
+     * @return  1 on success, 0 on fail.
+     */
+    @SuppressWarnings("unused")
+    public int initialize()
+    {
+        /* This is an arbitrary assignment of numbers to enchantment types.
+         * No other part of this plugin needs to refer to this, but DatabaseManager
+         * requires some orderly structure for storing and retrieving enchant types.
+         */
+        ENCHANTS.put(Enchantment.ARROW_DAMAGE,0);
+        ENCHANTS.put(Enchantment.ARROW_FIRE,1);
+        ENCHANTS.put(Enchantment.ARROW_INFINITE,2);
+        ENCHANTS.put(Enchantment.ARROW_KNOCKBACK,3);
+        ENCHANTS.put(Enchantment.BINDING_CURSE,4);
+        ENCHANTS.put(Enchantment.DAMAGE_ALL,5);
+        ENCHANTS.put(Enchantment.DAMAGE_ARTHROPODS,6);
+        ENCHANTS.put(Enchantment.DAMAGE_UNDEAD,7);
+        ENCHANTS.put(Enchantment.DEPTH_STRIDER,8);
+        ENCHANTS.put(Enchantment.DIG_SPEED,9);
+        ENCHANTS.put(Enchantment.DURABILITY,10);
+        ENCHANTS.put(Enchantment.FIRE_ASPECT,11);
+        ENCHANTS.put(Enchantment.FROST_WALKER,12);
+        ENCHANTS.put(Enchantment.KNOCKBACK,13);
+        ENCHANTS.put(Enchantment.LOOT_BONUS_BLOCKS,14);
+        ENCHANTS.put(Enchantment.LOOT_BONUS_MOBS,15);
+        ENCHANTS.put(Enchantment.LUCK,16);
+        ENCHANTS.put(Enchantment.LURE,17);
+        ENCHANTS.put(Enchantment.MENDING,18);
+        ENCHANTS.put(Enchantment.OXYGEN,19);
+        ENCHANTS.put(Enchantment.PROTECTION_ENVIRONMENTAL,20);
+        ENCHANTS.put(Enchantment.PROTECTION_EXPLOSIONS,21);
+        ENCHANTS.put(Enchantment.PROTECTION_FALL,22);
+        ENCHANTS.put(Enchantment.PROTECTION_FIRE,23);
+        ENCHANTS.put(Enchantment.PROTECTION_PROJECTILE,24);
+        ENCHANTS.put(Enchantment.SILK_TOUCH,25);
+        ENCHANTS.put(Enchantment.SWEEPING_EDGE,26);
+        ENCHANTS.put(Enchantment.THORNS,27);
+        ENCHANTS.put(Enchantment.VANISHING_CURSE,28);
+        ENCHANTS.put(Enchantment.WATER_WORKER,29);
+        
+        try
+        {
+            String user = setting("username","ChatSHop");
+            String password = setting("password","password");
+            String url = url();
+            
+            //Load the database driver, and connect.
+            PLUGIN.CM.log("Connecting to database " + url + "?user=" + user);
+            
+            Class.forName(setting("driver","com.mysql.jdbc.Driver"));
+            connect = CountingConnection.wrap(DriverManager.getConnection(url,user,password),PLUGIN.MM);
+            
+            //Verify database schema.
+            String query; int result;
+            query = "CREATE TABLE IF NOT EXISTS ChatShop_listings("
+                    + "id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "material VARCHAR(39) NOT NULL,"      //Current longest official item name
+                    + "damage INT NOT NULL,"
+                    + "seller VARCHAR(36) NOT NULL,"        //Minecraft UUID length
+                    + "sellerAlias VARCHAR(16) NOT NULL,"   //-- See below.
+                    + "price DECIMAL(10,2) NOT NULL,"
+                    + "enchantments VARCHAR(30),"           //30 different enchantments, used for E* commands
+                    + "itemName TEXT,"                      //For named items
+                    + "quantity INT NOT NULL,"
+                    + "version INT NOT NULL DEFAULT 0,"     //For conditional updates
+                    + "plain TINYINT GENERATED ALWAYS AS (CASE WHEN enchantments IS NULL THEN 1 END),"
+                    + "UNIQUE KEY plain_listing (seller,material,damage,plain)) ENGINE=INNODB";   //One listing per seller and item
+            result = update(query);
+            query = "CREATE TABLE IF NOT EXISTS ChatShop_transactions("
+                    + "id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "material VARCHAR(39) NOT NULL,"      //Current longest official item name
+                    + "damage INT NOT NULL,"
+                    + "seller VARCHAR(36) NOT NULL,"        //Minecraft UUID length
+                    + "sellerAlias VARCHAR(16) NOT NULL,"   //-- See below.
+                    + "buyer VARCHAR(36) NOT NULL,"         //Minecraft UUID length
+                    + "buyerAlias VARCHAR(16) NOT NULL,"    //-- See below.
+                    + "price DECIMAL(10,2) NOT NULL,"
+                    + "enchantments VARCHAR(30),"           //30 different enchantments, used for E* commands
+                    + "itemName TEXT,"                      //For named items
+                    + "quantity INT NOT NULL,"
+                    + "date TIMESTAMP NOT NULL DEFAULT NOW(),"
+                    + "journal VARCHAR(36),"                //JournalManager trade number
+                    + "INDEX seller_date (seller,date),"    //For sales summaries
+                    + "INDEX journal (journal)) ENGINE=INNODB";    //For finishing interrupted trades
+            result = update(query);
+            query = "CREATE TABLE IF NOT EXISTS ChatShop_players("
+                    + "entryIndex INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "uuid VARCHAR(36) NOT NULL,"          //Minecraft UUID length
+                    + "alias VARCHAR(16) NOT NULL,"         //-- See below.
+                    + "flags VARCHAR(5) NOT NULL,"
+                    + "lastSeen TIMESTAMP NULL DEFAULT NULL) ENGINE=INNODB";
+            result = update(query);
+            query = "CREATE TABLE IF NOT EXISTS ChatShop_payouts("
+                    + "id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "seller VARCHAR(36) NOT NULL,"        //Minecraft UUID length
+                    + "amount DECIMAL(15,2) NOT NULL,"
+                    + "date TIMESTAMP NOT NULL DEFAULT NOW(),"
+                    + "claim VARCHAR(36),"                  //LedgerManager settlement paying the entry, if any
+                    + "claimed TIMESTAMP NULL DEFAULT NULL) ENGINE=INNODB";
+            result = update(query);
+            query = "CREATE TABLE IF NOT EXISTS ChatShop_changes("
+                    + "seq BIGINT PRIMARY KEY AUTO_INCREMENT,"
+                    + "book VARCHAR(64) NOT NULL,"          //As in DatabaseManager#BOOKS
+                    + "origin VARCHAR(36) NOT NULL,"        //DatabaseManager#NODE of the changing server
+                    + "date TIMESTAMP NOT NULL DEFAULT NOW()) ENGINE=INNODB";
+            result = update(query);
+            
+            //Only changes made from now on are of interest.
+            query = "SELECT COALESCE(MAX(seq),0) AS seq FROM ChatShop_changes";
+            ResultSet res = select(connect,query);
+            res.next();
+            lastChange = res.getLong("seq");
+            
+            connectReplica();
+            /*
+             * sellerAlias, buyerAlias, and alias in these tables are Minecraft usernames.
+             * They serve two purposes: firstly, when Bukkit looks up playername by UUID
+             * for a player who has been offline for a very long time it will return null.
+             * In such cases -- and only then -- the database username is used.
+             * Secondly, these usernames make the database much more readable in either
+             * console or dump form, for administrators.
+             */
+        }
+        catch(ClassNotFoundException|SQLException e)
+        {
+            PLUGIN.getLogger().log(Level.SEVERE,"Failed to load database.",e);
+            e.printStackTrace();
+            return -1;
+        }
+        return 1;
+    }
+    
+    /**
+     * @return  The JDBC URL of this manager's database: the one configured in full,
+     *          such as for an embedded database when ChatShop is run headless,
+     *          or else one for MySQL, from the configured host, port and database.
+     */
+    public String url()
+    {
+        int port = PLUGIN.getConfig().getInt(SECTION + ".port",PLUGIN.getConfig().getInt("MySQL.port",3306));
+        String database = PLUGIN.getConfig().getString(SECTION + ".database","ChatShop");
+        String host = setting("host","localhost");
+        return PLUGIN.getConfig().getString(SECTION + ".url","jdbc:mysql://" + host + ":" + port + "/" + database);
+    }
+    
+    /**
+     * @param key   The name of a connection setting, such as "host".
+     * @param def   The setting's default.
+     * @return      The setting for this manager's database, or else for the market's.
+     */
+    protected String setting(String key, String def)
+    {
+        return PLUGIN.getConfig().getString(SECTION + "." + key,PLUGIN.getConfig().getString("MySQL." + key,def));
+    }
+    
+    /**
+     * Remove every listing, transaction, player, payout and change from the database,
+     * so that a load test replay begins from an empty market.
+     * This is refused for the market's own database.
+     * 
+     * @return  1 on success, -1 on SQL fail or if this is the market's database.
+     */
+    public int empty()
+    {
+        if(SECTION.equals("MySQL"))
+            return -1;
+        String query = "";
+        try
+        {
+            for(String table : new String[]{"ChatShop_listings","ChatShop_transactions","ChatShop_players",
+                    "ChatShop_payouts","ChatShop_changes"})
+            {
+                query = "DELETE FROM " + table;
+                update(query);
+            }
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return -1;
+        }
+        return 1;
+    }
+    
+    /**
+     * Connect to the read replica, if one is configured under "MySQL.replica".
+     * Only the market's own database may have a replica.
+     * Any connection setting not given for the replica is the same as for the primary.
+     * If the replica cannot be reached, all reads are made from the primary.
+     */
+    protected void connectReplica()
+    {
+        if(!SECTION.equals("MySQL") || !PLUGIN.getConfig().isConfigurationSection("MySQL.replica"))
+            return;
+        
+        String user = PLUGIN.getConfig().getString("MySQL.replica.username",setting("username","ChatSHop"));
+        String password = PLUGIN.getConfig().getString("MySQL.replica.password",setting("password","password"));
+        String url = replicaUrl();
+        
+        PLUGIN.CM.log("Connecting to read replica " + url + "?user=" + user);
+        try
+        {
+            Class.forName(PLUGIN.getConfig().getString("MySQL.replica.driver",setting("driver","com.mysql.jdbc.Driver")));
+            replica = CountingConnection.wrap(DriverManager.getConnection(url,user,password),PLUGIN.MM);
+            replica.setReadOnly(true);
+        }
+        catch(ClassNotFoundException|SQLException e)
+        {
+            PLUGIN.CM.severe("Could not connect to read replica; all reads will use the primary.");
+            e.printStackTrace();
+            replica = null;
+        }
+    }
+    
+    /**
+     * @return  The JDBC URL of the read replica: the one configured in full under
+     *          "MySQL.replica.url"; or else one for MySQL, if the replica's host, port
+     *          or database is configured, with any of them not given the same as the
+     *          primary's; or else the primary's own, as given by {@link #url}.
+     */
+    protected String replicaUrl()
+    {
+        if(PLUGIN.getConfig().isSet("MySQL.replica.url"))
+            return PLUGIN.getConfig().getString("MySQL.replica.url");
+        if(!PLUGIN.getConfig().isSet("MySQL.replica.host") && !PLUGIN.getConfig().isSet("MySQL.replica.port")
+                && !PLUGIN.getConfig().isSet("MySQL.replica.database"))
+            return url();
+        
+        int port = PLUGIN.getConfig().getInt("MySQL.replica.port",PLUGIN.getConfig().getInt("MySQL.port",3306));
+        String database = PLUGIN.getConfig().getString("MySQL.replica.database",PLUGIN.getConfig().getString("MySQL.database","ChatShop"));
+        String host = PLUGIN.getConfig().getString("MySQL.replica.host",PLUGIN.getConfig().getString("MySQL.host","localhost"));
+        return "jdbc:mysql://" + host + ":" + port + "/" + database;
+    }
+    
+    /**
+     * Determine whether a command may read from the replica on behalf of a player.
+     * Each command's policy is the time, in milliseconds, for which a player who has
+     * just traded must read from the primary instead, as configured under
+     * "MySQL.replica.fresh-after-write"; -1 means the command always reads from the primary.
+     * 
+     * @param usr       The player executing the command.
+     * @param command   The name of the command, such as "stock".
+     * @return          Whether the command may read from the replica.
+     */
+    public boolean replicaAllowed(Player usr, String command)
+    {
+        if(replica == null)
+            return false;
+        long fresh = PLUGIN.getConfig().getLong("MySQL.replica.fresh-after-write." + command,FRESH_AFTER_WRITE);
+        if(fresh < 0)
+            return false;
+        Long last = LAST_WRITE.get(usr.getUniqueId());
+        return last == null || System.currentTimeMillis() - last > fresh;
+    }
+    
+    /**
+     * Note that a player has just changed something in the database.
+     * 
+     * @param uuid      The player's UUID.
+     */
+    protected void wrote(String uuid)
+    {
+        LAST_WRITE.put(UUID.fromString(uuid),System.currentTimeMillis());
+    }
+    
+    /**
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              The connection to read from.
+     */
+    protected Connection reader(boolean useReplica)
+    {
+        return (useReplica && replica != null ? replica : connect);
+    }
+    
+    /**
+     * Retrieve the desired player flag from the database.
+     * Flags are indexed from left to right, so that index usage
+     * could be thought of as <code>flags.charAt(index)</code>.
+     * 
+     * @param user      The user to query.
+     * @param index     The index of the desired flag.
+     * @return          The char value of the flag, or ' ' if the
+     *                  flag was not defined. Returns ' ' on SQL fail.
+     */
+    public char getPlayerFlag(Player user,int index)
+    {
+        return getPlayerFlag(user.getUniqueId().toString(),index);
+    }
+    
+    /**
+     * Retrieve the desired player flag from the database.
+     * Flags are indexed from left to right, so that index usage
+     * could be thought of as <code>flags.charAt(index)</code>.
+     * 
+     * @param uuid      The user to query.
+     * @param index     The index of the desired flag.
+     * @return          The char value of the flag, or ' ' if the
+     *                  flag was not defined. Returns ' ' on SQL fail.
+     */
+    protected char getPlayerFlag(String uuid, int index)
+    {
+        String query = "";
+        if(index < 0)
+            return ' '; //Flag out of bounds
+        try
+        {
+            query = "SELECT flags FROM ChatShop_players "
+                + "WHERE uuid = '" + uuid + "'";
+            ResultSet res = select(connect,query);
+            
+            if(!res.next())
+                return ' '; //User hasn't been given flags yet
+            
+            String flags = "" + res.getString("flags");
+            if(index + 1 > flags.length())
+                return ' '; //Flag not defined
+            
+            char flag = flags.charAt(index);
+            
+            return flag;
+        }
+        catch (SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return ' ';
+        }
+    }
+    
+    /**
+     * Write the desired player flag to the database.
+     * Flags are indexed from left to right, so that index usage
+     * could be thought of as <code>flags.charAt(index)</code>.
+     * 
+     * @param user      The user to update.
+     * @param index     The index of the desired flag.
+     * @param newFlag   The new value of the flag.
+     */
+    public void writePlayerFlag(Player user, int index, char newFlag)
+    {
+        writePlayerFlag(user.getUniqueId().toString(),user.getName(),index,newFlag);
+    }
+    
+    /**
+     * Write the desired player flag to the database.
+     * Flags are indexed from left to right, so that index usage
+     * could be thought of as <code>flags.charAt(index)</code>.
+     * 
+     * @param uuid      The user to update.
+     * @param alias     The alias of the user in question.
+     * @param index     The index of the desired flag.
+     * @param newFlag   The new value of the flag.
+     */
+    protected void writePlayerFlag(String uuid, String alias, int index, char newFlag)
+    {
+        ReentrantLock lock = LOCKS.lock("player:" + uuid);
+        try
+        {
+            String query = "";
+            if(index < 0)
+                return; //Flag out of bounds
+            try
+            {            
+                query = "SELECT flags FROM ChatShop_players "
+                    + "WHERE uuid = '" + uuid + "'";
+                ResultSet res = select(connect,query);
+            
+                String oldFlags = "";
+                boolean hadEntry = false;
+                if(res.next())
+                {
+                    oldFlags = res.getString("flags");
+                    hadEntry = true;
+                }
+            
+                //Expand the flags integer to be wide enough to include
+                // the desired index.
+                while(oldFlags.length() < index + 1)
+                    oldFlags += ' ';
+            
+                //Write the desired flag
+                String out =
+                    oldFlags.substring(0,index) +
+                    newFlag +
+                    (index == oldFlags.length() + 1 ? "" : oldFlags.substring(index + 1));
+            
+                if(hadEntry)
+                    query = "UPDATE ChatShop_players "
+                        + "SET flags = '" + out + "' "
+                        + ", alias = '" + alias + "' "
+                        + "WHERE uuid = '" + uuid + "'";
+                else
+                    query = "INSERT INTO ChatShop_players (uuid,alias,flags) VALUES("
+                        + "'" + uuid + "',"
+                        + "'" + alias + "',"
+                        + "'" + out + "')";
+                @SuppressWarnings("unused")
+                int unused = write(query,playerKey(uuid));
+            }
+            catch (SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+                return; //SQL problem
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Record that the specified player was seen just now.
+     * Called when players join and leave, so that sales made while
+     * they were away can be summarized.
+     * 
+     * @param user  The user to update.
+     */
+    public void touchPlayer(Player user)
+    {
+        ReentrantLock lock = LOCKS.lock("player:" + user.getUniqueId());
+        try
+        {
+            String query = "";
+            try
+            {
+                query = "UPDATE ChatShop_players "
+                    + "SET lastSeen = NOW(), alias = '" + user.getName() + "' "
+                    + "WHERE uuid = '" + user.getUniqueId() + "'";
+                if(update(query) == 0)
+                {
+                    query = "INSERT INTO ChatShop_players (uuid,alias,flags,lastSeen) VALUES("
+                        + "'" + user.getUniqueId() + "',"
+                        + "'" + user.getName() + "',"
+                        + "'',NOW())";
+                    @SuppressWarnings("unused")
+                    int unused = update(query);
+                }
+            }
+            catch (SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Record that the specified players, who are online, were seen just now,
+     * in one statement. Called periodically, so that if the server stops without
+     * disabling ChatShop, sales made while they were online are not summarized
+     * to them again when they return.
+     * 
+     * @param users The users to update. Each must have been touched by {@link #touchPlayer}.
+     */
+    public void touchPlayers(Collection<? extends Player> users)
+    {
+        if(users.isEmpty())
+            return;
+        String query = "UPDATE ChatShop_players SET lastSeen = NOW() WHERE uuid IN (";
+        boolean first = true;
+        for(Player user : users)
+        {
+            query += (first ? "" : ",") + "'" + user.getUniqueId() + "'";
+            first = false;
+        }
+        query += ")";
+        try
+        {
+            update(query);
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Summarize everything the specified player sold since they were last seen,
+     * one {@link Sale} per kind of item.
+     * Enchanted items are summarized by material, regardless of enchantments.
+     * 
+     * @param user  The user whose sales to summarize.
+     * @return      The sales, largest earnings first. Empty if the player
+     *              has never been seen. Null on SQL fail.
+     */
+    public Sale[] getSalesSince(Player user)
+    {
+        String query = "";
+        try
+        {
+            query = "SELECT material, damage, enchantments IS NOT NULL AS enchanted, "
+                + "SUM(quantity) AS sold, SUM(price * quantity) AS earnings "
+                + "FROM ChatShop_transactions "
+                + "WHERE seller = '" + user.getUniqueId() + "' "
+                + "AND buyer <> seller "
+                + "AND date > (SELECT lastSeen FROM ChatShop_players "
+                    + "WHERE uuid = '" + user.getUniqueId() + "' LIMIT 1) "
+                + "GROUP BY material, damage, enchanted "
+                + "ORDER BY earnings DESC";
+            ResultSet res = select(connect,query);
+            
+            ArrayList<Sale> sales = new ArrayList<Sale>();
+            while(res.next())
+                sales.add(new Sale(
+                    user.getUniqueId(),
+                    res.getString("material"),
+                    res.getInt("damage"),
+                    res.getBoolean("enchanted"),
+                    res.getInt("sold"),
+                    res.getDouble("earnings")));
+            return sales.toArray(new Sale[sales.size()]);
+        }
+        catch (SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Determine whether the ChatShop is under a general freeze.
+     * 
+     * @return  Whether the ChatShop is under a general freeze.
+     */
+    public boolean isGeneralFreeze()
+    {
+        return (getPlayerFlag("-1",0) == 'F');
+    }
+    
+    /**
+     * Toggle the general freeze state of the ChatShop.
+     * 
+     * @return The NEW state of the general freeze.
+     */
+    public boolean toggleGeneralFreeze()
+    {
+        ReentrantLock lock = LOCKS.lock("player:-1");
+        try
+        {
+            boolean wasFrozen = isGeneralFreeze();
+            writePlayerFlag("-1","ChatShop",0,(wasFrozen ? ' ' : 'F'));
+            return !wasFrozen;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get this player's current listing for the specified merch.
+     * Ignores enchanted listings.
+     * 
+     * @param user          The UUID of the user in question.
+     * @param merchandise   The merchandise being sought after.
+     * @return              A single listing, or null if none exists.
+     */
+    public Listing getListing(OfflinePlayer user, ItemStack merchandise)
+    {
+        if(merchandise == null)
+            return null;
+        
+        String query = "SELECT * FROM ChatShop_listings WHERE seller = '" + user.getUniqueId() + "'"
+            + " AND material = '" + merchandise.getType() + "'"
+            + " AND damage = '" + merchandise.getDurability() + "'"
+            + " AND enchantments IS NULL";
+        try
+        {
+            ResultSet res = select(connect,query);
+            if(!res.next())
+                return null;
+            return new Listing (
+                    res.getInt("id"),
+                    res.getString("material"),
+                    res.getInt("damage"),
+                    res.getString("seller"),
+                    res.getString("sellerAlias"),
+                    res.getDouble("price"),
+                    res.getInt("quantity"),
+                    res.getInt("version"));
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * Get all listings (regardless of player) for the specified item.
+     * Ignores enchanted listings.
+     * 
+     * @param merchandise   The item for which to get listings.
+     * @return              All matching listings, ordered by price ASC.
+     *                      If no listings are found, a {@link Listing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public Listing[] getListings(ItemStack merchandise)
+    {
+        return getListings(merchandise,false);
+    }
+    
+    /**
+     * Get all listings (regardless of player) for the specified item.
+     * Ignores enchanted listings.
+     * 
+     * @param merchandise   The item for which to get listings.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              All matching listings, ordered by price ASC.
+     *                      If no listings are found, a {@link Listing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public Listing[] getListings(ItemStack merchandise, boolean useReplica)
+    {
+        Book<Listing> book = book(bookKey(merchandise),useReplica);
+        if(book == null)
+            return null;
+        return book.LISTINGS.toArray(new Listing[book.LISTINGS.size()]);
+    }
+    
+    /**
+     * Get all listings (regardless of player) for the specified enchanted item.
+     * Ignores non-enchanted listings.
+     * 
+     * @param merchandise   The item for which to get listings.
+     * @param enchants      The list of enchants required of the item.
+     * @return              All matching listings, ordered by price ASC.
+     *                      If no listings found, a {@link EListing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public EListing[] getListings(ItemStack merchandise, EnchLvl[] enchants)
+    {
+        return getListings(merchandise,enchants,false);
+    }
+    
+    /**
+     * Get all listings (regardless of player) for the specified enchanted item.
+     * Ignores non-enchanted listings.
+     * 
+     * @param merchandise   The item for which to get listings.
+     * @param enchants      The list of enchants required of the item.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              All matching listings, ordered by price ASC.
+     *                      If no listings found, a {@link EListing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public EListing[] getListings(ItemStack merchandise, EnchLvl[] enchants, boolean useReplica)
+    {
+        Book<Listing> book = book(enchKey(merchandise.getType().toString()),useReplica);
+        if(book == null)
+            return null;
+        
+        //Match as MySQL's REGEXP would: anywhere in the coded enchantments.
+        Pattern coded = Pattern.compile(stringifyEnchants(enchants));
+        ArrayList<EListing> listings = new ArrayList<EListing>();
+        for(Listing listing : book.LISTINGS)
+            if(coded.matcher(((EListing)listing).ENCHANTS_STRING).find())
+                listings.add((EListing)listing);
+        return listings.toArray(new EListing[listings.size()]);
+    }
+    
+    /**
+     * Retrieve the listing for the specified lot number.
+     * Ignores non-enchanted listings.
+     * 
+     * @param lot   The integer ID number of the lot.
+     * @return      The EListing, or null if none was found.
+     */
+    public EListing getEListing(int lot)
+    {
+        return getEListing(lot,false);
+    }
+    
+    /**
+     * Retrieve the listing for the specified lot number.
+     * Ignores non-enchanted listings.
+     * 
+     * @param lot           The integer ID number of the lot.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              The EListing, or null if none was found.
+     */
+    public EListing getEListing(int lot, boolean useReplica)
+    {
+        String query = "SELECT * FROM ChatShop_listings "
+            + "WHERE id = " + lot
+            + " AND enchantments IS NOT NULL";
+        try
+        {
+            ResultSet res = select(reader(useReplica),query);
+            if(!res.isBeforeFirst())
+                return null;
+            res.next();
+            EListing listing = new EListing(
+                    res.getInt("id"),
+                    res.getString("material"),
+                    res.getInt("damage"),
+                    res.getString("seller"),
+                    res.getString("sellerAlias"),
+                    res.getDouble("price"),
+                    res.getString("itemName"),
+                    deStringifyEnchants(res.getString("enchantments")),
+                    res.getString("enchantments"));
+            return listing;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * Get all listings (regardless of item type) for the specified player.
+     * Ignores enchanted listings.
+     * 
+     * @param qPlayer       The item for which to get listings.
+     * @return              All matching listings, ordered by material.
+     *                      If no listings are found, a {@link Listing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public Listing[] getListings(OfflinePlayer qPlayer)
+    {
+        return getListings(qPlayer,true);
+    }
+    
+    /**
+     * Get all listings (regardless of item type) for the specified player.
+     * 
+     * @param qPlayer       The item for which to get listings.
+     * @param ignoreEnchants    Whether to omit enchanted listings.
+     * @return              All matching listings, ordered by material.
+     *                      If no listings are found, a {@link Listing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public Listing[] getListings(OfflinePlayer qPlayer,boolean ignoreEnchants)
+    {
+        return getListings(qPlayer,ignoreEnchants,false);
+    }
+    
+    /**
+     * Get all listings (regardless of item type) for the specified player.
+     * 
+     * @param qPlayer       The item for which to get listings.
+     * @param ignoreEnchants    Whether to omit enchanted listings.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              All matching listings, ordered by material.
+     *                      If no listings are found, a {@link Listing}[]
+     *                      object of length 0 will be returned.
+     *                      null will be returned on SQL failure.
+     */
+    public Listing[] getListings(OfflinePlayer qPlayer, boolean ignoreEnchants, boolean useReplica)
+    {
+        Book<Listing> book = book(sellerKey(qPlayer.getUniqueId().toString()),useReplica);
+        if(book == null)
+            return null;
+        if(!ignoreEnchants)
+            return book.LISTINGS.toArray(new Listing[book.LISTINGS.size()]);
+        
+        ArrayList<Listing> listings = new ArrayList<Listing>();
+        for(Listing listing : book.LISTINGS)
+            if(!(listing instanceof EListing))
+                listings.add(listing);
+        return listings.toArray(new Listing[listings.size()]);
+    }
+    
+    /**
+     * Get the transaction history of the specified player.
+     * Ignores enchanted transactions.
+     * 
+     * @param qPlayer   The player whose history to compile.
+     * @return          A list of listings in reverse order by
+     *                  date, such that the QUANTITY is positive
+     *                  when the queried player was the buyer and
+     *                  negative when the queried player was the
+     *                  seller.
+     */
+    public Listing[] getHistory(OfflinePlayer qPlayer)
+    {
+        return getHistory(qPlayer,true);
+    }
+    
+    /**
+     * Get the transaction history of the specified player.
+     * 
+     * @param qPlayer   The player whose history to compile.
+     * @param ignoreEnchants    Whether to omit enchanted listings.
+     * @return          A list of listings in reverse order by
+     *                  date, such that the QUANTITY is positive
+     *                  when the queried player was the buyer and
+     *                  negative when the queried player was the
+     *                  seller.
+     */
+    public Listing[] getHistory(OfflinePlayer qPlayer,boolean ignoreEnchants)
+    {
+        return getHistory(qPlayer,ignoreEnchants,false);
+    }
+    
+    /**
+     * Get the transaction history of the specified player.
+     * 
+     * @param qPlayer   The player whose history to compile.
+     * @param ignoreEnchants    Whether to omit enchanted listings.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return          A list of listings in reverse order by
+     *                  date, such that the QUANTITY is positive
+     *                  when the queried player was the buyer and
+     *                  negative when the queried player was the
+     *                  seller.
+     */
+    public Listing[] getHistory(OfflinePlayer qPlayer, boolean ignoreEnchants, boolean useReplica)
+    {
+        ArrayList<Listing> sales = new ArrayList<Listing>();
+        String query = "SELECT * FROM ChatShop_transactions " +
+            "WHERE (seller = '" + qPlayer.getUniqueId().toString() + "' " +
+            "OR buyer = '" + qPlayer.getUniqueId().toString() + "') " +
+            (ignoreEnchants ? "AND enchantments IS NULL " : "") +
+            "ORDER BY date DESC";
+        
+        try
+        {
+            ResultSet res = select(reader(useReplica),query);
+            while(res.next())
+            {
+                String selleruuid = res.getString("seller");
+                boolean qWasSeller = selleruuid.equalsIgnoreCase(qPlayer.getUniqueId().toString());
+                if(res.getObject("enchantments") == null)
+                    sales.add(new Listing (
+                        res.getInt("id"),
+                        res.getString("material"),
+                        res.getInt("damage"),
+                        (qWasSeller ? res.getString("buyer") : selleruuid),
+                        (qWasSeller ? res.getString("buyerAlias") : res.getString("sellerAlias")),
+                        res.getDouble("price"),
+                        res.getInt("quantity") * (qWasSeller ? -1 : 1),
+                        res.getTimestamp("date")));
+                else
+                    sales.add(new EListing (
+                        res.getInt("id"),
+                        res.getString("material"),
+                        res.getInt("damage"),
+                        (qWasSeller ? res.getString("buyer") : selleruuid),
+                        (qWasSeller ? res.getString("buyerAlias") : res.getString("sellerAlias")),
+                        res.getDouble("price"),
+                        res.getString("itemName"),
+                        deStringifyEnchants(res.getString("enchantments")),
+                        res.getString("enchantments"),
+                        res.getInt("quantity") * (qWasSeller ? -1 : 1),
+                        res.getTimestamp("date")));
+            }
+            return sales.toArray(new Listing[sales.size()]);            
+        }
+        catch(SQLException e)
+        {
+            error(query);
+        	e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * Execute a cancel operation of non-enchanted merchandise.
+     * This method resides here and not with {@link Cancel} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the cancel command.
+     * @param merch     The (validated) items to cancel.
+     * @return          -2 on SQL fail, -1 on no stock to cancel,
+     *                  otherwise a positive int representing the
+     *                  total number of items cancelled.
+     */
+    @SuppressWarnings("unused")
+    public int cancel(Player usr, ItemStack merch)
+    {
+        ReentrantLock lock = LOCKS.lock(bookKey(merch));
+        try
+        {
+            wrote(usr.getUniqueId().toString());
+            String query = "";
+            try
+            {
+                //If another server changes the listing after it is read here,
+                //  the write changes nothing, and the listing is read again.
+                for(int attempt = 0; attempt < CONFLICT_ATTEMPTS; attempt ++)
+                {
+                    Listing stock = getListing(usr,merch);
+                    if(stock == null)
+                        return -1;
+                
+                    if(merch.getAmount() == -1 || merch.getAmount() >= stock.QUANTITY)
+                    {
+                        //The specified amount was either "all" or
+                        // greater than the available amount, so the
+                        // listing will be removed rather than updated.
+                    
+                        query = "DELETE FROM ChatShop_listings WHERE id = " + stock.ID
+                            + " AND version = " + stock.VERSION;
+                        if(write(query,bookKey(merch),sellerKey(stock.PLAYER_UUID)) == 1)
+                            return stock.QUANTITY;
+                        continue;
+                    }
+                
+                    int targetQty = (stock.QUANTITY - merch.getAmount());
+                    query =
+                        "UPDATE ChatShop_listings SET quantity = " +
+                        + targetQty + ", version = version + 1, sellerAlias = '" + usr.getName() + "'"
+                        + " WHERE id = " + stock.ID + " AND version = " + stock.VERSION;
+                    if(write(query,bookKey(merch),sellerKey(stock.PLAYER_UUID)) == 1)
+                        return merch.getAmount();
+                }
+                conflicted("cancel",bookKey(merch));
+                return -2;
+            }
+            catch(SQLException e)
+            {
+                error(query);
+            	e.printStackTrace();
+                return -2;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Execute a cancellation of an enchanted item.
+     * This method resides here and not with {@link ECancel} in order
+     * to manage synchronization with the database.
+     * 
+     * @param lot       The ID of the lot to cancel.
+     * @return          -2 on SQL fail, -1 on no stock to cancel,
+     *                  otherwise the {@link EListing} that was
+     *                  cancelled.
+     */
+    public Object ecancel(int lot)
+    {
+        ReentrantLock lock = LOCKS.lock("lot:" + lot);
+        try
+        {
+            EListing listing = getEListing(lot);
+        
+            if(listing == null)
+                return -1;
+            wrote(listing.PLAYER_UUID);
+        
+            String query = "DELETE FROM ChatShop_listings "
+                    + "WHERE id = " + lot;
+            try
+            {
+                //Another server may have taken the lot since it was read.
+                if(write(query,enchKey(listing.MATERIAL),sellerKey(listing.PLAYER_UUID)) == 0)
+                    return -1;
+                PLUGIN.CM.forgetTooltip(lot);
+                return listing;
+            }
+            catch(SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+                return -2;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Price a buy operation.
+     * Ignores enchanted items.
+     * This method resides here and not with {@link Buy} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the buy command.
+     * @param merch     The (validated) items to potentially buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @return          The total price the player would pay if they
+     *                  had, at this moment, executed a buy with the
+     *                  same arguments.
+     *                  Returns -1 on SQL fail.
+     *                  If the requested amount is more than is available
+     *                  then the total available amount will be returned
+     *                  as a negative number.
+     */
+    public double price(Player usr, ItemStack merch, double maxp)
+    {
+        return price(usr,merch,maxp,false);
+    }
+    
+    /**
+     * Determine the total price of a buy operation of non-enchanted items,
+     * without carrying it out.
+     * 
+     * @param usr       The player who would buy.
+     * @param merch     The (validated) items to price.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return          As {@link #price(Player, ItemStack, double)}.
+     */
+    public double price(Player usr, ItemStack merch, double maxp, boolean useReplica)
+    {
+        Book<Listing> book = book(bookKey(merch),useReplica);
+        if(book == null)
+            return -1;
+        Tender res = buy(usr,merch,maxp,Market.scan(book.LISTINGS,maxp),true,null);
+        if(res == null)
+            return -1;
+        if(res.QUANTITY < merch.getAmount())
+            return -1 * res.QUANTITY;
+        return res.COST;
+    }
+    
+    /**
+     * Execute the purchase of an enchanted item.
+     * 
+     * @param usr               The user who is making this purchase.
+     * @param lot               The lot number.
+     * @param expectedPrice     The price that the user has consented to pay.
+     *                          It's possible, if the price has changed before
+     *                          the user used /confirm, that these figures don't
+     *                          match, in which case the purchase fails.
+     * @param journal           The trade's number in {@link JournalManager}, to record
+     *                          with its transaction, or null if it is not journaled.
+     * @return  The status of the purchase:
+     *          An {@link EListing} on success.
+     *          -1 on insufficient funds.
+     *          -2 on unexpected price.
+     *          -3 on invalid listing (perhaps someone already bought it).
+     *          -4 on SQL failure.
+     */
+    public Object ebuy(Player usr, int lot, double expectedPrice, String journal)
+    {
+        ReentrantLock lock = LOCKS.lock("lot:" + lot);
+        try
+        {
+            EListing listing = getEListing(lot);
+            if(listing == null)
+                return -3;
+        
+            if(listing.PRICE != expectedPrice)
+                return -2;
+            
+            if(Flight.balance(PLUGIN.ECON,usr) < listing.PRICE)
+                return -1;
+        
+            //At this point, aside from SQL failure there is no
+            //  reason for the purchase not to succeed.
+            //Another server may have taken the lot, or repriced it, since it was read;
+            //  it is only bought at the price checked above.
+            return ebought(usr,listing,"id = " + lot + " AND price = " + listing.PRICE,journal);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Execute the purchase of an enchanted item, as quoted.
+     * The quoted listing is bought directly if it is still on the market at the
+     * quoted price; otherwise this falls back to {@link #ebuy(Player, int, double, String)},
+     * which looks the lot up again to determine why.
+     * 
+     * @param usr       The user who is making this purchase.
+     * @param listing   The listing as it was when the purchase was quoted.
+     * @param journal   As {@link #ebuy(Player, int, double, String)}.
+     * @return  The status of the purchase, as {@link #ebuy(Player, int, double, String)}.
+     */
+    public Object ebuy(Player usr, EListing listing, String journal)
+    {
+        ReentrantLock lock = LOCKS.lock("lot:" + listing.ID);
+        try
+        {
+            if(Flight.balance(PLUGIN.ECON,usr) < listing.PRICE)
+                return -1;
+        
+            //The lot and its price together serve as the version of an enchanted listing.
+            Object res = ebought(usr,listing,"id = " + listing.ID + " AND price = " + listing.PRICE,journal);
+            if(res instanceof Integer && (Integer)res == -3)
+                return ebuy(usr,listing.ID,listing.PRICE,journal);
+            return res;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Carry out the purchase of an enchanted item in one transaction: remove its
+     * listing, log the transaction, and owe the seller. Nothing is changed unless
+     * the listing is still on the market as it was read.
+     * 
+     * @param usr       The user who is making this purchase.
+     * @param listing   The listing being bought.
+     * @param condition The SQL condition which the listing must still meet to be removed.
+     * @param journal   As {@link #ebuy(Player, int, double, String)}.
+     * @return          The listing on success,
+     *                  -3 if no listing met the condition (perhaps someone already bought it),
+     *                  or -4 on SQL failure.
+     */
+    protected Object ebought(Player usr, EListing listing, String condition, String journal)
+    {
+        wrote(usr.getUniqueId().toString());
+        String[] books = {enchKey(listing.MATERIAL),sellerKey(listing.PLAYER_UUID)};
+        
+        beginWrite(books);
+        String query = "";
+        try
+        {
+            beginTransaction();
+            
+            query = "DELETE FROM ChatShop_listings WHERE " + condition;
+            if(update(query) == 0)
+            {
+                connect.rollback();
+                return -3;
+            }
+            
+            query = "INSERT INTO ChatShop_transactions "
+                + "(material,damage,seller,sellerAlias,buyer,buyerAlias,price,enchantments,itemName,quantity,journal) VALUES("
+                + "'" + listing.MATERIAL + "',"
+                + listing.DAMAGE + ","
+                + "'" + listing.PLAYER_UUID + "',"
+                + "'" + listing.PLAYER_ALIAS + "',"
+                + "'" + usr.getUniqueId() + "',"
+                + "'" + usr.getName() + "',"
+                + listing.PRICE + ","
+                + (listing.ITEM_NAME == null ? "null," : "'" + listing.ITEM_NAME + "',")
+                + "'" + listing.ENCHANTS_STRING + "',"
+                + "1,"
+                + (journal == null ? "null" : "'" + journal + "'") + ")";
+            update(query);
+            
+            //Owe the seller; LedgerManager will pay them shortly.
+            query = "INSERT INTO ChatShop_payouts (seller,amount) VALUES ("
+                + "'" + listing.PLAYER_UUID + "',"
+                + listing.PRICE + ")";
+            update(query);
+            
+            logChanges(books);
+            connect.commit();
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            rollback();
+            return -4;
+        }
+        finally
+        {
+            autoCommit();
+            endWrite(books);
+        }
+        
+        PLUGIN.CM.forgetTooltip(listing.ID);
+        return listing;
+    }
+    
+    /**
+     * Execute a buy operation of non-enchanted items.
+     * This method resides here and not with {@link Buy} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the buy command.
+     * @param merch     The (validated) items to buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @param journal   The trade's number in {@link JournalManager}, to record
+     *                  with its transactions, or null if it is not journaled.
+     * @return          A Tender representing the total quantity and
+     *                  TOTAL COST OF ALL ITEMS tendered, or null
+     *                  on fail.
+     *                  
+     */
+    public Tender buy(Player usr, ItemStack merch, double maxp, String journal)
+    {
+        ReentrantLock lock = LOCKS.lock(bookKey(merch));
+        try
+        {
+            return buy(usr,merch,maxp,false,journal);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Execute a buy operation of non-enchanted items.
+     * This method resides here and not with {@link Buy} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the buy command.
+     * @param merch     The (validated) items to buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @param pricingOnly   Whether this command is being executed only to
+     *                      compile a price, or to actually carry out a buy
+     *                      operation.
+     * @param journal   As {@link #buy(Player, ItemStack, double, String)}.
+     * @return          A Tender representing the total quantity and
+     *                  TOTAL COST OF ALL ITEMS tendered, or null
+     *                  on fail.
+     *                  
+     */
+    protected Tender buy(Player usr, ItemStack merch, double maxp, boolean pricingOnly, String journal)
+    {
+        ArrayList<Listing> listings = scan(merch,maxp);
+        if(listings == null)
+            return null;
+        return buy(usr,merch,maxp,listings,pricingOnly,journal);
+    }
+    
+    /**
+     * Execute a buy operation of non-enchanted items, as planned when the
+     * order was quoted by {@link #plan}.
+     * If no listing for the item has changed since then, the planned listings
+     * are bought from directly; otherwise the market is searched again.
+     * 
+     * @param usr       The player who executed the buy command.
+     * @param merch     The (validated) items to buy.
+     * @param plan      The plan made when the order was quoted.
+     * @param journal   As {@link #buy(Player, ItemStack, double, String)}.
+     * @return          A Tender representing the total quantity and
+     *                  TOTAL COST OF ALL ITEMS tendered, or null
+     *                  on fail.
+     */
+    public Tender buy(Player usr, ItemStack merch, BuyPlan plan, String journal)
+    {
+        ReentrantLock lock = LOCKS.lock(bookKey(merch));
+        try
+        {
+            ArrayList<Listing> listings;
+            if(plan.VERSION == version(plan.KEY))
+            {
+                PLUGIN.MM.hit("plans");
+                listings = new ArrayList<Listing>(Arrays.asList(plan.LISTINGS));
+            }
+            else
+            {
+                PLUGIN.MM.miss("plans");
+                listings = scan(merch,plan.MAXP);
+            }
+            if(listings == null)
+                return null;
+            return buy(usr,merch,plan.MAXP,listings,false,journal);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Plan a buy operation of non-enchanted items, for later execution by
+     * {@link #buy(Player, ItemStack, BuyPlan, String)}.
+     * 
+     * @param merch     The (validated) items to potentially buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @return          The plan, or null on SQL fail.
+     *                  If the requested amount is more than is available
+     *                  then the plan is for the total available amount.
+     */
+    public BuyPlan plan(ItemStack merch, double maxp)
+    {
+        Book<Listing> book = book(bookKey(merch));
+        if(book == null)
+            return null;
+        ArrayList<Listing> listings = Market.scan(book.LISTINGS,maxp);
+        
+        //Keep only as many of the cheapest listings as are needed.
+        int qty = 0;
+        double total = 0;
+        int used = 0;
+        while(used < listings.size() && qty < merch.getAmount())
+        {
+            Listing listing = listings.get(used ++);
+            int take = Math.min(listing.QUANTITY,merch.getAmount() - qty);
+            qty += take;
+            total += take * listing.PRICE;
+        }
+        Listing[] planned = listings.subList(0,used).toArray(new Listing[used]);
+        return new BuyPlan(book.KEY,book.VERSION,maxp,planned,qty,total);
+    }
+    
+    /**
+     * Find all listings from which a buy operation of non-enchanted items could be filled.
+     * 
+     * @param merch     The (validated) items to buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @return          The matching listings, cheapest first, or null on SQL fail.
+     */
+    protected ArrayList<Listing> scan(ItemStack merch, double maxp)
+    {
+        Book<Listing> book = book(bookKey(merch));
+        if(book == null)
+            return null;
+        return Market.scan(book.LISTINGS,maxp);
+    }
+    
+    /**
+     * Execute (or price) a buy operation of non-enchanted items from the specified listings.
+     * <br>
+     * A purchase is made by {@link #MARKET}, which has {@link #take} carry it out in a
+     * single database transaction. If another server sharing the database has changed
+     * any of the listings since they were read, nothing is changed, and the purchase is
+     * matched again against the listings as they now are.
+     * 
+     * @param usr       The player who executed the buy command.
+     * @param merch     The (validated) items to buy.
+     * @param maxp      The maximum price of purchase. -1 signifies
+     *                  omission of maxprice.
+     * @param listings  The listings to buy from, cheapest first.
+     * @param pricingOnly   Whether this command is being executed only to
+     *                      compile a price, or to actually carry out a buy
+     *                      operation.
+     * @param journal   As {@link #buy(Player, ItemStack, double, String)}.
+     * @return          A Tender representing the total quantity and
+     *                  TOTAL COST OF ALL ITEMS tendered, or null
+     *                  on fail.
+     */
+    protected Tender buy(Player usr, ItemStack merch, double maxp, ArrayList<Listing> listings, boolean pricingOnly,
+            String journal)
+    {
+        String buyer = usr.getUniqueId().toString();
+        if(pricingOnly)
+        {
+            //When pricing, the buyer's balance is no limit.
+            Fill fill = Matcher.match(listings,merch.getAmount(),Double.POSITIVE_INFINITY,buyer);
+            return new Tender(fill.QUANTITY,fill.COST,fill.BROKE,fill.SELF,new Sale[0]);
+        }
+        
+        wrote(buyer);
+        Trade<Listing> trade = MARKET.buy(bookKey(merch),buyer,merch.getAmount(),
+                Flight.balance(PLUGIN.ECON,usr),listings,maxp,journal);
+        if(trade == null)
+            return null;
+        
+        //Tally what was bought from each other seller.
+        //  Sellers are notified once per purchase by Buy, after the
+        //    trade is complete and outside of the lock held here,
+        //    rather than once per listing.
+        LinkedHashMap<UUID,Integer> soldQuantity = new LinkedHashMap<UUID,Integer>();
+        LinkedHashMap<UUID,Double> soldCost = new LinkedHashMap<UUID,Double>();
+        for(int i = 0; i < trade.OFFERS.size(); i ++)
+        {
+            Listing listing = trade.OFFERS.get(i);
+            UUID seller = UUID.fromString(listing.PLAYER_UUID);
+            if(seller.equals(usr.getUniqueId()))
+                continue;
+            Integer q = soldQuantity.get(seller);
+            soldQuantity.put(seller,(q == null ? 0 : q) + trade.FILL.TAKEN[i]);
+            Double c = soldCost.get(seller);
+            soldCost.put(seller,(c == null ? 0 : c) + trade.FILL.TAKEN[i] * listing.PRICE);
+        }
+        Sale[] sales = new Sale[soldQuantity.size()];
+        int index = 0;
+        for(Map.Entry<UUID,Integer> sold : soldQuantity.entrySet())
+            sales[index ++] = new Sale(sold.getKey(),merch.getType().toString(),merch.getDurability(),
+                    false,sold.getValue(),soldCost.get(sold.getKey()));
+        
+        //Return the quantity and price ultimately accrued.
+        Fill fill = trade.FILL;
+        return new Tender(fill.QUANTITY,fill.COST,fill.BROKE,fill.SELF,sales);
+    }
+    
+    /**
+     * Carry out a trade of non-enchanted items for {@link #MARKET}, in one transaction
+     * which also logs the change for other servers.
+     * 
+     * @param trade     The trade.
+     * @return          1 on success,
+     *                  0 if a listing had changed since it was read,
+     *                  -1 on SQL fail.
+     */
+    @Override
+    public int take(Trade<Listing> trade)
+    {
+        //Every book which may change: the item's, and that of each seller.
+        LinkedHashMap<String,Boolean> keys = new LinkedHashMap<String,Boolean>();
+        keys.put(trade.KEY,true);
+        for(Listing listing : trade.OFFERS)
+            keys.put(sellerKey(listing.PLAYER_UUID),true);
+        String[] books = keys.keySet().toArray(new String[keys.size()]);
+        
+        beginWrite(books);
+        Object event = Flight.startSweep();
+        int res = -1;
+        try
+        {
+            beginTransaction();
+            res = sweep(trade);
+            if(res > 0)
+            {
+                logChanges(books);
+                connect.commit();
+                return res;
+            }
+            connect.rollback();
+            return res;
+        }
+        catch(SQLException e)
+        {
+            error("COMMIT");
+            e.printStackTrace();
+            rollback();
+            res = -1;
+            return res;
+        }
+        finally
+        {
+            autoCommit();
+            endWrite(books);
+            if(res > 0)
+                Flight.endSweep(event,trade.KEY,trade.OFFERS.size(),trade.FILL.QUANTITY,trade.FILL.COST,"bought");
+            else
+                Flight.endSweep(event,trade.KEY,trade.OFFERS.size(),0,0,res < 0 ? "failed" : "conflict");
+        }
+    }
+    
+    /**
+     * Make the changes of a trade of non-enchanted items, changing each listing only
+     * if it is still at the version it was read at. This must be called within a
+     * transaction, which is to be rolled back on anything but success.
+     * 
+     * @param trade     The trade.
+     * @return          1 on success,
+     *                  0 if a listing had changed since it was read,
+     *                  -1 on SQL fail.
+     */
+    @SuppressWarnings("unused")
+    protected int sweep(Trade<Listing> trade)
+    {
+        String query = "";
+        try
+        {
+            String buyerAlias = Bukkit.getOfflinePlayer(UUID.fromString(trade.BUYER)).getName();
+            LinkedHashMap<UUID,Double> owed = new LinkedHashMap<UUID,Double>();           //Per seller, incl. self.
+            
+            //The listings are changed and the transactions logged with one statement
+            //  of each kind, however many listings are swept, rather than one per listing.
+            String partial = null;      //For the last listing, if partly bought.
+            String deletes = "";        //For each listing bought out.
+            int deleteCount = 0;
+            String transactions = "";   //For each listing bought from.
+            for(int i = 0; i < trade.OFFERS.size(); i ++)
+            {
+                Listing listing = trade.OFFERS.get(i);
+                int thisQuantity = trade.FILL.TAKEN[i];
+                double listingCost = thisQuantity * listing.PRICE;
+                
+                if(thisQuantity < listing.QUANTITY)
+                {
+                    //Update this listing in the market, as only part of it was bought.
+                    partial = "UPDATE ChatShop_listings SET quantity = " +
+                            (listing.QUANTITY - thisQuantity) +
+                            ", version = version + 1" +
+                            " WHERE id = " + listing.ID +
+                            " AND version = " + listing.VERSION;
+                }
+                else
+                {
+                    //Remove this listing from the market, as all of it was bought.
+                    deletes += (deleteCount == 0 ? "" : " OR ")
+                            + "(id = " + listing.ID
+                            + " AND version = " + listing.VERSION + ")";
+                    deleteCount ++;
+                }
+                
+                //Owe the player who had the listing.
+                //  They are paid in one ledger entry per purchase, below.
+                UUID seller = UUID.fromString(listing.PLAYER_UUID);
+                Double o = owed.get(seller);
+                owed.put(seller,(o == null ? 0 : o) + listingCost);
+                
+                //Log this transaction.
+                transactions += (transactions.isEmpty() ? "" : ",") + "("
+                        + "'" + listing.MATERIAL + "', "
+                        + listing.DAMAGE + ", "
+                        + "'" + listing.PLAYER_UUID + "', "
+                        + "'" + Bukkit.getOfflinePlayer(seller).getName() + "', "
+                        + "'" + trade.BUYER + "', "
+                        + "'" + buyerAlias + "', "
+                        + listing.PRICE + ", "
+                        + "null,"
+                        + "null,"
+                        + thisQuantity + ","
+                        + (trade.REFERENCE == null ? "null" : "'" + trade.REFERENCE + "'") + ")";
+            }
+            
+            //Change the market, unless another server changed any of the listings first.
+            if(partial != null)
+            {
+                query = partial;
+                if(update(query) == 0)
+                    return 0;
+            }
+            if(deleteCount > 0)
+            {
+                query = "DELETE FROM ChatShop_listings WHERE " + deletes;
+                if(update(query) != deleteCount)
+                    return 0;
+            }
+            
+            //Log the transactions.
+            if(!transactions.isEmpty())
+            {
+                query = "INSERT INTO ChatShop_transactions "
+                        + "(material,damage,seller,sellerAlias,buyer,buyerAlias,price,enchantments,itemName,quantity,journal) "
+                        + "VALUES " + transactions;
+                int unused = update(query);
+            }
+            
+            //Record what is owed to each seller in the payout ledger.
+            if(!owed.isEmpty())
+            {
+                query = "INSERT INTO ChatShop_payouts (seller,amount) VALUES ";
+                boolean first = true;
+                for(Map.Entry<UUID,Double> debt : owed.entrySet())
+                {
+                    query += (first ? "" : ",") + "('" + debt.getKey() + "'," + debt.getValue() + ")";
+                    first = false;
+                }
+                int unused = update(query);
+            }
+            return 1;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /**
+     * Begin a transaction on {@link #connect}, holding it for this thread until the
+     * transaction ends. Must be followed by {@link #autoCommit} in a finally block.
+     * 
+     * @throws SQLException If the transaction cannot be begun.
+     */
+    protected void beginTransaction() throws SQLException
+    {
+        CONNECTION.lock();
+        connect.setAutoCommit(false);
+    }
+    
+    /**
+     * Roll back the current transaction, if possible.
+     */
+    protected void rollback()
+    {
+        try
+        {
+            connect.rollback();
+        }
+        catch(SQLException e)
+        {
+            error("ROLLBACK");
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Return the connection to committing each statement as it is executed,
+     * ending the transaction begun by {@link #beginTransaction}, and release it.
+     */
+    protected void autoCommit()
+    {
+        try
+        {
+            connect.setAutoCommit(true);
+        }
+        catch(SQLException e)
+        {
+            error("SET autocommit = 1");
+            e.printStackTrace();
+        }
+        finally
+        {
+            CONNECTION.unlock();
+        }
+    }
+    
+    /**
+     * Log that an operation was abandoned because other servers sharing the database
+     * kept changing the listings it needed.
+     * 
+     * @param operation The name of the operation.
+     * @param key       The key of the book it was working on.
+     */
+    protected void conflicted(String operation, String key)
+    {
+        PLUGIN.CM.severe("Abandoned " + operation + " of " + key + " after " + CONFLICT_ATTEMPTS
+                + " conflicting changes from other servers.");
+    }
+   
+    /**
+     * @param merch     A non-enchanted item.
+     * @return          The key of the item's listings in {@link #BOOKS}.
+     */
+    protected static String bookKey(ItemStack merch)
+    {
+        return merch.getType() + ":" + merch.getDurability();
+    }
+    
+    /**
+     * @param material  A material, by name.
+     * @return          The key of the material's enchanted listings in {@link #BOOKS}.
+     */
+    protected static String enchKey(String material)
+    {
+        return "ench:" + material;
+    }
+    
+    /**
+     * @param uuid      A seller's UUID.
+     * @return          The key of the seller's listings in {@link #BOOKS}.
+     */
+    protected static String sellerKey(String uuid)
+    {
+        return "seller:" + uuid;
+    }
+    
+    /**
+     * @param key       The key of a book.
+     * @return          The book's write counter, created if necessary.
+     */
+    protected WriteCounter counter(String key)
+    {
+        return BOOKS.counter(key);
+    }
+    
+    /**
+     * @param key       The key of a book.
+     * @return          The current version of the book.
+     */
+    protected long version(String key)
+    {
+        return BOOKS.version(key);
+    }
+    
+    /**
+     * Note that the specified books are about to change, so that any snapshot
+     * or {@link BuyPlan} made from them is no longer trusted.
+     * Must be followed by {@link #endWrite} in a finally block.
+     * 
+     * @param keys      The keys of the books.
+     */
+    protected void beginWrite(String... keys)
+    {
+        BOOKS.begin(keys);
+    }
+    
+    /**
+     * Note that changes to the specified books have finished, successfully or not.
+     * 
+     * @param keys      The keys of the books, as given to {@link #beginWrite}.
+     */
+    protected void endWrite(String... keys)
+    {
+        BOOKS.end(keys);
+    }
+    
+    /**
+     * @param uuid      A player's UUID, or -1 for the general freeze.
+     * @return          The key of the player's flags in the change log.
+     */
+    protected static String playerKey(String uuid)
+    {
+        return "player:" + uuid;
+    }
+    
+    /**
+     * Execute an update which changes listings in the specified books (or player flags),
+     * and log the change for other servers, in one transaction. If this thread already
+     * has a transaction open, the update joins it instead, and is committed with it.
+     * 
+     * @param query     The update.
+     * @param keys      The keys of the books it changes.
+     * @return          The number of rows changed.
+     * @throws SQLException If the update fails.
+     */
+    protected int write(String query, String... keys) throws SQLException
+    {
+        beginWrite(keys);
+        //While the connection is held, any open transaction is this thread's own.
+        CONNECTION.lock();
+        try
+        {
+            if(!connect.getAutoCommit())
+            {
+                int rows = update(query);
+                if(rows > 0)
+                    logChanges(keys);
+                return rows;
+            }
+            
+            beginTransaction();
+            try
+            {
+                int rows = update(query);
+                if(rows > 0)
+                    logChanges(keys);
+                connect.commit();
+                return rows;
+            }
+            catch(SQLException e)
+            {
+                rollback();
+                throw e;
+            }
+            finally
+            {
+                autoCommit();
+            }
+        }
+        finally
+        {
+            CONNECTION.unlock();
+            endWrite(keys);
+        }
+    }
+    
+    /**
+     * Append changes to the specified books to the change log.
+     * Must be called within the transaction making the changes.
+     * 
+     * @param keys      The keys of the changed books.
+     * @throws SQLException If the log cannot be written.
+     */
+    protected void logChanges(String... keys) throws SQLException
+    {
+        String query = "INSERT INTO ChatShop_changes (book,origin) VALUES ";
+        for(int i = 0; i < keys.length; i ++)
+            query += (i == 0 ? "" : ",") + "('" + keys[i] + "','" + NODE + "')";
+        update(query);
+    }
+    
+    /**
+     * Read the changes made by other servers since the last poll, and drop
+     * any snapshots and plans which they have made stale.
+     * 
+     * @return          The keys of the changed books and players, or null on SQL fail.
+     */
+    public String[] pollChanges()
+    {
+        String query = "SELECT seq, book, origin FROM ChatShop_changes "
+            + "WHERE seq > " + lastChange;
+        if(!GAPS.isEmpty())
+        {
+            query += " OR seq IN (";
+            boolean first = true;
+            for(long gap : GAPS.keySet())
+            {
+                query += (first ? "" : ",") + gap;
+                first = false;
+            }
+            query += ")";
+        }
+        query += " ORDER BY seq";
+        
+        try
+        {
+            long now = System.currentTimeMillis();
+            LinkedHashSet<String> changed = new LinkedHashSet<String>();
+            ResultSet res = select(connect,query);
+            while(res.next())
+            {
+                long seq = res.getLong("seq");
+                if(GAPS.remove(seq) == null)
+                {
+                    if(seq - lastChange <= MAX_GAPS)
+                        for(long skipped = lastChange + 1; skipped < seq; skipped ++)
+                            GAPS.put(skipped,now);
+                    lastChange = Math.max(lastChange,seq);
+                }
+                if(!res.getString("origin").equals(NODE))
+                    changed.add(res.getString("book"));
+            }
+            
+            Iterator<Long> gaps = GAPS.values().iterator();
+            while(gaps.hasNext())
+                if(now - gaps.next() > GAP_TIMEOUT)
+                    gaps.remove();
+            
+            //A write counted here moves the book's version on, as a local write would.
+            for(String key : changed)
+            {
+                counter(key).begin();
+                counter(key).end();
+            }
+            return changed.toArray(new String[changed.size()]);
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Remove entries more than a day old from the change log.
+     * Any server so far behind has long since missed changes for other reasons.
+     */
+    public void pruneChanges()
+    {
+        String query = "DELETE FROM ChatShop_changes WHERE date < NOW() - INTERVAL '1' DAY";
+        try
+        {
+            update(query);
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Get a consistent snapshot of a book, without locking; see {@link Books#get}.
+     * 
+     * @param key       The key of the book.
+     * @return          The book, or null on SQL fail.
+     */
+    protected Book<Listing> book(String key)
+    {
+        return BOOKS.get(key);
+    }
+    
+    /**
+     * Get a snapshot of a book for a read which may be served by the replica.
+     * A current published snapshot is used if there is one, since it is as fresh as
+     * the primary. Otherwise the book is read from the replica; such a read cannot be
+     * checked against this server's writes, and so is never published.
+     * 
+     * @param key           The key of the book.
+     * @param useReplica    Whether the read may be served by the replica.
+     * @return              The book, or null on SQL fail.
+     */
+    protected Book<Listing> book(String key, boolean useReplica)
+    {
+        if(!useReplica || replica == null)
+            return book(key);
+        
+        Book<Listing> book = BOOKS.current(key);
+        if(book != null)
+            return book;
+        
+        List<Listing> listings = load(key,replica);
+        if(listings == null)
+            return null;
+        return new Book<Listing>(key,-1,listings);
+    }
+    
+    /**
+     * Read a book from the primary database, for {@link #BOOKS} and {@link #MARKET}.
+     * 
+     * @param key       The key of the book.
+     * @return          The book's listings, or null on SQL fail.
+     */
+    @Override
+    public List<Listing> load(String key)
+    {
+        return load(key,connect);
+    }
+    
+    /**
+     * Read a book from the database.
+     * 
+     * @param key       The key of the book.
+     * @param from      The connection to read from.
+     * @return          The book's listings, or null on SQL fail.
+     */
+    protected List<Listing> load(String key, Connection from)
+    {
+        String query = "SELECT * FROM ChatShop_listings WHERE ";
+        if(key.startsWith("seller:"))
+            query += "seller = '" + key.substring(7) + "' "
+                + "ORDER BY material";
+        else if(key.startsWith("ench:"))
+            query += "material = '" + key.substring(5) + "' "
+                + "AND enchantments IS NOT NULL "
+                + "ORDER BY price ASC";
+        else
+            query += "material = '" + key.substring(0,key.indexOf(':')) + "' "
+                + "AND damage = " + key.substring(key.indexOf(':') + 1) + " "
+                + "AND enchantments IS NULL "
+                + "ORDER BY price ASC";
+        
+        try
+        {
+            ArrayList<Listing> listings = new ArrayList<Listing>();
+            ResultSet res = select(from,query);
+            while(res.next())
+            {
+                if(res.getObject("enchantments") == null)
+                    listings.add(new Listing (
+                        res.getInt("id"),
+                        res.getString("material"),
+                        res.getInt("damage"),
+                        res.getString("seller"),
+                        res.getString("sellerAlias"),
+                        res.getDouble("price"),
+                        res.getInt("quantity"),
+                        res.getInt("version")));
+                else
+                    listings.add(new EListing (
+                        res.getInt("id"),
+                        res.getString("material"),
+                        res.getInt("damage"),
+                        res.getString("seller"),
+                        res.getString("sellerAlias"),
+                        res.getDouble("price"),
+                        res.getString("itemName"),
+                        deStringifyEnchants(res.getString("enchantments")),
+                        res.getString("enchantments")));
+            }
+            return listings;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * Take the locks for the non-enchanted listings of several items at once,
+     * so that an operation spanning all of them cannot deadlock with another.
+     * The locks must be released with {@link #unlockBooks} in a finally block.
+     * 
+     * @param merch     The items.
+     * @return          The locks, now held.
+     */
+    public ReentrantLock[] lockBooks(List<ItemStack> merch)
+    {
+        ArrayList<String> keys = new ArrayList<String>();
+        for(ItemStack item : merch)
+            keys.add(bookKey(item));
+        return LOCKS.lockAll(keys);
+    }
+    
+    /**
+     * Release locks taken by {@link #lockBooks}.
+     * 
+     * @param held      The locks.
+     */
+    public void unlockBooks(ReentrantLock[] held)
+    {
+        LOCKS.unlockAll(held);
+    }
+    
+    /**
+     * Look up what a journaled trade took off the market, from the transactions
+     * recorded with its number.
+     * 
+     * @param journal   The trade's number in {@link JournalManager}.
+     * @return          The quantity taken and its total cost, both 0 if the trade
+     *                  took nothing; or null on SQL fail.
+     */
+    public double[] journaled(String journal)
+    {
+        String query = "SELECT COALESCE(SUM(quantity),0) AS quantity, COALESCE(SUM(price * quantity),0) AS cost "
+                + "FROM ChatShop_transactions WHERE journal = '" + journal + "'";
+        try
+        {
+            ResultSet res = select(connect,query);
+            res.next();
+            return new double[]{res.getInt("quantity"),res.getDouble("cost")};
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Retrieve everything owed to sellers in the payout ledger, and not yet claimed,
+     * totalled per seller.
+     * 
+     * @return  The amounts owed, or null on SQL fail.
+     */
+    public Payout[] getPayouts()
+    {
+        String query = "SELECT seller, SUM(amount) AS amount, MAX(id) AS through, COUNT(*) AS entries "
+                + "FROM ChatShop_payouts WHERE claim IS NULL GROUP BY seller";
+        try
+        {
+            ArrayList<Payout> payouts = new ArrayList<Payout>();
+            ResultSet res = select(connect,query);
+            while(res.next())
+                payouts.add(new Payout(
+                        UUID.fromString(res.getString("seller")),
+                        res.getDouble("amount"),
+                        res.getInt("through"),
+                        res.getInt("entries")));
+            return payouts.toArray(new Payout[payouts.size()]);
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Claim a payout for deposit, by marking its entries in the ledger with the claim.
+     * The entries are only marked if they are exactly those counted in the payout;
+     * if another server sharing the database has claimed any of them, or entries
+     * have appeared among them since, nothing is marked. So each entry is claimed,
+     * and paid, by one server only. Anything the seller has been owed since remains
+     * for the next settlement. Claimed entries stay in the ledger until
+     * {@link #settlePayout} removes them once they are deposited.
+     * 
+     * @param payout    The payout, as read by {@link #getPayouts}.
+     * @param claim     A token unique to this claim.
+     * @return          1 if the payout was claimed and is to be deposited,
+     *                  0 if its entries had changed,
+     *                  -1 on SQL fail.
+     */
+    public int claimPayout(Payout payout, String claim)
+    {
+        String query = "UPDATE ChatShop_payouts SET claim = '" + claim + "', claimed = NOW() "
+                + "WHERE seller = '" + payout.SELLER + "' "
+                + "AND id <= " + payout.THROUGH + " "
+                + "AND claim IS NULL";
+        try
+        {
+            beginTransaction();
+            if(update(query) != payout.ENTRIES)
+            {
+                connect.rollback();
+                return 0;
+            }
+            connect.commit();
+            return 1;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            rollback();
+            return -1;
+        }
+        finally
+        {
+            autoCommit();
+        }
+    }
+    
+    /**
+     * Remove the entries of a claimed payout from the ledger, once it has been deposited.
+     * 
+     * @param claim     The claim, as given to {@link #claimPayout}.
+     * @return          1 on success, -1 on SQL fail.
+     */
+    public int settlePayout(String claim)
+    {
+        String query = "DELETE FROM ChatShop_payouts WHERE claim = '" + claim + "'";
+        try
+        {
+            update(query);
+            return 1;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /**
+     * Release the entries of a claimed payout back to the ledger, after its deposit failed.
+     * 
+     * @param claim     The claim, as given to {@link #claimPayout}.
+     * @return          1 on success, -1 on SQL fail.
+     */
+    public int restorePayout(String claim)
+    {
+        String query = "UPDATE ChatShop_payouts SET claim = NULL, claimed = NULL WHERE claim = '" + claim + "'";
+        try
+        {
+            update(query);
+            return 1;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /**
+     * Release the entries of every claim older than the specified age back to the ledger.
+     * A claim so old was left by a settlement which was interrupted, on this or another
+     * server sharing the database, between claiming a payout and settling it, so whether
+     * it was deposited is unknown; it is paid again rather than lost.
+     * 
+     * @param seconds   The age, in seconds, past which a claim has been abandoned.
+     * @return          The number of entries released, or -1 on SQL fail.
+     */
+    public int releasePayouts(int seconds)
+    {
+        String query = "UPDATE ChatShop_payouts SET claim = NULL, claimed = NULL "
+                + "WHERE claim IS NOT NULL AND claimed < NOW() - INTERVAL '" + seconds + "' SECOND";
+        try
+        {
+            return update(query);
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /**
+     * Execute a sell operation for an enchanted item.
+     * This method resides here and not with {@link ESell} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the esell command.
+     * @param merch     The item to sell.
+     * @param price     The price for the merchandise.
+     * @return          -2 on SQL fail.
+     *                  -1 on encountering an item with enchantment level higher than 9, which
+     *                  would result in SQL errors and/or corrupted item data in ChatShop_listings.
+     *                  A positive number indicating the ID of the new lot.
+     */
+    @SuppressWarnings("unused")
+    public int esell(Player usr, ItemStack merch, double price)
+    {
+        wrote(usr.getUniqueId().toString());
+        
+        /* Produce a string representing all enchantments had by this item.
+         * The string is actually a very long integer, of which each digit
+         * represents a single enchantment.
+         * The map DatabaseManager#ENCHANTS contains a map of Enchantments
+         * to indexes in this String.
+         * The value of the digit is the level of the enchantment.
+         */
+        
+        Set<Map.Entry<Enchantment,Integer>> entrySet =
+                (merch.getType().equals(Material.ENCHANTED_BOOK) ?
+                    ((EnchantmentStorageMeta)merch.getItemMeta()).getStoredEnchants().entrySet() :
+                        merch.getEnchantments().entrySet());
+        int[] slots = new int[entrySet.size()];
+        int[] levels = new int[entrySet.size()];
+        int n = 0;
+        for(Map.Entry<Enchantment,Integer> entry : entrySet)
+        {
+            slots[n] = ENCHANTS.get(entry.getKey());
+            levels[n++] = entry.getValue();
+        }
+        
+        String coded = EnchantCodec.encode(ENCHANTS.size(),slots,levels);
+        if(coded == null)
+            return -1;
+        
+        String itemName = (merch.getItemMeta().hasDisplayName() ?
+            merch.getItemMeta().getDisplayName() : null);
+        
+        // Post the listing to the database.
+        
+        String query = "INSERT INTO ChatShop_listings "
+            + "(material,damage,seller,sellerAlias,price,enchantments,itemName,quantity,version) VALUES("
+            + "'" + merch.getType() + "',"
+            + merch.getDurability() + ","
+            + "'" + usr.getUniqueId() + "',"
+            + "'" + usr.getName() + "',"
+            + price + ","
+            + "'" + coded + "',"
+            + (itemName == null ? "null," : "'" + itemName + "',")
+            + "1,"
+            + "0);";
+        
+        //The lot number must be read before the change is logged, which changes LAST_INSERT_ID().
+        String[] books = {enchKey(merch.getType().toString()),sellerKey(usr.getUniqueId().toString())};
+        beginWrite(books);
+        try
+        {
+            beginTransaction();
+            int unused = update(query);
+            ResultSet res = select(connect,"SELECT LAST_INSERT_ID() AS ID");
+            res.next();
+            int lot = res.getInt("ID");
+            logChanges(books);
+            connect.commit();
+            return lot;
+        }
+        catch(SQLException e)
+        {
+            error(query);
+            e.printStackTrace();
+            rollback();
+        }
+        finally
+        {
+            autoCommit();
+            endWrite(books);
+        }
+        return -2;
+    }
+    
+    /**
+     * Execute a sell operation of non-enchanted items.
+     * This method resides here and not with {@link Sell} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the sell command.
+     * @param merch     The (validated) items to sell.
+     * @param price     The price (each, not total) for the merchandise.
+     *                  -1 indicates the previously existing price should be used.
+     * @return          -3 on maximum quantity exceeded.
+     *                  -2 on SQL fail.
+     *                  -1 if the user used "-" as price and does not have a listing.
+     *                  0 on new listing.
+     *                  else the original pre-existing listing.
+     */
+    @SuppressWarnings("unused")
+    public Object sell(Player usr, ItemStack merch, double price)
+    {
+        ReentrantLock lock = LOCKS.lock(bookKey(merch));
+        try
+        {
+            wrote(usr.getUniqueId().toString());
+            String query = "";
+            try
+            {
+                //If another server changes the listing after it is read here,
+                //  the write changes nothing, and the listing is read again.
+                for(int attempt = 0; attempt < CONFLICT_ATTEMPTS; attempt ++)
+                {
+                    Listing current = getListing(usr,merch);
+                
+                    // The user already has a listing for this item...
+                    if(current != null)
+                    {
+                        //A price of -1 is passed if the user used "-" for the price
+                        // argument, denoting that the already-listed price is to be
+                        // used.
+                        double newPrice = (price == -1 ? current.PRICE : price);
+                    
+                        int maxq = PLUGIN.IM.lookup(merch).MAXQUANTITY;
+                        if(maxq > 0 && current.QUANTITY + merch.getAmount() > maxq)
+                            return -3;
+                    
+                        query = "UPDATE ChatShop_listings SET quantity = " + (merch.getAmount() + current.QUANTITY)
+                                + ", price = " + newPrice
+                                + ", version = version + 1"
+                                + ", sellerAlias = '" + usr.getName() + "'"
+                                + " WHERE id = " + current.ID
+                                + " AND version = " + current.VERSION;
+                        if(write(query,bookKey(merch),sellerKey(usr.getUniqueId().toString())) == 1)
+                            return current;
+                        continue;
+                    }
+                
+                    if(price == -1)
+                        return -1;
+                
+                    // The user does not have a listing, so one must be created.
+                    //  If another server creates it first, the unique key on plain listings
+                    //    refuses this one, and the listing is read again to add to it.
+                    query = "INSERT INTO ChatShop_listings "
+                            + "(material,damage,seller,sellerAlias,price,enchantments,itemName,quantity,version) VALUES("
+                            + "'" + merch.getType() + "',"
+                            + merch.getDurability() + ","
+                            + "'" + usr.getUniqueId() + "',"
+                            + "'" + usr.getName() + "',"
+                            + price + ","
+                            + "null,"
+                            + "null,"
+                            + merch.getAmount() + ","
+                            + "0)";
+                    try
+                    {
+                        int unused = write(query,bookKey(merch),sellerKey(usr.getUniqueId().toString()));
+                    }
+                    catch(SQLException e)
+                    {
+                        if(e.getSQLState() != null && e.getSQLState().startsWith("23"))
+                            continue;   //Integrity constraint violation.
+                        throw e;
+                    }
+                    return 0;
+                }
+                conflicted("sell",bookKey(merch));
+            }
+            catch(SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+            }
+            return -2;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Execute a reprice operation of non-enchanted items.
+     * This method resides here and not with {@link Reprice} in order
+     * to manage synchronization with the database.
+     * 
+     * @param usr       The player who executed the sell command.
+     * @param merch     The (validated) items to sell.
+     * @param price     The price (each, not total) for the merchandise.
+     * @return          -1 on SQL fail, 0 on no listing, or else
+     *                  the original pre-existing listing.
+     */
+    public Object reprice(OfflinePlayer usr, ItemStack merch, double price)
+    {
+        ReentrantLock lock = LOCKS.lock(bookKey(merch));
+        try
+        {
+            wrote(usr.getUniqueId().toString());
+            String query = "";
+            try
+            {
+                //If another server changes the listing after it is read here,
+                //  the write changes nothing, and the listing is read again.
+                for(int attempt = 0; attempt < CONFLICT_ATTEMPTS; attempt ++)
+                {
+                    Listing current = getListing(usr,merch);
+                
+                    // The user did not have a listing, or it has since been taken or cancelled.
+                    if(current == null)
+                        return 0;
+                
+                    query = "UPDATE ChatShop_listings SET price = " + price
+                            + ", version = version + 1"
+                            + ", sellerAlias = '" + usr.getName() + "'"
+                            + " WHERE id = " + current.ID
+                            + " AND version = " + current.VERSION;
+                    if(write(query,bookKey(merch),sellerKey(usr.getUniqueId().toString())) == 1)
+                        return current;
+                }
+                conflicted("reprice",bookKey(merch));
+            }
+            catch(SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+            }
+            return -1;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Execute a reprice operation of an enchanted item.
+     * This method resides here and not with {@link EReprice} in order
+     * to manage synchronization with the database.
+     * 
+     * @param lot       The id number of the item to reprice.
+     * @param price     The new item price.
+     * @return          -2 on SQL fail, -1 on no stock to cancel,
+     *                  otherwise the {@link EListing} that was
+     *                  updated. <b>Note that tne returned listing
+     *                  will have the old price.</b>
+     */
+    public Object ereprice(int lot, double price)
+    {
+        ReentrantLock lock = LOCKS.lock("lot:" + lot);
+        try
+        {
+            EListing listing = getEListing(lot);
+        
+            if(listing == null)
+                return -1;
+            wrote(listing.PLAYER_UUID);
+        
+            String query = "UPDATE ChatShop_listings "
+                + "SET price = " + price + ", version = version + 1 "
+                + "WHERE id = " + lot;
+        
+            try
+            {
+                //Another server may have taken the lot since it was read.
+                if(write(query,enchKey(listing.MATERIAL),sellerKey(listing.PLAYER_UUID)) == 0)
+                    return -1;
+                return listing;
+            }
+            catch(SQLException e)
+            {
+                error(query);
+                e.printStackTrace();
+                return -2;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Run a query, recording its time and the number of rows it returned with the
+     * {@link MetricsManager}, which also logs it if it was slow.
+     * <br>
+     * The driver reads the whole result before returning it in any case, so the
+     * results are made scrollable in order to count them without cost.
+     * 
+     * @param from      The connection to read from.
+     * @param query     The query.
+     * @return          The results, positioned before the first row.
+     * @throws SQLException If the query fails.
+     */
+    protected ResultSet select(Connection from, String query) throws SQLException
+    {
+        long start = System.nanoTime();
+        Object event = Flight.startQuery();
+        int rows = -1;
+        boolean held = from == connect;
+        if(held)
+            CONNECTION.lock();
+        try
+        {
+            ResultSet res = from.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,ResultSet.CONCUR_READ_ONLY)
+                    .executeQuery(query);
+            rows = res.last() ? res.getRow() : 0;
+            res.beforeFirst();
+            return res;
+        }
+        finally
+        {
+            if(held)
+                CONNECTION.unlock();
+            PLUGIN.MM.query(query,System.nanoTime() - start,rows);
+            Flight.endQuery(event,query,rows);
+        }
+    }
+    
+    /**
+     * Run an update on the primary database, recording its time and the number of
+     * rows it changed with the {@link MetricsManager}, which also logs it if it was slow.
+     * 
+     * @param query     The update.
+     * @return          The number of rows changed.
+     * @throws SQLException If the update fails.
+     */
+    protected int update(String query) throws SQLException
+    {
+        long start = System.nanoTime();
+        Object event = Flight.startQuery();
+        int rows = -1;
+        CONNECTION.lock();
+        try
+        {
+            rows = connect.createStatement().executeUpdate(query);
+            return rows;
+        }
+        finally
+        {
+            CONNECTION.unlock();
+            PLUGIN.MM.query(query,System.nanoTime() - start,rows);
+            Flight.endQuery(event,query,rows);
+        }
+    }
+    
+    /**
+     * Log an error to the console involving the specified query.
+     * 
+     * @param query This query will be logged verbatim to the console.
+     */
+    protected void error(String query)
+    {
+        PLUGIN.CM.severe("Unexpected error occurred with query: \"" + query + "\"");
+    }
+    
+    /**
+     * Send a query to the database server to keep the connection from timing out.
+     * The MySQL default timeout (for interactive connections) is 8 hours; if the
+     * ChatShop were to be unused for 8 hours then subsequent queries would fail.
+     * This feature allows ChatShop to be run on quieter servers without having to
+     * reconfigure MySQL.
+     * 
+     * Note that despite this method's direct interaction with the database it
+     * does not need to take any lock in {@link #LOCKS}, because it (A) does not actually
+     * read any meaningful information from the database and (B) does not write to the
+     * database at all. It holds the connection only for the query.
+     */
+    public void keepAlive()
+    {
+        String query = "SELECT id FROM ChatShop_transactions WHERE FALSE";
+        CONNECTION.lock();
+        try
+        {
+            connect.createStatement().executeQuery(query);
+            if(replica != null)
+                replica.createStatement().executeQuery(query);
+        }
+        catch(SQLException e)
+        {
+            error("Error executing keep-alive query.");
+            error(query);
+            e.printStackTrace();
+        }
+        finally
+        {
+            CONNECTION.unlock();
+        }
+    }
+    
+    /** Close the database connection. **/
+    public void close()
+    {
+       try
+       {
+           connect.close();
+           if(replica != null)
+               replica.close();
+       }
+       catch (Exception e)
+       {
+           PLUGIN.CM.severe("Unexpected error attempting to close the database connection.");
+           e.printStackTrace();
+       }
+    }
+    
+    /**
+     * Convert a list of enchantments to a string suitable for database searching.
+     * 
+     * @param enchants  The list of enchantments to encode.
+     *                  Enchantments with a negative level will be searched such that
+     *                  any level above zero will match.
+     * @return          A string, as it will appear in the database.
+     */
+    protected String stringifyEnchants(EnchLvl[] enchants)
+    {
+        int[] slots = new int[enchants.length];
+        int[] levels = new int[enchants.length];
+        for(int i = 0; i < enchants.length; i ++)
+        {
+            slots[i] = ENCHANTS.get(enchants[i].ENCHANT);
+            levels[i] = enchants[i].LVL;
+        }
+        return EnchantCodec.pattern(ENCHANTS.size(),slots,levels);
+    }
+    
+    /**
+     * Convert a codified string to a list of Enchantments.
+     * 
+     * @param coded     The string to decode.
+     * @return          A list of enchantments.
+     */
+    protected EnchLvl[] deStringifyEnchants(String coded)
+    {
+        int[] levels = EnchantCodec.decode(coded);
+        ArrayList<EnchLvl> enchants = new ArrayList<EnchLvl>();
+        for(Map.Entry<Enchantment,Integer> entry : ENCHANTS.entrySet())
+            if(levels[entry.getValue()] != 0)
+                enchants.add(new EnchLvl(entry.getKey(),levels[entry.getValue()]));
+        return enchants.toArray(new EnchLvl[enchants.size()]);
+    }
+}
\ No newline at end of file
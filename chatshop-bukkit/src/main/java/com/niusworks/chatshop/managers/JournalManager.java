@@ -0,0 +1,547 @@
+package com.niusworks.chatshop.managers;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.utilities.Flight;
+
+import net.milkbowl.vault.economy.EconomyResponse;
+
+/**
+ * Keeps a write-ahead journal of trades for OC Network's ChatShop.
+ * <br>
+ * A trade happens in three systems: {@link DatabaseManager} takes the goods off the
+ * market, the buyer is charged through the economy provider, and the goods are put
+ * into the buyer's inventory. Each trade is journaled as it passes through these steps:
+ * <ul>
+ * <li><b>B</b> (begin): the trade's number, the buyer, and the goods wanted, before the market is changed.
+ * <li><b>T</b> (taken): the cost and quantity taken off the market.
+ * <li><b>A</b> (abandoned): nothing was taken off the market, and the trade is over.
+ * <li><b>C</b> (charged): the buyer has been charged.
+ * <li><b>D</b> (delivered): the goods have been given.
+ * </ul>
+ * A trade is complete once it has been both charged and delivered.
+ * <br><br>
+ * The begin and charged records are written to disk before the step that follows
+ * them is carried out, so no step is ever taken that the journal does not know of.
+ * The market step records the trade's number with the transactions it logs, so on
+ * startup a trade which was begun, but whose outcome was never journaled, is looked
+ * up in the database to learn whether, and how much of, it was taken.
+ * <br><br>
+ * On startup, the journal is replayed, rewritten to contain only the trades still
+ * unfinished, and those trades are carried forward: a buyer who was never charged
+ * is charged, and goods which were never delivered are given to the buyer the next
+ * time they join. Each such charge is journaled, and written to disk, before the
+ * next is attempted, so that a crash while carrying trades forward repeats none of
+ * the charges already made.
+ * <br><br>
+ * Goods are never given before their buyer has been charged. When a charge fails,
+ * the goods are held in the journal, and the charge is retried when the buyer next
+ * joins and at each startup; the goods are given once it succeeds.
+ * <br><br>
+ * Other records are gathered in memory and written to disk with a single write and
+ * fsync at the end of each tick (a group commit), along with anything else buffered.
+ * A delivery record lost to a crash means the goods are given again at the next join,
+ * as the inventory they were put into may not have been saved either.
+ * <br><br>
+ * This class is only used from the main server thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class JournalManager
+{
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The journal file. **/
+    protected final File FILE;
+
+    /** Records not yet written to disk. **/
+    protected final StringBuilder BUFFER = new StringBuilder();
+
+    /** Unfinished trades, by trade number. **/
+    protected final LinkedHashMap<String,Trade> OPEN = new LinkedHashMap<String,Trade>();
+
+    /** The open journal, or null if not started. **/
+    protected FileChannel channel;
+
+    /** The repeating group commit task, or null if not running. **/
+    protected BukkitTask task;
+
+    /**
+     * Create a JournalManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     * @param folder    The plugin's data folder, in which the journal is kept.
+     */
+    public JournalManager(ChatShop master, File folder)
+    {
+        PLUGIN = master;
+        FILE = new File(folder,"trades.journal");
+    }
+
+    /**
+     * Replay the journal, carry forward any unfinished trades,
+     * and begin committing new records at the end of each tick.
+     *
+     * @return  1 on success, -1 if the journal could not be opened.
+     */
+    public int start()
+    {
+        try
+        {
+            replay();
+
+            // Learn the outcome of any trade interrupted while the market was being changed.
+            for(Trade trade : new ArrayList<Trade>(OPEN.values()))
+                if(trade.taken == null)
+                    resolve(trade);
+
+            // The compacted journal holds everything buffered while learning those outcomes.
+            compact();
+            BUFFER.setLength(0);
+            channel = new FileOutputStream(FILE,true).getChannel();
+        }
+        catch(IOException e)
+        {
+            PLUGIN.CM.severe("Could not open trade journal " + FILE + ".");
+            e.printStackTrace();
+            return -1;
+        }
+
+        // Charge anyone whose trade was interrupted before they paid.
+        //  Each charge is written to disk before the next is attempted.
+        for(Trade trade : new ArrayList<Trade>(OPEN.values()))
+            if(trade.taken == Boolean.TRUE && !trade.charged)
+                charge(trade);
+
+        if(!OPEN.isEmpty())
+            PLUGIN.CM.log(OPEN.size() + " unfinished trade(s) carried forward from the trade journal.");
+
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("journal",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                commit();
+            }
+        }),1,1);
+        return 1;
+    }
+
+    /** Stop committing periodically, commit anything outstanding, and close the journal. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        commit();
+        if(channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Journal the beginning of a trade, before its goods are taken off the market.
+     * The record is written to disk before this returns.
+     *
+     * @param buyer     The buyer.
+     * @param goods     The goods (including amount) the buyer wants.
+     * @return          The number of the trade, for the market to record with it and for
+     *                  {@link #taken}, {@link #abandoned}, {@link #charged} and {@link #delivered};
+     *                  or null if the journal could not be written, in which case the trade
+     *                  must not go ahead.
+     */
+    public String begin(Player buyer, ItemStack goods)
+    {
+        Trade trade = new Trade(UUID.randomUUID().toString(),buyer.getUniqueId(),goods.clone());
+        BUFFER.append("B ").append(trade.ID).append(' ')
+            .append(trade.BUYER).append(' ')
+            .append(encode(trade.GOODS)).append('\n');
+        if(commit() != 1)
+            return null;
+        OPEN.put(trade.ID,trade);
+        return trade.ID;
+    }
+
+    /**
+     * Journal what the market step of a trade took. A trade which took nothing is abandoned.
+     *
+     * @param id        The number of the trade.
+     * @param cost      The total the buyer is to be charged.
+     * @param quantity  The quantity of the goods the buyer is to be given.
+     */
+    public void taken(String id, double cost, int quantity)
+    {
+        if(quantity == 0)
+        {
+            abandoned(id);
+            return;
+        }
+        Trade trade = OPEN.get(id);
+        if(trade != null)
+            trade.take(cost,quantity);
+        BUFFER.append("T ").append(id).append(' ')
+            .append(cost).append(' ')
+            .append(quantity).append('\n');
+    }
+
+    /**
+     * Journal that the market step of a trade took nothing (or failed), ending the trade.
+     *
+     * @param id    The number of the trade.
+     */
+    public void abandoned(String id)
+    {
+        OPEN.remove(id);
+        BUFFER.append("A ").append(id).append('\n');
+    }
+
+    /**
+     * Journal that the buyer of a trade has been charged.
+     * The record is written to disk, along with the trade's other records,
+     * before this returns.
+     *
+     * @param id    The number of the trade.
+     */
+    public void charged(String id)
+    {
+        Trade trade = OPEN.get(id);
+        if(trade != null)
+        {
+            trade.charged = true;
+            if(trade.delivered)
+                OPEN.remove(id);
+        }
+        BUFFER.append("C ").append(id).append('\n');
+        commit();
+    }
+
+    /**
+     * Journal that the goods of a trade have been given to the buyer.
+     *
+     * @param id    The number of the trade.
+     */
+    public void delivered(String id)
+    {
+        Trade trade = OPEN.get(id);
+        if(trade != null)
+        {
+            trade.delivered = true;
+            if(trade.charged)
+                OPEN.remove(id);
+        }
+        BUFFER.append("D ").append(id).append('\n');
+    }
+
+    /**
+     * Charge a joining player for any trades they were never charged for,
+     * and give them any goods owed from trades which were charged but never delivered.
+     *
+     * @param usr   The joining player.
+     */
+    public void deliver(Player usr)
+    {
+        for(Trade trade : new ArrayList<Trade>(OPEN.values()))
+            if(trade.taken == Boolean.TRUE && !trade.charged && trade.BUYER.equals(usr.getUniqueId()))
+                charge(trade);
+
+        ArrayList<Trade> owed = new ArrayList<Trade>();
+        for(Trade trade : OPEN.values())
+            if(trade.charged && !trade.delivered && trade.BUYER.equals(usr.getUniqueId()))
+                owed.add(trade);
+
+        for(Trade trade : owed)
+        {
+            PLUGIN.IM.giveItem(usr,trade.GOODS.clone());
+            delivered(trade.ID);
+        }
+        if(!owed.isEmpty())
+            PLUGIN.CM.reply(usr,PLUGIN.CM.color("text") +
+                    "You have been given goods from an earlier purchase which was interrupted.");
+    }
+
+    /**
+     * Write and fsync every buffered record, as one group.
+     *
+     * @return  1 on success (or if there was nothing to write),
+     *          -1 if the journal is not open or could not be written.
+     */
+    public int commit()
+    {
+        if(BUFFER.length() == 0)
+            return 1;
+        if(channel == null)
+            return -1;
+        try
+        {
+            ByteBuffer bytes = ByteBuffer.wrap(BUFFER.toString().getBytes(StandardCharsets.UTF_8));
+            while(bytes.hasRemaining())
+                channel.write(bytes);
+            channel.force(false);
+            BUFFER.setLength(0);
+            return 1;
+        }
+        catch(IOException e)
+        {
+            PLUGIN.CM.severe("Could not write to trade journal " + FILE + ".");
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Read the journal, rebuilding the set of unfinished trades.
+     * A torn or unreadable record (such as the last line of a journal
+     * interrupted mid-write) is skipped.
+     *
+     * @throws IOException  If the journal exists but cannot be read.
+     */
+    protected void replay() throws IOException
+    {
+        if(!FILE.exists())
+            return;
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(FILE),StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                String[] args = line.split(" ");
+                try
+                {
+                    String id = args[1];
+                    Trade trade = OPEN.get(id);
+                    if(args[0].equals("B") && args.length == 4)
+                        OPEN.put(id,new Trade(id,UUID.fromString(args[2]),decode(args[3])));
+                    else if(trade == null)
+                        continue;
+                    else if(args[0].equals("T"))
+                        trade.take(Double.parseDouble(args[2]),Integer.parseInt(args[3]));
+                    else if(args[0].equals("A"))
+                        OPEN.remove(id);
+                    else if(args[0].equals("C"))
+                        trade.charged = true;
+                    else if(args[0].equals("D"))
+                        trade.delivered = true;
+                    if(trade != null && trade.charged && trade.delivered)
+                        OPEN.remove(id);
+                }
+                catch(RuntimeException|IOException|ClassNotFoundException e)
+                {
+                    PLUGIN.CM.severe("Skipping unreadable trade journal record: " + line);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Look up in the database what an interrupted trade took off the market, if anything.
+     * A trade which took nothing is abandoned; if the database cannot be read,
+     * the trade is left as it is and looked up again at the next startup.
+     *
+     * @param trade The trade, whose outcome was never journaled.
+     */
+    protected void resolve(Trade trade)
+    {
+        double[] taken = PLUGIN.DB.journaled(trade.ID);
+        if(taken == null)
+        {
+            PLUGIN.CM.severe("Could not learn the outcome of interrupted trade " + trade.ID + ".");
+            return;
+        }
+        if(taken[0] == 0)
+            abandoned(trade.ID);
+        else
+            taken(trade.ID,taken[1],(int)taken[0]);
+    }
+
+    /**
+     * Charge the buyer of a trade which was interrupted, or whose charge failed,
+     * and journal the charge to disk before returning.
+     * If the charge fails, the trade is left uncharged, its goods held,
+     * and retried when the buyer next joins and at the next startup.
+     *
+     * @param trade The uncharged trade.
+     */
+    protected void charge(Trade trade)
+    {
+        OfflinePlayer buyer = PLUGIN.getServer().getOfflinePlayer(trade.BUYER);
+        EconomyResponse res = Flight.withdraw(PLUGIN.ECON,buyer,trade.cost);
+        if(res == null || !res.transactionSuccess())
+        {
+            PLUGIN.CM.severe("Could not charge " + trade.BUYER + " " + trade.cost +
+                    " for unpaid trade " + trade.ID + ".");
+            return;
+        }
+        charged(trade.ID);
+    }
+
+    /**
+     * Rewrite the journal so that it contains only the unfinished trades.
+     * The new journal is written beside the old one and moved over it.
+     *
+     * @throws IOException  If the new journal cannot be written.
+     */
+    protected void compact() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        for(Trade trade : OPEN.values())
+        {
+            out.append("B ").append(trade.ID).append(' ')
+                .append(trade.BUYER).append(' ')
+                .append(encode(trade.GOODS)).append('\n');
+            if(trade.taken == Boolean.TRUE)
+                out.append("T ").append(trade.ID).append(' ')
+                    .append(trade.cost).append(' ')
+                    .append(trade.GOODS.getAmount()).append('\n');
+            if(trade.charged)
+                out.append("C ").append(trade.ID).append('\n');
+            if(trade.delivered)
+                out.append("D ").append(trade.ID).append('\n');
+        }
+
+        File tmp = new File(FILE.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try
+        {
+            stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+            stream.getChannel().force(false);
+        }
+        finally
+        {
+            stream.close();
+        }
+        Files.move(tmp.toPath(),FILE.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Serialize goods for the journal.
+     *
+     * @param goods The goods to serialize.
+     * @return      The goods as a single base-64 token.
+     */
+    protected static String encode(ItemStack goods)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes);
+            out.writeObject(goods);
+            out.close();
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+        catch(IOException e)
+        {
+            // Only possible for goods which are not serializable, which ItemStacks always are.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deserialize goods from the journal.
+     *
+     * @param token The base-64 token written by {@link #encode}.
+     * @return      The goods.
+     * @throws IOException              If the token is corrupt.
+     * @throws ClassNotFoundException   If the token is not an item.
+     */
+    protected static ItemStack decode(String token) throws IOException, ClassNotFoundException
+    {
+        BukkitObjectInputStream in = new BukkitObjectInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(token)));
+        try
+        {
+            return (ItemStack)in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * One journaled trade.
+     */
+    protected static class Trade
+    {
+        /** The number of the trade, a random UUID so that it is unique across servers. **/
+        public final String ID;
+        /** The buyer. **/
+        public final UUID BUYER;
+        /** The goods the buyer wants, and once taken, is to be given. **/
+        public final ItemStack GOODS;
+        /** Whether the goods were taken off the market, or null if not yet known. **/
+        public Boolean taken = null;
+        /** The total the buyer is to be charged, once taken. **/
+        public double cost = 0;
+        /** Whether the buyer has been charged. **/
+        public boolean charged = false;
+        /** Whether the goods have been given. **/
+        public boolean delivered = false;
+
+        /**
+         * @param id    The number of the trade.
+         * @param buyer The buyer.
+         * @param goods The goods the buyer wants.
+         */
+        public Trade(String id, UUID buyer, ItemStack goods)
+        {
+            ID = id;
+            BUYER = buyer;
+            GOODS = goods;
+        }
+
+        /**
+         * Record what the market step of this trade took.
+         *
+         * @param cost      The total the buyer is to be charged.
+         * @param quantity  The quantity of the goods the buyer is to be given.
+         */
+        public void take(double cost, int quantity)
+        {
+            taken = true;
+            this.cost = cost;
+            GOODS.setAmount(quantity);
+        }
+    }
+}
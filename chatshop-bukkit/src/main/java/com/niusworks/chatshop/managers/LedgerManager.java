@@ -0,0 +1,153 @@
+package com.niusworks.chatshop.managers;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.Payout;
+import com.niusworks.chatshop.utilities.Flight;
+
+import net.milkbowl.vault.economy.EconomyResponse;
+
+/**
+ * Settles seller payouts with the economy provider for OC Network's ChatShop.
+ * <br>
+ * Purchases do not pay sellers directly. Instead, {@link DatabaseManager} records
+ * what each seller is owed in the payout ledger as part of the purchase itself,
+ * and this manager periodically pays out the ledger in batches: one deposit per
+ * seller, however many listings or purchases that covers. This keeps economy
+ * calls, which may be slow, out of the synchronized database operations.
+ * <br><br>
+ * Ledger entries are claimed, by marking them, before they are deposited, so that
+ * when several servers share the database each entry is paid by only one of them,
+ * and are only removed from the ledger once they have been deposited.
+ * A failed deposit is released back to the ledger to be retried, and anything still
+ * owed when the server stops is paid out on the next startup. A claim left by a
+ * settlement which was interrupted, by a crash on this or another server, is released
+ * once it is {@link #CLAIM_TIMEOUT} seconds old, and paid again: no payout is ever
+ * lost, and only a crash between a deposit and the removal that follows it can pay
+ * one twice.
+ * <br><br>
+ * This class is only used from the main server thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class LedgerManager
+{
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /**
+     * The age, in seconds, past which a claim on ledger entries has been abandoned.
+     * A settlement holds a claim only for a single economy call.
+     */
+    protected static final int CLAIM_TIMEOUT = 300;
+
+    /** The repeating settlement task, or null if not running. **/
+    protected BukkitTask task;
+
+    /** Claims which have been deposited, but whose entries could not yet be removed from the ledger. **/
+    protected final ArrayList<String> SETTLED = new ArrayList<String>();
+
+    /**
+     * Create a LedgerManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public LedgerManager(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+
+    /**
+     * Pay out anything left in the ledger from a previous run,
+     * then begin settling periodically.
+     */
+    public void start()
+    {
+        settle();
+
+        long ticks = Math.max(1,PLUGIN.getConfig().getLong("payout-interval",1000) / 50);
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("payouts",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                settle();
+            }
+        }),ticks,ticks);
+    }
+
+    /** Stop settling periodically, and pay out everything still owed. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        settle();
+    }
+
+    /**
+     * Deposit everything currently owed in the ledger, one deposit per seller.
+     * Entries for a failed deposit are released, and retried at the next settlement,
+     * as are those of any abandoned claim.
+     *
+     * @return  The number of sellers paid.
+     */
+    public int settle()
+    {
+        //Nothing can be paid before the economy provider is linked.
+        if(PLUGIN.ECON == null)
+            return 0;
+        
+        //Deposited claims must be removed before their claims can expire.
+        for(String claim : new ArrayList<String>(SETTLED))
+            if(PLUGIN.DB.settlePayout(claim) == 1)
+                SETTLED.remove(claim);
+        
+        int released = PLUGIN.DB.releasePayouts(CLAIM_TIMEOUT);
+        if(released > 0)
+            PLUGIN.CM.severe(released + " payout ledger entries were left claimed by an interrupted settlement. "
+                    + "They will be paid again.");
+        
+        Payout[] owed = PLUGIN.DB.getPayouts();
+        if(owed == null)
+            return 0;
+
+        int paid = 0;
+        for(Payout payout : owed)
+        {
+            //Another server, or a change since the ledger was read, may have taken
+            //  the entries; they are then left for whoever has them, or the next settlement.
+            String claim = UUID.randomUUID().toString();
+            if(PLUGIN.DB.claimPayout(payout,claim) != 1)
+                continue;
+            
+            OfflinePlayer slr = PLUGIN.getServer().getOfflinePlayer(payout.SELLER);
+            EconomyResponse res = Flight.deposit(PLUGIN.ECON,slr,payout.AMOUNT);
+            if(res == null || !res.transactionSuccess())
+            {
+                String why = res == null ? "" : ": " + res.errorMessage;
+                if(PLUGIN.DB.restorePayout(claim) == 1)
+                    PLUGIN.CM.severe("Could not pay " + payout.AMOUNT + " to " + payout.SELLER + why + ". Will retry.");
+                else
+                    PLUGIN.CM.severe("Could not pay " + payout.AMOUNT + " to " + payout.SELLER + why
+                            + ", nor release it to the payout ledger. Will retry once its claim expires.");
+                continue;
+            }
+            if(PLUGIN.DB.settlePayout(claim) != 1)
+            {
+                PLUGIN.CM.severe("Paid " + payout.AMOUNT + " to " + payout.SELLER
+                        + ", but could not remove it from the payout ledger. Will retry.");
+                SETTLED.add(claim);
+            }
+            paid ++;
+        }
+        return paid;
+    }
+}
@@ -0,0 +1,1225 @@
+package com.niusworks.chatshop.managers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.Tender;
+import com.niusworks.chatshop.utilities.Flight;
+import com.niusworks.chatshop.utilities.Histogram;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import net.milkbowl.vault.economy.EconomyResponse.ResponseType;
+
+/**
+ * Drives a synthetic market load against ChatShop, for OC Network's ChatShop.
+ * <br>
+ * "/csadmin loadtest [players] [seconds]" simulates that many players at once, each
+ * using a command every "think-time" milliseconds on average, chosen at random by
+ * the weights in "loadtest.mix" from /find, /quote, /sell, /buy, /efind, /history and
+ * /dump. Commands are sent to the real, registered executors, and so reach the real
+ * {@link DatabaseManager} and are timed, budgeted and throttled like any player's.
+ * A buy or sale which asks for confirmation is confirmed at once.
+ * <br>
+ * Simulated players are stand-ins made by this manager. Before each command a player's
+ * inventory is refilled with a stack of each item in "loadtest.items"; players have
+ * every permission but the administrative ones; and their money is kept in memory,
+ * by wrapping the economy provider so that real players' money still goes through it.
+ * When the test ends, anything simulated players are owed is paid out, and the economy
+ * provider is unwrapped.
+ * <br><br>
+ * When the test ends, or is ended with "/csadmin loadtest stop", the trades per second
+ * are reported, with each command's uses, errors, p50/p99 latency and database round
+ * trips, to the console and to whoever began the test.
+ * <br><br>
+ * "/csadmin loadtest replay &lt;file&gt; [speed]" instead replays real history: a dump of
+ * ChatShop_transactions in the plugin's folder, as written by
+ * <code>mysql --batch -e "SELECT * FROM ChatShop_transactions"</code>. The rows of each
+ * buy, which share a buyer, an item and a moment, become one buy of their total quantity,
+ * preceded by each seller listing the quantity they sold at the price they sold it for.
+ * These are replayed through {@link DatabaseManager#sell} and {@link DatabaseManager#buy}
+ * at their original pace, sped up by the given factor, or as fast as possible if none
+ * is given, by simulated players who stand in for the original parties. Enchanted items,
+ * and items the dictionary does not define, are skipped. Replays are reported like load
+ * tests, and also give how far they fell behind their schedule.
+ * <br>
+ * Replays are made against a database of their own, configured under
+ * "loadtest.replay-database" like "MySQL", which is emptied before each replay;
+ * they are refused if it is the market's own. Their listings, trades and payouts
+ * therefore never reach the market, and the original players are never paid.
+ * <br><br>
+ * The listings and trades of load tests other than replays are real rows in the market's
+ * database, and are not removed afterward. Load tests are therefore refused unless
+ * "loadtest.enabled" is set, which should only ever be done on a staging server with
+ * its own database.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class LoadTestManager
+{
+    /** The commands which may be simulated, in the order they are reported. **/
+    protected static final String[] COMMANDS = {"find","quote","sell","buy","efind","history","dump"};
+
+    /** The longest time spent replaying in each tick, in milliseconds: half of a tick. **/
+    protected static final long SLICE_MS = 25;
+
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The random choices of the simulated players. **/
+    protected final Random RANDOM = new Random();
+
+    /** The simulated players of the current test. **/
+    protected final ArrayList<Simulated> PLAYERS = new ArrayList<Simulated>();
+
+    /** The items simulated players carry, sell and buy. **/
+    protected final ArrayList<ItemStack> ITEMS = new ArrayList<ItemStack>();
+
+    /** The names by which simulated players ask for {@link #ITEMS}. **/
+    protected final ArrayList<String> ITEM_NAMES = new ArrayList<String>();
+
+    /** The names by which simulated players ask for enchanted items. **/
+    protected final ArrayList<String> ENCHANTED = new ArrayList<String>();
+
+    /** The weight of each of {@link #COMMANDS} in the mix. **/
+    protected final int[] WEIGHTS = new int[COMMANDS.length];
+
+    /** What each command did in the current test, in the order first used. **/
+    protected final LinkedHashMap<String,Usage> USAGE = new LinkedHashMap<String,Usage>();
+
+    /** The buys of the current replay, in the order they were made. **/
+    protected final ArrayList<Sweep> SWEEPS = new ArrayList<Sweep>();
+
+    /** The players of the current replay, by the UUID of the player they stand in for. **/
+    protected final HashMap<String,Simulated> STAND_INS = new HashMap<String,Simulated>();
+
+    /** The money of every player simulated since the server started, by UUID. **/
+    protected final ConcurrentHashMap<UUID,Double> BALANCES = new ConcurrentHashMap<UUID,Double>();
+
+    /** A description of the current test, for its report. **/
+    protected String test;
+    /** The player who began the current test. **/
+    protected Player requester;
+    /** The repeating test task, or null if no test is running. **/
+    protected BukkitTask task;
+    /** The world simulated players are in. **/
+    protected World world;
+    /** The game mode simulated players are in. **/
+    protected GameMode mode;
+    /** The prefix of an error message. **/
+    protected String errorPrefix;
+    /** The mean time between one player's commands, in nanoseconds. **/
+    protected long think;
+    /** When the current test began, in nanoseconds. **/
+    protected long began;
+    /** When the current test is to end, in nanoseconds. **/
+    protected long ends;
+    /** The number of completed buys and sales in the current test. **/
+    protected long trades;
+    /** Whether the economy provider has been wrapped for simulated players. **/
+    protected boolean wrapped = false;
+    /** The real economy provider, while it is wrapped. **/
+    protected Economy real;
+    /** The wrapped economy provider, while it is. **/
+    protected Economy proxy;
+    /** The database of the current replay, if any. **/
+    protected DatabaseManager store;
+    /** Whether a replay's dump is being read. **/
+    protected boolean loading = false;
+    /** How many times faster than the original a replay runs, or 0 for as fast as possible. **/
+    protected double speed;
+    /** The next buy to replay. **/
+    protected int next;
+    /** The number of rows of the dump which were skipped. **/
+    protected int skipped;
+    /** The furthest a replay has fallen behind its schedule, in nanoseconds. **/
+    protected long behind;
+
+    /**
+     * Create a LoadTestManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public LoadTestManager(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+
+    /**
+     * Begin a load test, reporting to the specified player when it ends.
+     *
+     * @param usr       The player who began the test.
+     * @param players   The number of players to simulate, or -1 for the configured number.
+     * @param seconds   How long to run, in seconds, or -1 for the configured duration.
+     * @return          The number of players simulated, -1 if load tests are not enabled,
+     *                  -2 if a test is already running, -3 if no configured item can be
+     *                  traded, or -4 if no allowed world is loaded.
+     */
+    public int start(Player usr, int players, int seconds)
+    {
+        ConfigurationSection cfg = PLUGIN.getConfig().getConfigurationSection("loadtest");
+        if(cfg == null || !cfg.getBoolean("enabled",false))
+            return -1;
+        if(task != null || loading)
+            return -2;
+
+        ITEMS.clear();
+        ITEM_NAMES.clear();
+        for(String name : cfg.getStringList("items"))
+        {
+            Object parse = PLUGIN.IM.parse(usr,name);
+            if(!(parse instanceof ItemStack))
+                continue;
+            ItemStack stack = (ItemStack)parse;
+            stack.setAmount(Math.max(stack.getMaxStackSize(),1));
+            ITEMS.add(stack);
+            ITEM_NAMES.add(name);
+        }
+        if(ITEMS.isEmpty())
+            return -3;
+        ENCHANTED.clear();
+        ENCHANTED.addAll(cfg.getStringList("enchanted-items"));
+
+        //Simulated players stand in the first allowed world, in the first allowed game mode.
+        world = null;
+        for(Object name : PLUGIN.getConfig().getList("allowed-worlds"))
+            if(world == null && name instanceof String)
+                world = PLUGIN.getServer().getWorld((String)name);
+        if(world == null)
+            return -4;
+        mode = GameMode.SURVIVAL;
+        for(Object name : PLUGIN.getConfig().getList("allowed-modes"))
+            if(name instanceof String)
+            {
+                try
+                {
+                    mode = GameMode.valueOf(((String)name).toUpperCase());
+                    break;
+                }
+                catch(IllegalArgumentException e){/* try the next */}
+            }
+
+        ConfigurationSection mix = cfg.getConfigurationSection("mix");
+        for(int i = 0; i < COMMANDS.length; i ++)
+            WEIGHTS[i] = mix == null ? 1 : Math.max(0,mix.getInt(COMMANDS[i],0));
+        if(ENCHANTED.isEmpty())
+            WEIGHTS[Arrays.asList(COMMANDS).indexOf("efind")] = 0;
+
+        if(players < 1)
+            players = Math.max(1,cfg.getInt("players",100));
+        if(seconds < 1)
+            seconds = Math.max(1,cfg.getInt("duration",60));
+        think = Math.max(1,cfg.getLong("think-time",5000)) * 1000000;
+        double balance = cfg.getDouble("balance",100000);
+        errorPrefix = PLUGIN.CM.PREFIX + PLUGIN.CM.color("error");
+        wrap();
+
+        //Players begin at random moments over their first think time, rather than all at once.
+        long now = System.nanoTime();
+        PLAYERS.clear();
+        for(int i = 0; i < players; i ++)
+        {
+            Simulated p = new Simulated("loadtest" + i);
+            p.due = now + (long)(RANDOM.nextDouble() * think);
+            PLAYERS.add(p);
+            if(!BALANCES.containsKey(p.ID))
+                BALANCES.put(p.ID,balance);
+        }
+
+        test = "Load test of " + players + " players";
+        reset(usr);
+        ends = now + seconds * 1000000000L;
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        },1,1);
+        return players;
+    }
+
+    /**
+     * Begin replaying a dump of ChatShop_transactions, reporting to the specified player
+     * when the dump has been read and when the replay ends.
+     * The dump is read off the main thread, and the replay begins once it has been.
+     *
+     * @param usr       The player who began the replay.
+     * @param name      The name of the dump, in the plugin's folder.
+     * @param factor    How many times faster than the original to replay, or 0 for as
+     *                  fast as possible.
+     * @return          0 if the dump is being read, -1 if load tests are not enabled,
+     *                  -2 if a test is already running, -3 if there is no such dump,
+     *                  or -4 if no database apart from the market's is configured for replays.
+     */
+    public int replay(final Player usr, final String name, final double factor)
+    {
+        ConfigurationSection cfg = PLUGIN.getConfig().getConfigurationSection("loadtest");
+        if(cfg == null || !cfg.getBoolean("enabled",false))
+            return -1;
+        if(task != null || loading)
+            return -2;
+        final File file = new File(PLUGIN.getDataFolder(),name);
+        if(!file.isFile())
+            return -3;
+        final DatabaseManager db = new DatabaseManager(PLUGIN,"loadtest.replay-database");
+        if(!cfg.isSet("replay-database.url") && !cfg.isSet("replay-database.database")
+                || db.url().equals(PLUGIN.DB.url()))
+            return -4;
+
+        loading = true;
+        PLUGIN.getServer().getScheduler().runTaskAsynchronously(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final ArrayList<Sweep> sweeps = new ArrayList<Sweep>();
+                final int skips = db.initialize() == 1 && db.empty() == 1 ? read(file,sweeps) : -2;
+                PLUGIN.getServer().getScheduler().runTask(PLUGIN,new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        begin(usr,name,factor,db,sweeps,skips);
+                    }
+                });
+            }
+        });
+        return 0;
+    }
+
+    /**
+     * End the current test early, and report it.
+     *
+     * @return  Whether a test was running.
+     */
+    public boolean finish()
+    {
+        if(task == null)
+            return false;
+        task.cancel();
+        task = null;
+        report();
+        release();
+        PLAYERS.clear();
+        SWEEPS.clear();
+        STAND_INS.clear();
+        requester = null;
+        return true;
+    }
+
+    /** Stop the current test, if any, without reporting it. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        loading = false;
+        release();
+        PLAYERS.clear();
+        SWEEPS.clear();
+        STAND_INS.clear();
+        requester = null;
+    }
+    
+    /**
+     * Close the current replay's database, if any, pay out whatever simulated players
+     * are still owed, and unwrap the economy provider, so that nothing owed to them is
+     * ever paid through the real provider.
+     */
+    protected void release()
+    {
+        if(store != null)
+        {
+            store.close();
+            store = null;
+        }
+        if(wrapped)
+            PLUGIN.LM.settle();
+        unwrap();
+    }
+
+    /**
+     * Begin replaying the buys read from a dump, unless the replay was stopped while
+     * the dump was being read.
+     *
+     * @param usr       The player who began the replay.
+     * @param name      The name of the dump.
+     * @param factor    How many times faster than the original to replay, or 0 for as
+     *                  fast as possible.
+     * @param db        The database to replay against, connected and emptied.
+     * @param sweeps    The buys read from the dump, in the order they were made.
+     * @param skips     The number of rows skipped, -1 if the dump could not be read,
+     *                  or -2 if the database could not be prepared.
+     */
+    protected void begin(Player usr, String name, double factor, DatabaseManager db, ArrayList<Sweep> sweeps, int skips)
+    {
+        if(!loading)
+        {
+            db.close();
+            return;
+        }
+        loading = false;
+        if(skips < 0)
+        {
+            db.close();
+            PLUGIN.CM.error(usr,skips == -2 ? "Could not prepare the replay database." : "Could not read " + name + ".");
+            return;
+        }
+
+        //Items the dictionary does not define cannot be listed.
+        SWEEPS.clear();
+        skipped = skips;
+        for(Sweep s : sweeps)
+            if(PLUGIN.IM.lookup(new ItemStack(s.TYPE,1,s.DAMAGE)) != null)
+                SWEEPS.add(s);
+            else
+                skipped += s.POSTS.size();
+        if(SWEEPS.isEmpty())
+        {
+            db.close();
+            PLUGIN.CM.error(usr,"There is nothing in " + name + " which can be replayed.");
+            return;
+        }
+
+        //Each original player is stood in for by a simulated player of the same name.
+        store = db;
+        wrap();
+        double balance = PLUGIN.getConfig().getDouble("loadtest.balance",100000);
+        STAND_INS.clear();
+        for(Sweep s : SWEEPS)
+        {
+            standIn(s.BUYER,s.BUYER_ALIAS,balance);
+            for(Post post : s.POSTS)
+                standIn(post.SELLER,post.SELLER_ALIAS,balance);
+        }
+
+        speed = factor;
+        next = 0;
+        behind = 0;
+        test = "Replay of " + name + (speed > 0 ? " at " + speed + "x" : "");
+        reset(usr);
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("replay",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                replay();
+            }
+        }),1,1);
+
+        PLUGIN.CM.reply(usr,PLUGIN.CM.color("text") + "Replaying " + SWEEPS.size() + " buys among "
+                + STAND_INS.size() + " players, " + skipped + " transactions skipped; results will follow when the replay ends.");
+    }
+
+    /**
+     * Make the simulated player who stands in for an original player, if there is none yet.
+     *
+     * @param uuid      The UUID of the original player.
+     * @param alias     The name of the original player.
+     * @param balance   The money the simulated player begins with.
+     */
+    protected void standIn(String uuid, String alias, double balance)
+    {
+        if(STAND_INS.containsKey(uuid))
+            return;
+        Simulated p = new Simulated(alias,
+                UUID.nameUUIDFromBytes(("ChatShop replay " + uuid).getBytes(StandardCharsets.UTF_8)));
+        STAND_INS.put(uuid,p);
+        if(!BALANCES.containsKey(p.ID))
+            BALANCES.put(p.ID,balance);
+    }
+
+    /**
+     * Replay every buy whose time has come, for at most {@link #SLICE_MS} milliseconds,
+     * and end the replay once every buy has been replayed.
+     */
+    protected void replay()
+    {
+        long now = System.nanoTime();
+        long sliceEnd = now + SLICE_MS * 1000000;
+        long first = SWEEPS.get(0).AT;
+        while(next < SWEEPS.size() && System.nanoTime() < sliceEnd)
+        {
+            Sweep s = SWEEPS.get(next);
+            if(speed > 0)
+            {
+                //When the buy is due, in nanoseconds since the replay began.
+                long due = (long)((s.AT - first) * 1e6 / speed);
+                if(due > now - began)
+                    break;
+                behind = Math.max(behind,now - began - due);
+            }
+            replay(s);
+            next ++;
+        }
+        if(next >= SWEEPS.size())
+            finish();
+    }
+
+    /**
+     * Replay one buy: list what each seller sold, and then buy it.
+     *
+     * @param s The buy.
+     */
+    protected void replay(Sweep s)
+    {
+        for(Post post : s.POSTS)
+        {
+            Simulated seller = STAND_INS.get(post.SELLER);
+            meet(seller,store);
+            long start = System.nanoTime();
+            PLUGIN.MM.begin("replay-sell");
+            Object res;
+            try
+            {
+                res = store.sell(seller.PLAYER,new ItemStack(s.TYPE,post.QUANTITY,s.DAMAGE),post.PRICE);
+            }
+            finally
+            {
+                PLUGIN.MM.end();
+            }
+            record("sell",System.nanoTime() - start,res instanceof Integer && (Integer)res < 0);
+        }
+
+        Simulated buyer = STAND_INS.get(s.BUYER);
+        meet(buyer,store);
+        long start = System.nanoTime();
+        PLUGIN.MM.begin("replay-buy");
+        Tender res;
+        try
+        {
+            res = store.buy(buyer.PLAYER,new ItemStack(s.TYPE,s.quantity,s.DAMAGE),s.maxPrice,null);
+        }
+        finally
+        {
+            PLUGIN.MM.end();
+        }
+        boolean bought = res != null && res.QUANTITY > 0;
+        record("buy",System.nanoTime() - start,!bought);
+        if(bought)
+        {
+            //As /buy does; sellers are owed in the replay database's payout ledger, which is never settled.
+            Flight.withdraw(PLUGIN.ECON,buyer.PLAYER,res.COST);
+            trades ++;
+        }
+    }
+
+    /**
+     * Read a dump of ChatShop_transactions: tab-separated, with a header row naming the
+     * columns. Rows which share a buyer, an item and a moment are one buy.
+     *
+     * @param file      The dump.
+     * @param sweeps    The list to which to add the buys, in the order they were made.
+     * @return          The number of rows skipped, or -1 if the dump could not be read.
+     */
+    protected static int read(File file, ArrayList<Sweep> sweeps)
+    {
+        int skips = 0;
+        LinkedHashMap<String,Sweep> buys = new LinkedHashMap<String,Sweep>();
+        try
+        {
+            BufferedReader in = Files.newBufferedReader(file.toPath(),StandardCharsets.UTF_8);
+            try
+            {
+                String line = in.readLine();
+                if(line == null)
+                    return -1;
+                List<String> header = Arrays.asList(line.split("\t"));
+                int material = header.indexOf("material");
+                int damage = header.indexOf("damage");
+                int seller = header.indexOf("seller");
+                int sellerAlias = header.indexOf("sellerAlias");
+                int buyer = header.indexOf("buyer");
+                int buyerAlias = header.indexOf("buyerAlias");
+                int price = header.indexOf("price");
+                int enchantments = header.indexOf("enchantments");
+                int quantity = header.indexOf("quantity");
+                int date = header.indexOf("date");
+                if(Math.min(Math.min(Math.min(material,damage),Math.min(seller,sellerAlias)),
+                        Math.min(Math.min(buyer,buyerAlias),Math.min(Math.min(price,quantity),date))) < 0)
+                    return -1;
+
+                while((line = in.readLine()) != null)
+                {
+                    String[] row = line.split("\t",-1);
+                    Material type = row.length == header.size() ? Material.matchMaterial(row[material]) : null;
+                    if(type == null || (enchantments >= 0 && !row[enchantments].isEmpty() && !row[enchantments].equals("NULL")))
+                    {
+                        skips ++;
+                        continue;
+                    }
+                    try
+                    {
+                        Post post = new Post(row[seller],row[sellerAlias],Integer.parseInt(row[quantity]),Double.parseDouble(row[price]));
+                        String key = row[buyer] + "\t" + type + ":" + row[damage] + "\t" + row[date];
+                        Sweep s = buys.get(key);
+                        if(s == null)
+                        {
+                            s = new Sweep(Timestamp.valueOf(row[date]).getTime(),row[buyer],row[buyerAlias],
+                                    type,Short.parseShort(row[damage]));
+                            buys.put(key,s);
+                        }
+                        s.add(post);
+                    }
+                    catch(IllegalArgumentException e)
+                    {
+                        skips ++;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+            return -1;
+        }
+
+        sweeps.addAll(buys.values());
+        Collections.sort(sweeps,new Comparator<Sweep>()
+        {
+            @Override
+            public int compare(Sweep a, Sweep b)
+            {
+                return Long.compare(a.AT,b.AT);
+            }
+        });
+        return skips;
+    }
+
+    /** Wrap the economy provider for simulated players, if it is not yet. **/
+    protected void wrap()
+    {
+        if(wrapped)
+            return;
+        real = PLUGIN.ECON;
+        proxy = (Economy)Proxy.newProxyInstance(Economy.class.getClassLoader(),
+                new Class<?>[]{Economy.class},new Ledger(real));
+        PLUGIN.ECON = proxy;
+        wrapped = true;
+    }
+    
+    /**
+     * Restore the real economy provider, unless it has been replaced since it was
+     * wrapped, such as by a reload.
+     */
+    protected void unwrap()
+    {
+        if(!wrapped)
+            return;
+        if(PLUGIN.ECON == proxy)
+            PLUGIN.ECON = real;
+        real = null;
+        proxy = null;
+        wrapped = false;
+    }
+
+    /**
+     * Begin counting a new test.
+     *
+     * @param usr   The player who began the test.
+     */
+    protected void reset(Player usr)
+    {
+        USAGE.clear();
+        trades = 0;
+        requester = usr;
+        began = System.nanoTime();
+    }
+
+    /**
+     * Record a simulated player as having played, the first time it does anything.
+     *
+     * @param p   The player.
+     * @param db  The database the player plays against.
+     */
+    protected void meet(Simulated p, DatabaseManager db)
+    {
+        if(!p.seen)
+        {
+            db.touchPlayer(p.PLAYER);
+            p.seen = true;
+        }
+    }
+
+    /**
+     * Let every simulated player whose time has come use a command, and end the
+     * test once its time is up.
+     */
+    protected void tick()
+    {
+        long now = System.nanoTime();
+        if(now >= ends)
+        {
+            finish();
+            return;
+        }
+        for(Simulated p : PLAYERS)
+            if(p.due <= now)
+            {
+                act(p);
+                //Exponential think times make the players' commands arrive as a Poisson process.
+                p.due = now + (long)(-Math.log(1 - RANDOM.nextDouble()) * think);
+            }
+    }
+
+    /**
+     * Have a simulated player use one command from the mix, and confirm it if asked.
+     *
+     * @param p The player.
+     */
+    protected void act(Simulated p)
+    {
+        meet(p,PLUGIN.DB);
+        p.restock();
+
+        String cmd = pick();
+        int item = RANDOM.nextInt(ITEMS.size());
+        String[] args;
+        if(cmd.equals("find"))
+            args = new String[]{ITEM_NAMES.get(item)};
+        else if(cmd.equals("quote") || cmd.equals("buy"))
+            args = new String[]{"" + (1 + RANDOM.nextInt(ITEMS.get(item).getAmount())),ITEM_NAMES.get(item)};
+        else if(cmd.equals("sell"))
+            args = new String[]{"" + (1 + RANDOM.nextInt(ITEMS.get(item).getAmount())),ITEM_NAMES.get(item),
+                    String.format("%.2f",1 + RANDOM.nextInt(900) / 100.0)};
+        else if(cmd.equals("efind"))
+            args = new String[]{ENCHANTED.get(RANDOM.nextInt(ENCHANTED.size()))};
+        else
+            args = new String[0];
+
+        boolean ok = run(p,cmd,args);
+        if(ok && p.confirm)
+            ok = run(p,"confirm",new String[0]);
+        if(ok && (cmd.equals("buy") || cmd.equals("sell")))
+            trades ++;
+    }
+
+    /**
+     * Have a simulated player use a command, through its registered executor, and record it.
+     *
+     * @param p     The player.
+     * @param name  The name of the command.
+     * @param args  The command's arguments.
+     * @return      Whether the command succeeded, that is, sent no error.
+     */
+    protected boolean run(Simulated p, String name, String[] args)
+    {
+        Usage use = usage(name);
+        PluginCommand command = PLUGIN.getCommand(name);
+        p.failed = p.confirm = false;
+        long rejected = PLUGIN.WD.getRejected();
+        long start = System.nanoTime();
+        command.getExecutor().onCommand(p.PLAYER,command,name,args);
+        use.LATENCY.record(System.nanoTime() - start);
+
+        if(PLUGIN.WD.getRejected() > rejected)
+            use.busy ++;
+        else
+        {
+            use.TRIPS.record(PLUGIN.MM.getLastTrips());
+            if(p.failed)
+                use.errors ++;
+        }
+        return !p.failed;
+    }
+
+    /**
+     * Record a call made outside of any command, such as by a replay.
+     *
+     * @param name      The name of the call.
+     * @param nanos     The time it took, in nanoseconds.
+     * @param failed    Whether it failed.
+     */
+    protected void record(String name, long nanos, boolean failed)
+    {
+        Usage use = usage(name);
+        use.LATENCY.record(nanos);
+        use.TRIPS.record(PLUGIN.MM.getLastTrips());
+        if(failed)
+            use.errors ++;
+    }
+
+    /**
+     * @param name  The name of a command or call.
+     * @return      What it has done in the current test.
+     */
+    protected Usage usage(String name)
+    {
+        Usage use = USAGE.get(name);
+        if(use == null)
+        {
+            use = new Usage();
+            USAGE.put(name,use);
+        }
+        return use;
+    }
+
+    /**
+     * @return  A command chosen at random by the weights of the mix.
+     */
+    protected String pick()
+    {
+        int total = 0;
+        for(int w : WEIGHTS)
+            total += w;
+        if(total == 0)
+            return COMMANDS[0];
+        int r = RANDOM.nextInt(total);
+        for(int i = 0; i < COMMANDS.length; i ++)
+        {
+            r -= WEIGHTS[i];
+            if(r < 0)
+                return COMMANDS[i];
+        }
+        return COMMANDS[0];
+    }
+
+    /**
+     * Report the current test to the console and to whoever began it.
+     */
+    protected void report()
+    {
+        double seconds = (System.nanoTime() - began) / 1e9;
+        ArrayList<String> out = new ArrayList<String>();
+        out.add(test + ": " + String.format("%.0f",seconds) + "s, "
+                + trades + " trades (" + String.format("%.1f",trades / seconds) + "/s).");
+        if(!SWEEPS.isEmpty())
+            out.add(next + " of " + SWEEPS.size() + " buys replayed, " + skipped + " transactions skipped"
+                    + (speed > 0 ? ", at most " + WatchdogManager.ms(behind) + " behind schedule." : "."));
+
+        //Commands in the mix first, then any others they led to, such as /confirm.
+        ArrayList<String> names = new ArrayList<String>(Arrays.asList(COMMANDS));
+        for(String name : USAGE.keySet())
+            if(!names.contains(name))
+                names.add(name);
+        for(String name : names)
+        {
+            Usage use = USAGE.get(name);
+            if(use == null)
+                continue;
+            out.add("/" + name + ": " + use.LATENCY.count() + " uses, " + use.errors + " errors, " + use.busy + " busy, "
+                    + WatchdogManager.ms(use.LATENCY.percentile(50)) + "/" + WatchdogManager.ms(use.LATENCY.percentile(99))
+                    + " p50/p99, " + use.TRIPS.percentile(50) + "/" + use.TRIPS.max() + " round trips p50/max");
+        }
+
+        for(String line : out)
+        {
+            PLUGIN.CM.log(line);
+            if(requester != null && requester.isOnline())
+                PLUGIN.CM.reply(requester,PLUGIN.CM.color("text") + line,false);
+        }
+    }
+
+    /**
+     * @param type  A type.
+     * @return      The default value of the type: 0, false, or null.
+     */
+    protected static Object defaultValue(Class<?> type)
+    {
+        if(type == boolean.class)
+            return false;
+        if(type == char.class)
+            return '\0';
+        if(type == byte.class)
+            return (byte)0;
+        if(type == short.class)
+            return (short)0;
+        if(type == int.class)
+            return 0;
+        if(type == long.class)
+            return 0L;
+        if(type == float.class)
+            return 0f;
+        if(type == double.class)
+            return 0d;
+        return null;
+    }
+
+    /**
+     * Call a method on a real object, unwrapping any exception it throws.
+     *
+     * @param target    The real object.
+     * @param method    The method.
+     * @param args      The arguments.
+     * @return          The method's result.
+     * @throws Throwable    Whatever the method throws.
+     */
+    protected static Object call(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target,args);
+        }
+        catch(InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    /** What one command did in a test. **/
+    protected static class Usage
+    {
+        /** The time taken by each use, in nanoseconds. **/
+        protected final Histogram LATENCY = new Histogram();
+        /** The database round trips made by each use not turned away. **/
+        protected final Histogram TRIPS = new Histogram();
+        /** The number of uses which sent an error. **/
+        protected long errors = 0;
+        /** The number of uses turned away because the market was busy. **/
+        protected long busy = 0;
+    }
+
+    /** One seller's part in a replayed buy. **/
+    protected static class Post
+    {
+        /** The UUID of the original seller. **/
+        protected final String SELLER;
+        /** The name of the original seller. **/
+        protected final String SELLER_ALIAS;
+        /** The quantity sold. **/
+        protected final int QUANTITY;
+        /** The price of each. **/
+        protected final double PRICE;
+
+        /**
+         * @param seller    The UUID of the original seller.
+         * @param alias     The name of the original seller.
+         * @param quantity  The quantity sold.
+         * @param price     The price of each.
+         */
+        protected Post(String seller, String alias, int quantity, double price)
+        {
+            SELLER = seller;
+            SELLER_ALIAS = alias;
+            QUANTITY = quantity;
+            PRICE = price;
+        }
+    }
+
+    /** A replayed buy: everything one buyer bought of one item at one moment. **/
+    protected static class Sweep
+    {
+        /** When the buy was made, in milliseconds since the epoch. **/
+        protected final long AT;
+        /** The UUID of the original buyer. **/
+        protected final String BUYER;
+        /** The name of the original buyer. **/
+        protected final String BUYER_ALIAS;
+        /** The item bought. **/
+        protected final Material TYPE;
+        /** The damage value of the item bought. **/
+        protected final short DAMAGE;
+        /** The listings bought from, in the order of the dump. **/
+        protected final ArrayList<Post> POSTS = new ArrayList<Post>();
+        /** The total quantity bought. **/
+        protected int quantity = 0;
+        /** The highest price paid for any of it. **/
+        protected double maxPrice = 0;
+
+        /**
+         * @param at        When the buy was made, in milliseconds since the epoch.
+         * @param buyer     The UUID of the original buyer.
+         * @param alias     The name of the original buyer.
+         * @param type      The item bought.
+         * @param damage    The damage value of the item bought.
+         */
+        protected Sweep(long at, String buyer, String alias, Material type, short damage)
+        {
+            AT = at;
+            BUYER = buyer;
+            BUYER_ALIAS = alias;
+            TYPE = type;
+            DAMAGE = damage;
+        }
+
+        /**
+         * @param post  A seller's part in the buy.
+         */
+        protected void add(Post post)
+        {
+            POSTS.add(post);
+            quantity += post.QUANTITY;
+            maxPrice = Math.max(maxPrice,post.PRICE);
+        }
+    }
+
+    /**
+     * A simulated player: the stand-in for a Player, and its inventory.
+     * Methods of either which ChatShop does not use return 0, false or null.
+     */
+    protected class Simulated implements InvocationHandler
+    {
+        /** The player's name. **/
+        protected final String NAME;
+        /** The player's UUID, the same for the same name in every test. **/
+        protected final UUID ID;
+        /** The player's main inventory; slot 0 is the main hand. **/
+        protected final ItemStack[] SLOTS = new ItemStack[36];
+        /** The stand-in player. **/
+        protected final Player PLAYER;
+        /** The stand-in inventory. **/
+        protected final PlayerInventory INVENTORY;
+        /** The stand-in for the player's chat components. **/
+        protected final Player.Spigot SPIGOT = new Player.Spigot()
+        {
+            @Override
+            public void sendMessage(BaseComponent component){}
+            @Override
+            public void sendMessage(BaseComponent... components){}
+        };
+
+        /** When the player next uses a command, in nanoseconds. **/
+        protected long due;
+        /** Whether the player has been recorded as having played. **/
+        protected boolean seen = false;
+        /** Whether the player has been sent an error since its last command began. **/
+        protected boolean failed;
+        /** Whether the player has been asked to confirm since its last command began. **/
+        protected boolean confirm;
+
+        /**
+         * @param name  The player's name.
+         */
+        protected Simulated(String name)
+        {
+            this(name,UUID.nameUUIDFromBytes(("ChatShop load test " + name).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        /**
+         * @param name  The player's name.
+         * @param id    The player's UUID.
+         */
+        protected Simulated(String name, UUID id)
+        {
+            NAME = name;
+            ID = id;
+            PLAYER = (Player)Proxy.newProxyInstance(Player.class.getClassLoader(),new Class<?>[]{Player.class},this);
+            INVENTORY = (PlayerInventory)Proxy.newProxyInstance(PlayerInventory.class.getClassLoader(),
+                    new Class<?>[]{PlayerInventory.class},new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    return inventory(proxy,method,args);
+                }
+            });
+        }
+
+        /** Empty the player's inventory, and give it a stack of each item. **/
+        protected void restock()
+        {
+            Arrays.fill(SLOTS,null);
+            for(int i = 0; i < ITEMS.size() && i < SLOTS.length; i ++)
+                SLOTS[i] = ITEMS.get(i).clone();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch(method.getName())
+            {
+                case "getName":
+                case "getDisplayName":
+                case "getPlayerListName":   return NAME;
+                case "getUniqueId":         return ID;
+                case "getInventory":        return INVENTORY;
+                case "getWorld":            return world;
+                case "getLocation":         return world.getSpawnLocation();
+                case "getGameMode":         return mode;
+                case "spigot":              return SPIGOT;
+                case "isOnline":
+                case "hasPlayedBefore":
+                case "isPermissionSet":     return true;
+                case "hasPermission":
+                    return !(args[0] instanceof String && ((String)args[0]).startsWith("chatshop.admin"));
+                case "sendMessage":
+                    for(String msg : args[0] instanceof String[] ? (String[])args[0] : new String[]{(String)args[0]})
+                    {
+                        if(msg.startsWith(errorPrefix))
+                            failed = true;
+                        if(msg.contains("/confirm "))
+                            confirm = true;
+                    }
+                    return null;
+                case "equals":              return proxy == args[0];
+                case "hashCode":            return System.identityHashCode(proxy);
+                case "toString":            return "Simulated{" + NAME + "}";
+                default:                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        /**
+         * Answer a call to the player's stand-in inventory.
+         *
+         * @param proxy     The stand-in inventory.
+         * @param method    The method called.
+         * @param args      The arguments.
+         * @return          The method's result.
+         */
+        protected Object inventory(Object proxy, Method method, Object[] args)
+        {
+            switch(method.getName())
+            {
+                case "getContents":
+                case "getStorageContents":  return SLOTS.clone();
+                case "setContents":
+                case "setStorageContents":
+                    Arrays.fill(SLOTS,null);
+                    ItemStack[] contents = (ItemStack[])args[0];
+                    System.arraycopy(contents,0,SLOTS,0,Math.min(contents.length,SLOTS.length));
+                    return null;
+                case "getItem":             return SLOTS[(Integer)args[0]];
+                case "setItem":             SLOTS[(Integer)args[0]] = (ItemStack)args[1]; return null;
+                case "clear":
+                    if(args == null || args.length == 0)
+                        Arrays.fill(SLOTS,null);
+                    else
+                        SLOTS[(Integer)args[0]] = null;
+                    return null;
+                case "getItemInMainHand":   return SLOTS[0] == null ? new ItemStack(Material.AIR) : SLOTS[0];
+                case "setItemInMainHand":   SLOTS[0] = (ItemStack)args[0]; return null;
+                case "getItemInOffHand":    return new ItemStack(Material.AIR);
+                case "getHeldItemSlot":     return 0;
+                case "getSize":             return SLOTS.length;
+                case "firstEmpty":
+                    for(int i = 0; i < SLOTS.length; i ++)
+                        if(SLOTS[i] == null)
+                            return i;
+                    return -1;
+                case "addItem":             return add((ItemStack[])args[0]);
+                case "iterator":            return Arrays.asList(SLOTS).listIterator();
+                case "getHolder":           return PLAYER;
+                case "equals":              return proxy == args[0];
+                case "hashCode":            return System.identityHashCode(proxy);
+                case "toString":            return "Simulated{" + NAME + "}.inventory";
+                default:                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        /**
+         * Add items to the inventory, filling similar stacks first and then empty slots.
+         *
+         * @param items The items.
+         * @return      The items which did not fit, by their index in the arguments.
+         */
+        protected HashMap<Integer,ItemStack> add(ItemStack[] items)
+        {
+            HashMap<Integer,ItemStack> left = new HashMap<Integer,ItemStack>();
+            for(int n = 0; n < items.length; n ++)
+            {
+                int amount = items[n].getAmount();
+                int max = Math.max(items[n].getMaxStackSize(),1);
+                for(int i = 0; i < SLOTS.length && amount > 0; i ++)
+                    if(SLOTS[i] != null && SLOTS[i].isSimilar(items[n]) && SLOTS[i].getAmount() < max)
+                    {
+                        int put = Math.min(amount,max - SLOTS[i].getAmount());
+                        SLOTS[i].setAmount(SLOTS[i].getAmount() + put);
+                        amount -= put;
+                    }
+                for(int i = 0; i < SLOTS.length && amount > 0; i ++)
+                    if(SLOTS[i] == null || SLOTS[i].getType() == Material.AIR)
+                    {
+                        SLOTS[i] = items[n].clone();
+                        SLOTS[i].setAmount(Math.min(amount,max));
+                        amount -= SLOTS[i].getAmount();
+                    }
+                if(amount > 0)
+                {
+                    ItemStack rest = items[n].clone();
+                    rest.setAmount(amount);
+                    left.put(n,rest);
+                }
+            }
+            return left;
+        }
+    }
+
+    /**
+     * The economy provider as seen while simulated players exist: their money is kept in
+     * {@link #BALANCES}, and every other call goes to the real provider.
+     */
+    protected class Ledger implements InvocationHandler
+    {
+        /** The real economy provider. **/
+        protected final Economy REAL;
+
+        /**
+         * @param real  The real economy provider.
+         */
+        protected Ledger(Economy real)
+        {
+            REAL = real;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            UUID id = args != null && args.length > 0 && args[0] instanceof OfflinePlayer
+                    ? ((OfflinePlayer)args[0]).getUniqueId() : null;
+            Double balance = id == null ? null : BALANCES.get(id);
+            if(balance == null)
+                return call(REAL,method,args);
+
+            //Of every overload, the amount is the last argument; any world name is ignored.
+            Object last = args[args.length - 1];
+            double amount = last instanceof Double ? (Double)last : 0;
+            switch(method.getName())
+            {
+                case "getBalance":          return balance;
+                case "has":                 return balance >= amount;
+                case "hasAccount":
+                case "createPlayerAccount": return true;
+                case "withdrawPlayer":
+                    if(amount < 0 || amount > balance)
+                        return new EconomyResponse(amount,balance,ResponseType.FAILURE,"Insufficient funds");
+                    BALANCES.put(id,balance - amount);
+                    return new EconomyResponse(amount,balance - amount,ResponseType.SUCCESS,null);
+                case "depositPlayer":
+                    if(amount < 0)
+                        return new EconomyResponse(amount,balance,ResponseType.FAILURE,"Cannot deposit negative funds");
+                    BALANCES.put(id,balance + amount);
+                    return new EconomyResponse(amount,balance + amount,ResponseType.SUCCESS,null);
+                default:                    return call(REAL,method,args);
+            }
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package com.niusworks.chatshop.managers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.utilities.CountingConnection;
+import com.niusworks.chatshop.utilities.Histogram;
+
+/**
+ * Measures the cost of ChatShop's work for OC Network's ChatShop.
+ * <br>
+ * Three kinds of measurement are kept, all since the server started:
+ * <ul>
+ * <li>The time taken by each command, in total and in each of its stages: {@link #GATE}
+ * (denial of service checks), {@link #PARSE} (validation), {@link #DB} (execution),
+ * and {@link #RENDER} (result). Commands mark the start of each stage with {@link #stage}.
+ * <li>The time taken by each database statement, and the number of rows it returned
+ * or changed, by the shape of the statement (its SQL with every literal replaced by "?").
+ * <li>The number of statements, and of round trips to the database server, made by
+ * each use of each command, as counted by {@link CountingConnection}. A command may
+ * be given a budget of statements under "query-budgets"; each use over budget is
+ * counted, and the first for each command is logged as a warning, so that a command
+ * which has begun to issue a statement per listing or per slot is noticed.
+ * <li>The hits and misses of in-memory caches, such as the market snapshots.
+ * </ul>
+ * These are shown by "/csadmin stats", and written in the Prometheus text format to
+ * metrics.prom in the data folder every "metrics-interval" milliseconds. The file is
+ * replaced whole each time, so a scraper never reads it half-written.
+ * <br><br>
+ * Any statement which takes longer than "slow-query-threshold" milliseconds is also
+ * written in full to slow-queries.log in the data folder, with the command which ran it.
+ * <br><br>
+ * Commands are only timed on the main server thread; statements and caches may be
+ * measured from any thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class MetricsManager
+{
+    /** The stage of a command which checks whether it may be used at all. **/
+    public static final String GATE = "gate";
+    /** The stage of a command which validates its arguments. **/
+    public static final String PARSE = "parse";
+    /** The stage of a command which carries it out, usually in the database. **/
+    public static final String DB = "db";
+    /** The stage of a command which reports the result. **/
+    public static final String RENDER = "render";
+    /** The whole of a command. **/
+    public static final String TOTAL = "total";
+
+    /** String literals in SQL. **/
+    protected static final Pattern STRINGS = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    /** Numeric literals in SQL. **/
+    protected static final Pattern NUMBERS = Pattern.compile("(?i)-?\\b\\d+(?:\\.\\d+)?(?:E-?\\d+)?\\b");
+    /** Null literals in SQL, other than in "IS [NOT] NULL". **/
+    protected static final Pattern NULLS = Pattern.compile("(?i)(?<!\\bIS )(?<!\\bNOT )\\bnull\\b");
+    /** Lists of literals in SQL, such as IN lists and VALUES rows. **/
+    protected static final Pattern LISTS = Pattern.compile("\\(\\?(?:\\s*,\\s*\\?)*\\)(?:\\s*,\\s*\\(\\?(?:\\s*,\\s*\\?)*\\))*");
+    /** Runs of the same condition joined by OR, such as a row per listing removed. **/
+    protected static final Pattern ORS = Pattern.compile("(?i)(\\([^()]*\\))(?:\\s+OR\\s+\\1)+");
+
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The file to which metrics are written. **/
+    protected final File FILE;
+
+    /** The file to which slow statements are written. **/
+    protected final File SLOW_FILE;
+
+    /** Command timings, by command, then by stage. **/
+    protected final ConcurrentHashMap<String,ConcurrentHashMap<String,Histogram>> COMMANDS =
+            new ConcurrentHashMap<String,ConcurrentHashMap<String,Histogram>>();
+
+    /** Statement timings, by shape. **/
+    protected final ConcurrentHashMap<String,Histogram> QUERIES = new ConcurrentHashMap<String,Histogram>();
+
+    /** Rows returned or changed by statements, by shape. **/
+    protected final ConcurrentHashMap<String,Histogram> ROWS = new ConcurrentHashMap<String,Histogram>();
+
+    /** Slow statements not yet written to the slow statement log. **/
+    protected final ConcurrentLinkedQueue<String> SLOW = new ConcurrentLinkedQueue<String>();
+
+    /** Statements made by each use of a command, by command. **/
+    protected final ConcurrentHashMap<String,Histogram> STATEMENTS = new ConcurrentHashMap<String,Histogram>();
+
+    /** Round trips made by each use of a command, by command. **/
+    protected final ConcurrentHashMap<String,Histogram> TRIPS = new ConcurrentHashMap<String,Histogram>();
+
+    /** Uses of each command over its statement budget, by command. **/
+    protected final ConcurrentHashMap<String,AtomicLong> OVER_BUDGET = new ConcurrentHashMap<String,AtomicLong>();
+
+    /** The greatest number of statements each command should make, by command. **/
+    protected final HashMap<String,Integer> BUDGETS = new HashMap<String,Integer>();
+
+    /** Cache hits and misses, by cache, as {hits, misses}. **/
+    protected final ConcurrentHashMap<String,AtomicLong[]> CACHES = new ConcurrentHashMap<String,AtomicLong[]>();
+
+    /** The command being timed, or null. Main thread only. **/
+    protected String command;
+    /** How many commands deep the timed command is, since commands may hand off to others. **/
+    protected int depth = 0;
+    /** The stage of the timed command. **/
+    protected String stage;
+    /** When the timed command began, in nanoseconds. **/
+    protected long commandStart;
+    /** When the current stage began, in nanoseconds. **/
+    protected long stageStart;
+    /** The thread running the timed command. **/
+    protected Thread thread;
+    /** The number of statements made by the timed command so far. **/
+    protected int statements;
+    /** The number of round trips made by the timed command so far. **/
+    protected int trips;
+    /** The number of statements made by the last command timed. **/
+    protected int lastStatements;
+    /** The number of round trips made by the last command timed. **/
+    protected int lastTrips;
+
+    /** The repeating export task, or null if not running. **/
+    protected BukkitTask task;
+
+    /** The repeating slow statement log task, or null if not running. **/
+    protected BukkitTask slowTask;
+
+    /** The time in nanoseconds above which a statement is slow, or -1 if none are logged. **/
+    protected long slowThreshold = -1;
+
+    /**
+     * Create a MetricsManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     * @param folder    The plugin's data folder, in which metrics are written.
+     */
+    public MetricsManager(ChatShop master, File folder)
+    {
+        PLUGIN = master;
+        FILE = new File(folder,"metrics.prom");
+        SLOW_FILE = new File(folder,"slow-queries.log");
+    }
+
+    /** Begin writing metrics and slow statements periodically. **/
+    public void start()
+    {
+        BUDGETS.clear();
+        ConfigurationSection budgets = PLUGIN.getConfig().getConfigurationSection("query-budgets");
+        if(budgets != null)
+            for(String name : budgets.getKeys(false))
+                BUDGETS.put(name.toLowerCase(),budgets.getInt(name));
+        
+        long threshold = PLUGIN.getConfig().getLong("slow-query-threshold",50);
+        slowThreshold = threshold < 0 ? -1 : threshold * 1000000;
+        slowTask = PLUGIN.getServer().getScheduler().runTaskTimerAsynchronously(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flushSlow();
+            }
+        },20,20);
+        
+        long ticks = Math.max(1,PLUGIN.getConfig().getLong("metrics-interval",60000) / 50);
+        task = PLUGIN.getServer().getScheduler().runTaskTimerAsynchronously(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                export();
+            }
+        },ticks,ticks);
+    }
+
+    /** Stop writing metrics and slow statements periodically, and write them one last time. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        if(slowTask != null)
+        {
+            slowTask.cancel();
+            slowTask = null;
+        }
+        export();
+        flushSlow();
+    }
+
+    /**
+     * Begin timing a command, in its {@link #GATE} stage.
+     * A command begun while another is being timed counts as part of that one.
+     *
+     * @param name  The name of the command.
+     */
+    public void begin(String name)
+    {
+        if(depth ++ > 0)
+            return;
+        command = name;
+        stage = GATE;
+        thread = Thread.currentThread();
+        statements = trips = 0;
+        commandStart = stageStart = System.nanoTime();
+    }
+
+    /**
+     * Mark the start of a new stage of the command being timed, ending the last one.
+     * Does nothing if no command is being timed.
+     *
+     * @param next  The new stage.
+     */
+    public void stage(String next)
+    {
+        if(command == null)
+            return;
+        long now = System.nanoTime();
+        histogram(command,stage).record(now - stageStart);
+        stage = next;
+        stageStart = now;
+    }
+
+    /**
+     * Finish timing a command.
+     */
+    public void end()
+    {
+        if(depth == 0 || -- depth > 0)
+            return;
+        long now = System.nanoTime();
+        histogram(command,stage).record(now - stageStart);
+        histogram(command,TOTAL).record(now - commandStart);
+        histogram(STATEMENTS,command).record(statements);
+        histogram(TRIPS,command).record(trips);
+        lastStatements = statements;
+        lastTrips = trips;
+        
+        Integer budget = BUDGETS.get(command.toLowerCase());
+        if(budget != null && statements > budget)
+        {
+            AtomicLong over = OVER_BUDGET.get(command);
+            if(over == null)
+            {
+                over = new AtomicLong();
+                OVER_BUDGET.put(command,over);
+            }
+            if(over.incrementAndGet() == 1)
+                PLUGIN.CM.warn("ChatShop /" + command + " made " + statements + " database statements ("
+                        + trips + " round trips), over its budget of " + budget
+                        + ". Further uses over budget are counted in /csadmin stats.");
+        }
+        command = null;
+    }
+
+    /**
+     * Count a round trip to the database server against the command being timed, if
+     * it was made by that command. Round trips made by other threads, or outside of
+     * any command, are not counted.
+     *
+     * @param statement Whether the round trip executed a statement.
+     */
+    public void roundTrip(boolean statement)
+    {
+        if(command == null || Thread.currentThread() != thread)
+            return;
+        trips ++;
+        if(statement)
+            statements ++;
+    }
+
+    /**
+     * @return  The number of database statements made by the last command timed.
+     */
+    public int getLastStatements()
+    {
+        return lastStatements;
+    }
+
+    /**
+     * @return  The number of round trips to the database server made by the last command timed.
+     */
+    public int getLastTrips()
+    {
+        return lastTrips;
+    }
+
+    /**
+     * Record the time taken by a database statement, and log it if it was slow.
+     *
+     * @param sql       The statement.
+     * @param nanos     The time it took, in nanoseconds.
+     * @param rows      The number of rows it returned or changed, or -1 if it failed.
+     */
+    public void query(String sql, long nanos, int rows)
+    {
+        String shape = shape(sql);
+        histogram(QUERIES,shape).record(nanos);
+        if(rows >= 0)
+            histogram(ROWS,shape).record(rows);
+
+        if(slowThreshold >= 0 && nanos > slowThreshold)
+        {
+            //Only the main thread runs commands, so only there is the command known.
+            String by = PLUGIN.getServer().isPrimaryThread() && command != null ? command : "-";
+            SLOW.add(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date())
+                    + "\t" + String.format("%.1fms",nanos / 1e6)
+                    + "\t" + (rows < 0 ? "failed" : rows + " rows")
+                    + "\t" + by
+                    + "\t" + sql.replaceAll("\\s+"," ").trim() + "\n");
+        }
+    }
+
+    /**
+     * Record a cache hit.
+     *
+     * @param cache The name of the cache.
+     */
+    public void hit(String cache)
+    {
+        counters(cache)[0].incrementAndGet();
+    }
+
+    /**
+     * Record a cache miss.
+     *
+     * @param cache The name of the cache.
+     */
+    public void miss(String cache)
+    {
+        counters(cache)[1].incrementAndGet();
+    }
+
+    /**
+     * @return  Command timings, by command, then by stage.
+     */
+    public Map<String,Map<String,Histogram>> getCommands()
+    {
+        TreeMap<String,Map<String,Histogram>> out = new TreeMap<String,Map<String,Histogram>>();
+        for(Map.Entry<String,ConcurrentHashMap<String,Histogram>> entry : COMMANDS.entrySet())
+            out.put(entry.getKey(),new TreeMap<String,Histogram>(entry.getValue()));
+        return out;
+    }
+
+    /**
+     * @return  Statement timings, by shape.
+     */
+    public Map<String,Histogram> getQueries()
+    {
+        return new TreeMap<String,Histogram>(QUERIES);
+    }
+
+    /**
+     * @return  Rows returned or changed by statements, by shape.
+     */
+    public Map<String,Histogram> getRows()
+    {
+        return new TreeMap<String,Histogram>(ROWS);
+    }
+
+    /**
+     * @return  Statements made by each use of a command, by command.
+     */
+    public Map<String,Histogram> getStatements()
+    {
+        return new TreeMap<String,Histogram>(STATEMENTS);
+    }
+
+    /**
+     * @return  Round trips made by each use of a command, by command.
+     */
+    public Map<String,Histogram> getTrips()
+    {
+        return new TreeMap<String,Histogram>(TRIPS);
+    }
+
+    /**
+     * @param name  The name of a command.
+     * @return      The command's statement budget, or -1 if it has none.
+     */
+    public int getBudget(String name)
+    {
+        Integer budget = BUDGETS.get(name.toLowerCase());
+        return budget == null ? -1 : budget;
+    }
+
+    /**
+     * @param name  The name of a command.
+     * @return      The number of uses of the command over its statement budget.
+     */
+    public long getOverBudget(String name)
+    {
+        AtomicLong over = OVER_BUDGET.get(name);
+        return over == null ? 0 : over.get();
+    }
+
+    /**
+     * @return  Cache hits and misses, by cache, as {hits, misses}.
+     */
+    public Map<String,long[]> getCaches()
+    {
+        TreeMap<String,long[]> out = new TreeMap<String,long[]>();
+        for(Map.Entry<String,AtomicLong[]> entry : CACHES.entrySet())
+            out.put(entry.getKey(),new long[]{entry.getValue()[0].get(),entry.getValue()[1].get()});
+        return out;
+    }
+
+    /**
+     * Write all metrics to the metrics file, in the Prometheus text format.
+     * The file is written beside the old one and moved over it.
+     */
+    public void export()
+    {
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP chatshop_command_seconds Time taken by commands, by stage.\n");
+        out.append("# TYPE chatshop_command_seconds summary\n");
+        for(Map.Entry<String,Map<String,Histogram>> cmd : getCommands().entrySet())
+            for(Map.Entry<String,Histogram> stg : cmd.getValue().entrySet())
+                summary(out,"chatshop_command_seconds",
+                        "command=\"" + escape(cmd.getKey()) + "\",stage=\"" + stg.getKey() + "\"",stg.getValue(),1e9);
+
+        out.append("# HELP chatshop_query_seconds Time taken by database statements, by shape.\n");
+        out.append("# TYPE chatshop_query_seconds summary\n");
+        for(Map.Entry<String,Histogram> query : getQueries().entrySet())
+            summary(out,"chatshop_query_seconds","shape=\"" + escape(query.getKey()) + "\"",query.getValue(),1e9);
+
+        out.append("# HELP chatshop_query_rows Rows returned or changed by database statements, by shape.\n");
+        out.append("# TYPE chatshop_query_rows summary\n");
+        for(Map.Entry<String,Histogram> query : getRows().entrySet())
+            summary(out,"chatshop_query_rows","shape=\"" + escape(query.getKey()) + "\"",query.getValue(),1);
+
+        out.append("# HELP chatshop_command_statements Database statements made by each use of a command.\n");
+        out.append("# TYPE chatshop_command_statements summary\n");
+        for(Map.Entry<String,Histogram> cmd : getStatements().entrySet())
+            summary(out,"chatshop_command_statements","command=\"" + escape(cmd.getKey()) + "\"",cmd.getValue(),1);
+
+        out.append("# HELP chatshop_command_round_trips Database round trips made by each use of a command.\n");
+        out.append("# TYPE chatshop_command_round_trips summary\n");
+        for(Map.Entry<String,Histogram> cmd : getTrips().entrySet())
+            summary(out,"chatshop_command_round_trips","command=\"" + escape(cmd.getKey()) + "\"",cmd.getValue(),1);
+
+        out.append("# HELP chatshop_command_over_budget_total Uses of a command over its statement budget.\n");
+        out.append("# TYPE chatshop_command_over_budget_total counter\n");
+        for(Map.Entry<String,AtomicLong> cmd : new TreeMap<String,AtomicLong>(OVER_BUDGET).entrySet())
+            out.append("chatshop_command_over_budget_total{command=\"").append(escape(cmd.getKey())).append("\"} ")
+                .append(cmd.getValue().get()).append('\n');
+
+        out.append("# HELP chatshop_cache_hits_total Reads served from memory, by cache.\n");
+        out.append("# TYPE chatshop_cache_hits_total counter\n");
+        Map<String,long[]> caches = getCaches();
+        for(Map.Entry<String,long[]> cache : caches.entrySet())
+            out.append("chatshop_cache_hits_total{cache=\"").append(escape(cache.getKey())).append("\"} ")
+                .append(cache.getValue()[0]).append('\n');
+        out.append("# HELP chatshop_cache_misses_total Reads which went to the database, by cache.\n");
+        out.append("# TYPE chatshop_cache_misses_total counter\n");
+        for(Map.Entry<String,long[]> cache : caches.entrySet())
+            out.append("chatshop_cache_misses_total{cache=\"").append(escape(cache.getKey())).append("\"} ")
+                .append(cache.getValue()[1]).append('\n');
+
+        out.append("# HELP chatshop_pending_orders Orders awaiting /confirm.\n");
+        out.append("# TYPE chatshop_pending_orders gauge\n");
+        out.append("chatshop_pending_orders ").append(PLUGIN.PENDING.size()).append('\n');
+
+        File tmp = new File(FILE.getPath() + ".tmp");
+        try
+        {
+            FileOutputStream stream = new FileOutputStream(tmp);
+            try
+            {
+                stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            finally
+            {
+                stream.close();
+            }
+            Files.move(tmp.toPath(),FILE.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            PLUGIN.CM.severe("Could not write metrics to " + FILE + ".");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Append the slow statements recorded since the last call to the slow statement log.
+     */
+    public synchronized void flushSlow()
+    {
+        if(SLOW.isEmpty())
+            return;
+        StringBuilder out = new StringBuilder();
+        String line;
+        while((line = SLOW.poll()) != null)
+            out.append(line);
+        try
+        {
+            FileOutputStream stream = new FileOutputStream(SLOW_FILE,true);
+            try
+            {
+                stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch(IOException e)
+        {
+            PLUGIN.CM.severe("Could not write slow statements to " + SLOW_FILE + ".");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reduce a statement to its shape, so that statements which differ
+     * only in their values are counted together.
+     *
+     * @param sql   The statement.
+     * @return      The statement with every literal replaced by "?", every
+     *              list of literals (such as multi-row VALUES) by a single "(?)",
+     *              and every run of the same condition joined by OR by one of them.
+     */
+    public static String shape(String sql)
+    {
+        String shape = STRINGS.matcher(sql).replaceAll("?");
+        shape = NUMBERS.matcher(shape).replaceAll("?");
+        shape = NULLS.matcher(shape).replaceAll("?");
+        shape = LISTS.matcher(shape).replaceAll("(?)");
+        shape = ORS.matcher(shape).replaceAll("$1");
+        return shape.trim().replaceAll("\\s+"," ");
+    }
+
+    /**
+     * Write one histogram as a Prometheus summary.
+     *
+     * @param out       The text being written.
+     * @param name      The name of the metric.
+     * @param labels    The labels of this histogram, without braces.
+     * @param h         The histogram.
+     * @param unit      The number of recorded units per exported unit, such as 1e9 for
+     *                  nanoseconds exported as seconds.
+     */
+    protected static void summary(StringBuilder out, String name, String labels, Histogram h, double unit)
+    {
+        double[] quantiles = {0.5,0.9,0.99,1};
+        for(double q : quantiles)
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ")
+                .append(h.percentile(q * 100) / unit).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(h.sum() / unit).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(h.count()).append('\n');
+    }
+
+    /**
+     * @param value A label value.
+     * @return      The value, escaped for the Prometheus text format.
+     */
+    protected static String escape(String value)
+    {
+        return value.replace("\\","\\\\").replace("\"","\\\"").replace("\n","\\n");
+    }
+
+    /**
+     * @param name  The name of a command.
+     * @param stg   The name of a stage.
+     * @return      The histogram for that stage of that command, created if necessary.
+     */
+    protected Histogram histogram(String name, String stg)
+    {
+        ConcurrentHashMap<String,Histogram> stages = COMMANDS.get(name);
+        if(stages == null)
+        {
+            ConcurrentHashMap<String,Histogram> fresh = new ConcurrentHashMap<String,Histogram>();
+            stages = COMMANDS.putIfAbsent(name,fresh);
+            if(stages == null)
+                stages = fresh;
+        }
+        Histogram h = stages.get(stg);
+        if(h == null)
+        {
+            Histogram fresh = new Histogram();
+            h = stages.putIfAbsent(stg,fresh);
+            if(h == null)
+                h = fresh;
+        }
+        return h;
+    }
+
+    /**
+     * @param map   Histograms by shape.
+     * @param shape A statement shape.
+     * @return      The histogram for that shape, created if necessary.
+     */
+    protected static Histogram histogram(ConcurrentHashMap<String,Histogram> map, String shape)
+    {
+        Histogram h = map.get(shape);
+        if(h == null)
+        {
+            Histogram fresh = new Histogram();
+            h = map.putIfAbsent(shape,fresh);
+            if(h == null)
+                h = fresh;
+        }
+        return h;
+    }
+
+    /**
+     * @param cache The name of a cache.
+     * @return      The cache's {hits, misses}, created if necessary.
+     */
+    protected AtomicLong[] counters(String cache)
+    {
+        AtomicLong[] counters = CACHES.get(cache);
+        if(counters == null)
+        {
+            AtomicLong[] fresh = {new AtomicLong(),new AtomicLong()};
+            counters = CACHES.putIfAbsent(cache,fresh);
+            if(counters == null)
+                counters = fresh;
+        }
+        return counters;
+    }
+}
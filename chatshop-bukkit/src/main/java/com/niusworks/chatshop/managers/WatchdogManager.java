@@ -0,0 +1,274 @@
+package com.niusworks.chatshop.managers;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+
+/**
+ * Keeps ChatShop within its share of each server tick for OC Network's ChatShop.
+ * <br>
+ * Every command, and every repeating task given to {@link #watch}, runs on the main
+ * server thread, and the server cannot finish a tick until they return. This manager
+ * adds up the time ChatShop spends in each tick, where a tick is the time between
+ * two runs of the manager's own once-per-tick task.
+ * <ul>
+ * <li>A command which takes longer than "command-budget" milliseconds is recorded as
+ * an offender, with its sender and arguments.
+ * <li>A tick in which ChatShop takes longer than "tick-budget" milliseconds is recorded
+ * and logged as a warning, with everything ChatShop did in it.
+ * <li>If "tick-budget-action" is "throttle", the commands listed in "heavy-commands"
+ * are then turned away as "market busy" for "throttle-ticks" ticks, and for the rest
+ * of any tick which is already over budget.
+ * </ul>
+ * Recent offenders are shown by "/csadmin stats". Warnings are logged at most once
+ * per second, with a count of any which were not.
+ * <br><br>
+ * This class is only used from the main server thread.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class WatchdogManager
+{
+    /** The number of offenders remembered. **/
+    protected static final int OFFENDERS = 10;
+
+    /** The least number of ticks between warnings. **/
+    protected static final long WARN_TICKS = 20;
+
+    /** The master plugin for this manager. **/
+    protected final ChatShop PLUGIN;
+
+    /** The most recent offenders, newest first. **/
+    protected final ArrayDeque<String> RECENT = new ArrayDeque<String>();
+
+    /** What ChatShop has done in the current tick, and how long each took. **/
+    protected final ArrayList<String> WORK = new ArrayList<String>();
+
+    /** The commands turned away while throttling, in lower case. **/
+    protected final ArrayList<String> HEAVY = new ArrayList<String>();
+
+    /** The time ChatShop may spend in each tick, in nanoseconds. **/
+    protected long tickBudget;
+    /** The time one command may take before it is an offender, in nanoseconds. **/
+    protected long commandBudget;
+    /** Whether to turn away heavy commands when over budget. **/
+    protected boolean throttle;
+    /** The number of ticks to turn away heavy commands after a tick over budget. **/
+    protected long throttleTicks;
+
+    /** The current tick, counted from when this manager started. **/
+    protected long tick = 0;
+    /** The time ChatShop has spent in the current tick, in nanoseconds. **/
+    protected long spent = 0;
+    /** The first tick in which heavy commands are no longer turned away. **/
+    protected long busyUntil = 0;
+    /** The tick of the last warning. **/
+    protected long lastWarning = -WARN_TICKS;
+    /** The number of warnings not logged since the last one which was. **/
+    protected int suppressed = 0;
+    /** The number of ticks over budget. **/
+    protected long overruns = 0;
+    /** The number of commands turned away. **/
+    protected long rejected = 0;
+
+    /** The repeating tick task, or null if not running. **/
+    protected BukkitTask task;
+
+    /**
+     * Create a WatchdogManager with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    public WatchdogManager(ChatShop master)
+    {
+        PLUGIN = master;
+    }
+
+    /** Read the budgets from the configuration, and begin counting ticks. **/
+    public void start()
+    {
+        tickBudget = PLUGIN.getConfig().getLong("tick-budget",10) * 1000000;
+        commandBudget = PLUGIN.getConfig().getLong("command-budget",20) * 1000000;
+        throttle = PLUGIN.getConfig().getString("tick-budget-action","warn").equalsIgnoreCase("throttle");
+        throttleTicks = Math.max(0,PLUGIN.getConfig().getLong("throttle-ticks",20));
+        HEAVY.clear();
+        for(String name : PLUGIN.getConfig().getStringList("heavy-commands"))
+            HEAVY.add(name.toLowerCase());
+
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        },1,1);
+    }
+
+    /** Stop counting ticks. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Wrap a repeating task so that its time counts against the tick budget.
+     *
+     * @param name  The name of the task, for warnings.
+     * @param work  The task.
+     * @return      The wrapped task.
+     */
+    public Runnable watch(final String name, final Runnable work)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    work.run();
+                }
+                finally
+                {
+                    spend(name,System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param command   The name of a command.
+     * @return          Whether the command should be turned away because the market is busy.
+     *                  Only heavy commands are ever turned away, and only when throttling.
+     */
+    public boolean busy(String command)
+    {
+        if(!throttle || !HEAVY.contains(command.toLowerCase()))
+            return false;
+        if(tick < busyUntil || spent > tickBudget)
+        {
+            rejected ++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count a command's time against the tick budget, and record it if it was over budget itself.
+     *
+     * @param sender    Whoever used the command.
+     * @param command   The name of the command.
+     * @param args      The command's arguments.
+     * @param nanos     The time it took, in nanoseconds.
+     */
+    public void command(CommandSender sender, String command, String[] args, long nanos)
+    {
+        spend(command,nanos);
+        if(nanos <= commandBudget)
+            return;
+
+        String line = sender.getName() + ": /" + command;
+        for(String arg : args)
+            line += " " + arg;
+        offend(line + " (" + ms(nanos) + ")");
+    }
+
+    /**
+     * @return  The number of ticks in which ChatShop was over budget.
+     */
+    public long getOverruns()
+    {
+        return overruns;
+    }
+
+    /**
+     * @return  The number of commands turned away because the market was busy.
+     */
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * @return  The most recent offending commands and ticks, newest first.
+     */
+    public List<String> getOffenders()
+    {
+        return new ArrayList<String>(RECENT);
+    }
+
+    /**
+     * Close the current tick: if ChatShop was over budget in it, record it,
+     * warn, and begin throttling if so configured.
+     */
+    protected void tick()
+    {
+        if(spent > tickBudget)
+        {
+            overruns ++;
+            String line = "Tick over budget: " + ms(spent) + " in " + WORK;
+            offend(line);
+            if(throttle)
+                busyUntil = tick + 1 + throttleTicks;
+
+            if(tick - lastWarning >= WARN_TICKS)
+            {
+                PLUGIN.CM.warn("ChatShop " + line
+                        + (suppressed > 0 ? " (and " + suppressed + " more since the last warning)" : ""));
+                lastWarning = tick;
+                suppressed = 0;
+            }
+            else
+                suppressed ++;
+        }
+        tick ++;
+        spent = 0;
+        WORK.clear();
+    }
+
+    /**
+     * Count time against the current tick.
+     *
+     * @param what  What ChatShop was doing.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    protected void spend(String what, long nanos)
+    {
+        spent += nanos;
+        WORK.add(what + " " + ms(nanos));
+    }
+
+    /**
+     * Remember an offender, forgetting the oldest if there are too many.
+     *
+     * @param line  A description of the offender.
+     */
+    protected void offend(String line)
+    {
+        RECENT.addFirst(new SimpleDateFormat("HH:mm:ss").format(new Date()) + " " + line);
+        while(RECENT.size() > OFFENDERS)
+            RECENT.removeLast();
+    }
+
+    /**
+     * @param nanos A duration in nanoseconds.
+     * @return      The duration in milliseconds, to one decimal place.
+     */
+    protected static String ms(long nanos)
+    {
+        return String.format("%.1fms",nanos / 1e6);
+    }
+}
@@ -0,0 +1,115 @@
+package com.niusworks.chatshop.utilities;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import com.niusworks.chatshop.managers.MetricsManager;
+
+/**
+ * A thin layer around a JDBC connection which reports every round trip to the
+ * database server to {@link MetricsManager}, so that the number made by each
+ * command can be counted and held to a budget.
+ * <br>
+ * A statement executed through any Statement the connection creates counts as a
+ * statement and a round trip; a commit, rollback, or change of auto-commit counts
+ * as a round trip only. Everything else is passed through untouched.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class CountingConnection implements InvocationHandler
+{
+    /** The connection being counted. **/
+    protected final Connection CONNECTION;
+
+    /** The metrics to report to. **/
+    protected final MetricsManager METRICS;
+
+    /**
+     * @param connection    The connection to count.
+     * @param metrics       The metrics to report to.
+     */
+    protected CountingConnection(Connection connection, MetricsManager metrics)
+    {
+        CONNECTION = connection;
+        METRICS = metrics;
+    }
+
+    /**
+     * Wrap a connection so that its round trips are counted.
+     *
+     * @param connection    The connection.
+     * @param metrics       The metrics to report to.
+     * @return              The counted connection.
+     */
+    public static Connection wrap(Connection connection, MetricsManager metrics)
+    {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},new CountingConnection(connection,metrics));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        String name = method.getName();
+        if(name.equals("commit") || name.equals("rollback") || name.equals("setAutoCommit"))
+            METRICS.roundTrip(false);
+
+        Object result = call(CONNECTION,method,args);
+        if(!(result instanceof Statement))
+            return result;
+        Class<?> type = result instanceof CallableStatement ? CallableStatement.class
+                : result instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return Proxy.newProxyInstance(type.getClassLoader(),new Class<?>[]{type},new Counted((Statement)result));
+    }
+
+    /**
+     * Call a method on the real object, unwrapping any exception it throws.
+     *
+     * @param target    The real object.
+     * @param method    The method.
+     * @param args      The arguments.
+     * @return          The method's result.
+     * @throws Throwable    Whatever the method throws.
+     */
+    protected static Object call(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target,args);
+        }
+        catch(InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    /** The counting layer around one statement. **/
+    protected class Counted implements InvocationHandler
+    {
+        /** The statement being counted. **/
+        protected final Statement STATEMENT;
+
+        /**
+         * @param statement The statement to count.
+         */
+        protected Counted(Statement statement)
+        {
+            STATEMENT = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if(method.getName().startsWith("execute"))
+                METRICS.roundTrip(true);
+            return call(STATEMENT,method,args);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.niusworks.chatshop.utilities;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+
+import com.niusworks.chatshop.managers.DatabaseManager;
+import com.niusworks.chatshop.managers.MetricsManager;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+
+/**
+ * Java Flight Recorder events for ChatShop's work, so that a recording shows each
+ * command, each database statement, each buy sweep and each economy call by name
+ * rather than as anonymous plugin and JDBC frames.
+ * <br>
+ * Each kind of event is begun with a <code>start</code> method, which returns a
+ * token, and finished by passing the token to the matching <code>end</code> method.
+ * Tokens are plain Objects, and are null on a JVM without Flight Recorder (before
+ * Java 8u262), so that the event classes are never loaded there; for the same reason,
+ * no method of this class names a Flight Recorder type outside its own body. While no
+ * recording is running, events are begun but never filled in or committed, which
+ * costs next to nothing.
+ * <br><br>
+ * Events are in the "ChatShop" category, named chatshop.Command, chatshop.Query,
+ * chatshop.Sweep and chatshop.Economy.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Flight
+{
+    /** Whether this JVM has Flight Recorder. **/
+    public static final boolean ENABLED = available();
+
+    /**
+     * @return  A token for a command event, or null if there is no Flight Recorder.
+     */
+    public static Object startCommand()
+    {
+        if(!ENABLED)
+            return null;
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param token     A token from {@link #startCommand}.
+     * @param name      The name of the command.
+     * @param sender    Whoever used the command.
+     * @param args      The command's arguments.
+     */
+    public static void endCommand(Object token, String name, CommandSender sender, String[] args)
+    {
+        if(token == null)
+            return;
+        CommandEvent event = (CommandEvent)token;
+        event.end();
+        if(!event.shouldCommit())
+            return;
+        event.command = name;
+        event.sender = sender.getName();
+        event.arguments = String.join(" ",args);
+        event.commit();
+    }
+
+    /**
+     * @return  A token for a query event, or null if there is no Flight Recorder.
+     */
+    public static Object startQuery()
+    {
+        if(!ENABLED)
+            return null;
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param token     A token from {@link #startQuery}.
+     * @param sql       The statement.
+     * @param rows      The number of rows it returned or changed, or -1 if it failed.
+     */
+    public static void endQuery(Object token, String sql, int rows)
+    {
+        if(token == null)
+            return;
+        QueryEvent event = (QueryEvent)token;
+        event.end();
+        if(!event.shouldCommit())
+            return;
+        event.shape = MetricsManager.shape(sql);
+        event.rows = rows;
+        event.commit();
+    }
+
+    /**
+     * @return  A token for a sweep event, or null if there is no Flight Recorder.
+     */
+    public static Object startSweep()
+    {
+        if(!ENABLED)
+            return null;
+        SweepEvent event = new SweepEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param token     A token from {@link #startSweep}.
+     * @param item      The item swept, as "MATERIAL:damage".
+     * @param listings  The number of listings swept.
+     * @param quantity  The quantity bought, or 0 if nothing was.
+     * @param cost      The total cost of that quantity.
+     * @param outcome   "bought", "conflict" or "failed".
+     */
+    public static void endSweep(Object token, String item, int listings, int quantity, double cost, String outcome)
+    {
+        if(token == null)
+            return;
+        SweepEvent event = (SweepEvent)token;
+        event.end();
+        if(!event.shouldCommit())
+            return;
+        event.item = item;
+        event.listings = listings;
+        event.quantity = quantity;
+        event.cost = cost;
+        event.outcome = outcome;
+        event.commit();
+    }
+
+    /**
+     * Withdraw money from a player through the economy provider, recording an economy event.
+     *
+     * @param econ      The economy provider.
+     * @param player    The player.
+     * @param amount    The amount.
+     * @return          The economy provider's response.
+     */
+    public static EconomyResponse withdraw(Economy econ, OfflinePlayer player, double amount)
+    {
+        Object token = startEconomy();
+        EconomyResponse res = econ.withdrawPlayer(player,amount);
+        endEconomy(token,"withdraw",player,amount,res != null && res.transactionSuccess());
+        return res;
+    }
+
+    /**
+     * Deposit money to a player through the economy provider, recording an economy event.
+     *
+     * @param econ      The economy provider.
+     * @param player    The player.
+     * @param amount    The amount.
+     * @return          The economy provider's response.
+     */
+    public static EconomyResponse deposit(Economy econ, OfflinePlayer player, double amount)
+    {
+        Object token = startEconomy();
+        EconomyResponse res = econ.depositPlayer(player,amount);
+        endEconomy(token,"deposit",player,amount,res != null && res.transactionSuccess());
+        return res;
+    }
+
+    /**
+     * Read a player's balance from the economy provider, recording an economy event.
+     *
+     * @param econ      The economy provider.
+     * @param player    The player.
+     * @return          The player's balance.
+     */
+    public static double balance(Economy econ, OfflinePlayer player)
+    {
+        Object token = startEconomy();
+        double balance = econ.getBalance(player);
+        endEconomy(token,"balance",player,balance,true);
+        return balance;
+    }
+
+    /**
+     * @param token     A begun economy event, or null.
+     * @param operation "withdraw", "deposit" or "balance".
+     * @param player    The player.
+     * @param amount    The amount moved, or the balance read.
+     * @param success   Whether the economy provider reported success.
+     */
+    protected static void endEconomy(Object token, String operation, OfflinePlayer player, double amount, boolean success)
+    {
+        if(token == null)
+            return;
+        EconomyEvent event = (EconomyEvent)token;
+        event.end();
+        if(!event.shouldCommit())
+            return;
+        event.operation = operation;
+        event.player = player.getName();
+        event.amount = amount;
+        event.success = success;
+        event.commit();
+    }
+
+    /**
+     * @return  A token for an economy event, or null if there is no Flight Recorder.
+     */
+    protected static Object startEconomy()
+    {
+        if(!ENABLED)
+            return null;
+        EconomyEvent event = new EconomyEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return  Whether Flight Recorder's event API can be loaded.
+     */
+    protected static boolean available()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch(ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    /** A ChatShop command, from the moment it was dispatched to its reply. **/
+    @Name("chatshop.Command")
+    @Label("ChatShop Command")
+    @Category("ChatShop")
+    @Description("A ChatShop command, including any time spent waiting for database locks.")
+    public static class CommandEvent extends Event
+    {
+        /** The name of the command. **/
+        @Label("Command")
+        public String command;
+        /** Whoever used the command. **/
+        @Label("Sender")
+        public String sender;
+        /** The command's arguments. **/
+        @Label("Arguments")
+        public String arguments;
+    }
+
+    /** A statement run by {@link DatabaseManager}. **/
+    @Name("chatshop.Query")
+    @Label("ChatShop Query")
+    @Category("ChatShop")
+    @Description("A database statement, by shape: its SQL with every literal replaced by \"?\".")
+    public static class QueryEvent extends Event
+    {
+        /** The shape of the statement. **/
+        @Label("Shape")
+        public String shape;
+        /** The number of rows returned or changed, or -1 if the statement failed. **/
+        @Label("Rows")
+        public int rows;
+    }
+
+    /** One attempt to take a buy order's listings off the market. **/
+    @Name("chatshop.Sweep")
+    @Label("ChatShop Buy Sweep")
+    @Category("ChatShop")
+    @Description("One attempt to take a buy order's listings off the market, within one transaction.")
+    public static class SweepEvent extends Event
+    {
+        /** The item swept, as "MATERIAL:damage". **/
+        @Label("Item")
+        public String item;
+        /** The number of listings swept. **/
+        @Label("Listings")
+        public int listings;
+        /** The quantity bought. **/
+        @Label("Quantity")
+        public int quantity;
+        /** The total cost of that quantity. **/
+        @Label("Cost")
+        public double cost;
+        /** "bought", "conflict" or "failed". **/
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    /** A call to the economy provider. **/
+    @Name("chatshop.Economy")
+    @Label("ChatShop Economy Call")
+    @Category("ChatShop")
+    @Description("A call from ChatShop to the economy provider.")
+    public static class EconomyEvent extends Event
+    {
+        /** "withdraw", "deposit" or "balance". **/
+        @Label("Operation")
+        public String operation;
+        /** The player. **/
+        @Label("Player")
+        public String player;
+        /** The amount moved, or the balance read. **/
+        @Label("Amount")
+        public double amount;
+        /** Whether the economy provider reported success. **/
+        @Label("Success")
+        public boolean success;
+    }
+}
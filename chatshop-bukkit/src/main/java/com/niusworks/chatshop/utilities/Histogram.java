@@ -0,0 +1,126 @@
+package com.niusworks.chatshop.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as durations in nanoseconds, in the
+ * manner of HdrHistogram: values are counted in buckets which are linear within each
+ * power of two, so any value is known to within about 3% however large it is, in a
+ * fixed amount of memory.
+ * <br>
+ * Values may be recorded from any thread without locking. Percentiles read while
+ * values are being recorded may be off by those values.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Histogram
+{
+    /** The number of bits of each value kept exactly. **/
+    protected static final int SUB_BITS = 5;
+
+    /** The number of buckets for values below 2^SUB_BITS, which are counted exactly. **/
+    protected static final int SUB = 1 << SUB_BITS;
+
+    /** The number of buckets within each higher power of two. **/
+    protected static final int HALF = SUB / 2;
+
+    /** The count of values in each bucket. **/
+    protected final AtomicLongArray COUNTS = new AtomicLongArray(SUB + (64 - SUB_BITS) * HALF);
+
+    /** The number of values recorded. **/
+    protected final AtomicLong COUNT = new AtomicLong();
+
+    /** The sum of values recorded. **/
+    protected final AtomicLong SUM = new AtomicLong();
+
+    /** The largest value recorded. **/
+    protected final AtomicLong MAX = new AtomicLong();
+
+    /**
+     * Record a value.
+     *
+     * @param value The value. Negative values are recorded as 0.
+     */
+    public void record(long value)
+    {
+        value = Math.max(0,value);
+        COUNTS.incrementAndGet(index(value));
+        COUNT.incrementAndGet();
+        SUM.addAndGet(value);
+        long max;
+        while(value > (max = MAX.get()) && !MAX.compareAndSet(max,value));
+    }
+
+    /**
+     * @return  The number of values recorded.
+     */
+    public long count()
+    {
+        return COUNT.get();
+    }
+
+    /**
+     * @return  The sum of values recorded.
+     */
+    public long sum()
+    {
+        return SUM.get();
+    }
+
+    /**
+     * @return  The largest value recorded, or 0 if none has been.
+     */
+    public long max()
+    {
+        return MAX.get();
+    }
+
+    /**
+     * @param percentile    The percentile, from 0 to 100.
+     * @return              The smallest value (to within bucket precision) which at least that
+     *                      percentage of recorded values do not exceed, or 0 if none have been recorded.
+     */
+    public long percentile(double percentile)
+    {
+        long total = COUNT.get();
+        if(total == 0)
+            return 0;
+        long target = Math.max(1,(long)Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < COUNTS.length(); i ++)
+        {
+            seen += COUNTS.get(i);
+            if(seen >= target)
+                return Math.min(highest(i),MAX.get());
+        }
+        return MAX.get();
+    }
+
+    /**
+     * @param value A non-negative value.
+     * @return      The bucket which counts the value.
+     */
+    protected static int index(long value)
+    {
+        if(value < SUB)
+            return (int)value;
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BITS + 1;
+        int mantissa = (int)(value >>> shift);
+        return SUB + (shift - 1) * HALF + (mantissa - HALF);
+    }
+
+    /**
+     * @param index A bucket.
+     * @return      The highest value the bucket counts.
+     */
+    protected static long highest(int index)
+    {
+        if(index < SUB)
+            return index;
+        int shift = (index - SUB) / HALF + 1;
+        long mantissa = (index - SUB) % HALF + HALF;
+        long highest = ((mantissa + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
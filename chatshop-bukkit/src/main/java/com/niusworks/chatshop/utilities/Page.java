@@ -0,0 +1,136 @@
+package com.niusworks.chatshop.utilities;
+
+import org.bukkit.entity.Player;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.ClickEvent;
+import net.md_5.bungee.api.chat.ComponentBuilder;
+import net.md_5.bungee.api.chat.HoverEvent;
+import net.md_5.bungee.api.chat.TextComponent;
+
+/**
+ * One page of paginated ChatShop output, composed into a single chat message.
+ * <br>
+ * A page consists of a header line, any number of rows, and (if there is more
+ * than one page) a navigation line whose arrows run the same command for the
+ * previous or next page when clicked. Rows may be plain legacy-colored strings
+ * or pre-built components, so that hover text such as that produced by
+ * {@link com.niusworks.chatshop.managers.ChatManager#MOTforEnchanted} is kept.
+ * <br><br>
+ * The whole page is delivered with one call to {@link #send(Player)}, rather
+ * than one message per line.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Page
+{
+    /** The root component; the header is its text and everything else its extras. **/
+    protected final TextComponent ROOT;
+
+    /**
+     * Begin a page with the specified header line.
+     *
+     * @param header    The complete header, including prefix and color codes.
+     */
+    public Page(String header)
+    {
+        ROOT = new TextComponent(header);
+    }
+
+    /**
+     * Begin a page with the specified header components.
+     *
+     * @param header    The components making up the header line.
+     */
+    public Page(BaseComponent... header)
+    {
+        ROOT = new TextComponent("");
+        for(BaseComponent part : header)
+            ROOT.addExtra(part);
+    }
+
+    /**
+     * Add a line of legacy-colored text to this page.
+     *
+     * @param row   The text of the line.
+     * @return      This page, for chaining.
+     */
+    public Page addRow(String row)
+    {
+        ROOT.addExtra(new TextComponent("\n" + row));
+        return this;
+    }
+
+    /**
+     * Add a line made of the specified components to this page.
+     *
+     * @param parts The components making up the line, in order.
+     * @return      This page, for chaining.
+     */
+    public Page addRow(BaseComponent... parts)
+    {
+        ROOT.addExtra(new TextComponent("\n"));
+        for(BaseComponent part : parts)
+            ROOT.addExtra(part);
+        return this;
+    }
+
+    /**
+     * Add clickable previous / next page arrows to the bottom of this page.
+     * Nothing is added if there is only one page.
+     *
+     * @param command   The command which produced this page, with all arguments
+     *                  except the page number; e.g. "/find stone".
+     * @param page      The (natural) number of this page.
+     * @param pages     The total number of pages.
+     * @param textCol   The color code for the navigation text.
+     * @return          This page, for chaining.
+     */
+    public Page addNavigation(String command, int page, int pages, String textCol)
+    {
+        if(pages <= 1)
+            return this;
+
+        ROOT.addExtra(new TextComponent("\n"));
+        ROOT.addExtra(arrow(textCol,"\u00AB Previous",command,page - 1,page > 1));
+        ROOT.addExtra(new TextComponent(textCol + "  |  "));
+        ROOT.addExtra(arrow(textCol,"Next \u00BB",command,page + 1,page < pages));
+        return this;
+    }
+
+    /**
+     * Send this page to the specified player as a single message.
+     *
+     * @param usr   The recipient.
+     */
+    public void send(Player usr)
+    {
+        usr.spigot().sendMessage(ROOT);
+    }
+
+    /**
+     * Construct one navigation arrow.
+     *
+     * @param textCol   The color code for the arrow text.
+     * @param label     The arrow text.
+     * @param command   The command, less its page number.
+     * @param target    The page to which this arrow leads.
+     * @param enabled   Whether the target page exists; if not, the arrow is
+     *                  shown struck through and does nothing.
+     * @return          The arrow component.
+     */
+    protected static TextComponent arrow(String textCol, String label, String command, int target, boolean enabled)
+    {
+        TextComponent arrow = new TextComponent(textCol + label);
+        if(!enabled)
+        {
+            arrow.setStrikethrough(true);
+            return arrow;
+        }
+        arrow.setUnderlined(true);
+        arrow.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND,command + " " + target));
+        arrow.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                new ComponentBuilder("Page " + target).create()));
+        return arrow;
+    }
+}
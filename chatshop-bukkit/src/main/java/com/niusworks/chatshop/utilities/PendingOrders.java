@@ -0,0 +1,269 @@
+package com.niusworks.chatshop.utilities;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.commands.Confirm;
+import com.niusworks.chatshop.constructs.Order;
+
+/**
+ * The pending orders awaiting {@link Confirm}, for all players.
+ * <br>
+ * Each player may have several pending orders at once, one under each name
+ * (such as "buy" or "esell"); a new order replaces any older order of the same
+ * name. Orders are keyed by, and hold, only the player's UUID, so that the store
+ * does not keep Player objects alive. The store may be read and written from any thread.
+ * <br><br>
+ * Orders expire "confirm-timeout" milliseconds after they are placed. Expiry
+ * is driven by a hashed timing wheel, advanced once per server tick: each order
+ * is filed in the wheel bucket for the tick on which it expires, so each tick
+ * only looks at the orders due around then, rather than at every pending order.
+ * An expired order is remembered, until the player next confirms or places an order
+ * of that name, so that they can be told it expired. All of a player's orders are
+ * dropped when they leave the server.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class PendingOrders
+{
+    /** The number of buckets in the timing wheel. Must be a power of two. **/
+    protected static final int WHEEL_SIZE = 64;
+
+    /** The length of one server tick, and so of one bucket, in milliseconds. **/
+    protected static final long TICK_MS = 50;
+
+    /** The master plugin for this store. **/
+    protected final ChatShop PLUGIN;
+
+    /** Pending orders, as player UUID => (order name => order). **/
+    protected final ConcurrentHashMap<UUID,ConcurrentHashMap<String,Order>> ORDERS =
+            new ConcurrentHashMap<UUID,ConcurrentHashMap<String,Order>>();
+
+    /** Expired orders not yet asked after, as player UUID => (order name => order). **/
+    protected final ConcurrentHashMap<UUID,ConcurrentHashMap<String,Order>> EXPIRED =
+            new ConcurrentHashMap<UUID,ConcurrentHashMap<String,Order>>();
+
+    /** The timing wheel; each bucket holds the timeouts due on ticks that map to it. **/
+    protected final ConcurrentLinkedQueue<Timeout>[] WHEEL;
+
+    /** The number of ticks the wheel has advanced. Written only by the main thread. **/
+    protected volatile long tick = 0;
+
+    /** The repeating task which advances the wheel, or null if not running. **/
+    protected BukkitTask task;
+
+    /**
+     * Create an empty store with a reference to the master plugin.
+     *
+     * @param master    The master ChatShop plugin reference.
+     */
+    @SuppressWarnings("unchecked")
+    public PendingOrders(ChatShop master)
+    {
+        PLUGIN = master;
+        WHEEL = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for(int i = 0; i < WHEEL_SIZE; i ++)
+            WHEEL[i] = new ConcurrentLinkedQueue<Timeout>();
+    }
+
+    /** Begin advancing the timing wheel once per tick. **/
+    public void start()
+    {
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("pending",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                advance();
+            }
+        }),1,1);
+    }
+
+    /** Stop advancing the timing wheel and forget every pending order. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+        ORDERS.clear();
+        EXPIRED.clear();
+        for(ConcurrentLinkedQueue<Timeout> bucket : WHEEL)
+            bucket.clear();
+    }
+
+    /**
+     * Store a pending order for a player, replacing any pending order of the same name.
+     *
+     * @param usr   The player who placed the order.
+     * @param name  The name of the order, by which it can be confirmed.
+     * @param order The order.
+     */
+    public void put(Player usr, String name, Order order)
+    {
+        UUID id = usr.getUniqueId();
+        orders(ORDERS,id).put(name,order);
+        ConcurrentHashMap<String,Order> expired = EXPIRED.get(id);
+        if(expired != null)
+            expired.remove(name);
+
+        long due = tick + (timeout() + TICK_MS - 1) / TICK_MS;
+        WHEEL[(int)(due & (WHEEL_SIZE - 1))].add(new Timeout(name,order,due));
+    }
+
+    /**
+     * Remove and return a pending order, if it has not expired.
+     *
+     * @param usr   The player who placed the order.
+     * @param name  The name of the order, or null for the player's most recent order.
+     * @return      The order, or null if there is no such order or it has expired.
+     */
+    public Order take(Player usr, String name)
+    {
+        ConcurrentHashMap<String,Order> orders = ORDERS.get(usr.getUniqueId());
+        if(orders == null)
+            return null;
+
+        if(name == null)
+        {
+            Order latest = null;
+            for(Map.Entry<String,Order> entry : orders.entrySet())
+                if(latest == null || entry.getValue().TIME > latest.TIME)
+                {
+                    latest = entry.getValue();
+                    name = entry.getKey();
+                }
+            if(latest == null)
+                return null;
+        }
+
+        Order order = orders.remove(name);
+        // The wheel may lag by up to a tick, so check the age here as well.
+        if(order == null)
+            return null;
+        if(System.currentTimeMillis() - order.TIME > timeout())
+        {
+            orders(EXPIRED,order.PLAYER).put(name,order);
+            return null;
+        }
+        return order;
+    }
+
+    /**
+     * Determine whether a player's order expired before they confirmed it,
+     * and forget that it did.
+     *
+     * @param usr   The player.
+     * @param name  The name of the order, or null for any of the player's orders.
+     * @return      True if the order (or any order) expired since the player
+     *              last placed or confirmed an order of that name.
+     */
+    public boolean expired(Player usr, String name)
+    {
+        if(name == null)
+            return EXPIRED.remove(usr.getUniqueId()) != null;
+        ConcurrentHashMap<String,Order> expired = EXPIRED.get(usr.getUniqueId());
+        return expired != null && expired.remove(name) != null;
+    }
+
+    /**
+     * @return  The number of pending orders, including any expired but not yet dropped.
+     */
+    public int size()
+    {
+        int size = 0;
+        for(ConcurrentHashMap<String,Order> orders : ORDERS.values())
+            size += orders.size();
+        return size;
+    }
+
+    /**
+     * Forget all of a player's pending orders, such as when they leave the server.
+     *
+     * @param usr   The player.
+     */
+    public void clear(Player usr)
+    {
+        ORDERS.remove(usr.getUniqueId());
+        EXPIRED.remove(usr.getUniqueId());
+    }
+
+    /**
+     * Advance the timing wheel by one tick, expiring the orders due.
+     * An order which has since been confirmed or replaced is left alone.
+     */
+    protected void advance()
+    {
+        long now = ++ tick;
+        Iterator<Timeout> it = WHEEL[(int)(now & (WHEEL_SIZE - 1))].iterator();
+        while(it.hasNext())
+        {
+            Timeout due = it.next();
+            if(due.TICK > now)
+                continue;   //Due on a later turn of the wheel.
+            it.remove();
+            ConcurrentHashMap<String,Order> orders = ORDERS.get(due.ORDER.PLAYER);
+            if(orders != null && orders.remove(due.NAME,due.ORDER))
+                orders(EXPIRED,due.ORDER.PLAYER).put(due.NAME,due.ORDER);
+        }
+    }
+
+    /**
+     * @param store     {@link #ORDERS} or {@link #EXPIRED}.
+     * @param id        The UUID of a player.
+     * @return          The player's orders in that store, created empty if there are none.
+     */
+    protected static ConcurrentHashMap<String,Order> orders(ConcurrentHashMap<UUID,ConcurrentHashMap<String,Order>> store, UUID id)
+    {
+        ConcurrentHashMap<String,Order> orders = store.get(id);
+        if(orders == null)
+        {
+            ConcurrentHashMap<String,Order> fresh = new ConcurrentHashMap<String,Order>();
+            orders = store.putIfAbsent(id,fresh);
+            if(orders == null)
+                orders = fresh;
+        }
+        return orders;
+    }
+
+    /**
+     * @return  The configured time, in milliseconds, a player has in which to confirm.
+     */
+    protected long timeout()
+    {
+        return PLUGIN.getConfig().getInt("confirm-timeout",10000);
+    }
+
+    /**
+     * One order's entry in the timing wheel.
+     */
+    protected static class Timeout
+    {
+        /** The name of the order. **/
+        public final String NAME;
+        /** The order. **/
+        public final Order ORDER;
+        /** The tick on which the order expires. **/
+        public final long TICK;
+
+        /**
+         * @param name      The name of the order.
+         * @param order     The order.
+         * @param tick      The tick on which the order expires.
+         */
+        public Timeout(String name, Order order, long tick)
+        {
+            NAME = name;
+            ORDER = order;
+            TICK = tick;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.niusworks.chatshop.utilities;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.constructs.Item;
+import com.niusworks.chatshop.constructs.Sale;
+import com.niusworks.chatshop.managers.ChatManager;
+
+/**
+ * Tracks players joining and leaving the server, for per-player ChatShop state.
+ * <br>
+ * When a player was last seen is recorded as they join and leave, and every
+ * session-touch-interval while they are online, so that a server which stops without
+ * disabling ChatShop repeats at most that much of their sales in the summary when
+ * they return.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class SessionListener implements Listener
+{
+    /** The master plugin for this listener. **/
+    protected final ChatShop PLUGIN;
+
+    /** The repeating task recording that online players were seen, or null if not running. **/
+    protected BukkitTask task;
+
+    /**
+     * Create a SessionListener with a reference to the master plugin.
+     *
+     * @param plugin    The master ChatShop plugin reference.
+     */
+    public SessionListener(ChatShop plugin)
+    {
+        PLUGIN = plugin;
+    }
+
+    /** Begin recording periodically that online players were seen. **/
+    public void start()
+    {
+        long ivl = PLUGIN.getConfig().getLong("session-touch-interval",60000);
+        if(ivl <= 0)
+            return;
+        long ticks = Math.max(1,ivl / 50);
+        task = PLUGIN.getServer().getScheduler().runTaskTimer(PLUGIN,PLUGIN.WD.watch("sessions",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                PLUGIN.DB.touchPlayers(PLUGIN.getServer().getOnlinePlayers());
+            }
+        }),ticks,ticks);
+    }
+
+    /** Stop recording periodically that online players were seen. **/
+    public void stop()
+    {
+        if(task != null)
+        {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Give the joining player a broadcast slot, any goods owed from
+     * interrupted trades, and tell them what they sold while they were away.
+     *
+     * @param evt   The join event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent evt)
+    {
+        Player usr = evt.getPlayer();
+        PLUGIN.BM.join(usr);
+        PLUGIN.JM.deliver(usr);
+        
+        Sale[] sales = PLUGIN.DB.getSalesSince(usr);
+        PLUGIN.DB.touchPlayer(usr);
+        if(sales != null && sales.length > 0)
+            summarize(usr,sales);
+    }
+
+    /**
+     * Release the leaving player's broadcast slot and pending orders,
+     * and remember when they left.
+     *
+     * @param evt   The quit event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent evt)
+    {
+        PLUGIN.BM.quit(evt.getPlayer());
+        PLUGIN.PENDING.clear(evt.getPlayer());
+        PLUGIN.DB.touchPlayer(evt.getPlayer());
+    }
+
+    /**
+     * Send a "while you were away" summary of sales.
+     *
+     * @param usr   The returning seller.
+     * @param sales What they sold, one entry per kind of item.
+     */
+    protected void summarize(Player usr, Sale[] sales)
+    {
+        String textCol = PLUGIN.CM.color("text");
+        String itemCol = PLUGIN.CM.color("item");
+        String qtyCol = PLUGIN.CM.color("quantity");
+        String priceCol = PLUGIN.CM.color("price");
+        
+        double total = 0;
+        for(Sale sale : sales)
+            total += sale.EARNINGS;
+        PLUGIN.CM.reply(usr,
+            textCol + "While you were away, you sold goods for a total of " +
+            priceCol + ChatManager.format(total) +
+            textCol + ":");
+        
+        for(Sale sale : sales)
+        {
+            // Resolve the name of the item as History does: enchanted items are
+            // looked up by their undamaged, unenchanted material.
+            Item thing = (sale.ENCHANTED ?
+                PLUGIN.IM.lookup(new ItemStack(Material.getMaterial(sale.MATERIAL))) :
+                PLUGIN.IM.lookup(sale.MATERIAL,sale.DAMAGE));
+            String itemDisplay = (thing == null ? "Unknown Item" : thing.DISPLAY);
+            if(sale.ENCHANTED && !sale.MATERIAL.equals(Material.ENCHANTED_BOOK.toString()))
+                itemDisplay = "enchanted " + itemDisplay;
+            
+            PLUGIN.CM.reply(usr,
+                qtyCol + ChatManager.format(sale.QUANTITY) + " " +
+                itemCol + itemDisplay +
+                textCol + " for " +
+                priceCol + ChatManager.format(sale.EARNINGS) +
+                textCol + ".",false);
+        }
+    }
+}
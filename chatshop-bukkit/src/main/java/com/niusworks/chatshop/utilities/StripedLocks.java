@@ -0,0 +1,96 @@
+package com.niusworks.chatshop.utilities;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed table of locks, shared among any number of keys by hash.
+ * <br>
+ * Operations on the same key always take the same lock, so they cannot interleave.
+ * Two keys may share a lock by chance, which only means they are serialized together.
+ * <br><br>
+ * An operation which needs several keys at once must take them all through
+ * {@link #lockAll}, which always takes locks in the same (ascending) order,
+ * so that two such operations can never deadlock one another.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class StripedLocks
+{
+    /** The locks. **/
+    protected final ReentrantLock[] STRIPES;
+
+    /**
+     * Create a lock table.
+     *
+     * @param stripes   The number of locks. Rounded up to a power of two.
+     */
+    public StripedLocks(int stripes)
+    {
+        int size = Integer.highestOneBit(Math.max(1,stripes - 1)) << 1;
+        STRIPES = new ReentrantLock[size];
+        for(int i = 0; i < size; i ++)
+            STRIPES[i] = new ReentrantLock();
+    }
+
+    /**
+     * Take the lock for one key, waiting if necessary.
+     * It must be released with {@link ReentrantLock#unlock()} in a finally block.
+     *
+     * @param key   The key.
+     * @return      The lock, now held.
+     */
+    public ReentrantLock lock(Object key)
+    {
+        ReentrantLock lock = STRIPES[stripe(key)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Take the locks for several keys, in a fixed order, waiting if necessary.
+     * They must be released with {@link #unlockAll} in a finally block.
+     *
+     * @param keys  The keys.
+     * @return      The locks, now held, in the order they were taken.
+     */
+    public ReentrantLock[] lockAll(Collection<?> keys)
+    {
+        TreeSet<Integer> stripes = new TreeSet<Integer>();
+        for(Object key : keys)
+            stripes.add(stripe(key));
+
+        ReentrantLock[] held = new ReentrantLock[stripes.size()];
+        int i = 0;
+        for(int stripe : stripes)
+        {
+            held[i ++] = STRIPES[stripe];
+            STRIPES[stripe].lock();
+        }
+        return held;
+    }
+
+    /**
+     * Release locks taken by {@link #lockAll}, in reverse order.
+     *
+     * @param held  The locks.
+     */
+    public void unlockAll(ReentrantLock[] held)
+    {
+        for(int i = held.length - 1; i >= 0; i --)
+            held[i].unlock();
+    }
+
+    /**
+     * @param key   A key.
+     * @return      The index of the key's lock.
+     */
+    protected int stripe(Object key)
+    {
+        // Spread the high bits of the hash downward, as HashMap does.
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES.length - 1);
+    }
+}
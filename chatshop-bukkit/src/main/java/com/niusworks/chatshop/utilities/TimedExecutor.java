@@ -0,0 +1,60 @@
+package com.niusworks.chatshop.utilities;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import com.niusworks.chatshop.ChatShop;
+import com.niusworks.chatshop.managers.MetricsManager;
+import com.niusworks.chatshop.managers.WatchdogManager;
+
+/**
+ * Times every use of a command with {@link MetricsManager}, {@link WatchdogManager}
+ * and {@link Flight},
+ * around the command's own executor, and turns the command away while the
+ * watchdog finds the market busy.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class TimedExecutor implements CommandExecutor
+{
+    /** The master plugin for this executor. **/
+    protected final ChatShop PLUGIN;
+    /** The name of the command. **/
+    public final String NAME;
+    /** The command's own executor. **/
+    public final CommandExecutor EXECUTOR;
+
+    /**
+     * @param master    The master ChatShop plugin reference.
+     * @param name      The name of the command.
+     * @param executor  The command's own executor.
+     */
+    public TimedExecutor(ChatShop master, String name, CommandExecutor executor)
+    {
+        PLUGIN = master;
+        NAME = name;
+        EXECUTOR = executor;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command cmd, String lbl, String[] args)
+    {
+        if(PLUGIN.WD.busy(NAME))
+            return PLUGIN.CM.error(sender,"The market is busy. Please try again in a moment.");
+        
+        long start = System.nanoTime();
+        Object event = Flight.startCommand();
+        PLUGIN.MM.begin(NAME);
+        try
+        {
+            return EXECUTOR.onCommand(sender,cmd,lbl,args);
+        }
+        finally
+        {
+            PLUGIN.MM.end();
+            PLUGIN.WD.command(sender,NAME,args,System.nanoTime() - start);
+            Flight.endCommand(event,NAME,sender,args);
+        }
+    }
+}
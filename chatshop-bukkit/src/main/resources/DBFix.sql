@@ -0,0 +1,19 @@
+-- If upgrading from pre-2.0.0
+ALTER TABLE ChatShop_listings ADD COLUMN enchantments VARCHAR(30) AFTER price;
+ALTER TABLE ChatShop_transactions ADD COLUMN enchantments VARCHAR(30) AFTER price;
+
+-- If upgrading from pre-2.1.0
+ALTER TABLE ChatShop_listings ADD COLUMN itemName TEXT AFTER enchantments;
+ALTER TABLE ChatShop_transactions ADD COLUMN itemName TEXT AFTER enchantments;
+
+-- If upgrading from pre-2.2.0
+ALTER TABLE ChatShop_players ADD COLUMN lastSeen TIMESTAMP NULL DEFAULT NULL AFTER flags;
+ALTER TABLE ChatShop_transactions ADD INDEX seller_date (seller,date);
+ALTER TABLE ChatShop_listings ADD COLUMN version INT NOT NULL DEFAULT 0 AFTER quantity;
+ALTER TABLE ChatShop_transactions ADD COLUMN journal VARCHAR(36) AFTER date;
+ALTER TABLE ChatShop_transactions ADD INDEX journal (journal);
+ALTER TABLE ChatShop_listings ADD COLUMN plain TINYINT GENERATED ALWAYS AS (CASE WHEN enchantments IS NULL THEN 1 END) AFTER version;
+-- Merge any duplicate plain listings first; they are listed by:
+--   SELECT seller, material, damage, COUNT(*) FROM ChatShop_listings WHERE enchantments IS NULL
+--   GROUP BY seller, material, damage HAVING COUNT(*) > 1;
+ALTER TABLE ChatShop_listings ADD UNIQUE KEY plain_listing (seller,material,damage,plain);
\ No newline at end of file
@@ -0,0 +1,267 @@
+package com.niusworks.chatshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.niusworks.chatshop.constructs.Payout;
+
+/**
+ * Whole command flows, run headless against an embedded database.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class CommandFlowTest
+{
+    /** The harness, with a fresh database for each test. **/
+    protected Headless shop;
+    /** A player who sells cobblestone. **/
+    protected HeadlessPlayer alice;
+    /** A player who buys it. **/
+    protected HeadlessPlayer bob;
+
+    @Before
+    public void start() throws Exception
+    {
+        shop = new Headless();
+        shop.start();
+        alice = shop.join("alice").give(new ItemStack(Material.COBBLESTONE,64));
+        bob = shop.join("bob");
+        shop.ECONOMY.set(bob,100);
+    }
+
+    @After
+    public void stop()
+    {
+        shop.close();
+    }
+
+    @Test
+    public void sellFindBuyConfirmHistory()
+    {
+        //Alice lists all of her cobblestone.
+        assertReply(shop.run(alice,"/sell 64 cobblestone 1.50"),"Preparing to sell 64 Cobblestone for $1.50.");
+        assertReply(shop.run(alice,"/confirm"),"alice is selling 64 Cobblestone for $1.50 each.");
+        assertEquals(0,alice.count(Material.COBBLESTONE));
+
+        //Bob finds it, and buys some.
+        assertReply(shop.run(bob,"/find cobblestone"),"$1.50, 64 from alice");
+        assertReply(shop.run(bob,"/buy 10 cobblestone"),"Preparing to buy 10 Cobblestone for a total of $15.");
+        assertEquals("Nothing is bought before /confirm.",0,bob.count(Material.COBBLESTONE));
+        assertReply(shop.run(bob,"/confirm"),"Bought 10 Cobblestone for a total of $15.");
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+        assertEquals(85,bob.balance(),0.001);
+        assertReply(alice.INBOX,"bob just bought 10 Cobblestone from you for $15.");
+
+        //Alice is paid at the next payout.
+        assertEquals(0,alice.balance(),0.001);
+        shop.tick(20);
+        assertEquals(15,alice.balance(),0.001);
+
+        //The rest is still listed, and the trade is in both players' histories.
+        assertReply(shop.run(bob,"/find cobblestone"),"$1.50, 54 from alice");
+        assertReply(shop.run(bob,"/history bob"),"Bought 10 Cobblestone from alice @$1.50/ea. =$15.");
+        assertReply(shop.run(alice,"/history alice"),"Sold 10 Cobblestone to bob @$1.50/ea. =-$15.");
+    }
+
+    @Test
+    public void buyerWhoCannotPayBuysNothing()
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.ECONOMY.set(bob,1);
+
+        shop.run(bob,"/buy 10 cobblestone");
+        assertReply(shop.run(bob,"/confirm"),"Ran out of money.");
+        assertEquals(0,bob.count(Material.COBBLESTONE));
+        assertEquals(1,bob.balance(),0.001);
+        assertReply(shop.run(bob,"/find cobblestone"),"$1.50, 64 from alice");
+    }
+
+    @Test
+    public void sellerHasOnePlainListingPerItem() throws Exception
+    {
+        shop.run(alice,"/sell 32 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+
+        //Another server sharing the database cannot list alice's cobblestone a second time.
+        try(Connection other = DriverManager.getConnection(shop.DATABASE,"sa",""))
+        {
+            other.createStatement().executeUpdate("INSERT INTO ChatShop_listings "
+                    + "(material,damage,seller,sellerAlias,price,quantity) VALUES "
+                    + "('COBBLESTONE',0,'" + alice.ID + "','alice',2,32)");
+            fail("A second plain listing was created.");
+        }
+        catch(SQLException e)
+        {
+            assertEquals("23",e.getSQLState().substring(0,2));
+        }
+
+        shop.run(alice,"/sell 32 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        assertReply(shop.run(bob,"/find cobblestone"),"$1.50, 64 from alice");
+    }
+
+    @Test
+    public void expiredOrderIsReportedOnce()
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.tick(201);     //Past the default confirm-timeout of 10 seconds.
+
+        assertReply(shop.run(alice,"/confirm"),"Your pending order has expired.");
+        assertReply(shop.run(alice,"/confirm"),"You have no pending buy or sell orders.");
+        assertEquals(64,alice.count(Material.COBBLESTONE));
+    }
+
+    @Test
+    public void salesSeenOnlineAreNotSummarizedAgainAfterACrash() throws Exception
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+        assertReply(alice.INBOX,"bob just bought 10 Cobblestone from you for $15.");
+
+        //Alice is seen online after the sale; then the server stops without disabling ChatShop.
+        shop.tick(1200);
+        shop.crash();
+        shop.start();
+
+        int seen = alice.INBOX.size();
+        shop.join("alice");
+        List<String> since = alice.INBOX.subList(seen,alice.INBOX.size());
+        for(String line : since)
+            if(line.contains("While you were away"))
+                fail("Sales seen online were summarized again: " + since);
+    }
+
+    @Test
+    public void salesWhileAwayAreSummarized() throws Exception
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.quit(alice);
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+
+        shop.join("alice");
+        assertReply(alice.INBOX,"While you were away, you sold goods for a total of $15:");
+        assertReply(alice.INBOX,"10 Cobblestone for $15.");
+    }
+
+    @Test
+    public void enchantedSellFindBuyConfirm()
+    {
+        ItemStack sword = new ItemStack(Material.DIAMOND_SWORD);
+        sword.addUnsafeEnchantment(Enchantment.DAMAGE_ALL,3);
+        alice.hold(sword);
+        shop.run(alice,"/esell 20");
+        assertReply(shop.run(alice,"/confirm"),"Your item has been posted as lot #1.");
+        assertEquals(0,alice.count(Material.DIAMOND_SWORD));
+
+        assertReply(shop.run(bob,"/efind diamond_sword"),"$20, lot #1 from alice");
+        shop.run(bob,"/ebuy 1");
+        assertReply(shop.run(bob,"/confirm"),"Bought enchanted Diamond Sword for $20.");
+        assertEquals(1,bob.count(Material.DIAMOND_SWORD));
+        assertEquals(80,bob.balance(),0.001);
+        assertReply(alice.INBOX,"bob just bought enchanted Diamond Sword from you for $20.");
+
+        //The sale, its history and its payout were recorded together.
+        assertReply(shop.run(bob,"/history bob"),"Bought 1 Diamond Sword from alice @$20/ea. =$20.");
+        shop.tick(20);
+        assertEquals(20,alice.balance(),0.001);
+        assertReply(shop.run(bob,"/ebuy 1"),"Invalid lot number 1");
+    }
+
+    @Test
+    public void failedPayoutIsRetried()
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+
+        shop.ECONOMY.refuseDeposits = true;
+        shop.tick(20);
+        assertEquals(0,alice.balance(),0.001);
+        assertEquals("The failed payout is back in the ledger.",1,shop.plugin().DB.getPayouts().length);
+
+        shop.ECONOMY.refuseDeposits = false;
+        shop.tick(20);
+        assertEquals(15,alice.balance(),0.001);
+        assertEquals(0,shop.plugin().DB.getPayouts().length);
+    }
+
+    @Test
+    public void payoutIsClaimedOnce()
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+
+        //As if two servers sharing the database read the ledger at once.
+        Payout[] owed = shop.plugin().DB.getPayouts();
+        assertEquals(1,owed.length);
+        assertEquals(1,shop.plugin().DB.claimPayout(owed[0],"first"));
+        assertEquals(0,shop.plugin().DB.claimPayout(owed[0],"second"));
+        shop.tick(20);
+        assertEquals("The claimed payout is not paid again.",0,alice.balance(),0.001);
+    }
+
+    @Test
+    public void payoutClaimedByACrashedSettlementIsPaidOnce() throws SQLException
+    {
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+
+        //As if a server claimed the payout and crashed before depositing it.
+        assertEquals(1,shop.plugin().DB.claimPayout(shop.plugin().DB.getPayouts()[0],"crashed"));
+        shop.crash();
+        shop.start();
+        assertEquals("A fresh claim may still be settling on another server.",0,alice.balance(),0.001);
+
+        try(Connection other = DriverManager.getConnection(shop.DATABASE,"sa",""))
+        {
+            other.createStatement().executeUpdate("UPDATE ChatShop_payouts SET claimed = NOW() - INTERVAL '1' HOUR");
+        }
+        shop.tick(20);
+        assertEquals(15,alice.balance(),0.001);
+        shop.tick(20);
+        assertEquals("The released payout is paid once.",15,alice.balance(),0.001);
+        try(Connection other = DriverManager.getConnection(shop.DATABASE,"sa",""))
+        {
+            ResultSet res = other.createStatement().executeQuery("SELECT COUNT(*) FROM ChatShop_payouts");
+            res.next();
+            assertEquals("The paid entries are removed from the ledger.",0,res.getInt(1));
+        }
+    }
+
+    /**
+     * Assert that a player was sent a line containing some text.
+     *
+     * @param reply     The lines the player was sent.
+     * @param expected  The text.
+     */
+    protected static void assertReply(List<String> reply, String expected)
+    {
+        for(String line : reply)
+            if(line.contains(expected))
+                return;
+        fail("Expected \"" + expected + "\" in " + reply);
+    }
+}
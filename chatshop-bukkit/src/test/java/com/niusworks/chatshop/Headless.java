@@ -0,0 +1,698 @@
+package com.niusworks.chatshop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.PluginCommandYamlParser;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * A harness which runs ChatShop headless: in-process, against stand-ins for the server,
+ * its scheduler, players and their inventories, and Vault's economy, and against an
+ * embedded H2 database in MySQL mode.
+ * <br>
+ * Commands are run as the server would run them, through the plugin's registered
+ * PluginCommands, and reply to the stand-in players, which keep what they were sent.
+ * Nothing is scheduled on its own: scheduled tasks, including asynchronous ones, run
+ * on the calling thread as the harness is {@link #tick}ed.
+ * <br><br>
+ * Bukkit allows only one server per JVM, so the stand-in server is installed once and
+ * answers for whichever harness was created last; harnesses must not be used at once.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Headless
+{
+    /** The name of the world stand-in players are in; an allowed world by default. **/
+    public static final String WORLD_NAME = "Survival";
+
+    /** The harness the stand-in server answers for. **/
+    protected static Headless current;
+    /** The stand-in server, installed once. **/
+    protected static Server server;
+    /** The number of harnesses created, for naming their databases. **/
+    protected static int created = 0;
+
+    /** The plugin's data folder, deleted when the harness is closed. **/
+    public final File FOLDER;
+    /** The JDBC URL of the embedded database, which lasts as long as the JVM. **/
+    public final String DATABASE;
+    /** The stand-in economy. **/
+    public final HeadlessEconomy ECONOMY = new HeadlessEconomy(this);
+    /** The stand-in item factory. **/
+    public final HeadlessItems ITEMS = new HeadlessItems();
+    /** The stand-in players, online or not, by UUID. **/
+    protected final LinkedHashMap<UUID,HeadlessPlayer> PLAYERS = new LinkedHashMap<UUID,HeadlessPlayer>();
+    /** The plugin's commands, by name and by alias. **/
+    protected final HashMap<String,PluginCommand> COMMANDS = new HashMap<String,PluginCommand>();
+    /** The plugin's event listeners. **/
+    protected final ArrayList<Listener> LISTENERS = new ArrayList<Listener>();
+    /** The scheduled tasks, in the order they were scheduled. **/
+    protected final ArrayList<Task> TASKS = new ArrayList<Task>();
+    /** The items dropped in the world, such as for players whose inventories are full. **/
+    public final ArrayList<ItemStack> DROPPED = new ArrayList<ItemStack>();
+    /** The stand-in world. **/
+    protected final World WORLD;
+    /** The stand-in console. **/
+    protected final ConsoleCommandSender CONSOLE;
+
+    /** The plugin, as currently created. **/
+    protected Shop plugin;
+    /** The current tick. **/
+    protected long tick = 0;
+    /** The last task number given out. **/
+    protected int lastTask = 0;
+    /** Why the plugin disabled itself, if it did. **/
+    protected String failure = null;
+
+    /**
+     * Create a harness with ChatShop's default configuration, pointed at a new embedded
+     * database, with offers announced at once rather than gathered. The plugin is created, but not enabled until {@link #start}.
+     *
+     * @throws IOException  If the data folder cannot be created.
+     */
+    public Headless() throws IOException
+    {
+        this(new LinkedHashMap<String,Object>());
+    }
+
+    /**
+     * Create a harness pointed at a new embedded database.
+     * The plugin is created, but not enabled until {@link #start}.
+     *
+     * @param settings  Configuration settings by path, such as "payout-interval",
+     *                  written over ChatShop's defaults; lists are given as Lists.
+     * @throws IOException  If the data folder cannot be created.
+     */
+    public Headless(LinkedHashMap<String,Object> settings) throws IOException
+    {
+        FOLDER = Files.createTempDirectory("chatshop").toFile();
+        DATABASE = "jdbc:h2:mem:chatshop" + (++ created)
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+
+        //Begin from the configuration ChatShop spawns on a new server.
+        YamlConfiguration config;
+        try(InputStream in = Headless.class.getResourceAsStream("/config.yml"))
+        {
+            config = YamlConfiguration.loadConfiguration(new InputStreamReader(in,StandardCharsets.UTF_8));
+        }
+        config.set("MySQL.url",DATABASE);
+        config.set("MySQL.driver","org.h2.Driver");
+        config.set("MySQL.username","sa");
+        config.set("MySQL.password","");
+        config.set("MySQL.keep-alive",-1);
+        config.set("chat.broadcast-window",0);
+        for(String path : settings.keySet())
+            config.set(path,settings.get(path));
+        config.save(new File(FOLDER,"config.yml"));
+
+        WORLD = (World)Proxy.newProxyInstance(World.class.getClassLoader(),new Class<?>[]{World.class},
+                new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                switch(method.getName())
+                {
+                    case "getName":             return WORLD_NAME;
+                    case "getSpawnLocation":    return new Location((World)proxy,0,64,0);
+                    case "dropItem":
+                    case "dropItemNaturally":   DROPPED.add((ItemStack)args[1]); return null;
+                    case "equals":              return proxy == args[0];
+                    case "hashCode":            return System.identityHashCode(proxy);
+                    case "toString":            return "Headless{" + WORLD_NAME + "}";
+                    default:                    return unsupported(method);
+                }
+            }
+        });
+        CONSOLE = (ConsoleCommandSender)Proxy.newProxyInstance(ConsoleCommandSender.class.getClassLoader(),
+                new Class<?>[]{ConsoleCommandSender.class},new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                switch(method.getName())
+                {
+                    case "getName":             return "CONSOLE";
+                    case "sendMessage":         log().info(String.valueOf(args[0])); return null;
+                    case "hasPermission":
+                    case "isOp":                return true;
+                    case "getServer":           return server;
+                    case "equals":              return proxy == args[0];
+                    case "hashCode":            return System.identityHashCode(proxy);
+                    case "toString":            return "Headless{CONSOLE}";
+                    default:                    return unsupported(method);
+                }
+            }
+        });
+
+        current = this;
+        if(server == null)
+        {
+            server = (Server)Proxy.newProxyInstance(Server.class.getClassLoader(),new Class<?>[]{Server.class},
+                    new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    return current.server(proxy,method,args);
+                }
+            });
+            Bukkit.setServer(server);
+            HeadlessItems.registerEnchantments();
+        }
+        create();
+    }
+
+    /**
+     * Enable the plugin, as the server does after loading it.
+     *
+     * @return  The plugin.
+     * @throws IllegalStateException    If the plugin disabled itself.
+     */
+    public ChatShop start()
+    {
+        failure = null;
+        plugin.enable();
+        if(failure != null)
+            throw new IllegalStateException("ChatShop failed to start: " + failure);
+        return plugin;
+    }
+
+    /** Disable the plugin, as the server does when shutting down. **/
+    public void stop()
+    {
+        plugin.disable();
+        TASKS.clear();
+    }
+
+    /**
+     * Disable the plugin and create it anew over the same data folder and database,
+     * as a server restart would, and enable it again. Players stay online.
+     *
+     * @return  The new plugin.
+     */
+    public ChatShop restart()
+    {
+        stop();
+        create();
+        return start();
+    }
+
+    /**
+     * Abandon the plugin without disabling it, as a server crash would, and create it
+     * anew over the same data folder and database. The new plugin is not yet enabled.
+     * All players are offline.
+     */
+    public void crash()
+    {
+        TASKS.clear();
+        for(HeadlessPlayer usr : PLAYERS.values())
+            usr.online = false;
+        create();
+    }
+
+    /** Disable the plugin if it is enabled, and delete its data folder. **/
+    public void close()
+    {
+        if(plugin.isEnabled())
+            stop();
+        delete(FOLDER);
+    }
+
+    /**
+     * @return  The plugin, as currently created.
+     */
+    public ChatShop plugin()
+    {
+        return plugin;
+    }
+
+    /**
+     * Have a player join the server, creating them if they have never played.
+     *
+     * @param name  The player's name.
+     * @return      The player.
+     */
+    public HeadlessPlayer join(String name)
+    {
+        HeadlessPlayer usr = player(name);
+        usr.online = true;
+        fire(new PlayerJoinEvent(usr.PLAYER,name + " joined the game"));
+        return usr;
+    }
+
+    /**
+     * Have a player leave the server.
+     *
+     * @param usr   The player.
+     */
+    public void quit(HeadlessPlayer usr)
+    {
+        fire(new PlayerQuitEvent(usr.PLAYER,usr.NAME + " left the game"));
+        usr.online = false;
+    }
+
+    /**
+     * Get a player by name, creating them offline if they have never played.
+     *
+     * @param name  The player's name.
+     * @return      The player.
+     */
+    public HeadlessPlayer player(String name)
+    {
+        UUID id = HeadlessPlayer.id(name);
+        if(!PLAYERS.containsKey(id))
+            PLAYERS.put(id,new HeadlessPlayer(this,name,id));
+        return PLAYERS.get(id);
+    }
+
+    /**
+     * Run a command as a player, as if they typed it in chat.
+     *
+     * @param usr   The player.
+     * @param line  The command, with or without its leading slash.
+     * @return      The lines the player was sent while it ran, without color codes.
+     */
+    public List<String> run(HeadlessPlayer usr, String line)
+    {
+        String[] words = (line.startsWith("/") ? line.substring(1) : line).trim().split("\\s+");
+        PluginCommand command = COMMANDS.get(words[0].toLowerCase());
+        if(command == null)
+            throw new IllegalArgumentException("Unknown command: " + words[0]);
+        int before = usr.INBOX.size();
+        command.execute(usr.PLAYER,words[0],Arrays.copyOfRange(words,1,words.length));
+        return new ArrayList<String>(usr.INBOX.subList(before,usr.INBOX.size()));
+    }
+
+    /** Advance the server by one tick, running every task then due. **/
+    public void tick()
+    {
+        tick ++;
+        for(Task task : new ArrayList<Task>(TASKS))
+            if(!task.cancelled && task.due <= tick)
+            {
+                if(task.PERIOD > 0)
+                    task.due = tick + task.PERIOD;
+                else
+                    task.cancelled = true;
+                task.RUNNABLE.run();
+            }
+        Iterator<Task> tasks = TASKS.iterator();
+        while(tasks.hasNext())
+            if(tasks.next().cancelled)
+                tasks.remove();
+    }
+
+    /**
+     * Advance the server by some ticks.
+     *
+     * @param ticks The number of ticks.
+     */
+    public void tick(int ticks)
+    {
+        for(int i = 0; i < ticks; i ++)
+            tick();
+    }
+
+    /**
+     * @return  The stand-in server's logger.
+     */
+    public static Logger log()
+    {
+        return Logger.getLogger("Headless");
+    }
+
+    /** Create the plugin, and its commands, over this harness's data folder. **/
+    protected void create()
+    {
+        COMMANDS.clear();
+        LISTENERS.clear();
+        try(InputStream in = Headless.class.getResourceAsStream("/plugin.yml"))
+        {
+            plugin = new Shop(new JavaPluginLoader(server),new PluginDescriptionFile(in),
+                    FOLDER,new File(FOLDER,"ChatShop.jar"));
+        }
+        catch(IOException | InvalidDescriptionException e)
+        {
+            throw new IllegalStateException("Cannot read plugin.yml",e);
+        }
+        plugin.ECON = ECONOMY.PROVIDER;
+        for(Command command : PluginCommandYamlParser.parse(plugin))
+        {
+            COMMANDS.put(command.getName().toLowerCase(),(PluginCommand)command);
+            for(String alias : command.getAliases())
+                if(!COMMANDS.containsKey(alias.toLowerCase()))
+                    COMMANDS.put(alias.toLowerCase(),(PluginCommand)command);
+        }
+    }
+
+    /**
+     * Deliver an event to every registered listener method which takes it.
+     *
+     * @param evt   The event.
+     */
+    protected void fire(Event evt)
+    {
+        for(Listener listener : new ArrayList<Listener>(LISTENERS))
+            for(Method method : listener.getClass().getMethods())
+                if(method.isAnnotationPresent(EventHandler.class) && method.getParameterTypes().length == 1
+                        && method.getParameterTypes()[0].isInstance(evt))
+                    try
+                    {
+                        method.invoke(listener,evt);
+                    }
+                    catch(IllegalAccessException | InvocationTargetException e)
+                    {
+                        throw new IllegalStateException("Could not pass " + evt.getClass().getSimpleName()
+                                + " to " + listener.getClass().getSimpleName(),e);
+                    }
+    }
+
+    /**
+     * Answer a call to the stand-in server, or to one of the services it provides.
+     *
+     * @param proxy     The stand-in server.
+     * @param method    The method called.
+     * @param args      The arguments.
+     * @return          The method's result.
+     */
+    protected Object server(Object proxy, Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "getName":                 return "Headless";
+            case "getVersion":
+            case "getBukkitVersion":        return "1.11.2-R0.1-SNAPSHOT";
+            case "getLogger":               return log();
+            case "isPrimaryThread":         return true;
+            case "getMaxPlayers":           return 100;
+            case "getPluginCommand":        return COMMANDS.get(((String)args[0]).toLowerCase());
+            case "getItemFactory":          return ITEMS.FACTORY;
+            case "getConsoleSender":        return CONSOLE;
+            case "getWorld":                return WORLD_NAME.equals(args[0]) ? WORLD : null;
+            case "getWorlds":               return Arrays.asList(WORLD);
+            case "getOnlinePlayers":        return online();
+            case "broadcastMessage":
+                for(org.bukkit.entity.Player usr : online())
+                    usr.sendMessage((String)args[0]);
+                return online().size();
+            case "getPlayer":
+            case "getPlayerExact":
+            {
+                HeadlessPlayer usr = find(args[0]);
+                return usr == null || !usr.online ? null : usr.PLAYER;
+            }
+            case "getOfflinePlayer":
+            {
+                HeadlessPlayer usr = args[0] instanceof String ? player((String)args[0]) : find(args[0]);
+                return usr == null ? HeadlessPlayer.stranger((UUID)args[0]) : usr.PLAYER;
+            }
+            case "getScheduler":            return stand(BukkitScheduler.class,"scheduler");
+            case "getPluginManager":        return stand(PluginManager.class,"plugins");
+            case "getServicesManager":      return stand(ServicesManager.class,"services");
+            case "equals":                  return proxy == args[0];
+            case "hashCode":                return System.identityHashCode(proxy);
+            case "toString":                return "Headless{server}";
+            default:                        return unsupported(method);
+        }
+    }
+
+    /**
+     * Create a stand-in for one of the server's services, answered by this harness.
+     *
+     * @param type      The service's interface.
+     * @param service   Which service it is: "scheduler", "plugins" or "services".
+     * @return          The stand-in.
+     */
+    protected <T> T stand(Class<T> type, final String service)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(),new Class<?>[]{type},new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                switch(service)
+                {
+                    case "scheduler":   return scheduler(method,args);
+                    case "plugins":     return plugins(method,args);
+                    default:            return services(method,args);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Answer a call to the stand-in scheduler.
+     * Every task runs on the thread which ticks the harness, asynchronous or not.
+     *
+     * @param method    The method called.
+     * @param args      The arguments.
+     * @return          The method's result.
+     */
+    protected Object scheduler(Method method, Object[] args)
+    {
+        String name = method.getName();
+        if(name.equals("cancelTask") || name.equals("isCurrentlyRunning") || name.equals("isQueued"))
+        {
+            for(Task task : TASKS)
+                if(task.ID == (Integer)args[0] && !task.cancelled)
+                {
+                    task.cancelled |= name.equals("cancelTask");
+                    return name.equals("isQueued") ? true : null;
+                }
+            return name.equals("cancelTask") ? null : false;
+        }
+        if(name.equals("cancelTasks") || name.equals("cancelAllTasks"))
+        {
+            for(Task task : TASKS)
+                task.cancelled = true;
+            return null;
+        }
+        if(!(name.startsWith("run") || name.startsWith("schedule")))
+            return unsupported(method);
+
+        //Every overload is (plugin, task[, delay[, period]]).
+        long delay = args.length > 2 ? (Long)args[2] : 0;
+        long period = args.length > 3 ? (Long)args[3] : -1;
+        Task task = new Task(++ lastTask,(Runnable)args[1],tick + Math.max(1,delay),period);
+        TASKS.add(task);
+        return method.getReturnType() == int.class ? (Object)task.ID : task.HANDLE;
+    }
+
+    /**
+     * Answer a call to the stand-in plugin manager.
+     *
+     * @param method    The method called.
+     * @param args      The arguments.
+     * @return          The method's result.
+     */
+    protected Object plugins(Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "registerEvents":
+                LISTENERS.add((Listener)args[0]);
+                return null;
+            case "callEvent":
+                fire((Event)args[0]);
+                return null;
+            case "disablePlugin":
+                //Record why; the plugin is left enabled so that start() can report it.
+                failure = "disabled itself";
+                log().log(Level.SEVERE,"ChatShop disabled itself.");
+                return null;
+            case "getPlugin":               return "ChatShop".equals(args[0]) ? plugin : null;
+            case "isPluginEnabled":         return "ChatShop".equals(args[0]) && plugin.isEnabled();
+            default:                        return unsupported(method);
+        }
+    }
+
+    /**
+     * Answer a call to the stand-in services manager, which has no services: the
+     * plugin's economy provider is given to it directly.
+     *
+     * @param method    The method called.
+     * @param args      The arguments.
+     * @return          The method's result.
+     */
+    protected Object services(Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "getRegistration":         return null;
+            case "getRegistrations":
+            case "getKnownServices":        return new ArrayList<Object>();
+            case "isProvidedFor":           return false;
+            default:                        return unsupported(method);
+        }
+    }
+
+    /**
+     * @return  The players who are online.
+     */
+    protected Collection<org.bukkit.entity.Player> online()
+    {
+        ArrayList<org.bukkit.entity.Player> online = new ArrayList<org.bukkit.entity.Player>();
+        for(HeadlessPlayer usr : PLAYERS.values())
+            if(usr.online)
+                online.add(usr.PLAYER);
+        return online;
+    }
+
+    /**
+     * @param key   A player's UUID, or their name.
+     * @return      The player, online or not, or null if they have never played.
+     */
+    protected HeadlessPlayer find(Object key)
+    {
+        if(key instanceof UUID)
+            return PLAYERS.get(key);
+        for(HeadlessPlayer usr : PLAYERS.values())
+            if(usr.NAME.equalsIgnoreCase((String)key))
+                return usr;
+        return null;
+    }
+
+    /**
+     * Refuse a call which no stand-in answers, so that a harness which no longer
+     * covers what ChatShop does fails loudly rather than quietly.
+     *
+     * @param method    The method called.
+     * @return          Never returns.
+     */
+    protected static Object unsupported(Method method)
+    {
+        throw new UnsupportedOperationException("The headless harness does not stand in for "
+                + method.getDeclaringClass().getSimpleName() + "." + method.getName());
+    }
+
+    /**
+     * Delete a file, or a folder and everything in it.
+     *
+     * @param file  The file or folder.
+     */
+    protected static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if(children != null)
+            for(File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    /** ChatShop as created by the harness, which enables and disables it directly. **/
+    protected static class Shop extends ChatShop
+    {
+        /**
+         * @param loader        The plugin loader.
+         * @param description   The plugin's description, as read from plugin.yml.
+         * @param dataFolder    The folder for the plugin's configuration and files.
+         * @param file          A file standing in for the plugin's jar.
+         */
+        protected Shop(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file)
+        {
+            super(loader,description,dataFolder,file);
+        }
+
+        /** Enable the plugin, as the server does after loading it. **/
+        protected void enable()
+        {
+            setEnabled(true);
+        }
+
+        /** Disable the plugin, as the server does when shutting down. **/
+        protected void disable()
+        {
+            setEnabled(false);
+        }
+    }
+
+    /** A scheduled task. **/
+    protected static class Task implements InvocationHandler
+    {
+        /** The task's number. **/
+        protected final int ID;
+        /** What the task does. **/
+        protected final Runnable RUNNABLE;
+        /** The ticks between runs, or -1 if the task runs once. **/
+        protected final long PERIOD;
+        /** The stand-in for the task, as returned by the scheduler. **/
+        protected final BukkitTask HANDLE;
+        /** The tick on which the task next runs. **/
+        protected long due;
+        /** Whether the task has been cancelled, or has run and will not run again. **/
+        protected boolean cancelled = false;
+
+        /**
+         * @param id        The task's number.
+         * @param runnable  What the task does.
+         * @param due       The tick on which the task first runs.
+         * @param period    The ticks between runs, or -1 if the task runs once.
+         */
+        protected Task(int id, Runnable runnable, long due, long period)
+        {
+            ID = id;
+            RUNNABLE = runnable;
+            PERIOD = period;
+            this.due = due;
+            HANDLE = (BukkitTask)Proxy.newProxyInstance(BukkitTask.class.getClassLoader(),
+                    new Class<?>[]{BukkitTask.class},this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch(method.getName())
+            {
+                case "getTaskId":               return ID;
+                case "getOwner":                return current.plugin;
+                case "isSync":                  return true;
+                case "isCancelled":             return cancelled;
+                case "cancel":                  cancelled = true; return null;
+                case "equals":                  return proxy == args[0];
+                case "hashCode":                return ID;
+                case "toString":                return "Headless{task " + ID + "}";
+                default:                        return unsupported(method);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.niusworks.chatshop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.bukkit.OfflinePlayer;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import net.milkbowl.vault.economy.EconomyResponse.ResponseType;
+
+/**
+ * An in-memory stand-in for Vault's economy provider, for the {@link Headless} harness.
+ * <br>
+ * Every player has an account, starting at nothing, and cannot go below nothing.
+ * Balances are kept in cents, so that sums of prices are exact.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class HeadlessEconomy implements InvocationHandler
+{
+    /** The harness this economy is in. **/
+    protected final Headless HARNESS;
+    /** The stand-in economy provider. **/
+    public final Economy PROVIDER;
+    /** Each player's balance, in cents. **/
+    protected final HashMap<UUID,Long> CENTS = new HashMap<UUID,Long>();
+
+    /** Whether withdrawals fail, as when the economy's own storage is unavailable. **/
+    public boolean refuseWithdrawals = false;
+    /** Whether deposits fail, as when the economy's own storage is unavailable. **/
+    public boolean refuseDeposits = false;
+
+    /**
+     * @param harness   The harness this economy is in.
+     */
+    protected HeadlessEconomy(Headless harness)
+    {
+        HARNESS = harness;
+        PROVIDER = (Economy)Proxy.newProxyInstance(Economy.class.getClassLoader(),new Class<?>[]{Economy.class},this);
+    }
+
+    /**
+     * @param id    A player's UUID.
+     * @return      The player's balance.
+     */
+    public double balance(UUID id)
+    {
+        return (CENTS.containsKey(id) ? CENTS.get(id) : 0) / 100.0;
+    }
+
+    /**
+     * Set a player's balance.
+     *
+     * @param usr       The player.
+     * @param balance   The balance.
+     */
+    public void set(HeadlessPlayer usr, double balance)
+    {
+        CENTS.put(usr.ID,Math.round(balance * 100));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "isEnabled":               return true;
+            case "getName":                 return "Headless";
+            case "hasBankSupport":          return false;
+            case "fractionalDigits":        return 2;
+            case "format":                  return String.format("$%.2f",(Double)args[0]);
+            case "currencyNamePlural":      return "dollars";
+            case "currencyNameSingular":    return "dollar";
+            case "equals":                  return proxy == args[0];
+            case "hashCode":                return System.identityHashCode(proxy);
+            case "toString":                return "Headless{economy}";
+            default:                        break;
+        }
+
+        //Every other method concerns one player's account; any world name is ignored.
+        UUID id = args[0] instanceof OfflinePlayer ? ((OfflinePlayer)args[0]).getUniqueId()
+                : args[0] instanceof String ? HARNESS.player((String)args[0]).ID : null;
+        if(id == null)
+            return Headless.unsupported(method);
+        long balance = CENTS.containsKey(id) ? CENTS.get(id) : 0;
+        Object last = args[args.length - 1];
+        long amount = last instanceof Double ? Math.round((Double)last * 100) : 0;
+        switch(method.getName())
+        {
+            case "hasAccount":
+            case "createPlayerAccount":     return true;
+            case "getBalance":              return balance / 100.0;
+            case "has":                     return balance >= amount;
+            case "withdrawPlayer":
+                if(refuseWithdrawals || amount < 0 || amount > balance)
+                    return new EconomyResponse(amount / 100.0,balance / 100.0,ResponseType.FAILURE,"Insufficient funds");
+                CENTS.put(id,balance - amount);
+                return new EconomyResponse(amount / 100.0,(balance - amount) / 100.0,ResponseType.SUCCESS,null);
+            case "depositPlayer":
+                if(refuseDeposits || amount < 0)
+                    return new EconomyResponse(amount / 100.0,balance / 100.0,ResponseType.FAILURE,"Cannot deposit");
+                CENTS.put(id,balance + amount);
+                return new EconomyResponse(amount / 100.0,(balance + amount) / 100.0,ResponseType.SUCCESS,null);
+            default:                        return Headless.unsupported(method);
+        }
+    }
+}
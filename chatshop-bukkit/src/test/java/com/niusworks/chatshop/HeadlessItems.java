@@ -0,0 +1,261 @@
+package com.niusworks.chatshop;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.enchantments.EnchantmentTarget;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.PotionMeta;
+import org.bukkit.potion.PotionData;
+import org.bukkit.potion.PotionType;
+
+/**
+ * A stand-in for the server's item factory and item metadata, for the {@link Headless}
+ * harness. ItemStack consults the factory for everything to do with metadata, including
+ * whether an item has any and whether two items are similar.
+ * <br>
+ * Metadata keeps a display name, lore, enchantments, and for enchanted books stored
+ * enchantments and for potions their base potion data; nothing else.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class HeadlessItems implements InvocationHandler
+{
+    /** The stand-in item factory. **/
+    public final ItemFactory FACTORY;
+
+    /** Create the stand-in item factory. **/
+    protected HeadlessItems()
+    {
+        FACTORY = (ItemFactory)Proxy.newProxyInstance(ItemFactory.class.getClassLoader(),
+                new Class<?>[]{ItemFactory.class},this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "getItemMeta":             return meta((Material)args[0]);
+            case "isApplicable":            return true;
+            case "asMetaFor":
+            {
+                Material type = args[1] instanceof ItemStack ? ((ItemStack)args[1]).getType() : (Material)args[1];
+                ItemMeta meta = meta(type);
+                if(meta != null && args[0] != null)
+                    ((Meta)Proxy.getInvocationHandler(meta)).copy((Meta)Proxy.getInvocationHandler(args[0]));
+                return meta;
+            }
+            case "equals":
+                if(args.length == 1)
+                    return proxy == args[0];
+                return state(args[0]).equals(state(args[1]));
+            case "hashCode":                return System.identityHashCode(proxy);
+            case "toString":                return "Headless{items}";
+            default:                        return Headless.unsupported(method);
+        }
+    }
+
+    /**
+     * Register a stand-in for each of Bukkit's enchantments, as the server does on
+     * startup, with the same name and the vanilla maximum level. Called once.
+     */
+    protected static void registerEnchantments()
+    {
+        for(Field field : Enchantment.class.getFields())
+            if(field.getType() == Enchantment.class)
+            {
+                final String name = field.getName();
+                int id;
+                try
+                {
+                    id = ((Enchantment)field.get(null)).getId();
+                }
+                catch(IllegalAccessException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                Enchantment.registerEnchantment(new Enchantment(id)
+                {
+                    @Override public String getName()                       { return name; }
+                    @Override public int getMaxLevel()                      { return maxLevel(name); }
+                    @Override public int getStartLevel()                    { return 1; }
+                    @Override public EnchantmentTarget getItemTarget()      { return EnchantmentTarget.ALL; }
+                    @Override public boolean isTreasure()                   { return name.endsWith("_CURSE") || name.equals("MENDING") || name.equals("FROST_WALKER"); }
+                    @Override public boolean isCursed()                     { return name.endsWith("_CURSE"); }
+                    @Override public boolean conflictsWith(Enchantment other) { return false; }
+                    @Override public boolean canEnchantItem(ItemStack item) { return true; }
+                });
+            }
+        Enchantment.stopAcceptingRegistrations();
+    }
+
+    /**
+     * @param name  An enchantment's Bukkit name.
+     * @return      The enchantment's maximum level in vanilla Minecraft.
+     */
+    protected static int maxLevel(String name)
+    {
+        switch(name)
+        {
+            case "PROTECTION_ENVIRONMENTAL": case "PROTECTION_FIRE": case "PROTECTION_FALL":
+            case "PROTECTION_EXPLOSIONS": case "PROTECTION_PROJECTILE":
+                return 4;
+            case "DAMAGE_ALL": case "DAMAGE_UNDEAD": case "DAMAGE_ARTHROPODS": case "DIG_SPEED": case "ARROW_DAMAGE":
+                return 5;
+            case "OXYGEN": case "THORNS": case "DEPTH_STRIDER": case "LOOT_BONUS_MOBS": case "SWEEPING_EDGE":
+            case "DURABILITY": case "LOOT_BONUS_BLOCKS": case "LUCK": case "LURE":
+                return 3;
+            case "FROST_WALKER": case "KNOCKBACK": case "FIRE_ASPECT": case "ARROW_KNOCKBACK":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @param type  A kind of item.
+     * @return      Empty metadata for that kind of item, or null for air.
+     */
+    protected static ItemMeta meta(Material type)
+    {
+        if(type == null || type == Material.AIR)
+            return null;
+        Class<?> kind = type == Material.ENCHANTED_BOOK ? EnchantmentStorageMeta.class
+                : type == Material.POTION || type == Material.SPLASH_POTION
+                    || type == Material.LINGERING_POTION || type == Material.TIPPED_ARROW ? PotionMeta.class
+                : ItemMeta.class;
+        return new Meta(kind).PROXY;
+    }
+
+    /**
+     * @param meta  Metadata, or null.
+     * @return      What the metadata holds, where null holds nothing.
+     */
+    protected static List<Object> state(Object meta)
+    {
+        return meta == null ? new Meta(ItemMeta.class).state() : ((Meta)Proxy.getInvocationHandler(meta)).state();
+    }
+
+    /** One item's metadata. **/
+    protected static class Meta implements InvocationHandler
+    {
+        /** The kind of metadata: ItemMeta, EnchantmentStorageMeta or PotionMeta. **/
+        protected final Class<?> KIND;
+        /** The stand-in metadata. **/
+        protected final ItemMeta PROXY;
+        /** The item's enchantments. **/
+        protected final LinkedHashMap<Enchantment,Integer> ENCHANTS = new LinkedHashMap<Enchantment,Integer>();
+        /** An enchanted book's stored enchantments. **/
+        protected final LinkedHashMap<Enchantment,Integer> STORED = new LinkedHashMap<Enchantment,Integer>();
+        /** The item's display name, or null. **/
+        protected String name = null;
+        /** The item's lore, or null. **/
+        protected List<String> lore = null;
+        /** A potion's base potion data. **/
+        protected PotionData potion = new PotionData(PotionType.UNCRAFTABLE,false,false);
+
+        /**
+         * @param kind  The kind of metadata: ItemMeta, EnchantmentStorageMeta or PotionMeta.
+         */
+        protected Meta(Class<?> kind)
+        {
+            KIND = kind;
+            PROXY = (ItemMeta)Proxy.newProxyInstance(kind.getClassLoader(),new Class<?>[]{kind},this);
+        }
+
+        /**
+         * Take on everything another item's metadata holds which this kind can.
+         *
+         * @param other The other metadata.
+         */
+        protected void copy(Meta other)
+        {
+            name = other.name;
+            lore = other.lore == null ? null : new ArrayList<String>(other.lore);
+            ENCHANTS.putAll(other.ENCHANTS);
+            if(KIND == EnchantmentStorageMeta.class)
+                STORED.putAll(other.STORED);
+            if(KIND == PotionMeta.class)
+                potion = other.potion;
+        }
+
+        /**
+         * @return  What this metadata holds, for comparing with other metadata.
+         */
+        protected List<Object> state()
+        {
+            PotionData data = KIND == PotionMeta.class ? potion : null;
+            return Arrays.asList(name,lore,ENCHANTS,STORED,
+                    data == null ? null : data.getType(),
+                    data == null ? null : data.isExtended(),
+                    data == null ? null : data.isUpgraded());
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch(method.getName())
+            {
+                case "hasDisplayName":          return name != null;
+                case "getDisplayName":          return name;
+                case "setDisplayName":          name = (String)args[0]; return null;
+                case "hasLocalizedName":        return false;
+                case "hasLore":                 return lore != null;
+                case "getLore":                 return lore == null ? null : new ArrayList<String>(lore);
+                case "setLore":                 lore = args[0] == null ? null : castLore(args[0]); return null;
+                case "hasEnchants":             return !ENCHANTS.isEmpty();
+                case "hasEnchant":              return ENCHANTS.containsKey(args[0]);
+                case "getEnchantLevel":         return ENCHANTS.containsKey(args[0]) ? ENCHANTS.get(args[0]) : 0;
+                case "getEnchants":             return new LinkedHashMap<Enchantment,Integer>(ENCHANTS);
+                case "addEnchant":              return !Objects.equals(ENCHANTS.put((Enchantment)args[0],(Integer)args[1]),args[1]);
+                case "removeEnchant":           return ENCHANTS.remove(args[0]) != null;
+                case "hasStoredEnchants":       return !STORED.isEmpty();
+                case "hasStoredEnchant":        return STORED.containsKey(args[0]);
+                case "getStoredEnchantLevel":   return STORED.containsKey(args[0]) ? STORED.get(args[0]) : 0;
+                case "getStoredEnchants":       return new LinkedHashMap<Enchantment,Integer>(STORED);
+                case "addStoredEnchant":        return !Objects.equals(STORED.put((Enchantment)args[0],(Integer)args[1]),args[1]);
+                case "removeStoredEnchant":     return STORED.remove(args[0]) != null;
+                case "getBasePotionData":       return potion;
+                case "setBasePotionData":       potion = (PotionData)args[0]; return null;
+                case "hasCustomEffects":        return false;
+                case "clone":
+                {
+                    Meta clone = new Meta(KIND);
+                    clone.copy(this);
+                    return clone.PROXY;
+                }
+                case "equals":
+                    return args[0] instanceof ItemMeta && Proxy.isProxyClass(args[0].getClass())
+                            && state().equals(HeadlessItems.state(args[0]));
+                case "hashCode":                return state().hashCode();
+                case "toString":                return KIND.getSimpleName() + state();
+                default:                        return Headless.unsupported(method);
+            }
+        }
+
+        /**
+         * @param lore  A list of lore lines.
+         * @return      The lines as strings.
+         */
+        protected static List<String> castLore(Object lore)
+        {
+            List<String> lines = new ArrayList<String>();
+            for(Object line : (List<?>)lore)
+                lines.add(String.valueOf(line));
+            return lines;
+        }
+    }
+}
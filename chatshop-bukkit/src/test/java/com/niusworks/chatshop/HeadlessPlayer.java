@@ -0,0 +1,312 @@
+package com.niusworks.chatshop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.bukkit.ChatColor;
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+
+/**
+ * A stand-in player for the {@link Headless} harness: the Player, its inventory,
+ * and everything it has been sent.
+ * <br>
+ * The inventory is 36 slots, of which slot 0 is the main hand. Messages are kept one
+ * line per entry, without color codes, whether sent as text or as chat components.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class HeadlessPlayer implements InvocationHandler
+{
+    /** The harness this player is in. **/
+    protected final Headless HARNESS;
+    /** The player's name. **/
+    public final String NAME;
+    /** The player's UUID, the same for the same name in every test. **/
+    public final UUID ID;
+    /** The stand-in player. **/
+    public final Player PLAYER;
+    /** The stand-in inventory. **/
+    public final PlayerInventory INVENTORY;
+    /** The player's main inventory; slot 0 is the main hand. **/
+    protected final ItemStack[] SLOTS = new ItemStack[36];
+    /** Every line the player has been sent, without color codes. **/
+    public final ArrayList<String> INBOX = new ArrayList<String>();
+    /** The stand-in for the player's chat components. **/
+    protected final Player.Spigot SPIGOT = new Player.Spigot()
+    {
+        @Override
+        public void sendMessage(BaseComponent component)
+        {
+            receive(BaseComponent.toLegacyText(component));
+        }
+
+        @Override
+        public void sendMessage(BaseComponent... components)
+        {
+            receive(BaseComponent.toLegacyText(components));
+        }
+    };
+
+    /** The player's game mode. **/
+    public GameMode mode = GameMode.SURVIVAL;
+    /** Whether the player is online. **/
+    protected boolean online = false;
+
+    /**
+     * @param harness   The harness this player is in.
+     * @param name      The player's name.
+     * @param id        The player's UUID.
+     */
+    protected HeadlessPlayer(Headless harness, String name, UUID id)
+    {
+        HARNESS = harness;
+        NAME = name;
+        ID = id;
+        PLAYER = (Player)Proxy.newProxyInstance(Player.class.getClassLoader(),new Class<?>[]{Player.class},this);
+        INVENTORY = (PlayerInventory)Proxy.newProxyInstance(PlayerInventory.class.getClassLoader(),
+                new Class<?>[]{PlayerInventory.class},new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return inventory(proxy,method,args);
+            }
+        });
+    }
+
+    /**
+     * @param name  A player's name.
+     * @return      The UUID of the stand-in player of that name.
+     */
+    public static UUID id(String name)
+    {
+        return UUID.nameUUIDFromBytes(("ChatShop headless " + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param id    The UUID of a player who has never played.
+     * @return      A stand-in for that player, who has no name.
+     */
+    protected static OfflinePlayer stranger(final UUID id)
+    {
+        return (OfflinePlayer)Proxy.newProxyInstance(OfflinePlayer.class.getClassLoader(),
+                new Class<?>[]{OfflinePlayer.class},new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                switch(method.getName())
+                {
+                    case "getUniqueId":         return id;
+                    case "getName":
+                    case "getPlayer":           return null;
+                    case "isOnline":
+                    case "hasPlayedBefore":
+                    case "isOp":                return false;
+                    case "getFirstPlayed":
+                    case "getLastPlayed":       return 0L;
+                    case "equals":              return args[0] instanceof OfflinePlayer
+                                                    && id.equals(((OfflinePlayer)args[0]).getUniqueId());
+                    case "hashCode":            return id.hashCode();
+                    case "toString":            return "Headless{" + id + "}";
+                    default:                    return Headless.unsupported(method);
+                }
+            }
+        });
+    }
+
+    /**
+     * Put an item in the player's main hand.
+     *
+     * @param item  The item, or null for an empty hand.
+     * @return      This player.
+     */
+    public HeadlessPlayer hold(ItemStack item)
+    {
+        SLOTS[0] = item;
+        return this;
+    }
+
+    /**
+     * Give the player an item, as the server would, into the first slots with room.
+     *
+     * @param item  The item.
+     * @return      This player.
+     */
+    public HeadlessPlayer give(ItemStack item)
+    {
+        if(!add(new ItemStack[]{item}).isEmpty())
+            throw new IllegalStateException(NAME + "'s inventory is full.");
+        return this;
+    }
+
+    /**
+     * @param type  A kind of item.
+     * @return      How many of that item, of any damage value, the player has.
+     */
+    public int count(Material type)
+    {
+        int count = 0;
+        for(ItemStack item : SLOTS)
+            if(item != null && item.getType() == type)
+                count += item.getAmount();
+        return count;
+    }
+
+    /**
+     * @return  The player's balance in the stand-in economy.
+     */
+    public double balance()
+    {
+        return HARNESS.ECONOMY.balance(ID);
+    }
+
+    /**
+     * @return  Every line the player has been sent, as one string, for messages in failed assertions.
+     */
+    public String inbox()
+    {
+        return String.join("\n",INBOX);
+    }
+
+    /**
+     * Keep a message the player was sent, one line per entry.
+     *
+     * @param message   The message, which may have color codes and several lines.
+     */
+    protected void receive(String message)
+    {
+        INBOX.addAll(Arrays.asList(ChatColor.stripColor(message).split("\n")));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "getName":
+            case "getDisplayName":
+            case "getPlayerListName":   return NAME;
+            case "getUniqueId":         return ID;
+            case "getPlayer":           return online ? PLAYER : null;
+            case "getInventory":        return INVENTORY;
+            case "getWorld":            return HARNESS.WORLD;
+            case "getLocation":         return HARNESS.WORLD.getSpawnLocation();
+            case "getGameMode":         return mode;
+            case "getServer":           return Headless.server;
+            case "spigot":              return SPIGOT;
+            case "isOnline":            return online;
+            case "hasPlayedBefore":
+            case "isPermissionSet":
+            case "hasPermission":       return true;
+            case "isOp":                return false;
+            case "getFirstPlayed":
+            case "getLastPlayed":       return 0L;
+            case "sendMessage":
+                for(String msg : args[0] instanceof String[] ? (String[])args[0] : new String[]{(String)args[0]})
+                    receive(msg);
+                return null;
+            case "equals":              return proxy == args[0];
+            case "hashCode":            return ID.hashCode();
+            case "toString":            return "Headless{" + NAME + "}";
+            default:                    return Headless.unsupported(method);
+        }
+    }
+
+    /**
+     * Answer a call to the player's stand-in inventory.
+     *
+     * @param proxy     The stand-in inventory.
+     * @param method    The method called.
+     * @param args      The arguments.
+     * @return          The method's result.
+     */
+    protected Object inventory(Object proxy, Method method, Object[] args)
+    {
+        switch(method.getName())
+        {
+            case "getContents":
+            case "getStorageContents":  return SLOTS.clone();
+            case "setContents":
+            case "setStorageContents":
+                Arrays.fill(SLOTS,null);
+                ItemStack[] contents = (ItemStack[])args[0];
+                System.arraycopy(contents,0,SLOTS,0,Math.min(contents.length,SLOTS.length));
+                return null;
+            case "getItem":             return SLOTS[(Integer)args[0]];
+            case "setItem":             SLOTS[(Integer)args[0]] = (ItemStack)args[1]; return null;
+            case "clear":
+                if(args == null || args.length == 0)
+                    Arrays.fill(SLOTS,null);
+                else
+                    SLOTS[(Integer)args[0]] = null;
+                return null;
+            case "getItemInMainHand":   return SLOTS[0] == null ? new ItemStack(Material.AIR) : SLOTS[0];
+            case "setItemInMainHand":   SLOTS[0] = (ItemStack)args[0]; return null;
+            case "getItemInOffHand":    return new ItemStack(Material.AIR);
+            case "getHeldItemSlot":     return 0;
+            case "getSize":             return SLOTS.length;
+            case "getMaxStackSize":     return 64;
+            case "firstEmpty":
+                for(int i = 0; i < SLOTS.length; i ++)
+                    if(SLOTS[i] == null)
+                        return i;
+                return -1;
+            case "addItem":             return add((ItemStack[])args[0]);
+            case "iterator":            return Arrays.asList(SLOTS).listIterator();
+            case "getHolder":           return PLAYER;
+            case "equals":              return proxy == args[0];
+            case "hashCode":            return System.identityHashCode(proxy);
+            case "toString":            return "Headless{" + NAME + "}.inventory";
+            default:                    return Headless.unsupported(method);
+        }
+    }
+
+    /**
+     * Add items to the inventory as the server does: onto similar stacks with room first,
+     * then into empty slots.
+     *
+     * @param items The items to add.
+     * @return      What did not fit, by the index of its argument.
+     */
+    protected HashMap<Integer,ItemStack> add(ItemStack[] items)
+    {
+        HashMap<Integer,ItemStack> leftover = new HashMap<Integer,ItemStack>();
+        for(int i = 0; i < items.length; i ++)
+        {
+            ItemStack item = items[i].clone();
+            int max = item.getMaxStackSize();
+            for(int slot = 0; slot < SLOTS.length && item.getAmount() > 0; slot ++)
+                if(SLOTS[slot] != null && SLOTS[slot].isSimilar(item) && SLOTS[slot].getAmount() < max)
+                {
+                    int moved = Math.min(item.getAmount(),max - SLOTS[slot].getAmount());
+                    SLOTS[slot].setAmount(SLOTS[slot].getAmount() + moved);
+                    item.setAmount(item.getAmount() - moved);
+                }
+            for(int slot = 0; slot < SLOTS.length && item.getAmount() > 0; slot ++)
+                if(SLOTS[slot] == null)
+                {
+                    ItemStack stack = item.clone();
+                    stack.setAmount(Math.min(item.getAmount(),max));
+                    SLOTS[slot] = stack;
+                    item.setAmount(item.getAmount() - stack.getAmount());
+                }
+            if(item.getAmount() > 0)
+                leftover.put(i,item);
+        }
+        return leftover;
+    }
+}
@@ -0,0 +1,124 @@
+package com.niusworks.chatshop;
+
+import static com.niusworks.chatshop.CommandFlowTest.assertReply;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Trades interrupted by a crash at each step, finished from the trade journal on the next startup.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class JournalTest
+{
+    /** The harness, with a fresh database for each test. **/
+    protected Headless shop;
+    /** A player who sells cobblestone. **/
+    protected HeadlessPlayer alice;
+    /** A player who buys it. **/
+    protected HeadlessPlayer bob;
+
+    @Before
+    public void start() throws Exception
+    {
+        shop = new Headless();
+        shop.start();
+        alice = shop.join("alice").give(new ItemStack(Material.COBBLESTONE,64));
+        bob = shop.join("bob");
+        shop.ECONOMY.set(bob,100);
+        shop.run(alice,"/sell 64 cobblestone 1.50");
+        shop.run(alice,"/confirm");
+    }
+
+    @After
+    public void stop()
+    {
+        shop.close();
+    }
+
+    @Test
+    public void crashBeforeTheMarketChangesAbandonsTheTrade()
+    {
+        assertNotNull(shop.plugin().JM.begin(bob.PLAYER,new ItemStack(Material.COBBLESTONE,10)));
+        shop.crash();
+        shop.start();
+        shop.join("bob");
+
+        assertEquals(100,bob.balance(),0.001);
+        assertEquals(0,bob.count(Material.COBBLESTONE));
+        assertReply(shop.run(bob,"/find cobblestone"),"$1.50, 64 from alice");
+    }
+
+    @Test
+    public void crashAfterTheMarketChangesFinishesTheTrade()
+    {
+        ItemStack goods = new ItemStack(Material.COBBLESTONE,10);
+        String trade = shop.plugin().JM.begin(bob.PLAYER,goods);
+        assertNotNull(shop.plugin().DB.buy(bob.PLAYER,goods,-1,trade));
+        shop.crash();
+        shop.start();
+
+        //Bob is charged what the market step took, and given the goods when they join.
+        assertEquals(85,bob.balance(),0.001);
+        shop.join("bob");
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+
+        //The finished trade is not carried forward again.
+        shop.restart();
+        assertEquals(85,bob.balance(),0.001);
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+    }
+
+    @Test
+    public void failedChargeIsRetriedAtStartup()
+    {
+        shop.ECONOMY.refuseWithdrawals = true;
+        shop.run(bob,"/buy 10 cobblestone");
+        assertReply(shop.run(bob,"/confirm"),"The goods will be given once you have been charged.");
+        assertEquals("The goods are held until the charge succeeds.",0,bob.count(Material.COBBLESTONE));
+        assertEquals(100,bob.balance(),0.001);
+
+        //A charge which fails again at startup still holds the goods.
+        shop.restart();
+        shop.join("bob");
+        assertEquals(100,bob.balance(),0.001);
+        assertEquals(0,bob.count(Material.COBBLESTONE));
+
+        shop.ECONOMY.refuseWithdrawals = false;
+        shop.restart();
+        assertEquals(85,bob.balance(),0.001);
+        shop.join("bob");
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+
+        shop.restart();
+        shop.join("bob");
+        assertEquals("The buyer is not charged twice.",85,bob.balance(),0.001);
+        assertEquals("The goods are not given twice.",10,bob.count(Material.COBBLESTONE));
+    }
+
+    @Test
+    public void failedChargeIsRetriedWhenTheBuyerJoins()
+    {
+        shop.ECONOMY.refuseWithdrawals = true;
+        shop.run(bob,"/buy 10 cobblestone");
+        shop.run(bob,"/confirm");
+        assertEquals(0,bob.count(Material.COBBLESTONE));
+
+        shop.ECONOMY.refuseWithdrawals = false;
+        shop.quit(bob);
+        shop.join("bob");
+        assertEquals(85,bob.balance(),0.001);
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+
+        shop.quit(bob);
+        shop.join("bob");
+        assertEquals(85,bob.balance(),0.001);
+        assertEquals(10,bob.count(Material.COBBLESTONE));
+    }
+}
@@ -0,0 +1,153 @@
+package com.niusworks.chatshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The database statements made by each use of the market's commands, held to the
+ * budgets under "query-budgets" in the default configuration. Each command is run
+ * against a market of a few listings and one of many, and must make no more
+ * statements against the second than the first, so that a command which has begun
+ * to issue a statement per listing fails here rather than on a live server.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class QueryBudgetTest
+{
+    /** The number of sellers of the item with few listings. **/
+    protected static final int FEW = 2;
+    /** The number of sellers of the item with many listings. **/
+    protected static final int MANY = 30;
+
+    /** The harness, with a fresh database for each test. **/
+    protected Headless shop;
+    /** A player who buys everything. **/
+    protected HeadlessPlayer bob;
+    /** The number of sellers who have joined, for naming the next. **/
+    protected int joined = 0;
+
+    @Before
+    public void start() throws Exception
+    {
+        shop = new Headless();
+        shop.start();
+        bob = shop.join("bob");
+        shop.ECONOMY.set(bob,1000000);
+    }
+
+    @After
+    public void stop()
+    {
+        shop.close();
+    }
+
+    @Test
+    public void findIsWithinBudgetForAnyNumberOfListings()
+    {
+        sell(Material.COBBLESTONE,FEW);
+        sell(Material.STONE,MANY);
+
+        int few = statements("/find cobblestone");
+        int many = statements("/find stone");
+        assertWithinBudget("find",few);
+        assertEquals("/find made more statements for more listings.",few,many);
+    }
+
+    @Test
+    public void buyIsWithinBudgetForAnyNumberOfListings()
+    {
+        sell(Material.COBBLESTONE,FEW);
+        sell(Material.STONE,MANY);
+
+        //Each buy leaves part of the dearest listing, so that listings are both removed and changed.
+        int few = statements("/buy " + (FEW * 10 - 5) + " cobblestone");
+        int fewConfirm = statements("/confirm");
+        int many = statements("/buy " + (MANY * 10 - 5) + " stone");
+        int manyConfirm = statements("/confirm");
+        assertEquals("Not everything was bought.",FEW * 10 - 5,bob.count(Material.COBBLESTONE));
+        assertEquals("Not everything was bought.",MANY * 10 - 5,bob.count(Material.STONE));
+
+        assertWithinBudget("buy",few);
+        assertWithinBudget("confirm",fewConfirm);
+        assertEquals("/buy made more statements for more listings.",few,many);
+        assertEquals("/confirm made more statements for more listings.",fewConfirm,manyConfirm);
+    }
+
+    @Test
+    public void efindIsWithinBudgetForAnyNumberOfLots()
+    {
+        esell(Material.GOLD_SWORD,FEW);
+        esell(Material.DIAMOND_SWORD,MANY);
+
+        int few = statements("/efind gold_sword");
+        int many = statements("/efind diamond_sword");
+        assertWithinBudget("efind",few);
+        assertEquals("/efind made more statements for more lots.",few,many);
+    }
+
+    /**
+     * Have each of a number of sellers list 10 of an item, each a dollar dearer than the last.
+     *
+     * @param type      The item.
+     * @param sellers   The number of sellers.
+     */
+    protected void sell(Material type, int sellers)
+    {
+        for(int i = 0; i < sellers; i ++)
+        {
+            HeadlessPlayer seller = shop.join("seller" + (joined ++)).give(new ItemStack(type,10));
+            shop.run(seller,"/sell 10 " + type + " " + (i + 1));
+            shop.run(seller,"/confirm");
+        }
+    }
+
+    /**
+     * Have each of a number of sellers list one enchanted item, each a dollar dearer than the last.
+     *
+     * @param type      The item.
+     * @param sellers   The number of sellers.
+     */
+    protected void esell(Material type, int sellers)
+    {
+        for(int i = 0; i < sellers; i ++)
+        {
+            ItemStack item = new ItemStack(type);
+            item.addUnsafeEnchantment(Enchantment.DAMAGE_ALL,1 + i % 5);
+            HeadlessPlayer seller = shop.join("seller" + (joined ++)).hold(item);
+            shop.run(seller,"/esell " + (i + 1));
+            shop.run(seller,"/confirm");
+        }
+    }
+
+    /**
+     * Run a command as the buyer.
+     *
+     * @param line  The command.
+     * @return      The number of database statements it made.
+     */
+    protected int statements(String line)
+    {
+        shop.run(bob,line);
+        return shop.plugin().MM.getLastStatements();
+    }
+
+    /**
+     * @param command       The name of a command.
+     * @param statements    The number of statements a use of it made.
+     */
+    protected void assertWithinBudget(String command, int statements)
+    {
+        int budget = shop.plugin().MM.getBudget(command);
+        assertTrue("/" + command + " has no budget.",budget >= 0);
+        assertTrue("/" + command + " made " + statements + " statements, over its budget of " + budget + ".",
+                statements <= budget);
+        assertEquals(0,shop.plugin().MM.getOverBudget(command));
+    }
+}
@@ -0,0 +1,120 @@
+package com.niusworks.chatshop;
+
+import static com.niusworks.chatshop.CommandFlowTest.assertReply;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.After;
+import org.junit.Test;
+
+import net.milkbowl.vault.economy.Economy;
+
+/**
+ * Load test replays of a dump of ChatShop_transactions, which must leave the market as they found it.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class ReplayTest
+{
+    /** The number of replay databases made so far, to keep each test's apart. **/
+    protected static int created = 0;
+    /** The harness. **/
+    protected Headless shop;
+
+    @After
+    public void stop()
+    {
+        if(shop != null)
+            shop.close();
+    }
+
+    /**
+     * Start a harness with load tests enabled and a listing by alice in the market,
+     * and write a dump in which alice sold bob 10 cobblestone.
+     *
+     * @param replay    The JDBC URL of the replay database, or null to leave it as configured by default.
+     * @return          The harness.
+     * @throws Exception    If the dump cannot be written.
+     */
+    protected Headless start(String replay) throws Exception
+    {
+        LinkedHashMap<String,Object> settings = new LinkedHashMap<String,Object>();
+        settings.put("loadtest.enabled",true);
+        if(replay != null)
+            settings.put("loadtest.replay-database.url",replay);
+        shop = new Headless(settings);
+        shop.start();
+        HeadlessPlayer alice = shop.join("alice").give(new ItemStack(Material.COBBLESTONE,64));
+        shop.run(alice,"/sell 64 cobblestone 1.00");
+        shop.run(alice,"/confirm");
+        Files.write(new File(shop.FOLDER,"dump.tsv").toPath(),Arrays.asList(
+                "seller\tsellerAlias\tbuyer\tbuyerAlias\tmaterial\tdamage\tprice\tenchantments\tquantity\tdate",
+                HeadlessPlayer.id("alice") + "\talice\t" + HeadlessPlayer.id("bob") + "\tbob\tCOBBLESTONE\t0\t1.5\tNULL\t10\t2017-01-01 12:00:00"),
+                StandardCharsets.UTF_8);
+        return shop;
+    }
+
+    @Test
+    public void replayLeavesTheMarketAndTheEconomyAsItFoundThem() throws Exception
+    {
+        String replay = "jdbc:h2:mem:chatshop-replay" + (++ created) + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                + "CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+        start(replay);
+        HeadlessPlayer admin = shop.join("admin");
+        Economy econ = shop.plugin().ECON;
+
+        assertReply(shop.run(admin,"/csadmin loadtest replay dump.tsv"),"Reading dump.tsv...");
+        shop.tick(10);
+        assertReply(admin.INBOX,"Replay of dump.tsv");
+
+        //The replay traded in its own database, against its own stand-in for alice.
+        assertEquals(1,count(replay,"ChatShop_transactions"));
+        assertEquals(0,count(shop.DATABASE,"ChatShop_transactions"));
+        assertReply(shop.run(admin,"/find cobblestone"),"$1, 64 from alice");
+        assertSame("The economy provider is unwrapped.",econ,shop.plugin().ECON);
+
+        //A later replay begins from an empty database.
+        shop.run(admin,"/csadmin loadtest replay dump.tsv");
+        shop.tick(10);
+        assertEquals(1,count(replay,"ChatShop_transactions"));
+    }
+
+    @Test
+    public void replayIsRefusedAgainstTheMarketsOwnDatabase() throws Exception
+    {
+        start(null);
+        shop.plugin().getConfig().set("loadtest.replay-database.url",shop.DATABASE);
+        HeadlessPlayer admin = shop.join("admin");
+
+        assertReply(shop.run(admin,"/csadmin loadtest replay dump.tsv"),"Replays need a database of their own");
+        assertReply(shop.run(admin,"/find cobblestone"),"$1, 64 from alice");
+    }
+
+    /**
+     * @param url   The JDBC URL of a database.
+     * @param table The name of a table.
+     * @return      The number of rows in the table.
+     * @throws SQLException If the table cannot be read.
+     */
+    protected static int count(String url, String table) throws SQLException
+    {
+        try(Connection c = DriverManager.getConnection(url,"sa",""))
+        {
+            ResultSet res = c.createStatement().executeQuery("SELECT COUNT(*) FROM " + table);
+            res.next();
+            return res.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.niusworks.chatshop.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.niusworks.chatshop.Headless;
+
+/**
+ * Callers on different threads sharing the one database connection.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class DatabaseManagerTest
+{
+    /** The seller owed by the transaction. **/
+    protected static final UUID MINE = UUID.randomUUID();
+    /** The seller owed by the other thread. **/
+    protected static final UUID THEIRS = UUID.randomUUID();
+    /** The harness, with a fresh database for each test. **/
+    protected Headless shop;
+    /** The plugin's database manager. **/
+    protected DatabaseManager db;
+
+    @Before
+    public void start() throws Exception
+    {
+        shop = new Headless();
+        shop.start();
+        db = shop.plugin().DB;
+    }
+
+    @After
+    public void stop()
+    {
+        shop.close();
+    }
+
+    @Test
+    public void statementsFromAnotherThreadStayOutOfATransaction() throws Exception
+    {
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        db.beginTransaction();
+        Thread other;
+        try
+        {
+            db.update("INSERT INTO ChatShop_payouts (seller,amount) VALUES ('" + MINE + "',1)");
+            other = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        db.update("INSERT INTO ChatShop_payouts (seller,amount) VALUES ('" + THEIRS + "',2)");
+                    }
+                    catch(Exception e)
+                    {
+                        failure.set(e);
+                    }
+                }
+            });
+            other.start();
+            other.join(200);
+            assertTrue("The other thread waits for the transaction to end.",other.isAlive());
+            db.rollback();
+        }
+        finally
+        {
+            db.autoCommit();
+        }
+        other.join();
+
+        assertEquals(null,failure.get());
+        ResultSet res = db.select(db.connect,"SELECT seller FROM ChatShop_payouts");
+        assertTrue(res.next());
+        assertEquals("Only the rolled back transaction's own statement was undone.",THEIRS.toString(),res.getString("seller"));
+        assertTrue(!res.next());
+    }
+
+    @Test
+    public void replicaIsReachedLikeThePrimaryByDefault() throws Exception
+    {
+        LinkedHashMap<String,Object> settings = new LinkedHashMap<String,Object>();
+        settings.put("MySQL.replica.fresh-after-write.find",0);
+        restart(settings);
+
+        assertNotNull("The replica was connected through the primary's URL and driver.",db.replica);
+        assertEquals(shop.DATABASE,db.replicaUrl());
+    }
+
+    @Test
+    public void replicaUrlOverridesThePrimarys() throws Exception
+    {
+        String url = "jdbc:h2:mem:chatshop-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                + "CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+        LinkedHashMap<String,Object> settings = new LinkedHashMap<String,Object>();
+        settings.put("MySQL.replica.url",url);
+        settings.put("MySQL.replica.host","ignored.example.com");
+        restart(settings);
+
+        assertEquals(url,db.replicaUrl());
+        assertNotNull(db.replica);
+    }
+
+    /**
+     * Replace the harness with one configured with the specified settings.
+     *
+     * @param settings  As {@link Headless#Headless(LinkedHashMap)}.
+     * @throws Exception    If the harness cannot be made.
+     */
+    protected void restart(LinkedHashMap<String,Object> settings) throws Exception
+    {
+        shop.close();
+        shop = new Headless(settings);
+        shop.start();
+        db = shop.plugin().DB;
+    }
+}
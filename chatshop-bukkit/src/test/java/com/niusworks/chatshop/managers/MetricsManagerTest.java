@@ -0,0 +1,53 @@
+package com.niusworks.chatshop.managers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * The shapes statements are counted under, which must not multiply with the
+ * number of listings a statement touches.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class MetricsManagerTest
+{
+    @Test
+    public void literalsAreReplaced()
+    {
+        assertEquals("SELECT * FROM ChatShop_listings WHERE material = ? AND damage = ? AND enchantments IS NULL",
+                MetricsManager.shape("SELECT * FROM ChatShop_listings WHERE material = 'STONE' AND damage = 3"
+                        + "  AND enchantments IS NULL"));
+        assertEquals("UPDATE ChatShop_listings SET price = ? WHERE id = ?",
+                MetricsManager.shape("UPDATE ChatShop_listings SET price = -1.5E-3 WHERE id = 12"));
+    }
+
+    @Test
+    public void rowsOfValuesAreOneShape()
+    {
+        String one = MetricsManager.shape("INSERT INTO ChatShop_payouts (seller,amount) VALUES ('a',1.5)");
+        String many = MetricsManager.shape("INSERT INTO ChatShop_payouts (seller,amount) VALUES ('a',1.5),('b',2),('c',null)");
+        assertEquals("INSERT INTO ChatShop_payouts (seller,amount) VALUES (?)",one);
+        assertEquals(one,many);
+    }
+
+    @Test
+    public void sweepsOfEveryWidthAreOneShape()
+    {
+        String shape = "DELETE FROM ChatShop_listings WHERE (id = ? AND version = ?)";
+        String sql = "DELETE FROM ChatShop_listings WHERE (id = 1 AND version = 0)";
+        assertEquals(shape,MetricsManager.shape(sql));
+        for(int i = 2; i < 40; i ++)
+        {
+            sql += " OR (id = " + i + " AND version = " + (i * 7) + ")";
+            assertEquals(shape,MetricsManager.shape(sql));
+        }
+    }
+
+    @Test
+    public void differentConditionsAreKept()
+    {
+        assertEquals("SELECT * FROM t WHERE (id = ?) OR (seller = ?) OR (id = ?)",
+                MetricsManager.shape("SELECT * FROM t WHERE (id = 1) OR (seller = 'x') OR (id = 2)"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.niusworks.chatshop.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of part of the market: all non-enchanted listings of one
+ * item, all enchanted listings of one material, or all listings of one seller.
+ * <br>
+ * Books are published by {@link Books} and shared by every reader, so
+ * {@link #LISTINGS} cannot be modified.
+ *
+ * @param <T>   The kind of offer listed.
+ * @author ObsidianCraft Staff
+ */
+public class Book<T extends Offer>
+{
+    /** The part of the market this book covers. **/
+    public final String KEY;
+    /** The number of writes to that part of the market this book reflects, or -1 if unverified. **/
+    public final long VERSION;
+    /** The listings, in the order the store returned them. **/
+    public final List<T> LISTINGS;
+
+    /**
+     * @param key       The part of the market this book covers.
+     * @param version   The number of writes to that part of the market this book reflects,
+     *                  or -1 if unverified.
+     * @param listings  The listings, which are copied.
+     */
+    public Book(String key, long version, List<? extends T> listings)
+    {
+        KEY = key;
+        VERSION = version;
+        LISTINGS = Collections.unmodifiableList(new ArrayList<T>(listings));
+    }
+}
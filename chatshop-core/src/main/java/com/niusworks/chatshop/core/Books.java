@@ -0,0 +1,172 @@
+package com.niusworks.chatshop.core;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The market's books, as read from a {@link MarketStore}, with the most recent
+ * consistent snapshot of each kept for every reader to share.
+ * <br>
+ * Each book has a {@link WriteCounter}, and every change to a listing is counted
+ * against each book it appears in, so the number of writes begun on a book serves as
+ * its version. A snapshot is only served while its version is current; the first read
+ * after a change reads the store again and publishes a fresh snapshot for everyone
+ * else. Readers never lock, and so never wait on writers.
+ * <br>
+ * This relies on every change to the store being counted here, which is the store's
+ * responsibility.
+ *
+ * @param <T>   The kind of offer kept.
+ * @author ObsidianCraft Staff
+ */
+public class Books<T extends Offer>
+{
+    /** The number of times to try reading a book consistently before settling for an unverified read. **/
+    public static final int ATTEMPTS = 3;
+
+    /** Where the books are kept. **/
+    protected final MarketStore<T> STORE;
+
+    /** The write counter of each book, by key. **/
+    protected final ConcurrentHashMap<String,WriteCounter> COUNTERS = new ConcurrentHashMap<String,WriteCounter>();
+
+    /** The most recent snapshot read of each book, by key. **/
+    protected final ConcurrentHashMap<String,Book<T>> SNAPSHOTS = new ConcurrentHashMap<String,Book<T>>();
+
+    /**
+     * @param store Where the books are kept.
+     */
+    public Books(MarketStore<T> store)
+    {
+        STORE = store;
+    }
+
+    /**
+     * @param key   The key of a book.
+     * @return      The book's write counter, created if necessary.
+     */
+    public WriteCounter counter(String key)
+    {
+        WriteCounter counter = COUNTERS.get(key);
+        if(counter == null)
+        {
+            WriteCounter fresh = new WriteCounter();
+            counter = COUNTERS.putIfAbsent(key,fresh);
+            if(counter == null)
+                counter = fresh;
+        }
+        return counter;
+    }
+
+    /**
+     * @param key   The key of a book.
+     * @return      The current version of the book.
+     */
+    public long version(String key)
+    {
+        return counter(key).started();
+    }
+
+    /**
+     * Note that the specified books are about to change, so that any snapshot
+     * or plan made from them is no longer trusted.
+     * Must be followed by {@link #end} in a finally block.
+     *
+     * @param keys  The keys of the books.
+     */
+    public void begin(String... keys)
+    {
+        for(String key : keys)
+            counter(key).begin();
+    }
+
+    /**
+     * Note that changes to the specified books have finished, successfully or not.
+     *
+     * @param keys  The keys of the books, as given to {@link #begin}.
+     */
+    public void end(String... keys)
+    {
+        for(String key : keys)
+            counter(key).end();
+    }
+
+    /**
+     * Get a consistent snapshot of a book, without locking.
+     * The published snapshot is returned if no write has begun on the book since
+     * it was read. Otherwise the book is read again, and the new snapshot is
+     * published if no write was in progress or began while it was read.
+     * Under constant writes, an unverified read is returned instead, with a
+     * version of -1 so that no plan is ever trusted on its account.
+     *
+     * @param key   The key of the book.
+     * @return      The book, or null if the store failed.
+     */
+    public Book<T> get(String key)
+    {
+        WriteCounter counter = counter(key);
+        List<T> listings = null;
+        for(int attempt = 0; attempt < ATTEMPTS; attempt ++)
+        {
+            //Finished must be read before started; see WriteCounter.
+            long finished = counter.finished();
+            long started = counter.started();
+
+            Book<T> book = SNAPSHOTS.get(key);
+            if(book != null && book.VERSION == started)
+            {
+                hit();
+                return book;
+            }
+
+            if(attempt == 0)
+                miss();
+
+            //A write is in progress; let it finish.
+            if(finished != started)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            listings = STORE.load(key);
+            if(listings == null)
+                return null;
+
+            if(counter.started() == started)
+            {
+                book = new Book<T>(key,started,listings);
+                SNAPSHOTS.put(key,book);
+                return book;
+            }
+        }
+
+        if(listings == null)
+            listings = STORE.load(key);
+        if(listings == null)
+            return null;
+        return new Book<T>(key,-1,listings);
+    }
+
+    /**
+     * @param key   The key of a book.
+     * @return      The published snapshot of the book if it is current, or null.
+     */
+    public Book<T> current(String key)
+    {
+        Book<T> book = SNAPSHOTS.get(key);
+        if(book != null && book.VERSION == version(key))
+        {
+            hit();
+            return book;
+        }
+        miss();
+        return null;
+    }
+
+    /** Called when a current snapshot is served, to be counted. **/
+    protected void hit() {}
+
+    /** Called when a book must be read from the store, to be counted. **/
+    protected void miss() {}
+}
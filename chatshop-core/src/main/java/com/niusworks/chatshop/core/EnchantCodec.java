@@ -0,0 +1,75 @@
+package com.niusworks.chatshop.core;
+
+import java.util.Arrays;
+
+/**
+ * The encoding of an item's enchantments as it is stored in the database.
+ * <br>
+ * A code has one digit per kind of enchantment, in a fixed order of slots; each digit
+ * is the level of that enchantment, or 0 if the item does not have it. Levels above
+ * {@value #MAX_LEVEL} therefore cannot be encoded.
+ * <br><br>
+ * A search for enchanted items is a regular expression over codes: "." in each slot
+ * which does not matter, the level in each which does, or "[1-9]" in each which must
+ * have the enchantment at any level.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class EnchantCodec
+{
+    /** The highest level which can be encoded. **/
+    public static final int MAX_LEVEL = 9;
+
+    /**
+     * Encode an item's enchantments.
+     *
+     * @param size      The number of slots.
+     * @param slots     The slot of each enchantment.
+     * @param levels    The level of each enchantment.
+     * @return          The code, or null if any level is above {@link #MAX_LEVEL}.
+     */
+    public static String encode(int size, int[] slots, int[] levels)
+    {
+        char[] coded = new char[size];
+        Arrays.fill(coded,'0');
+        for(int i = 0; i < slots.length; i ++)
+        {
+            if(levels[i] > MAX_LEVEL)
+                return null;
+            coded[slots[i]] = (char)('0' + levels[i]);
+        }
+        return new String(coded);
+    }
+
+    /**
+     * Build the regular expression which finds codes having certain enchantments.
+     *
+     * @param size      The number of slots.
+     * @param slots     The slot of each enchantment required.
+     * @param levels    The level of each enchantment required, or a negative number
+     *                  for any level above zero.
+     * @return          The expression.
+     */
+    public static String pattern(int size, int[] slots, int[] levels)
+    {
+        String[] parts = new String[size];
+        Arrays.fill(parts,".");
+        for(int i = 0; i < slots.length; i ++)
+            parts[slots[i]] = levels[i] < 0 ? "[1-9]" : "" + levels[i];
+        return String.join("",parts);
+    }
+
+    /**
+     * Decode an item's enchantments.
+     *
+     * @param coded The code.
+     * @return      The level in each slot, 0 where the item does not have that enchantment.
+     */
+    public static int[] decode(String coded)
+    {
+        int[] levels = new int[coded.length()];
+        for(int i = 0; i < levels.length; i ++)
+            levels[i] = Character.digit(coded.charAt(i),10);
+        return levels;
+    }
+}
@@ -0,0 +1,40 @@
+package com.niusworks.chatshop.core;
+
+/**
+ * The outcome of sweeping a buy order across a list of offers with {@link Matcher}.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Fill
+{
+    /**
+     * The quantity taken from each offer swept, in the order swept. Offers after
+     * the last one taken from are not included; every offer but the last is
+     * taken in full.
+     */
+    public final int[] TAKEN;
+    /** The total quantity taken. **/
+    public final int QUANTITY;
+    /** The total cost of the quantity taken. **/
+    public final double COST;
+    /** Whether the buyer could not afford all that was wanted and offered. **/
+    public final boolean BROKE;
+    /** The quantity taken from the buyer's own offers. **/
+    public final int SELF;
+
+    /**
+     * @param taken     The quantity taken from each offer swept.
+     * @param quantity  The total quantity taken.
+     * @param cost      The total cost of the quantity taken.
+     * @param broke     Whether the buyer could not afford all that was wanted and offered.
+     * @param self      The quantity taken from the buyer's own offers.
+     */
+    public Fill(int[] taken, int quantity, double cost, boolean broke, int self)
+    {
+        TAKEN = taken;
+        QUANTITY = quantity;
+        COST = cost;
+        BROKE = broke;
+        SELF = self;
+    }
+}
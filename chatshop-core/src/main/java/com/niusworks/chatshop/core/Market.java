@@ -0,0 +1,104 @@
+package com.niusworks.chatshop.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buys from the market: matches buy orders against books with {@link Matcher},
+ * and has a {@link MarketStore} carry them out.
+ * <br>
+ * Another server sharing the store may change an offer between it being read and
+ * taken from, in which case the store changes nothing; the book is then read again
+ * straight from the store and the order matched anew, a few times at most.
+ *
+ * @param <T>   The kind of offer traded.
+ * @author ObsidianCraft Staff
+ */
+public class Market<T extends Offer>
+{
+    /**
+     * The number of times to try a trade before giving up,
+     * when another server sharing the store keeps changing its offers first.
+     */
+    public static final int ATTEMPTS = 5;
+
+    /** Where the market is kept. **/
+    public final MarketStore<T> STORE;
+    /** The market's books. **/
+    public final Books<T> BOOKS;
+
+    /**
+     * @param store Where the market is kept.
+     * @param books The market's books, read from the same store.
+     */
+    public Market(MarketStore<T> store, Books<T> books)
+    {
+        STORE = store;
+        BOOKS = books;
+    }
+
+    /**
+     * @param offers    The offers in a book, cheapest first.
+     * @param maxp      The most to pay for each item. -1 signifies no limit.
+     * @return          The offers at or under that price, cheapest first.
+     */
+    public static <T extends Offer> ArrayList<T> scan(List<T> offers, double maxp)
+    {
+        ArrayList<T> matching = new ArrayList<T>();
+        for(T offer : offers)
+            if(maxp == -1 || offer.price() <= maxp)
+                matching.add(offer);
+        return matching;
+    }
+
+    /**
+     * Buy from some of the offers in a book.
+     *
+     * @param key       The key of the book.
+     * @param buyer     The UUID of the buyer, as a String.
+     * @param wanted    The quantity the buyer wants.
+     * @param balance   The money the buyer has.
+     * @param offers    The offers to buy from, cheapest first, as last read.
+     * @param maxp      The most to pay for each item, for reading the book again.
+     *                  -1 signifies no limit.
+     * @param reference A reference for the store to record with the trade, or null.
+     * @return          The trade carried out, or null if the store failed or
+     *                  kept conflicting. A trade which matched nothing is returned
+     *                  without the store being asked to carry it out, so that it
+     *                  changes no book.
+     */
+    public Trade<T> buy(String key, String buyer, int wanted, double balance, List<T> offers, double maxp,
+            String reference)
+    {
+        for(int attempt = 0; attempt < ATTEMPTS; attempt ++)
+        {
+            Fill fill = Matcher.match(offers,wanted,balance,buyer);
+            Trade<T> trade = new Trade<T>(key,buyer,
+                    new ArrayList<T>(offers.subList(0,fill.TAKEN.length)),fill,reference);
+            if(fill.QUANTITY == 0)
+                return trade;
+            int res = STORE.take(trade);
+            if(res > 0)
+                return trade;
+            if(res < 0)
+                return null;
+
+            //Another server changed an offer first; read the book again,
+            //  straight from the store since any snapshot predates the change.
+            List<T> current = STORE.load(key);
+            if(current == null)
+                return null;
+            offers = scan(current,maxp);
+        }
+        conflicted(key);
+        return null;
+    }
+
+    /**
+     * Called when a trade is abandoned because other servers sharing the store
+     * kept changing its offers.
+     *
+     * @param key   The key of the book.
+     */
+    protected void conflicted(String key) {}
+}
@@ -0,0 +1,39 @@
+package com.niusworks.chatshop.core;
+
+import java.util.List;
+
+/**
+ * Where the market's listings are kept, as seen by {@link Books} and {@link Market}.
+ * The plugin keeps them in MySQL; anything else, such as memory, will do for tests
+ * and benchmarks.
+ * <br>
+ * A store must count every change it makes to a book with {@link Books#begin} and
+ * {@link Books#end} on the books it was given, so that snapshots and plans made
+ * before the change are not trusted after it.
+ *
+ * @param <T>   The kind of offer kept.
+ * @author ObsidianCraft Staff
+ */
+public interface MarketStore<T extends Offer>
+{
+    /**
+     * Read a book.
+     *
+     * @param key   The key of the book.
+     * @return      The book's listings, cheapest first where the book is of one item,
+     *              or null on failure.
+     */
+    List<T> load(String key);
+
+    /**
+     * Carry out a trade all at once, or not at all: reduce or remove each offer taken
+     * from, and record the sale, but only if none of the offers has changed since it
+     * was read.
+     *
+     * @param trade The trade.
+     * @return      1 on success,
+     *              0 if an offer had changed, in which case nothing is changed,
+     *              -1 on failure, in which case nothing is changed.
+     */
+    int take(Trade<T> trade);
+}
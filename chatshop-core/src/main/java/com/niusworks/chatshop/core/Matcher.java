@@ -0,0 +1,65 @@
+package com.niusworks.chatshop.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches a buy order against the offers in a book.
+ * <br>
+ * Offers are taken cheapest first, each in full, until the next would give the
+ * buyer more than they want or cost more than they can afford; as much of that
+ * one is then taken as is wanted and affordable, and the sweep ends.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Matcher
+{
+    /**
+     * Sweep a buy order across offers.
+     *
+     * @param offers    The offers, cheapest first.
+     * @param wanted    The quantity the buyer wants.
+     * @param balance   The money the buyer has, or {@link Double#POSITIVE_INFINITY}
+     *                  to price the order without regard to what the buyer can afford.
+     * @param buyer     The UUID of the buyer, as a String, to count their own offers.
+     * @return          What was taken from each offer, and in total.
+     */
+    public static Fill match(List<? extends Offer> offers, int wanted, double balance, String buyer)
+    {
+        int[] taken = new int[offers.size()];
+        int swept = 0;
+        double totalCost = 0;
+        int totalQuantity = 0;
+        boolean broke = false;
+        int self = 0;
+
+        for(int i = 0; i < offers.size(); i ++)
+        {
+            Offer offer = offers.get(i);
+            int quantity = offer.quantity();
+            double cost = offer.price() * quantity;
+            if(totalCost + cost > balance || totalQuantity + quantity > wanted)
+            {
+                //This is the last offer, because it meets or exceeds the limit
+                //  of either the buyer's balance or the quantity wanted.
+                quantity = Math.max(0,Math.min(
+                        (int)((balance - totalCost) / offer.price()),   //The amount the buyer can afford
+                        wanted - totalQuantity));                       //The amount the buyer wants
+                broke = quantity < wanted - totalQuantity;
+
+                //If no more can be bought, this offer is not swept.
+                if(quantity == 0)
+                    break;
+                cost = quantity * offer.price();
+            }
+
+            if(offer.seller().equals(buyer))
+                self += quantity;
+            taken[i] = quantity;
+            swept = i + 1;
+            totalCost += cost;
+            totalQuantity += quantity;
+        }
+        return new Fill(Arrays.copyOf(taken,swept),totalQuantity,totalCost,broke,self);
+    }
+}
@@ -0,0 +1,310 @@
+package com.niusworks.chatshop.core;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Thread-safe formatting of prices and quantities for ChatShop output.
+ * <br>
+ * Produces the same text as the platform currency and integer
+ * {@link NumberFormat}s (half-even rounding to cents, grouped thousands,
+ * and ".00" omitted from whole prices), but holds no mutable state and
+ * appends directly into a caller-supplied {@link StringBuilder}, so that
+ * listing pages and broadcasts may be rendered from any thread without
+ * allocating a formatter or an intermediate String per number.
+ * <br><br>
+ * All locale-dependent symbols are resolved once when this class is loaded.
+ *
+ * @author ObsidianCraft Staff
+ */
+public final class NumberFormatter
+{
+    /** Currency symbol, as it appears in the prefix or suffix of a price. **/
+    private static final String SYMBOL;
+
+    /** Affixes surrounding a positive price, with and without currency symbol. **/
+    private static final String POS_PREFIX, POS_SUFFIX, POS_PREFIX_BARE, POS_SUFFIX_BARE;
+
+    /** Affixes surrounding a negative price, with and without currency symbol. **/
+    private static final String NEG_PREFIX, NEG_SUFFIX, NEG_PREFIX_BARE, NEG_SUFFIX_BARE;
+
+    /** Grouping separator for prices and quantities. **/
+    private static final char MONEY_GROUP, INT_GROUP;
+
+    /** Minus sign used for negative quantities. **/
+    private static final char MINUS;
+
+    /** Decimal separator for prices. **/
+    private static final char DECIMAL;
+
+    /** Whether whole prices drop their fraction, mirroring the old ".00" strip. **/
+    private static final boolean STRIP_ZERO_CENTS;
+
+    /**
+     * Whether the platform formats are ones this class can reproduce.
+     * If not, every call is delegated to a per-thread NumberFormat instead.
+     */
+    private static final boolean NATIVE;
+
+    /** Fallback formatters, one per thread, for values outside the fast path. **/
+    private static final ThreadLocal<NumberFormat> MONEY_FALLBACK = new ThreadLocal<NumberFormat>()
+    {
+        @Override
+        protected NumberFormat initialValue()
+        {
+            return NumberFormat.getCurrencyInstance();
+        }
+    };
+
+    /** Fallback integer formatter, one per thread. **/
+    private static final ThreadLocal<NumberFormat> INT_FALLBACK = new ThreadLocal<NumberFormat>()
+    {
+        @Override
+        protected NumberFormat initialValue()
+        {
+            return NumberFormat.getIntegerInstance();
+        }
+    };
+
+    /**
+     * At or above this many cents (2^33, about $86 million) a double carries too few
+     * fractional digits to be rounded the way DecimalFormat rounds it, so the fallback
+     * takes over. Below it, scaling a price to cents is off by at most half a unit in
+     * the last place, 2^-21, which is less than {@link #TIE_EPSILON}; so a remainder
+     * more than that from a half cent is on the same side of it as the exact value's.
+     */
+    private static final double MAX_FAST_CENTS = 0x1p33;
+
+    /**
+     * How close to a half cent the scaled remainder must be before the
+     * exact binary value of the price is consulted for half-even rounding.
+     */
+    private static final double TIE_EPSILON = 1e-6;
+
+    static
+    {
+        NumberFormat money = NumberFormat.getCurrencyInstance();
+        NumberFormat integer = NumberFormat.getIntegerInstance();
+        boolean nat = false;
+        String sym = "$", pp = "$", ps = "", np = "-$", ns = "";
+        char mg = ',', ig = ',', minus = '-', dec = '.';
+        if(money instanceof DecimalFormat && integer instanceof DecimalFormat)
+        {
+            DecimalFormat dm = (DecimalFormat) money;
+            DecimalFormat di = (DecimalFormat) integer;
+            DecimalFormatSymbols sm = dm.getDecimalFormatSymbols();
+            DecimalFormatSymbols si = di.getDecimalFormatSymbols();
+            sym = sm.getCurrencySymbol();
+            pp = dm.getPositivePrefix();
+            ps = dm.getPositiveSuffix();
+            np = dm.getNegativePrefix();
+            ns = dm.getNegativeSuffix();
+            mg = sm.getGroupingSeparator();
+            dec = sm.getMonetaryDecimalSeparator();
+            ig = si.getGroupingSeparator();
+            minus = si.getMinusSign();
+            nat = dm.getMinimumFractionDigits() == 2 && dm.getMaximumFractionDigits() == 2
+                    && dm.isGroupingUsed() && dm.getGroupingSize() == 3
+                    && dm.getRoundingMode() == RoundingMode.HALF_EVEN
+                    && di.isGroupingUsed() && di.getGroupingSize() == 3
+                    && di.getNegativePrefix().equals(String.valueOf(minus))
+                    && di.getNegativeSuffix().isEmpty()
+                    && di.getPositivePrefix().isEmpty() && di.getPositiveSuffix().isEmpty();
+        }
+        SYMBOL = sym;
+        POS_PREFIX = pp;
+        POS_SUFFIX = ps;
+        NEG_PREFIX = np;
+        NEG_SUFFIX = ns;
+        POS_PREFIX_BARE = pp.replace("$","");
+        POS_SUFFIX_BARE = ps.replace("$","");
+        NEG_PREFIX_BARE = np.replace("$","");
+        NEG_SUFFIX_BARE = ns.replace("$","");
+        MONEY_GROUP = mg;
+        INT_GROUP = ig;
+        MINUS = minus;
+        DECIMAL = dec;
+        STRIP_ZERO_CENTS = dec == '.';
+        NATIVE = nat;
+    }
+
+    /** Static utility; not instantiable. **/
+    private NumberFormatter(){}
+
+    /**
+     * Append a price, rounded to cents, to the specified buffer.
+     * Whole prices are written without a fractional part.
+     *
+     * @param out           The buffer to append to.
+     * @param price         The price to format.
+     * @param includeDollar Whether to include the currency symbol.
+     * @return              The same buffer, for chaining.
+     */
+    public static StringBuilder appendMoney(StringBuilder out, double price, boolean includeDollar)
+    {
+        if(!NATIVE || !(Math.abs(price) * 100 < MAX_FAST_CENTS))
+            return appendFallbackMoney(out,price,includeDollar);
+
+        long cents = toCents(price);
+        boolean negative = cents < 0 || (cents == 0 && isNegative(price));
+        if(cents < 0)
+            cents = -cents;
+
+        if(negative)
+            out.append(includeDollar ? NEG_PREFIX : NEG_PREFIX_BARE);
+        else
+            out.append(includeDollar ? POS_PREFIX : POS_PREFIX_BARE);
+
+        appendGrouped(out,cents / 100,MONEY_GROUP);
+        int frac = (int)(cents % 100);
+        if(frac != 0 || !STRIP_ZERO_CENTS)
+        {
+            out.append(DECIMAL);
+            out.append((char)('0' + frac / 10));
+            out.append((char)('0' + frac % 10));
+        }
+
+        if(negative)
+            out.append(includeDollar ? NEG_SUFFIX : NEG_SUFFIX_BARE);
+        else
+            out.append(includeDollar ? POS_SUFFIX : POS_SUFFIX_BARE);
+        return out;
+    }
+
+    /**
+     * Append a quantity, with grouping separators, to the specified buffer.
+     *
+     * @param out   The buffer to append to.
+     * @param qty   The quantity to format.
+     * @return      The same buffer, for chaining.
+     */
+    public static StringBuilder appendQuantity(StringBuilder out, long qty)
+    {
+        if(!NATIVE || qty == Long.MIN_VALUE)
+            return out.append(INT_FALLBACK.get().format(qty));
+        if(qty < 0)
+        {
+            out.append(MINUS);
+            qty = -qty;
+        }
+        return appendGrouped(out,qty,INT_GROUP);
+    }
+
+    /**
+     * Format a price to a new String.
+     *
+     * @param price         The price to format.
+     * @param includeDollar Whether to include the currency symbol.
+     * @return              The formatted price.
+     * @see #appendMoney(StringBuilder, double, boolean)
+     */
+    public static String money(double price, boolean includeDollar)
+    {
+        return appendMoney(new StringBuilder(16),price,includeDollar).toString();
+    }
+
+    /**
+     * Format a quantity to a new String.
+     *
+     * @param qty   The quantity to format.
+     * @return      The formatted quantity.
+     * @see #appendQuantity(StringBuilder, long)
+     */
+    public static String quantity(long qty)
+    {
+        return appendQuantity(new StringBuilder(12),qty).toString();
+    }
+
+    /**
+     * @return  The currency symbol of the platform currency format.
+     */
+    public static String currencySymbol()
+    {
+        return SYMBOL;
+    }
+
+    /**
+     * Round a price to whole cents, half-even, against its exact binary value
+     * (which is what DecimalFormat does).
+     * Most prices never come near a half cent and are resolved with plain
+     * double arithmetic; only near-ties use BigDecimal.
+     *
+     * @param price A finite price below {@link #MAX_FAST_CENTS} cents.
+     * @return      The signed number of cents.
+     */
+    private static long toCents(double price)
+    {
+        double scaled = Math.abs(price) * 100;
+        double floor = Math.floor(scaled);
+        double rem = scaled - floor;
+        if(Math.abs(rem - 0.5) > TIE_EPSILON)
+        {
+            long cents = (long) floor + (rem > 0.5 ? 1 : 0);
+            return price < 0 ? -cents : cents;
+        }
+        return new BigDecimal(price).setScale(2,RoundingMode.HALF_EVEN).unscaledValue().longValue();
+    }
+
+    /**
+     * DecimalFormat keeps the sign of values that round to zero,
+     * so -0.001 formats as a negative zero.
+     *
+     * @param price A finite price.
+     * @return      Whether the price carries a negative sign.
+     */
+    private static boolean isNegative(double price)
+    {
+        return price < 0 || (price == 0 && 1 / price < 0);
+    }
+
+    /**
+     * Append a non-negative integer with a separator between every three digits.
+     *
+     * @param out   The buffer to append to.
+     * @param value The non-negative value.
+     * @param sep   The grouping separator.
+     * @return      The same buffer, for chaining.
+     */
+    private static StringBuilder appendGrouped(StringBuilder out, long value, char sep)
+    {
+        if(value < 1000)
+            return out.append(value);
+
+        // Emit the leading group unpadded, then every later group as three digits.
+        long divisor = 1000;
+        while(value / divisor >= 1000)
+            divisor *= 1000;
+        out.append(value / divisor);
+        value %= divisor;
+        while(divisor > 1)
+        {
+            divisor /= 1000;
+            long group = value / divisor;
+            value %= divisor;
+            out.append(sep);
+            out.append((char)('0' + group / 100));
+            out.append((char)('0' + (group / 10) % 10));
+            out.append((char)('0' + group % 10));
+        }
+        return out;
+    }
+
+    /**
+     * Format a price the original way, through a per-thread NumberFormat.
+     *
+     * @param out           The buffer to append to.
+     * @param price         The price to format.
+     * @param includeDollar Whether to include the currency symbol.
+     * @return              The same buffer, for chaining.
+     */
+    private static StringBuilder appendFallbackMoney(StringBuilder out, double price, boolean includeDollar)
+    {
+        String ret = MONEY_FALLBACK.get().format(price).replace(".00","");
+        if(!includeDollar)
+            ret = ret.replace("$","");
+        return out.append(ret);
+    }
+}
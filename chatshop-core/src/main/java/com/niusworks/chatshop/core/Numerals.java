@@ -0,0 +1,81 @@
+package com.niusworks.chatshop.core;
+
+/**
+ * Roman numerals, as used for enchantment levels.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Numerals
+{
+    /**
+     * Quickly format an integer to roman numerals.
+     * A negative number returns an empty string.
+     * 
+     * @param x     The number to format.
+     * @return      A roman numeral expression of the number.
+     */
+    public static String roman(int x)
+    {
+        String out = "";
+        while(x >= 1000){out += "M"; x -= 1000;}    //M = 1000
+        if(x >= 900){out += "CM"; x -= 900;}        //CM = 900
+        while(x >= 500){out += "D"; x -= 500;}      //D = 500
+        if(x >= 400){out += "CD"; x -= 400;}        //CD = 400
+        while(x >= 100){out += "C"; x -= 100;}      //C = 100
+        if(x >= 90){out += "XC"; x -= 90;}          //XC = 90
+        while(x >= 50){out += "L"; x -= 50;}        //L = 50
+        if(x >= 40){out += "XL"; x -= 40;}          //XL = 40
+        while(x >= 10){out += "X"; x -= 10;}        //X = 10
+        if(x >= 9){out += "IX"; x -= 9;}            //IX = 9
+        while(x >= 5){out +="V"; x -= 5;}           //V = 5
+        if(x >= 4){out += "IV"; x -= 4;}            //IV = 4
+        while(x >= 1){out += "I"; x -= 1;}          //I = 1
+        
+        return out;
+    }
+    
+    /**
+     * Returns an integer derived from a roman numeral string.
+     * 
+     * @param x The string to decipher.
+     * @return  An integer; -1 if the string was invalid.
+     */
+    public static int deRoman(String x)
+    {
+        int out = 0;
+        for(int i = 0; i < x.length(); i ++)
+        {
+            boolean isEnd = (i == x.length() - 1);
+            char next = '~';
+            if(!isEnd)
+                next = x.charAt(i + 1);
+            switch(x.charAt(i))
+            {
+                case 'M':   out += 1000;    break;
+                case 'D':   out += 500;     break;
+                case 'C':   switch(next)
+                            {
+                                case 'M':   out += 900; i++; continue;
+                                case 'D':   out += 400; i++; continue;
+                            }
+                            out += 100;     break;
+                case 'L':   out += 50;      break;
+                case 'X':   switch(next)
+                            {
+                                case 'C':   out += 90; i++; continue;
+                                case 'L':   out += 40; i++; continue;
+                            }
+                            out += 10;      break;
+                case 'V':   out += 5;       break;
+                case 'I':   switch(next)
+                            {
+                                case 'X':   out += 9; i++; continue;
+                                case 'V':   out += 4; i++; continue;
+                            }
+                            out += 1;       break;
+                default:    return -1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,25 @@
+package com.niusworks.chatshop.core;
+
+/**
+ * Anything which offers a quantity of goods for sale at a price each,
+ * as swept by {@link Matcher}.
+ *
+ * @author ObsidianCraft Staff
+ */
+public interface Offer
+{
+    /**
+     * @return  The price of each item.
+     */
+    double price();
+
+    /**
+     * @return  The quantity for sale.
+     */
+    int quantity();
+
+    /**
+     * @return  The UUID of the seller, as a String.
+     */
+    String seller();
+}
@@ -0,0 +1,55 @@
+package com.niusworks.chatshop.core;
+
+import java.util.Arrays;
+
+/**
+ * Splits a list of lines into pages of chat, assuming that elements and
+ * lines of chat have a one-to-one relationship.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class Pages
+{
+    /**
+     * Determine the total number of pages it would take
+     * to express the given number of lines.
+     * 
+     * @param lines     The number of lines.
+     * @param perPage   How many lines are allowed on a page.
+     * @return          The number of pages required.
+     */
+    public static int count(int lines, int perPage)
+    {
+        double fpa = ((double)lines) / perPage;
+        int pagesAvailable = ((int)fpa) +
+            (fpa % 1.00 == 0 ? 0 : 1);
+        return pagesAvailable;
+    }
+    
+    /**
+     * Return one page's worth of the given lines. A page number
+     * past either end returns the first or last page.
+     * 
+     * @param available All available lines.
+     * @param perPage   How many lines are allowed on a page.
+     * @param pageNum   The index of the desired page, where
+     *                  the first page is index 1.
+     * @return          One page of lines, of the same type as given.
+     */
+    public static <T> T[] page(T[] available, int perPage, int pageNum)
+    {
+        //Convert from natural page number to index
+        pageNum --;
+        
+        //Prevent asking for a nonexistent page
+        int pagesAvailable = count(available.length,perPage);
+        if(pageNum >= pagesAvailable)
+            pageNum = pagesAvailable - 1;
+        if(pageNum < 0)
+            pageNum = 0;
+        
+        int startIndex = pageNum * perPage;
+        return Arrays.copyOfRange(available,startIndex,
+            Math.min(startIndex + perPage,available.length));
+    }
+}
@@ -0,0 +1,39 @@
+package com.niusworks.chatshop.core;
+
+import java.util.List;
+
+/**
+ * A buy order matched against a book by {@link Market}, for a {@link MarketStore} to carry out.
+ *
+ * @param <T>   The kind of offer taken from.
+ * @author ObsidianCraft Staff
+ */
+public class Trade<T extends Offer>
+{
+    /** The key of the book traded in. **/
+    public final String KEY;
+    /** The UUID of the buyer, as a String. **/
+    public final String BUYER;
+    /** The offers taken from, cheapest first, one per entry of {@link Fill#TAKEN}. **/
+    public final List<T> OFFERS;
+    /** What is taken from each offer, and in total. **/
+    public final Fill FILL;
+    /** A reference for the store to record with the trade, so that it can be found again, or null. **/
+    public final String REFERENCE;
+
+    /**
+     * @param key       The key of the book traded in.
+     * @param buyer     The UUID of the buyer, as a String.
+     * @param offers    The offers taken from, cheapest first.
+     * @param fill      What is taken from each offer, and in total.
+     * @param reference A reference for the store to record with the trade, or null.
+     */
+    public Trade(String key, String buyer, List<T> offers, Fill fill, String reference)
+    {
+        KEY = key;
+        BUYER = buyer;
+        OFFERS = offers;
+        FILL = fill;
+        REFERENCE = reference;
+    }
+}
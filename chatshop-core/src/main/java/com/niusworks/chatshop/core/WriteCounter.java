@@ -0,0 +1,55 @@
+package com.niusworks.chatshop.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the writes begun and finished on one part of the market, so that
+ * readers can tell, without locking, whether what they read was consistent.
+ * <br>
+ * A writer calls {@link #begin()} before changing anything and {@link #end()}
+ * once finished, even on failure. A reader notes {@link #finished()} and then
+ * {@link #started()}, checks that they match (no write in progress), reads, and then
+ * checks that {@link #started()} has not moved (no write began meanwhile). The order of
+ * the first two matters: finished is never ahead of started, so reading it first
+ * cannot miss a write which began in between. If both hold, the
+ * read saw exactly the state after the noted number of writes, which therefore
+ * serves as its version. Several writers may be in progress at once.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class WriteCounter
+{
+    /** The number of writes begun. **/
+    protected final AtomicLong STARTED = new AtomicLong();
+
+    /** The number of writes finished. **/
+    protected final AtomicLong FINISHED = new AtomicLong();
+
+    /** Note that a write is beginning. **/
+    public void begin()
+    {
+        STARTED.incrementAndGet();
+    }
+
+    /** Note that a write has finished. **/
+    public void end()
+    {
+        FINISHED.incrementAndGet();
+    }
+
+    /**
+     * @return  The number of writes begun.
+     */
+    public long started()
+    {
+        return STARTED.get();
+    }
+
+    /**
+     * @return  The number of writes finished.
+     */
+    public long finished()
+    {
+        return FINISHED.get();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * ChatShop's market logic, over plain Java types: order books and their snapshots,
+ * matching buy orders against listings, encoding enchantments, paginating, and
+ * formatting money and numerals.
+ * <br>
+ * Nothing in this package may use Bukkit, Vault, or JDBC, so that it can be
+ * benchmarked, tested and run on any thread without a server. Listings are kept
+ * behind {@link com.niusworks.chatshop.core.MarketStore}, which the plugin
+ * implements over MySQL; the plugin's managers adapt Bukkit's players and items to
+ * this package, and its results back to SQL and chat.
+ *
+ * @author ObsidianCraft Staff
+ */
+package com.niusworks.chatshop.core;
@@ -0,0 +1,174 @@
+package com.niusworks.chatshop.core;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.niusworks.chatshop.core.MarketTest.Lot;
+
+/**
+ * Readers of {@link Books} racing a writer which changes a book in several steps,
+ * over a store in memory which shows every half-finished change to whoever reads it.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class BooksStressTest
+{
+    /** The key of the one book. **/
+    protected static final String KEY = "stone";
+    /** The number of reader threads. **/
+    protected static final int READERS = 4;
+    /** The quantity each lot starts with. **/
+    protected static final int START = 1000;
+    /** The number of verified reads, and of loads which saw a change half-finished, to race for. **/
+    protected static final int ENOUGH = 1000;
+    /** The number of changes the writer makes before pausing, so that readers may find the book quiet. **/
+    protected static final int BURST = 64;
+    /** The number of times a load yields between lots, long enough for whole changes to slip in. **/
+    protected static final int PAUSE = 4;
+    /** The longest the race is run, in milliseconds, should it take a slow machine that long. **/
+    protected static final long LIMIT = 20000;
+
+    /**
+     * Two lots, between which each change moves one item in two separate steps.
+     * Between the steps, the lots are inconsistent: their versions differ, and
+     * their quantities do not add up. A load reads the lots one at a time, so it
+     * may also straddle a change which begins while it reads.
+     */
+    protected static class Store implements MarketStore<Lot>
+    {
+        final Lot[] LOTS = {new Lot(1,"a",1,START,0),new Lot(2,"b",2,START,0)};
+        final Books<Lot> BOOKS = new Books<Lot>(this);
+        /** The number of loads which saw a change half-finished. **/
+        final AtomicLong TORN = new AtomicLong();
+
+        @Override
+        public List<Lot> load(String key)
+        {
+            List<Lot> lots = new ArrayList<Lot>();
+            lots.add(get(0));
+            for(int i = 0; i < PAUSE; i ++)
+                Thread.yield();
+            lots.add(get(1));
+            if(lots.get(0).VERSION != lots.get(1).VERSION)
+                TORN.incrementAndGet();
+            return lots;
+        }
+
+        @Override
+        public int take(Trade<Lot> trade)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Make the next change, counted as a store must: move one item from the
+         * first lot to the second on odd changes, and back on even ones.
+         *
+         * @param version   The number of the change, which is also the book's version once it is made.
+         */
+        void write(int version)
+        {
+            int move = version % 2 == 1 ? 1 : -1;
+            BOOKS.begin(KEY);
+            try
+            {
+                set(0,new Lot(1,"a",1,get(0).QUANTITY - move,version));
+                Thread.yield();
+                set(1,new Lot(2,"b",2,get(1).QUANTITY + move,version));
+            }
+            finally
+            {
+                BOOKS.end(KEY);
+            }
+        }
+
+        synchronized Lot get(int index)
+        {
+            return LOTS[index];
+        }
+
+        synchronized void set(int index, Lot lot)
+        {
+            LOTS[index] = lot;
+        }
+    }
+
+    @Test
+    public void readersOnlyEverSeeWholeChanges() throws Exception
+    {
+        final Store store = new Store();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final AtomicLong verified = new AtomicLong();
+
+        Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for(int version = 1; !done.get(); version ++)
+                    {
+                        store.write(version);
+                        //Let readers begin loads between changes, so that some straddle the next.
+                        Thread.yield();
+                        if(version % BURST == 0)
+                            Thread.sleep(1);
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    failure.compareAndSet(null,"The writer was interrupted.");
+                }
+            }
+        });
+        Thread[] readers = new Thread[READERS];
+        for(int i = 0; i < READERS; i ++)
+        {
+            readers[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while(!done.get())
+                    {
+                        Book<Lot> book = store.BOOKS.get(KEY);
+                        if(book.VERSION == -1)
+                            continue;   //Unverified reads promise nothing.
+                        verified.incrementAndGet();
+                        Lot a = book.LISTINGS.get(0), b = book.LISTINGS.get(1);
+                        if(a.VERSION != book.VERSION || b.VERSION != book.VERSION
+                                || a.QUANTITY + b.QUANTITY != 2 * START)
+                            failure.compareAndSet(null,"Book of version " + book.VERSION + " holds lots of versions "
+                                    + a.VERSION + " and " + b.VERSION + ", with " + (a.QUANTITY + b.QUANTITY) + " items.");
+                    }
+                }
+            });
+        }
+
+        for(Thread reader : readers)
+            reader.start();
+        writer.start();
+        long until = System.currentTimeMillis() + LIMIT;
+        while(failure.get() == null && (verified.get() < ENOUGH || store.TORN.get() < ENOUGH)
+                && System.currentTimeMillis() < until)
+            Thread.sleep(10);
+        done.set(true);
+        writer.join();
+        for(Thread reader : readers)
+            reader.join();
+
+        assertNull(failure.get(),failure.get());
+        assertTrue("No read was verified.",verified.get() > 0);
+        assertTrue("No load saw a change half-finished, so nothing was tested.",store.TORN.get() > 0);
+    }
+}
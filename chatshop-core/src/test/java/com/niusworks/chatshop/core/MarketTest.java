@@ -0,0 +1,177 @@
+package com.niusworks.chatshop.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Buying through {@link Market} and reading through {@link Books}, over a store in memory.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class MarketTest
+{
+    /** An offer in memory; a change replaces it with one of a later version. **/
+    protected static class Lot implements Offer
+    {
+        final int ID, QUANTITY, VERSION;
+        final double PRICE;
+        final String SELLER;
+
+        Lot(int id, String seller, double price, int quantity, int version)
+        {
+            ID = id; SELLER = seller; PRICE = price; QUANTITY = quantity; VERSION = version;
+        }
+
+        @Override public double price()     { return PRICE; }
+        @Override public int quantity()     { return QUANTITY; }
+        @Override public String seller()    { return SELLER; }
+    }
+
+    /** One book in memory, which counts its changes as a store must. **/
+    protected static class Store implements MarketStore<Lot>
+    {
+        final ArrayList<Lot> LOTS = new ArrayList<Lot>();
+        Books<Lot> books;
+        int loads = 0;
+        int takes = 0;
+        /** The number of trades to refuse as conflicting, changing a lot's version first. **/
+        int conflicts = 0;
+
+        @Override
+        public synchronized List<Lot> load(String key)
+        {
+            loads ++;
+            return new ArrayList<Lot>(LOTS);
+        }
+
+        @Override
+        public synchronized int take(Trade<Lot> trade)
+        {
+            takes ++;
+            books.begin(trade.KEY);
+            try
+            {
+                if(conflicts > 0)
+                {
+                    conflicts --;
+                    Lot first = LOTS.get(0);
+                    LOTS.set(0,new Lot(first.ID,first.SELLER,first.PRICE,first.QUANTITY,first.VERSION + 1));
+                }
+                for(Lot lot : trade.OFFERS)
+                    if(!LOTS.contains(lot))
+                        return 0;
+                for(int i = 0; i < trade.OFFERS.size(); i ++)
+                {
+                    Lot lot = trade.OFFERS.get(i);
+                    int left = lot.QUANTITY - trade.FILL.TAKEN[i];
+                    if(left == 0)
+                        LOTS.remove(lot);
+                    else
+                        LOTS.set(LOTS.indexOf(lot),new Lot(lot.ID,lot.SELLER,lot.PRICE,left,lot.VERSION + 1));
+                }
+                return 1;
+            }
+            finally
+            {
+                books.end(trade.KEY);
+            }
+        }
+    }
+
+    protected Store store(Lot... lots)
+    {
+        Store store = new Store();
+        store.LOTS.addAll(Arrays.asList(lots));
+        store.books = new Books<Lot>(store);
+        return store;
+    }
+
+    @Test
+    public void buysCheapestFirst()
+    {
+        Store store = store(new Lot(1,"a",1,10,0),new Lot(2,"b",2,10,0));
+        Market<Lot> market = new Market<Lot>(store,store.books);
+
+        Trade<Lot> trade = market.buy("stone","c",15,100,store.books.get("stone").LISTINGS,-1,null);
+        assertNotNull(trade);
+        assertEquals(15,trade.FILL.QUANTITY);
+        assertEquals(20,trade.FILL.COST,0.001);
+        assertEquals(1,store.LOTS.size());
+        assertEquals(5,store.LOTS.get(0).QUANTITY);
+    }
+
+    @Test
+    public void emptyBuysChangeNothing()
+    {
+        Store store = store(new Lot(1,"a",5,10,0));
+        Market<Lot> market = new Market<Lot>(store,store.books);
+        Book<Lot> before = store.books.get("stone");
+
+        Trade<Lot> trade = market.buy("stone","c",4,1,before.LISTINGS,-1,null);
+        assertNotNull(trade);
+        assertEquals(0,trade.FILL.QUANTITY);
+        assertEquals("The store is not asked to take nothing.",0,store.takes);
+        assertEquals("The book's snapshot is still good.",before.VERSION,store.books.get("stone").VERSION);
+    }
+
+    @Test
+    public void conflictsAreRetriedAgainstTheStore()
+    {
+        Store store = store(new Lot(1,"a",1,10,0));
+        Market<Lot> market = new Market<Lot>(store,store.books);
+        List<Lot> offers = store.books.get("stone").LISTINGS;
+        store.conflicts = 2;
+
+        Trade<Lot> trade = market.buy("stone","c",4,100,offers,-1,null);
+        assertNotNull(trade);
+        assertEquals(4,trade.FILL.QUANTITY);
+        assertEquals(6,store.LOTS.get(0).QUANTITY);
+        assertEquals("The book is read again after each conflict.",3,store.loads);
+    }
+
+    @Test
+    public void endlessConflictsAreAbandoned()
+    {
+        Store store = store(new Lot(1,"a",1,10,0));
+        final int[] abandoned = {0};
+        Market<Lot> market = new Market<Lot>(store,store.books)
+        {
+            @Override
+            protected void conflicted(String key)
+            {
+                abandoned[0] ++;
+            }
+        };
+        store.conflicts = Market.ATTEMPTS;
+
+        assertNull(market.buy("stone","c",4,100,store.books.get("stone").LISTINGS,-1,null));
+        assertEquals(1,abandoned[0]);
+        assertEquals(10,store.LOTS.get(0).QUANTITY);
+    }
+
+    @Test
+    public void snapshotsAreSharedUntilAWrite()
+    {
+        Store store = store(new Lot(1,"a",1,10,0));
+        Market<Lot> market = new Market<Lot>(store,store.books);
+
+        Book<Lot> first = store.books.get("stone");
+        assertSame(first,store.books.get("stone"));
+        assertSame(first,store.books.current("stone"));
+        assertEquals(1,store.loads);
+
+        market.buy("stone","c",4,100,first.LISTINGS,-1,null);
+        assertNull(store.books.current("stone"));
+        Book<Lot> second = store.books.get("stone");
+        assertEquals(6,second.LISTINGS.get(0).QUANTITY);
+        assertEquals(first.VERSION + 1,second.VERSION);
+    }
+}
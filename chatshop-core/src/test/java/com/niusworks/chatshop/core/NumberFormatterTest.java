@@ -0,0 +1,106 @@
+package com.niusworks.chatshop.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.NumberFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link NumberFormatter} must write exactly what the {@link NumberFormat}s it replaced did.
+ *
+ * @author ObsidianCraft Staff
+ */
+public class NumberFormatterTest
+{
+    /** The formatters NumberFormatter replaced. **/
+    protected final NumberFormat MONEY = NumberFormat.getCurrencyInstance(),
+            INTEGER = NumberFormat.getIntegerInstance();
+
+    /** Fixed, so that a failure can be reproduced. **/
+    protected final Random RANDOM = new Random(26);
+
+    /**
+     * Assert that a price is formatted as NumberFormat would, with and without the symbol.
+     *
+     * @param price The price.
+     */
+    protected void assertMoney(double price)
+    {
+        String expected = MONEY.format(price).replace(".00","");
+        assertEquals("Price " + price,expected,NumberFormatter.money(price,true));
+        assertEquals("Price " + price,expected.replace("$",""),NumberFormatter.money(price,false));
+    }
+
+    @Test
+    public void everydayPrices()
+    {
+        for(int i = 0; i < 100000; i ++)
+            assertMoney(RANDOM.nextInt(10000000) / 1000.0);
+    }
+
+    @Test
+    public void halfCents()
+    {
+        //Whether these round up or down depends on their exact binary values.
+        for(int i = 0; i < 100000; i ++)
+        {
+            double price = (RANDOM.nextInt(100000000) + 0.5) / 100;
+            assertMoney(price);
+            assertMoney(-price);
+        }
+    }
+
+    @Test
+    public void pricesOfEveryMagnitude()
+    {
+        for(int i = 0; i < 100000; i ++)
+        {
+            double price = Math.scalb(RANDOM.nextDouble(),RANDOM.nextInt(60) - 10);
+            assertMoney(RANDOM.nextBoolean() ? price : -price);
+        }
+    }
+
+    @Test
+    public void halfCentsNearTheLimitOfTheFastPath()
+    {
+        //Around 2^33 cents, scaling to cents is no longer exact enough to tell a tie.
+        for(long cents = (1L << 33) - 20000; cents < (1L << 33) + 20000; cents ++)
+        {
+            double price = (cents + 0.5) / 100;
+            assertMoney(price);
+            assertMoney(Math.nextUp(price));
+            assertMoney(Math.nextDown(price));
+        }
+        for(int i = 0; i < 100000; i ++)
+            assertMoney((RANDOM.nextLong() % 1000000000000L + 0.5) / 100);
+    }
+
+    @Test
+    public void oddities()
+    {
+        double[] prices = {0, -0.0, 0.001, -0.001, 0.005, -0.005, 0.015, 0.125, 1e-300,
+                999.995, 999999.995, 1e9, 1e11, 1e13, 1e15, 1e20, Double.MAX_VALUE, Double.MIN_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for(double price : prices)
+        {
+            assertMoney(price);
+            assertMoney(-price);
+        }
+    }
+
+    @Test
+    public void quantities()
+    {
+        long[] quantities = {0, 1, -1, 999, 1000, -1000, 999999, 1000000, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for(long qty : quantities)
+            assertEquals(INTEGER.format(qty),NumberFormatter.quantity(qty));
+        for(int i = 0; i < 100000; i ++)
+        {
+            long qty = RANDOM.nextLong() >> RANDOM.nextInt(64);
+            assertEquals(INTEGER.format(qty),NumberFormatter.quantity(qty));
+        }
+    }
+}